@@ -42,10 +42,14 @@ public class PromotionDemoController {
     /**
      * 演示回滚 bug
      * 场景：商品300元
-     * 规则A：打9折(-30，priority=1)
-     * 规则B：打8折(-60，priority=2，与A互斥)
-     * 规则C：订单满250减30(priority=3)
-     * 旧架构bug：A先执行→C基于270算→回滚A选B→C的base还是270(错误)
+     * 规则A(R1)：打9折(-30，priority=1)
+     * 规则C(R3)：满260减20(priority=2，在A和B之间执行)
+     * 规则B(R2)：打8折(-60，priority=3，与A互斥)
+     *
+     * 旧架构 bug：按 priority 顺序执行 + 回滚只标记 invalid，不会重算已执行下游规则的 basePrice。
+     * A先执行→C基于270触发→回滚A选B→C仍保留(错误)。
+     *
+     * 新架构：穷举组合，且按“折扣先算、再算满减/直减”的阶段化顺序计算，选择B后价格为240<260，C不触发。
      */
     @PostMapping("/compare/rollback-bug")
     public Map<String, Object> demonstrateRollbackBug(@RequestBody(required = false) Map<String, Object> request) {
@@ -118,6 +122,36 @@ public class PromotionDemoController {
         return compareService.calculateWithNewEngine(cart, rules);
     }
 
+    /**
+     * 使用自适应引擎计算（按命中规则数、互斥图和延迟目标选择穷举/剪枝/贪心）
+     */
+    @PostMapping("/calculate/adaptive")
+    public Map<String, Object> calculateWithAdaptiveEngine(@RequestBody Map<String, Object> request) {
+        Cart cart = parseCart(request);
+        List<Rule> rules = parseRules(request);
+
+        return compareService.calculateWithAdaptiveEngine(cart, rules);
+    }
+
+    /**
+     * 影子模式计算（主引擎返回结果，采样请求后台用候选引擎比对）
+     */
+    @PostMapping("/calculate/shadow")
+    public Map<String, Object> calculateWithShadow(@RequestBody Map<String, Object> request) {
+        Cart cart = parseCart(request);
+        List<Rule> rules = parseRules(request);
+
+        return compareService.calculateWithShadow(cart, rules);
+    }
+
+    /**
+     * 影子比对统计
+     */
+    @GetMapping("/shadow/stats")
+    public Map<String, Object> getShadowStats() {
+        return compareService.getShadowStats();
+    }
+
     // ========== 默认场景数据 ==========
 
     private Cart createDefaultCart(BigDecimal price) {
@@ -160,10 +194,13 @@ public class PromotionDemoController {
 
     /**
      * 回滚 bug 场景的规则
+     * 优先级顺序：R1(9折) -> R3(满260减20) -> R2(8折)
+     * R3 在 R1 和 R2 之间执行，是展示 bug 的关键
      */
     private List<Rule> createRollbackBugRules() {
         List<Rule> rules = new ArrayList<>();
 
+        // R1：9折，与R2互斥，优先级1
         Set<String> exclusiveSet = new HashSet<>();
         exclusiveSet.add("R2");
 
@@ -176,6 +213,18 @@ public class PromotionDemoController {
                 .exclusiveRuleIds(exclusiveSet)
                 .build());
 
+        // R3：满260减20，优先级2（在R1和R2之间）
+        // 270(R1执行后) >= 260 会触发，但 240(R2执行后) < 260 不应触发
+        rules.add(Rule.builder()
+                .id("R3")
+                .name("满260减20")
+                .type(RuleType.THRESHOLD_AMOUNT_OFF)
+                .threshold(new BigDecimal("260"))
+                .discount(new BigDecimal("20"))
+                .priority(2)
+                .build());
+
+        // R2：8折，与R1互斥，优先级3
         Set<String> exclusiveSet2 = new HashSet<>();
         exclusiveSet2.add("R1");
 
@@ -184,17 +233,8 @@ public class PromotionDemoController {
                 .name("商品8折")
                 .type(RuleType.DISCOUNT)
                 .discount(new BigDecimal("0.8"))
-                .priority(2)
-                .exclusiveRuleIds(exclusiveSet2)
-                .build());
-
-        rules.add(Rule.builder()
-                .id("R3")
-                .name("满250减30")
-                .type(RuleType.THRESHOLD_AMOUNT_OFF)
-                .threshold(new BigDecimal("250"))
-                .discount(new BigDecimal("30"))
                 .priority(3)
+                .exclusiveRuleIds(exclusiveSet2)
                 .build());
 
         return rules;
@@ -0,0 +1,80 @@
+package com.bruce.promotiondemo.bench;
+
+import com.bruce.promotiondemo.PromotionCaseGenerator;
+import com.bruce.promotiondemo.engine.CompiledRuleSet;
+import com.bruce.promotiondemo.engine.NewPromotionEngine;
+import com.bruce.promotiondemo.engine.OldPromotionEngine;
+import com.bruce.promotiondemo.model.Cart;
+import com.bruce.promotiondemo.model.Rule;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 促销引擎：{@link OldPromotionEngine}（贪心 + 回滚，垂直叠加）与 {@link NewPromotionEngine}（组合穷举）。
+ *
+ * <p>两者都会先拷贝入参购物车，所以同一个购物车可以反复使用。规则数决定新引擎的组合空间（2^n，搜索时有剪枝）。
+ * 输入由差分测试同一套生成器（{@link PromotionCaseGenerator}）产生。</p>
+ *
+ * <p>*Compiled 变体复用 setup 阶段编译好的 {@link CompiledRuleSet}（同一规则版本跨请求复用的情形），
+ * 与每次传规则列表（每次调用都编译一次）对比即为编译开销。</p>
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class PromotionEngineBenchmark {
+
+    /**
+     * 每组参数预生成的购物车份数（2 的幂，按位与轮转）
+     */
+    static final int INPUT_POOL = 32;
+
+    @Param({"5", "20", "100"})
+    int cartSize;
+
+    @Param({"4", "8", "12", "24"})
+    int ruleCount;
+
+    private final OldPromotionEngine oldEngine = new OldPromotionEngine(false);
+    private final NewPromotionEngine newEngine = new NewPromotionEngine();
+    private Cart[] carts;
+    private List<Rule> rules;
+    private CompiledRuleSet ruleSet;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random rnd = new Random(31L * cartSize + ruleCount);
+        carts = new Cart[INPUT_POOL];
+        for (int i = 0; i < carts.length; i++) {
+            carts[i] = PromotionCaseGenerator.cart(rnd, cartSize);
+        }
+        rules = PromotionCaseGenerator.rules(rnd, ruleCount, carts[0].getTotalPrice());
+        ruleSet = CompiledRuleSet.compile(1L, rules);
+    }
+
+    @Benchmark
+    public Cart oldEngine() {
+        return oldEngine.calculate(carts[cursor++ & (carts.length - 1)], rules);
+    }
+
+    @Benchmark
+    public Cart newEngine() {
+        return newEngine.calculate(carts[cursor++ & (carts.length - 1)], rules);
+    }
+
+    @Benchmark
+    public Cart oldEngineCompiled() {
+        return oldEngine.calculate(carts[cursor++ & (carts.length - 1)], ruleSet);
+    }
+
+    @Benchmark
+    public Cart newEngineCompiled() {
+        return newEngine.calculate(carts[cursor++ & (carts.length - 1)], ruleSet);
+    }
+}
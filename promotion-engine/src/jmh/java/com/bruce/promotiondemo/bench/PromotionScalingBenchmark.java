@@ -0,0 +1,77 @@
+package com.bruce.promotiondemo.bench;
+
+import com.bruce.promotiondemo.PromotionCaseGenerator;
+import com.bruce.promotiondemo.engine.AdaptivePromotionEngine;
+import com.bruce.promotiondemo.engine.CachingPromotionEngine;
+import com.bruce.promotiondemo.engine.CompiledRuleSet;
+import com.bruce.promotiondemo.engine.NewPromotionEngine;
+import com.bruce.promotiondemo.engine.OldPromotionEngine;
+import com.bruce.promotiondemo.engine.PromotionEngine;
+import com.bruce.promotiondemo.model.Cart;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 促销引擎的规模曲线：耗时随购物车行数、规则数的变化，每个引擎一条曲线。
+ *
+ * <p>输入由差分测试同一套生成器（{@link PromotionCaseGenerator}）产生，测的正是差分测试验证过正确性的那类输入。
+ * 规则集按第一个购物车的原价生成（同一行数的购物车金额在同一量级，门槛和减免对整个输入池都有意义）。</p>
+ *
+ * <p>结果用 {@code -Djmh.args="PromotionScaling -rf csv -rff target/jmh/scaling.csv"} 导出成表格，
+ * 按 engine 分组、以 cartSize / ruleCount 为横轴即可画图。CACHED 每轮都命中缓存，反映的是命中路径的开销。</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class PromotionScalingBenchmark {
+
+    @Param({"1", "10", "50", "200"})
+    int cartSize;
+
+    @Param({"2", "6", "12", "20", "32"})
+    int ruleCount;
+
+    @Param({"OLD", "NEW", "ADAPTIVE", "CACHED"})
+    String engine;
+
+    private PromotionEngine promotionEngine;
+    private Cart[] carts;
+    private CompiledRuleSet ruleSet;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        promotionEngine = create(engine);
+        Random rnd = new Random(31L * cartSize + ruleCount);
+        carts = new Cart[PromotionEngineBenchmark.INPUT_POOL];
+        for (int i = 0; i < carts.length; i++) {
+            carts[i] = PromotionCaseGenerator.cart(rnd, cartSize);
+        }
+        ruleSet = CompiledRuleSet.compile(1L, PromotionCaseGenerator.rules(rnd, ruleCount, carts[0].getTotalPrice()));
+    }
+
+    @Benchmark
+    public Cart calculate() {
+        return promotionEngine.calculate(carts[cursor++ & (carts.length - 1)], ruleSet);
+    }
+
+    private static PromotionEngine create(String engine) {
+        switch (engine) {
+            case "OLD":
+                return new OldPromotionEngine(false);
+            case "NEW":
+                return new NewPromotionEngine();
+            case "ADAPTIVE":
+                return new AdaptivePromotionEngine();
+            case "CACHED":
+                return new CachingPromotionEngine(new NewPromotionEngine(), 4 * PromotionEngineBenchmark.INPUT_POOL, 3_600_000L);
+            default:
+                throw new IllegalArgumentException("unknown engine: " + engine);
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.bruce.promotiondemo.engine;
+
+import com.bruce.promotiondemo.model.*;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 自适应促销引擎
+ * 每次请求按命中规则数、互斥图形状和延迟目标（SLO）预估搜索规模，在三条路径中选一条：
+ * 1. EXHAUSTIVE：预估的全量枚举耗时很小，直接枚举（不算上界，省掉剪枝本身的开销）
+ * 2. PRUNED：精确搜索（上界剪枝 + 前缀记忆化，见 {@link NewPromotionEngine}），以 SLO 为截止时间，超时退回贪心
+ * 3. GREEDY：命中规则太多，按执行顺序逐条能用就用
+ *
+ * 三条路径与新架构同一口径（阶段化垂直叠加），精确路径的结果与 {@link NewPromotionEngine} 完全一致；
+ * 贪心路径不使用旧架构的回滚逻辑，不会出现回滚后下游规则不重算的问题。
+ *
+ * 每次都会算一遍贪心组合（O(n)），精确路径上据此记录最优与贪心的差距（optimality gap）；
+ * 路径分布、超时次数与差距汇总见 {@link #getStats()}。
+ */
+public class AdaptivePromotionEngine implements PromotionEngine {
+
+    /**
+     * 默认延迟目标：2ms
+     */
+    public static final long DEFAULT_SLO_MICROS = 2000L;
+
+    /**
+     * 默认走精确搜索的最多命中规则数
+     */
+    public static final int DEFAULT_MAX_EXACT_RULES = 40;
+
+    /**
+     * 全量枚举每个合法组合的大致耗时（纳秒，BigDecimal 运算为主），用于预估枚举耗时
+     */
+    private static final long NANOS_PER_COMBINATION = 100L;
+
+    /**
+     * 预估枚举耗时不超过该值（且不超过 SLO）时走全量枚举：20µs
+     */
+    private static final long EXHAUSTIVE_MAX_NANOS = 20_000L;
+
+    private final long sloNanos;
+    private final int maxExactRules;
+
+    private final Map<SearchPath, LongAdder> pathCounts = new EnumMap<>(SearchPath.class);
+    private final LongAdder timeouts = new LongAdder();
+    /**
+     * 能算出差距的次数 / 最优严格优于贪心的次数 / 差距之和与最大值（分）；平均差距按全部样本（含差距为 0）计
+     */
+    private final LongAdder gapSamples = new LongAdder();
+    private final LongAdder greedySuboptimal = new LongAdder();
+    private final LongAdder gapCentsTotal = new LongAdder();
+    private final AtomicLong maxGapCents = new AtomicLong();
+
+    public AdaptivePromotionEngine() {
+        this(DEFAULT_SLO_MICROS, DEFAULT_MAX_EXACT_RULES);
+    }
+
+    /**
+     * @param sloMicros     单次计算的延迟目标（微秒），精确搜索超过即退回贪心
+     * @param maxExactRules 命中规则数超过该值直接走贪心
+     */
+    public AdaptivePromotionEngine(long sloMicros, int maxExactRules) {
+        if (sloMicros <= 0) {
+            throw new IllegalArgumentException("sloMicros must be positive");
+        }
+        this.sloNanos = TimeUnit.MICROSECONDS.toNanos(sloMicros);
+        this.maxExactRules = maxExactRules;
+        for (SearchPath path : SearchPath.values()) {
+            pathCounts.put(path, new LongAdder());
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "自适应(穷举/剪枝/贪心)";
+    }
+
+    @Override
+    public Cart calculate(Cart cart, List<Rule> rules) {
+        return calculate(cart, CompiledRuleSet.compile(rules));
+    }
+
+    @Override
+    public Cart calculate(Cart cart, CompiledRuleSet ruleSet) {
+        return calculateWithResult(cart, ruleSet).getCart();
+    }
+
+    /**
+     * 计算促销，并返回本次选择的路径、预估规模与最优差距
+     */
+    public AdaptiveResult calculateWithResult(Cart cart, CompiledRuleSet ruleSet) {
+        long start = System.nanoTime();
+        BigDecimal originalPrice = cart.getTotalPrice();
+        int[] matched = NewPromotionEngine.matchRules(ruleSet, originalPrice);
+        long estimate = estimateCombinations(ruleSet, matched);
+
+        NewPromotionEngine.CombinationSearch search = new NewPromotionEngine.CombinationSearch(ruleSet, matched, originalPrice);
+        BigDecimal[] greedyDiscount = new BigDecimal[1];
+        List<Rule> greedy = search.greedy(greedyDiscount);
+
+        SearchPath path;
+        List<Rule> combination;
+        BigDecimal exactDiscount = null;
+        boolean timedOut = false;
+        if (matched.length > maxExactRules) {
+            path = SearchPath.GREEDY;
+            combination = greedy;
+        } else {
+            boolean exhaustive = saturatedMultiply(estimate, NANOS_PER_COMBINATION) <= Math.min(sloNanos, EXHAUSTIVE_MAX_NANOS);
+            if (exhaustive) {
+                search.withoutPruning();
+            } else {
+                search.deadline(start + sloNanos);
+            }
+            combination = search.run();
+            if (search.isTimedOut()) {
+                path = SearchPath.GREEDY;
+                timedOut = true;
+                combination = greedy;
+            } else {
+                path = exhaustive ? SearchPath.EXHAUSTIVE : SearchPath.PRUNED;
+                exactDiscount = search.getBestDiscount();
+            }
+        }
+
+        Cart result = combination != null && !combination.isEmpty()
+                ? NewPromotionEngine.calculateCombination(cart, combination)
+                : cart.copy();
+        BigDecimal gap = exactDiscount != null ? exactDiscount.subtract(greedyDiscount[0]) : null;
+        record(path, timedOut, gap);
+
+        return AdaptiveResult.builder()
+                .cart(result)
+                .path(path)
+                .timedOut(timedOut)
+                .matchedRuleCount(matched.length)
+                .estimatedCombinations(estimate)
+                .greedyDiscount(greedyDiscount[0])
+                .exactDiscount(exactDiscount)
+                .optimalityGap(gap)
+                .memoHits(search.getMemoHits())
+                .memoAbandoned(search.isMemoAbandoned())
+                .elapsedMicros(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start))
+                .build();
+    }
+
+    /**
+     * 路径分布、超时次数与最优差距汇总
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        Map<String, Long> paths = new LinkedHashMap<>();
+        for (Map.Entry<SearchPath, LongAdder> e : pathCounts.entrySet()) {
+            paths.put(e.getKey().name(), e.getValue().sum());
+        }
+        stats.put("paths", paths);
+        stats.put("timeouts", timeouts.sum());
+        long samples = gapSamples.sum();
+        stats.put("gapSamples", samples);
+        stats.put("greedySuboptimal", greedySuboptimal.sum());
+        stats.put("avgGap", samples == 0 ? BigDecimal.ZERO
+                : BigDecimal.valueOf(gapCentsTotal.sum(), 2).divide(BigDecimal.valueOf(samples), 2, RoundingMode.HALF_UP));
+        stats.put("maxGap", BigDecimal.valueOf(maxGapCents.get(), 2));
+        return stats;
+    }
+
+    private void record(SearchPath path, boolean timedOut, BigDecimal gap) {
+        pathCounts.get(path).increment();
+        if (timedOut) {
+            timeouts.increment();
+        }
+        if (gap != null) {
+            gapSamples.increment();
+            long cents = gap.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValue();
+            if (cents > 0) {
+                greedySuboptimal.increment();
+                gapCentsTotal.add(cents);
+                maxGapCents.accumulateAndGet(cents, Math::max);
+            }
+        }
+    }
+
+    /**
+     * 按互斥图估算合法组合数（含空组合）：各连通分量相互独立，总数为各分量组合数之积；
+     * 分量两两互斥（完全图）时最多选一条，为 s + 1，否则按 2^s 估上界。
+     */
+    static long estimateCombinations(CompiledRuleSet ruleSet, int[] matched) {
+        int n = matched.length;
+        int[] parent = new int[n];
+        for (int i = 0; i < n; i++) {
+            parent[i] = i;
+        }
+        int[] edges = new int[n];
+        for (int a = 0; a < n; a++) {
+            for (int b = a + 1; b < n; b++) {
+                if (ruleSet.isExclusive(matched[a], matched[b])) {
+                    int ra = find(parent, a);
+                    int rb = find(parent, b);
+                    if (ra != rb) {
+                        parent[rb] = ra;
+                        edges[ra] += edges[rb];
+                    }
+                    edges[ra]++;
+                }
+            }
+        }
+        int[] sizes = new int[n];
+        for (int i = 0; i < n; i++) {
+            sizes[find(parent, i)]++;
+        }
+        long estimate = 1L;
+        for (int root = 0; root < n; root++) {
+            int size = sizes[root];
+            if (size == 0) {
+                continue;
+            }
+            long combinations;
+            if (size > 1 && edges[root] == size * (size - 1) / 2) {
+                combinations = size + 1L;
+            } else {
+                combinations = size >= 62 ? Long.MAX_VALUE : 1L << size;
+            }
+            estimate = saturatedMultiply(estimate, combinations);
+        }
+        return estimate;
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    private static long saturatedMultiply(long a, long b) {
+        if (a != 0 && b > Long.MAX_VALUE / a) {
+            return Long.MAX_VALUE;
+        }
+        return a * b;
+    }
+}
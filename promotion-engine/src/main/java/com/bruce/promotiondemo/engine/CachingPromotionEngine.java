@@ -0,0 +1,137 @@
+package com.bruce.promotiondemo.engine;
+
+import com.bruce.promotiondemo.model.Cart;
+import com.bruce.promotiondemo.model.ReductionDetail;
+import com.bruce.promotiondemo.model.Rule;
+
+import java.util.*;
+
+/**
+ * 带结果缓存的促销引擎（装饰任意 {@link PromotionEngine}）
+ *
+ * 购物车页反复刷新时，同样的商品、同样的规则版本会被重复计算；这里以（规范化购物车, 规则版本）为键缓存结果：
+ * 1. 只缓存有版本号的规则集（{@link CompiledRuleSet#getVersion()} > 0）；一次性编译（版本 0）和直接传规则列表的请求不走缓存，
+ *    入参购物车已带优惠明细的也不走缓存
+ * 2. 出现更新的规则版本时整体失效，旧版本请求不读不写
+ * 3. 缓存里存的是优惠明细的私有副本，命中时用调用方的商品行重新组装购物车并复制明细，调用方修改返回值不会污染缓存
+ */
+public class CachingPromotionEngine implements PromotionEngine {
+
+    private final PromotionEngine delegate;
+    private final CalculationCache<Key, Snapshot> cache;
+
+    /**
+     * @param maxEntries 最多缓存条数（LRU 淘汰）
+     * @param ttlMillis  每条结果的存活时间（毫秒）
+     */
+    public CachingPromotionEngine(PromotionEngine delegate, int maxEntries, long ttlMillis) {
+        this.delegate = delegate;
+        this.cache = new CalculationCache<>(maxEntries, ttlMillis);
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    /**
+     * 规则列表没有版本号，不走缓存
+     */
+    @Override
+    public Cart calculate(Cart cart, List<Rule> rules) {
+        cache.recordBypass();
+        return delegate.calculate(cart, rules);
+    }
+
+    @Override
+    public Cart calculate(Cart cart, CompiledRuleSet ruleSet) {
+        long version = ruleSet.getVersion();
+        // 入参购物车已带明细时，引擎结果会保留这些明细，不能按商品行复用
+        boolean fresh = cart.getReductionDetails().isEmpty() && cart.getAppliedRules().isEmpty();
+        if (version <= 0 || !fresh || !cache.admitVersion(version)) {
+            cache.recordBypass();
+            return delegate.calculate(cart, ruleSet);
+        }
+        Key key = new Key(CartKey.of(cart.getItems()), version);
+        Snapshot cached = cache.get(key);
+        if (cached != null) {
+            return cached.toCart(cart);
+        }
+        Cart result = delegate.calculate(cart, ruleSet);
+        cache.put(key, Snapshot.of(result));
+        return result;
+    }
+
+    /**
+     * 规则在版本号之外发生变更时手动清空
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public Map<String, Object> getStats() {
+        return cache.getStats();
+    }
+
+    /**
+     * （规范化购物车, 规则版本）：版本也放进键里，规则切换瞬间在途的旧版本结果不会被新版本读到
+     */
+    private static final class Key {
+        private final CartKey cart;
+        private final long version;
+
+        Key(CartKey cart, long version) {
+            this.cart = cart;
+            this.version = version;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return version == other.version && cart.equals(other.cart);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * cart.hashCode() + Long.hashCode(version);
+        }
+    }
+
+    /**
+     * 计算结果中与商品行无关的部分：应用的规则 + 优惠明细（私有副本，不对外暴露）
+     */
+    private static final class Snapshot {
+        private final List<Rule> appliedRules;
+        private final List<ReductionDetail> reductionDetails;
+
+        private Snapshot(List<Rule> appliedRules, List<ReductionDetail> reductionDetails) {
+            this.appliedRules = appliedRules;
+            this.reductionDetails = reductionDetails;
+        }
+
+        static Snapshot of(Cart result) {
+            List<ReductionDetail> details = new ArrayList<>(result.getReductionDetails().size());
+            for (ReductionDetail detail : result.getReductionDetails()) {
+                details.add(detail.copy());
+            }
+            return new Snapshot(new ArrayList<>(result.getAppliedRules()), details);
+        }
+
+        /**
+         * 用本次请求的商品行组装结果（与引擎一样返回入参购物车的副本）
+         */
+        Cart toCart(Cart request) {
+            Cart result = Cart.builder().build();
+            request.getItems().forEach(item -> result.getItems().add(item.copy()));
+            result.getAppliedRules().addAll(appliedRules);
+            reductionDetails.forEach(detail -> result.getReductionDetails().add(detail.copy()));
+            return result;
+        }
+    }
+}
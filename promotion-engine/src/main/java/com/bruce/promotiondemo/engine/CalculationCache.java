@@ -0,0 +1,170 @@
+package com.bruce.promotiondemo.engine;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * 计算结果缓存：容量上限（LRU 淘汰）+ TTL + 命中率统计 + 按规则版本失效
+ *
+ * 规则版本只增不减：{@link #admitVersion(long)} 看到更新的版本时清空全部缓存；
+ * 旧版本的请求不读也不写缓存，避免规则切换期间旧结果回填。
+ *
+ * 值由调用方保证不可变或按防御性拷贝存取，缓存本身不复制。
+ */
+public class CalculationCache<K, V> {
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+
+    /**
+     * 按访问顺序排列，最久未访问的在最前；读写都在 this 上加锁
+     */
+    private final LinkedHashMap<K, CachedValue<V>> entries;
+    private long currentVersion = Long.MIN_VALUE;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder bypassed = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * @param maxEntries 最多缓存条数，超过后淘汰最久未访问的
+     * @param ttlMillis  每条结果的存活时间（毫秒）
+     */
+    public CalculationCache(int maxEntries, long ttlMillis) {
+        this(maxEntries, ttlMillis, System::nanoTime);
+    }
+
+    /**
+     * @param clock 纳秒时钟（测试时可替换）
+     */
+    public CalculationCache(int maxEntries, long ttlMillis, LongSupplier clock) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        if (ttlMillis <= 0) {
+            throw new IllegalArgumentException("ttlMillis must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.clock = clock;
+        this.entries = new LinkedHashMap<K, CachedValue<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, CachedValue<V>> eldest) {
+                if (size() > CalculationCache.this.maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * 登记本次请求的规则版本
+     *
+     * @return 该版本能否使用缓存：比当前版本新时清空缓存并切到新版本；比当前版本旧时不能使用
+     */
+    public synchronized boolean admitVersion(long version) {
+        if (version == currentVersion) {
+            return true;
+        }
+        if (version > currentVersion) {
+            if (!entries.isEmpty()) {
+                invalidations.increment();
+                entries.clear();
+            }
+            currentVersion = version;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 取缓存结果，没有或已过期时返回 null（计入未命中）
+     */
+    public V get(K key) {
+        long now = clock.getAsLong();
+        synchronized (this) {
+            CachedValue<V> entry = entries.get(key);
+            if (entry != null && now - entry.expiresAt < 0) {
+                hits.increment();
+                return entry.value;
+            }
+            if (entry != null) {
+                entries.remove(key);
+                expirations.increment();
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    public void put(K key, V value) {
+        long expiresAt = clock.getAsLong() + ttlNanos;
+        synchronized (this) {
+            entries.put(key, new CachedValue<>(value, expiresAt));
+        }
+    }
+
+    /**
+     * 记一次不走缓存的请求（如一次性编译、没有版本号的规则）
+     */
+    public void recordBypass() {
+        bypassed.increment();
+    }
+
+    /**
+     * 清空全部缓存（规则或券包在版本号之外发生变更时调用）
+     */
+    public synchronized void invalidateAll() {
+        if (!entries.isEmpty()) {
+            invalidations.increment();
+            entries.clear();
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * 条数、命中/未命中/绕过次数、命中率、淘汰/过期/失效次数
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        stats.put("size", size());
+        stats.put("maxEntries", maxEntries);
+        stats.put("ruleVersion", currentVersionOrNull());
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("bypassed", bypassed.sum());
+        stats.put("hitRate", hitCount + missCount == 0 ? 0D : (double) hitCount / (hitCount + missCount));
+        stats.put("evictions", evictions.sum());
+        stats.put("expirations", expirations.sum());
+        stats.put("invalidations", invalidations.sum());
+        return stats;
+    }
+
+    private synchronized Long currentVersionOrNull() {
+        return currentVersion == Long.MIN_VALUE ? null : currentVersion;
+    }
+
+    private static final class CachedValue<V> {
+        private final V value;
+        private final long expiresAt;
+
+        private CachedValue(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.bruce.promotiondemo.engine;
+
+import com.bruce.promotiondemo.model.CartItem;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * 购物车的规范化缓存键：商品行按（SKU, 单价, 数量）排序后逐项比较，与行的先后顺序无关
+ *
+ * 单价按 BigDecimal.equals 比较（精度敏感）：100 与 100.00 算出的金额精度不同，不共用结果。
+ * 应付金额（payPrice）是计算结果，不参与比较。
+ */
+public final class CartKey {
+
+    private static final Comparator<CartItem> CANONICAL_ORDER = Comparator
+            .comparing(CartItem::getSkuCode, Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+            .thenComparing(CartItem::getPrice, Comparator.nullsFirst(CartKey::comparePrice))
+            .thenComparing(CartItem::getQuantity, Comparator.nullsFirst(Comparator.<Integer>naturalOrder()));
+
+    private final String[] skuCodes;
+    private final BigDecimal[] prices;
+    private final Integer[] quantities;
+    private final int hash;
+
+    private CartKey(String[] skuCodes, BigDecimal[] prices, Integer[] quantities) {
+        this.skuCodes = skuCodes;
+        this.prices = prices;
+        this.quantities = quantities;
+        int h = Arrays.hashCode(skuCodes);
+        h = 31 * h + Arrays.hashCode(prices);
+        this.hash = 31 * h + Arrays.hashCode(quantities);
+    }
+
+    public static CartKey of(List<CartItem> items) {
+        List<CartItem> sorted = new ArrayList<>(items);
+        sorted.sort(CANONICAL_ORDER);
+        int n = sorted.size();
+        String[] skuCodes = new String[n];
+        BigDecimal[] prices = new BigDecimal[n];
+        Integer[] quantities = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            CartItem item = sorted.get(i);
+            skuCodes[i] = item.getSkuCode();
+            prices[i] = item.getPrice();
+            quantities[i] = item.getQuantity();
+        }
+        return new CartKey(skuCodes, prices, quantities);
+    }
+
+    /**
+     * 先比数值，数值相同再比精度，保证与 equals 一致的全序
+     */
+    private static int comparePrice(BigDecimal a, BigDecimal b) {
+        int cmp = a.compareTo(b);
+        return cmp != 0 ? cmp : Integer.compare(a.scale(), b.scale());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CartKey)) {
+            return false;
+        }
+        CartKey other = (CartKey) o;
+        return hash == other.hash
+                && Arrays.equals(skuCodes, other.skuCodes)
+                && Arrays.equals(prices, other.prices)
+                && Arrays.equals(quantities, other.quantities);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
@@ -0,0 +1,163 @@
+package com.bruce.promotiondemo.engine;
+
+import com.bruce.promotiondemo.model.Rule;
+import com.bruce.promotiondemo.model.RuleType;
+
+import java.util.*;
+
+/**
+ * 预编译的促销规则集（不可变，可跨请求共享）
+ *
+ * 编译时一次性完成：
+ * 1. 规则 ID 驻留为连续整数，互斥关系展开成对称的位矩阵（按规则下标），判断互斥只需一次位运算，
+ *    不再每次都走 {@link Rule#isExclusiveWith} 的两次 HashSet 字符串查找
+ * 2. 预先排好两种执行顺序：按 priority（旧引擎）、按阶段 -> priority（新引擎，折扣先于满减/直减）；
+ *    两者都是稳定排序，同 priority 保持原列表先后
+ *
+ * 一个规则版本对应一个实例，版本内规则对象不应再被修改；按版本复用见 {@link CompiledRuleSetCache}。
+ */
+public final class CompiledRuleSet {
+
+    private final long version;
+    /**
+     * 规则（原顺序），下标即规则下标。
+     */
+    private final List<Rule> rules;
+    /**
+     * 规则下标 -> 与之互斥的规则位图（规则下标），对称。
+     */
+    private final long[][] exclusiveMasks;
+    /**
+     * 按 priority 排序后的规则下标。
+     */
+    private final int[] priorityOrder;
+    /**
+     * 按阶段 -> priority 排序后的规则下标。
+     */
+    private final int[] stageOrder;
+
+    private CompiledRuleSet(long version, List<Rule> rules, long[][] exclusiveMasks,
+                            int[] priorityOrder, int[] stageOrder) {
+        this.version = version;
+        this.rules = rules;
+        this.exclusiveMasks = exclusiveMasks;
+        this.priorityOrder = priorityOrder;
+        this.stageOrder = stageOrder;
+    }
+
+    /**
+     * 编译一次性使用的规则集（版本号为 0）
+     */
+    public static CompiledRuleSet compile(List<Rule> rules) {
+        return compile(0L, rules);
+    }
+
+    public static CompiledRuleSet compile(long version, List<Rule> rules) {
+        List<Rule> all = Collections.unmodifiableList(new ArrayList<>(rules));
+        int n = all.size();
+        int words = (n + 63) >>> 6;
+
+        // ID 驻留：同 ID 的规则共用一个整数，与 isExclusiveWith 按 ID 判断的口径一致
+        Map<String, Integer> interned = new HashMap<>();
+        List<List<Integer>> rulesById = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            Integer id = interned.get(all.get(i).getId());
+            if (id == null) {
+                id = interned.size();
+                interned.put(all.get(i).getId(), id);
+                rulesById.add(new ArrayList<>());
+            }
+            rulesById.get(id).add(i);
+        }
+
+        // a 的互斥 ID 集合里有 b 的 ID，或反之，即互斥：从 a 的集合出发同时置 (a, b) 与 (b, a) 两位
+        long[][] exclusiveMasks = new long[n][words];
+        for (int a = 0; a < n; a++) {
+            Set<String> exclusiveIds = all.get(a).getExclusiveRuleIds();
+            if (exclusiveIds == null) {
+                continue;
+            }
+            for (String exclusiveId : exclusiveIds) {
+                Integer id = interned.get(exclusiveId);
+                if (id == null) {
+                    continue;
+                }
+                for (int b : rulesById.get(id)) {
+                    exclusiveMasks[a][b >>> 6] |= 1L << b;
+                    exclusiveMasks[b][a >>> 6] |= 1L << a;
+                }
+            }
+        }
+
+        Integer[] byPriority = new Integer[n];
+        Integer[] byStage = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            byPriority[i] = i;
+            byStage[i] = i;
+        }
+        Arrays.sort(byPriority, Comparator.comparingInt((Integer i) -> all.get(i).getPriority()));
+        Arrays.sort(byStage, Comparator
+                .comparingInt((Integer i) -> stageOf(all.get(i).getType()))
+                .thenComparingInt(i -> all.get(i).getPriority()));
+
+        return new CompiledRuleSet(version, all, exclusiveMasks, unbox(byPriority), unbox(byStage));
+    }
+
+    /**
+     * 规则执行阶段：折扣先于满减/直减。
+     */
+    static int stageOf(RuleType type) {
+        if (type == RuleType.DISCOUNT) {
+            return 0;
+        }
+        return 1;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * 全部规则（原顺序）。
+     */
+    public List<Rule> getRules() {
+        return rules;
+    }
+
+    public Rule getRule(int index) {
+        return rules.get(index);
+    }
+
+    public int size() {
+        return rules.size();
+    }
+
+    /**
+     * 两条规则（规则下标）是否互斥，与 {@link Rule#isExclusiveWith} 结果一致。
+     */
+    public boolean isExclusive(int a, int b) {
+        return (exclusiveMasks[a][b >>> 6] & (1L << b)) != 0;
+    }
+
+    /**
+     * 按 priority 排序后的规则下标（只读，调用方不得修改）。
+     */
+    int[] priorityOrder() {
+        return priorityOrder;
+    }
+
+    /**
+     * 按阶段 -> priority 排序后的规则下标（只读，调用方不得修改）。
+     */
+    int[] stageOrder() {
+        return stageOrder;
+    }
+
+    private static int[] unbox(Integer[] boxed) {
+        int[] out = new int[boxed.length];
+        for (int i = 0; i < boxed.length; i++) {
+            out[i] = boxed[i];
+        }
+        return out;
+    }
+}
@@ -0,0 +1,51 @@
+package com.bruce.promotiondemo.engine;
+
+import com.bruce.promotiondemo.model.Rule;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 按规则版本缓存 {@link CompiledRuleSet}：同一版本只编译一次，读请求无锁拿到编译结果。
+ *
+ * 只保留最新版本；规则变更时换一个更大的版本号即可，旧版本的请求仍能拿到正确（临时编译）的结果，但不会覆盖新版本。
+ */
+public class CompiledRuleSetCache {
+
+    private final AtomicReference<CompiledRuleSet> current = new AtomicReference<>();
+
+    /**
+     * 取该版本的编译结果，未缓存时用 rules 编译
+     *
+     * @param version 规则版本（同一版本的规则内容必须相同）
+     * @param rules   该版本的规则
+     */
+    public CompiledRuleSet get(long version, List<Rule> rules) {
+        CompiledRuleSet cached = current.get();
+        if (cached != null && cached.getVersion() == version) {
+            return cached;
+        }
+        CompiledRuleSet compiled = CompiledRuleSet.compile(version, rules);
+        while (true) {
+            CompiledRuleSet prev = current.get();
+            if (prev != null && prev.getVersion() >= version) {
+                // 并发下别的线程已放入同版本或更新版本
+                return prev.getVersion() == version ? prev : compiled;
+            }
+            if (current.compareAndSet(prev, compiled)) {
+                return compiled;
+            }
+        }
+    }
+
+    /**
+     * 当前缓存的编译结果，没有时返回 null
+     */
+    public CompiledRuleSet current() {
+        return current.get();
+    }
+
+    public void invalidate() {
+        current.set(null);
+    }
+}
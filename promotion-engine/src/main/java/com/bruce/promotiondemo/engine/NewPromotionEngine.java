@@ -0,0 +1,854 @@
+package com.bruce.promotiondemo.engine;
+
+import com.bruce.promotiondemo.model.*;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+
+/**
+ * 新架构促销引擎
+ * 特点：
+ * 1. 固定垂直叠加模式
+ * 2. 先过滤出所有能命中的规则
+ * 3. 在所有合法组合（排除互斥）中搜索 totalDiscount 最大的组合
+ * 4. 只为最优组合从原始 Cart 重建结果
+ *
+ * 搜索是流式的（不预先生成组合列表，也不为每个组合拷贝购物车），见 {@link CombinationSearch}。
+ */
+public class NewPromotionEngine implements PromotionEngine {
+
+    @Override
+    public String getName() {
+        return "新架构(穷举最优)";
+    }
+
+    @Override
+    public Cart calculate(Cart cart, List<Rule> rules) {
+        return calculate(cart, CompiledRuleSet.compile(rules));
+    }
+
+    @Override
+    public Cart calculate(Cart cart, CompiledRuleSet ruleSet) {
+        BigDecimal originalPrice = cart.getTotalPrice();
+
+        // 1. 过滤出基于原价能命中的规则
+        int[] matched = matchRules(ruleSet, originalPrice);
+
+        if (matched.length == 0) {
+            return cart.copy();
+        }
+
+        // 2. 搜索最优的合法组合（排除互斥）
+        List<Rule> bestCombination = new CombinationSearch(ruleSet, matched, originalPrice).run();
+
+        // 3. 只为最优组合拷贝购物车、生成明细
+        return bestCombination != null ? calculateCombination(cart, bestCombination) : cart.copy();
+    }
+
+    /**
+     * 总优惠最大的前 limit 个不同结果（按应付金额去重，同额取原枚举次序最靠前的组合），优惠从大到小；
+     * 不使用任何促销（原价）也算一个结果。不限时的第一个结果与 {@link #calculate(Cart, CompiledRuleSet)} 一致。
+     *
+     * 限时时前一半预算给前 k 个结果的搜索；超时则停在已找到的结果，用剩余预算单独补算最优组合并入（保证最优结果在列）；
+     * 补算也超时就并入贪心组合。整个调用不会超出截止时间太多（每 1024 个搜索节点检查一次）。
+     *
+     * @param limit         最多返回的结果数（>= 1）
+     * @param deadlineNanos 截止时间（System.nanoTime），0 表示不限时
+     */
+    public List<Cart> calculateTopOutcomes(Cart cart, CompiledRuleSet ruleSet, int limit, long deadlineNanos) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+        BigDecimal originalPrice = cart.getTotalPrice();
+        int[] matched = matchRules(ruleSet, originalPrice);
+        if (matched.length == 0) {
+            return Collections.singletonList(cart.copy());
+        }
+
+        long topDeadline = deadlineNanos;
+        if (deadlineNanos != 0) {
+            long now = System.nanoTime();
+            topDeadline = now + Math.max(0L, deadlineNanos - now) / 2;
+        }
+        CombinationSearch search = new CombinationSearch(ruleSet, matched, originalPrice).deadline(topDeadline);
+        List<List<Rule>> combinations = search.top(limit);
+        if (search.isTimedOut()) {
+            CombinationSearch fallback = new CombinationSearch(ruleSet, matched, originalPrice).deadline(deadlineNanos);
+            List<Rule> best = fallback.run();
+            if (fallback.isTimedOut()) {
+                best = fallback.greedy(null);
+            }
+            combinations = mergeBest(combinations, best == null ? Collections.emptyList() : best, cart, limit);
+        }
+
+        List<Cart> outcomes = new ArrayList<>(combinations.size());
+        for (List<Rule> combination : combinations) {
+            outcomes.add(calculateCombination(cart, combination));
+        }
+        return outcomes;
+    }
+
+    /**
+     * 超时后把补算的组合按应付金额插入已找到的结果（已找到的按优惠从大到小，即应付从小到大）：
+     * 同额时替换（已找到的同额组合未必是枚举次序最靠前的），超出 limit 截断。补算出最优时它总在最前面。
+     */
+    private static List<List<Rule>> mergeBest(List<List<Rule>> found, List<Rule> best, Cart cart, int limit) {
+        BigDecimal bestPrice = calculateCombination(cart, best).getPayPrice();
+        List<List<Rule>> merged = new ArrayList<>(found.size() + 1);
+        boolean placed = false;
+        for (List<Rule> combination : found) {
+            int cmp = calculateCombination(cart, combination).getPayPrice().compareTo(bestPrice);
+            if (!placed && cmp >= 0) {
+                merged.add(best);
+                placed = true;
+            }
+            if (cmp != 0) {
+                merged.add(combination);
+            }
+        }
+        if (!placed) {
+            merged.add(best);
+        }
+        return merged.size() > limit ? merged.subList(0, limit) : merged;
+    }
+
+    /**
+     * 基于原价能命中的规则下标，按 priority 顺序（即组合的枚举顺序）
+     */
+    static int[] matchRules(CompiledRuleSet ruleSet, BigDecimal originalPrice) {
+        int[] matched = new int[ruleSet.size()];
+        int matchedCount = 0;
+        for (int index : ruleSet.priorityOrder()) {
+            if (checkRuleCondition(ruleSet.getRule(index), originalPrice)) {
+                matched[matchedCount++] = index;
+            }
+        }
+        return Arrays.copyOf(matched, matchedCount);
+    }
+
+    /**
+     * 检查规则条件是否满足（基于原价）
+     */
+    private static boolean checkRuleCondition(Rule rule, BigDecimal price) {
+        if (rule.getType() == RuleType.THRESHOLD_AMOUNT_OFF) {
+            return price.compareTo(rule.getThreshold()) >= 0;
+        }
+        return true;
+    }
+
+    /**
+     * 计算单个组合的结果
+     * 【关键】每个组合从原始购物车开始，独立计算
+     */
+    static Cart calculateCombination(Cart originalCart, List<Rule> combination) {
+        Cart result = originalCart.copy();
+        BigDecimal currentPrice = result.getTotalPrice();
+
+        // 新架构在计算组合时使用“阶段化执行”以贴近真实促销链路：
+        // 1) 先执行折扣类（DISCOUNT）
+        // 2) 再执行满减/直减类（AMOUNT_OFF / THRESHOLD_AMOUNT_OFF）
+        // 同一阶段内仍按 priority 排序（垂直叠加）。
+        // 搜索返回的组合已按该顺序排列（CompiledRuleSet 编译时排好），这里直接执行。
+        for (Rule rule : combination) {
+            // 垂直叠加：基于当前价格检查条件
+            if (!checkRuleConditionForCurrent(rule, currentPrice)) {
+                continue;
+            }
+
+            // 计算优惠
+            BigDecimal reduction = calculateReduction(rule, currentPrice);
+            if (reduction.compareTo(BigDecimal.ZERO) <= 0) {
+                continue;
+            }
+
+            BigDecimal newPrice = currentPrice.subtract(reduction);
+
+            ReductionDetail detail = ReductionDetail.builder()
+                    .ruleId(rule.getId())
+                    .ruleName(rule.getName())
+                    .basePrice(currentPrice)
+                    .reduction(reduction)
+                    .calculatedPrice(newPrice)
+                    .valid(true)
+                    .build();
+
+            result.getReductionDetails().add(detail);
+            result.getAppliedRules().add(rule);
+            currentPrice = newPrice;
+        }
+
+        return result;
+    }
+
+    /**
+     * 检查规则条件（基于当前价格）
+     */
+    private static boolean checkRuleConditionForCurrent(Rule rule, BigDecimal currentPrice) {
+        if (rule.getType() == RuleType.THRESHOLD_AMOUNT_OFF) {
+            return currentPrice.compareTo(rule.getThreshold()) >= 0;
+        }
+        return true;
+    }
+
+    /**
+     * 计算优惠金额
+     */
+    private static BigDecimal calculateReduction(Rule rule, BigDecimal basePrice) {
+        switch (rule.getType()) {
+            case DISCOUNT:
+                // 折扣：原价 * (1 - 折扣率)
+                BigDecimal discountRate = BigDecimal.ONE.subtract(rule.getDiscount());
+                return basePrice.multiply(discountRate).setScale(2, RoundingMode.HALF_UP);
+
+            case AMOUNT_OFF:
+            case THRESHOLD_AMOUNT_OFF:
+                // 直减/满减：直接减去优惠金额
+                return rule.getDiscount().setScale(2, RoundingMode.HALF_UP);
+
+            default:
+                return BigDecimal.ZERO;
+        }
+    }
+
+    /**
+     * 最优组合搜索：按执行顺序（阶段 -> priority）逐条决定“选/不选”的 DFS。
+     *
+     * 和“先生成全部组合、再逐个从原始购物车重算”相比：
+     * 1. 同一前缀的计算结果沿 DFS 路径共享，每个节点只算一次当前规则的减免（不拷贝购物车、不排序）
+     * 2. 互斥关系预先算成位图，选规则时与已选/被互斥位图求交即可
+     * 3. 上界剪枝：当前优惠 + 剩余规则的最大可能减免 < 已知最优，整棵子树跳过
+     * 4. 选了也不会生效的规则（条件不满足/减免 ≤ 0）不走“选”分支：去掉它结果不变、约束更少、枚举次序更靠前
+     * 5. 前缀状态记忆化（规则多且有同额直减/满减时启用）：前缀执行完后，后续结果只取决于
+     *    （下一条规则位置, 当前价格, 后续被互斥掉的规则）；同额规则的不同选法会走到同一状态，直接复用该状态的最优后缀
+     *
+     * 结果与原先的全量枚举完全一致：优惠严格更大者胜；同额时取原枚举次序（按 priority 排序后，
+     * 规则 0 为最高位的“不选在前”字典序）最靠前的组合。
+     *
+     * 记忆化与剪枝可以同时使用：同一状态的前缀优惠相同（优惠 = 原价 - 当前价格），被剪掉的分支一定低于
+     * 当时的已知最优，而已知最优只增不减；所以缓存的后缀要么是精确最优，要么整条路径不可能胜出。
+     *
+     * {@link AdaptivePromotionEngine} 还会用到：关闭剪枝的全量枚举、截止时间、按执行顺序的贪心组合；
+     * 促销 + 券联合优化用到前 k 个不同结果（{@link #top(int)}）。
+     */
+    static final class CombinationSearch {
+
+        /**
+         * 每搜索这么多个节点检查一次截止时间。
+         */
+        private static final int DEADLINE_CHECK_NODES = 1024;
+
+        /**
+         * HALF_UP 保留两位小数的最大舍入误差。
+         */
+        private static final BigDecimal HALF_CENT = new BigDecimal("0.005");
+
+        /**
+         * 启用记忆化的最少规则数：规则少时搜索本身很快，建键/存表的开销得不偿失。
+         */
+        private static final int MEMO_MIN_RULES = 24;
+
+        /**
+         * 记忆化表的容量上限，满了之后只查不存。
+         */
+        private static final int MAX_MEMO_ENTRIES = 1 << 18;
+
+        /**
+         * 记忆化的试探窗口：查询这么多次后命中率仍低于 MEMO_MIN_HIT_PERCENT，说明各前缀很少走到同一状态，放弃记忆化改走逐条搜索。
+         */
+        private static final int MEMO_PROBE_LOOKUPS = 1024;
+
+        /**
+         * 试探窗口内的最低命中率（百分比）。
+         */
+        private static final int MEMO_MIN_HIT_PERCENT = 10;
+
+        private final int n;
+        private final int words;
+        /**
+         * 按执行顺序排列的规则。
+         */
+        private final Rule[] rules;
+        /**
+         * 执行顺序下标 -> 原枚举顺序（matchedRules）下标。
+         */
+        private final int[] enumIndex;
+        /**
+         * 原枚举顺序下标 -> 执行顺序下标。
+         */
+        private final int[] positionByEnumIndex;
+        /**
+         * 执行顺序下标 -> 与之互斥的规则位图（执行顺序下标）。
+         */
+        private final long[][] exclusiveMasks;
+        private final BigDecimal originalPrice;
+        /**
+         * 搜索中所有价格的公共精度：减免都保留两位小数，价格精度恒为 max(原价精度, 2)。
+         */
+        private final int priceScale;
+        /**
+         * fixedSuffix[k]：第 k 条及之后直减/满减规则的正减免之和。
+         */
+        private final BigDecimal[] fixedSuffix;
+        /**
+         * rateSuffix[k]：第 k 条及之后折扣规则的 (1 - 折扣率) 之和；discountSuffix[k] 为条数。
+         */
+        private final BigDecimal[] rateSuffix;
+        private final int[] discountSuffix;
+        /**
+         * 存在折扣率 > 1（或缺失）的规则时上界不成立，关闭剪枝。
+         */
+        private final boolean boundable;
+        /**
+         * 已找到的最大总优惠（某个真实组合的优惠）。
+         */
+        private BigDecimal bestDiscount = BigDecimal.ZERO;
+        private boolean pruning = true;
+        /**
+         * 截止时间（System.nanoTime），0 表示不限时。
+         */
+        private long deadlineNanos;
+        private int nodes;
+        private boolean timedOut;
+
+        // ---- 逐条搜索（不记忆化）----
+        private final long[] chosenMask;
+        /**
+         * 按原枚举顺序记录的已选状态（同额比较枚举次序用）。
+         */
+        private final boolean[] chosen;
+        private boolean[] bestChosen;
+
+        // ---- 记忆化搜索 ----
+        private boolean memoEnabled;
+        private final Map<PrefixState, Suffix> memo = new HashMap<>();
+        private int memoLookups;
+        private int memoHits;
+        private boolean memoAbandoned;
+        private final Suffix emptySuffix;
+
+        /**
+         * @param matched 命中的规则下标，按 priority 顺序（原枚举顺序）
+         */
+        CombinationSearch(CompiledRuleSet ruleSet, int[] matched, BigDecimal originalPrice) {
+            this.n = matched.length;
+            this.words = (n + 63) >>> 6;
+            this.originalPrice = originalPrice;
+            this.priceScale = Math.max(originalPrice.scale(), 2);
+
+            int[] enumIndexByRule = new int[ruleSet.size()];
+            Arrays.fill(enumIndexByRule, -1);
+            for (int i = 0; i < n; i++) {
+                enumIndexByRule[matched[i]] = i;
+            }
+            // 执行顺序取编译好的“阶段 -> priority”稳定顺序，与 calculateCombination 的执行顺序一致
+            int[] ruleIndex = new int[n];
+            this.rules = new Rule[n];
+            this.enumIndex = new int[n];
+            this.positionByEnumIndex = new int[n];
+            int position = 0;
+            for (int index : ruleSet.stageOrder()) {
+                int e = enumIndexByRule[index];
+                if (e < 0) {
+                    continue;
+                }
+                ruleIndex[position] = index;
+                enumIndex[position] = e;
+                positionByEnumIndex[e] = position;
+                rules[position] = ruleSet.getRule(index);
+                position++;
+            }
+
+            this.exclusiveMasks = new long[n][words];
+            for (int a = 0; a < n; a++) {
+                for (int b = a + 1; b < n; b++) {
+                    if (ruleSet.isExclusive(ruleIndex[a], ruleIndex[b])) {
+                        exclusiveMasks[a][b >>> 6] |= 1L << b;
+                        exclusiveMasks[b][a >>> 6] |= 1L << a;
+                    }
+                }
+            }
+
+            this.fixedSuffix = new BigDecimal[n + 1];
+            this.rateSuffix = new BigDecimal[n + 1];
+            this.discountSuffix = new int[n + 1];
+            fixedSuffix[n] = BigDecimal.ZERO;
+            rateSuffix[n] = BigDecimal.ZERO;
+            boolean bounded = true;
+            boolean sameFixedReduction = false;
+            Set<BigDecimal> fixedReductions = new HashSet<>();
+            for (int k = n - 1; k >= 0; k--) {
+                Rule rule = rules[k];
+                fixedSuffix[k] = fixedSuffix[k + 1];
+                rateSuffix[k] = rateSuffix[k + 1];
+                discountSuffix[k] = discountSuffix[k + 1];
+                if (rule.getType() == RuleType.DISCOUNT) {
+                    if (rule.getDiscount() == null || rule.getDiscount().compareTo(BigDecimal.ONE) > 0) {
+                        bounded = false;
+                        continue;
+                    }
+                    rateSuffix[k] = rateSuffix[k].add(BigDecimal.ONE.subtract(rule.getDiscount()));
+                    discountSuffix[k]++;
+                } else if (rule.getDiscount() != null) {
+                    BigDecimal reduction = rule.getDiscount().setScale(2, RoundingMode.HALF_UP);
+                    if (reduction.signum() > 0) {
+                        fixedSuffix[k] = fixedSuffix[k].add(reduction);
+                        sameFixedReduction |= !fixedReductions.add(reduction);
+                    }
+                }
+            }
+            this.boundable = bounded;
+
+            // 不同前缀只有在减免之和相同时才会走到同一状态，同额直减/满减是最常见的来源
+            this.memoEnabled = n >= MEMO_MIN_RULES && sameFixedReduction;
+            this.chosenMask = new long[words];
+            this.chosen = new boolean[n];
+            this.emptySuffix = new Suffix(BigDecimal.ZERO, new long[words]);
+        }
+
+        /**
+         * 关闭上界剪枝与记忆化：组合很少时逐个枚举反而更省（不用每个节点算上界）。
+         */
+        CombinationSearch withoutPruning() {
+            this.pruning = false;
+            this.memoEnabled = false;
+            return this;
+        }
+
+        /**
+         * 只关闭记忆化、保留上界剪枝：与记忆化搜索对照结果用。
+         */
+        CombinationSearch withoutMemo() {
+            this.memoEnabled = false;
+            return this;
+        }
+
+        /**
+         * 超过截止时间（System.nanoTime）后放弃搜索，{@link #run()} 返回 null 且 {@link #isTimedOut()} 为 true。
+         */
+        CombinationSearch deadline(long deadlineNanos) {
+            this.deadlineNanos = deadlineNanos;
+            return this;
+        }
+
+        boolean isTimedOut() {
+            return timedOut;
+        }
+
+        /**
+         * 已展开的搜索节点数（剪掉的子树不计）。
+         */
+        int getNodes() {
+            return nodes;
+        }
+
+        /**
+         * 记忆化表的命中次数，未启用记忆化时为 0。
+         */
+        int getMemoHits() {
+            return memoHits;
+        }
+
+        /**
+         * 是否在试探窗口后因命中率太低放弃了记忆化、改走逐条搜索。
+         */
+        boolean isMemoAbandoned() {
+            return memoAbandoned;
+        }
+
+        /**
+         * {@link #run()} 找到的最优总优惠，没有正优惠组合时为 0。
+         */
+        BigDecimal getBestDiscount() {
+            return bestDiscount;
+        }
+
+        /**
+         * @return 最优组合（按执行顺序），没有任何组合能产生正优惠或超时时返回 null
+         */
+        List<Rule> run() {
+            long[] bestMask;
+            Suffix best = memoEnabled ? solve(0, originalPrice, new long[words]) : null;
+            if (timedOut) {
+                return null;
+            }
+            if (best != null) {
+                if (best.reduction.signum() <= 0) {
+                    return null;
+                }
+                bestMask = best.chosen;
+            } else {
+                // 未启用或试探后放弃记忆化：逐条搜索；已记下的最优优惠来自真实组合，可以直接用于剪枝
+                search(0, originalPrice);
+                if (timedOut || bestChosen == null) {
+                    return null;
+                }
+                bestMask = new long[words];
+                for (int k = 0; k < n; k++) {
+                    if (bestChosen[enumIndex[k]]) {
+                        bestMask[k >>> 6] |= 1L << k;
+                    }
+                }
+            }
+            List<Rule> combination = new ArrayList<>();
+            for (int k = 0; k < n; k++) {
+                if ((bestMask[k >>> 6] & (1L << k)) != 0) {
+                    combination.add(rules[k]);
+                }
+            }
+            return combination;
+        }
+
+        /**
+         * 贪心组合：按执行顺序逐条，不与已选互斥且能生效就选，O(n)。
+         *
+         * @param discountHolder 非空时写入该组合的总优惠
+         * @return 贪心组合（按执行顺序），可能为空
+         */
+        List<Rule> greedy(BigDecimal[] discountHolder) {
+            long[] taken = new long[words];
+            BigDecimal currentPrice = originalPrice;
+            List<Rule> combination = new ArrayList<>();
+            for (int k = 0; k < n; k++) {
+                Rule rule = rules[k];
+                if (intersects(exclusiveMasks[k], taken) || !checkRuleConditionForCurrent(rule, currentPrice)) {
+                    continue;
+                }
+                BigDecimal reduction = calculateReduction(rule, currentPrice);
+                if (reduction.signum() > 0) {
+                    taken[k >>> 6] |= 1L << k;
+                    currentPrice = currentPrice.subtract(reduction);
+                    combination.add(rule);
+                }
+            }
+            if (discountHolder != null) {
+                discountHolder[0] = originalPrice.subtract(currentPrice);
+            }
+            return combination;
+        }
+
+        /**
+         * 总优惠最大的前 limit 个不同总优惠（同额取原枚举次序最靠前的组合），含空组合（优惠 0）。
+         * 集合满了以后以第 limit 大的优惠做上界剪枝。超时则返回已找到的结果，{@link #isTimedOut()} 为 true。
+         *
+         * @return 各组合按执行顺序，组合之间按优惠从大到小
+         */
+        List<List<Rule>> top(int limit) {
+            // 优惠 -> 该优惠下枚举次序最靠前的组合（原枚举顺序的已选状态）；空组合总是最先枚举
+            TreeMap<BigDecimal, boolean[]> outcomes = new TreeMap<>();
+            outcomes.put(BigDecimal.ZERO, new boolean[n]);
+            searchTop(0, originalPrice, outcomes, limit);
+
+            List<List<Rule>> combinations = new ArrayList<>(outcomes.size());
+            for (boolean[] selected : outcomes.descendingMap().values()) {
+                List<Rule> combination = new ArrayList<>();
+                for (int k = 0; k < n; k++) {
+                    if (selected[enumIndex[k]]) {
+                        combination.add(rules[k]);
+                    }
+                }
+                combinations.add(combination);
+            }
+            return combinations;
+        }
+
+        private void searchTop(int k, BigDecimal currentPrice, TreeMap<BigDecimal, boolean[]> outcomes, int limit) {
+            if (overDeadline()) {
+                return;
+            }
+            BigDecimal discount = originalPrice.subtract(currentPrice);
+            if (k == n) {
+                if (discount.signum() <= 0) {
+                    return;
+                }
+                boolean[] existing = outcomes.get(discount);
+                if (existing != null) {
+                    if (enumeratedBefore(chosen, existing)) {
+                        outcomes.put(discount, chosen.clone());
+                    }
+                } else if (outcomes.size() < limit) {
+                    outcomes.put(discount, chosen.clone());
+                } else if (discount.compareTo(outcomes.firstKey()) > 0) {
+                    outcomes.pollFirstEntry();
+                    outcomes.put(discount, chosen.clone());
+                }
+                return;
+            }
+            if (outcomes.size() >= limit) {
+                BigDecimal upper = upperBound(k, currentPrice);
+                if (upper != null && upper.compareTo(outcomes.firstKey()) < 0) {
+                    return;
+                }
+            }
+
+            Rule rule = rules[k];
+            if (!intersects(exclusiveMasks[k], chosenMask) && checkRuleConditionForCurrent(rule, currentPrice)) {
+                BigDecimal reduction = calculateReduction(rule, currentPrice);
+                if (reduction.signum() > 0) {
+                    chosenMask[k >>> 6] |= 1L << k;
+                    chosen[enumIndex[k]] = true;
+                    searchTop(k + 1, currentPrice.subtract(reduction), outcomes, limit);
+                    chosen[enumIndex[k]] = false;
+                    chosenMask[k >>> 6] &= ~(1L << k);
+                }
+            }
+            searchTop(k + 1, currentPrice, outcomes, limit);
+        }
+
+        /**
+         * 计数并按需检查截止时间，超时后置 timedOut。
+         */
+        private boolean overDeadline() {
+            if (timedOut) {
+                return true;
+            }
+            nodes++;
+            if (deadlineNanos != 0 && (nodes & (DEADLINE_CHECK_NODES - 1)) == 0 && System.nanoTime() - deadlineNanos > 0) {
+                timedOut = true;
+            }
+            return timedOut;
+        }
+
+        /**
+         * 逐条搜索：沿路径携带当前价格，叶子处与已知最优比较。
+         */
+        private void search(int k, BigDecimal currentPrice) {
+            if (overDeadline()) {
+                return;
+            }
+            BigDecimal discount = originalPrice.subtract(currentPrice);
+            if (k == n) {
+                int cmp = discount.compareTo(bestDiscount);
+                if (discount.signum() > 0 && (cmp > 0 || (cmp == 0 && (bestChosen == null || enumeratedBefore(chosen, bestChosen))))) {
+                    bestDiscount = discount;
+                    bestChosen = chosen.clone();
+                }
+                return;
+            }
+            if (pruned(k, currentPrice)) {
+                return;
+            }
+
+            Rule rule = rules[k];
+            if (!intersects(exclusiveMasks[k], chosenMask) && checkRuleConditionForCurrent(rule, currentPrice)) {
+                BigDecimal reduction = calculateReduction(rule, currentPrice);
+                if (reduction.signum() > 0) {
+                    chosenMask[k >>> 6] |= 1L << k;
+                    chosen[enumIndex[k]] = true;
+                    search(k + 1, currentPrice.subtract(reduction));
+                    chosen[enumIndex[k]] = false;
+                    chosenMask[k >>> 6] &= ~(1L << k);
+                }
+            }
+            search(k + 1, currentPrice);
+        }
+
+        /**
+         * 记忆化搜索：从第 k 条规则、当前价格、已被互斥掉的规则出发，后续规则的最优选择。
+         */
+        private Suffix solve(int k, BigDecimal currentPrice, long[] blocked) {
+            if (k == n) {
+                return emptySuffix;
+            }
+            if (overDeadline()) {
+                return null;
+            }
+            PrefixState state = null;
+            if (memoEnabled) {
+                state = new PrefixState(k, currentPrice.setScale(priceScale), blocked);
+                Suffix cached = memo.get(state);
+                if (cached != null) {
+                    memoHits++;
+                    return cached;
+                }
+                if (++memoLookups == MEMO_PROBE_LOOKUPS && memoHits * 100 < memoLookups * MEMO_MIN_HIT_PERCENT) {
+                    // 放弃记忆化，返回 null 逐层退出，由 run() 改走逐条搜索
+                    memoEnabled = false;
+                    memoAbandoned = true;
+                    memo.clear();
+                    return null;
+                }
+            }
+
+            Suffix best = null;
+            Rule rule = rules[k];
+            if ((blocked[k >>> 6] & (1L << k)) == 0 && checkRuleConditionForCurrent(rule, currentPrice)) {
+                BigDecimal reduction = calculateReduction(rule, currentPrice);
+                if (reduction.signum() > 0) {
+                    BigDecimal nextPrice = currentPrice.subtract(reduction);
+                    if (!pruned(k + 1, nextPrice)) {
+                        long[] nextBlocked = blocked.clone();
+                        for (int w = 0; w < words; w++) {
+                            nextBlocked[w] |= exclusiveMasks[k][w];
+                        }
+                        Suffix rest = solve(k + 1, nextPrice, nextBlocked);
+                        if (rest == null) {
+                            return null;
+                        }
+                        best = rest.prepend(k, reduction);
+                    }
+                }
+            }
+            if (!pruned(k + 1, currentPrice)) {
+                Suffix skip = solve(k + 1, currentPrice, blocked);
+                if (skip == null) {
+                    return null;
+                }
+                if (best == null || better(skip, best, k)) {
+                    best = skip;
+                }
+            }
+            if (best == null) {
+                best = emptySuffix;
+            }
+
+            BigDecimal total = originalPrice.subtract(currentPrice).add(best.reduction);
+            if (total.compareTo(bestDiscount) > 0) {
+                bestDiscount = total;
+            }
+            if (memoEnabled && memo.size() < MAX_MEMO_ENTRIES) {
+                memo.put(state, best);
+            }
+            return best;
+        }
+
+        /**
+         * 以该价格进入第 k 条规则时，能否确定追不上已知最优（同额不剪，同额要比枚举次序）。
+         */
+        private boolean pruned(int k, BigDecimal currentPrice) {
+            BigDecimal upper = upperBound(k, currentPrice);
+            return upper != null && (upper.signum() <= 0 || upper.compareTo(bestDiscount) < 0);
+        }
+
+        /**
+         * 以该价格进入第 k 条规则时总优惠的上界，不能剪枝（关闭剪枝或上界不成立）时返回 null。
+         */
+        private BigDecimal upperBound(int k, BigDecimal currentPrice) {
+            if (!boundable || !pruning) {
+                return null;
+            }
+            return originalPrice.subtract(currentPrice).add(maxRemainingReduction(k, currentPrice));
+        }
+
+        /**
+         * 第 k 条及之后规则的减免上界：直减/满减取面额；折扣的减免随价格单调不增，按当前价格估算再加上舍入误差。
+         */
+        private BigDecimal maxRemainingReduction(int k, BigDecimal currentPrice) {
+            if (discountSuffix[k] == 0 || currentPrice.signum() <= 0) {
+                return fixedSuffix[k];
+            }
+            return fixedSuffix[k]
+                    .add(currentPrice.multiply(rateSuffix[k]))
+                    .add(HALF_CENT.multiply(BigDecimal.valueOf(discountSuffix[k])));
+        }
+
+        /**
+         * 同一前缀下的两个后缀（覆盖第 k 条及之后）：优惠更大者胜，同额时原枚举次序靠前者胜。
+         */
+        private boolean better(Suffix a, Suffix b, int k) {
+            int cmp = a.reduction.compareTo(b.reduction);
+            if (cmp != 0) {
+                return cmp > 0;
+            }
+            for (int i = 0; i < n; i++) {
+                int pos = positionByEnumIndex[i];
+                if (pos < k) {
+                    continue;
+                }
+                long bit = 1L << pos;
+                boolean inA = (a.chosen[pos >>> 6] & bit) != 0;
+                boolean inB = (b.chosen[pos >>> 6] & bit) != 0;
+                if (inA != inB) {
+                    return !inA;
+                }
+            }
+            return false;
+        }
+
+        private static boolean intersects(long[] a, long[] b) {
+            for (int w = 0; w < a.length; w++) {
+                if ((a[w] & b[w]) != 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * a 在原枚举中是否排在 b 之前（“不选”分支先枚举，规则 0 为最高位）。
+         */
+        private static boolean enumeratedBefore(boolean[] a, boolean[] b) {
+            for (int i = 0; i < a.length; i++) {
+                if (a[i] != b[i]) {
+                    return !a[i];
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 前缀执行完后的状态：下一条规则位置 + 当前价格 + 后续规则中已被互斥掉的位图。
+     */
+    private static final class PrefixState {
+        private final int position;
+        private final BigDecimal price;
+        private final long[] blocked;
+        private final int hash;
+
+        /**
+         * @param price 统一精度后的价格（equals 按数值比较才与 compareTo 口径一致）
+         */
+        PrefixState(int position, BigDecimal price, long[] blocked) {
+            this.position = position;
+            this.price = price;
+            // 只保留第 position 条及之后的位（之前的规则已决定，不影响后续）
+            this.blocked = blocked.clone();
+            int word = position >>> 6;
+            for (int w = 0; w < word; w++) {
+                this.blocked[w] = 0L;
+            }
+            this.blocked[word] &= -1L << position;
+            this.hash = 31 * (31 * position + this.price.hashCode()) + Arrays.hashCode(this.blocked);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof PrefixState)) {
+                return false;
+            }
+            PrefixState other = (PrefixState) o;
+            return position == other.position
+                    && hash == other.hash
+                    && price.equals(other.price)
+                    && Arrays.equals(blocked, other.blocked);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * 某个状态下后续规则的最优选择：后续总减免 + 选中位图（执行顺序下标）。不可变，可被多个前缀共享。
+     */
+    private static final class Suffix {
+        private final BigDecimal reduction;
+        private final long[] chosen;
+
+        private Suffix(BigDecimal reduction, long[] chosen) {
+            this.reduction = reduction;
+            this.chosen = chosen;
+        }
+
+        Suffix prepend(int position, BigDecimal positionReduction) {
+            long[] withPosition = chosen.clone();
+            withPosition[position >>> 6] |= 1L << position;
+            return new Suffix(reduction.add(positionReduction), withPosition);
+        }
+    }
+}
@@ -5,7 +5,6 @@ import com.bruce.promotiondemo.model.*;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * 旧架构促销引擎
@@ -35,17 +34,23 @@ public class OldPromotionEngine implements PromotionEngine {
 
     @Override
     public Cart calculate(Cart cart, List<Rule> rules) {
-        Cart result = cart.copy();
+        return calculate(cart, CompiledRuleSet.compile(rules));
+    }
 
-        // 按优先级排序
-        List<Rule> sortedRules = rules.stream()
-                .sorted(Comparator.comparingInt(Rule::getPriority))
-                .collect(Collectors.toList());
+    @Override
+    public Cart calculate(Cart cart, CompiledRuleSet ruleSet) {
+        Cart result = cart.copy();
 
         BigDecimal originalPrice = result.getTotalPrice();
         BigDecimal currentPrice = originalPrice;
 
-        for (Rule rule : sortedRules) {
+        // 已应用规则的规则下标，与 result.getAppliedRules() 一一对应
+        int[] appliedIndexes = new int[ruleSet.size()];
+        int appliedCount = 0;
+
+        // 按优先级顺序执行（编译时已排好）
+        for (int index : ruleSet.priorityOrder()) {
+            Rule rule = ruleSet.getRule(index);
             // 计算基准价：水平叠加用原价，垂直叠加用当前价
             BigDecimal basePrice = parallelCalculate ? originalPrice : currentPrice;
 
@@ -61,7 +66,7 @@ public class OldPromotionEngine implements PromotionEngine {
             }
 
             // 检查互斥规则，决定是否回滚
-            RollbackResult rollbackResult = handleExclusiveRules(result, rule, reduction, originalPrice);
+            RollbackResult rollbackResult = handleExclusiveRules(result, ruleSet, index, appliedIndexes, appliedCount, reduction);
             if (!rollbackResult.shouldApply) {
                 continue;
             }
@@ -88,6 +93,7 @@ public class OldPromotionEngine implements PromotionEngine {
 
             result.getReductionDetails().add(detail);
             result.getAppliedRules().add(rule);
+            appliedIndexes[appliedCount++] = index;
             currentPrice = newPrice;
         }
 
@@ -143,14 +149,17 @@ public class OldPromotionEngine implements PromotionEngine {
      *
      * @return 回滚结果，包含是否应用和回滚的优惠金额
      */
-    private RollbackResult handleExclusiveRules(Cart cart, Rule currentRule, BigDecimal currentReduction, BigDecimal originalPrice) {
+    private RollbackResult handleExclusiveRules(Cart cart, CompiledRuleSet ruleSet, int currentIndex,
+                                                int[] appliedIndexes, int appliedCount, BigDecimal currentReduction) {
         List<ReductionDetail> existingDetails = cart.getReductionDetails();
-        List<Rule> appliedRules = cart.getAppliedRules();
 
-        // 找出与当前规则互斥的已应用规则
-        List<Rule> conflictRules = appliedRules.stream()
-                .filter(r -> currentRule.isExclusiveWith(r))
-                .collect(Collectors.toList());
+        // 找出与当前规则互斥的已应用规则（查编译好的互斥位矩阵）
+        List<Rule> conflictRules = new ArrayList<>();
+        for (int i = 0; i < appliedCount; i++) {
+            if (ruleSet.isExclusive(currentIndex, appliedIndexes[i])) {
+                conflictRules.add(ruleSet.getRule(appliedIndexes[i]));
+            }
+        }
 
         if (conflictRules.isEmpty()) {
             return new RollbackResult(true, BigDecimal.ZERO);
@@ -19,6 +19,17 @@ public interface PromotionEngine {
      */
     Cart calculate(Cart cart, List<Rule> rules);
 
+    /**
+     * 计算促销（规则已预编译，同一规则版本可跨请求复用）
+     *
+     * @param cart    购物车
+     * @param ruleSet 预编译的规则集
+     * @return 计算后的购物车
+     */
+    default Cart calculate(Cart cart, CompiledRuleSet ruleSet) {
+        return calculate(cart, ruleSet.getRules());
+    }
+
     /**
      * 获取引擎名称
      */
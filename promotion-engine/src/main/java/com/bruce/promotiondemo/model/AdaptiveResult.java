@@ -0,0 +1,73 @@
+package com.bruce.promotiondemo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * 自适应引擎的计算结果：购物车 + 本次选择的路径及其依据
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AdaptiveResult {
+
+    /**
+     * 计算后的购物车
+     */
+    private Cart cart;
+
+    /**
+     * 实际走的路径
+     */
+    private SearchPath path;
+
+    /**
+     * 是否因精确搜索超出延迟目标而退回贪心
+     */
+    private boolean timedOut;
+
+    /**
+     * 基于原价命中的规则数
+     */
+    private int matchedRuleCount;
+
+    /**
+     * 按互斥图估算的合法组合数（上界，溢出时为 Long.MAX_VALUE）
+     */
+    private long estimatedCombinations;
+
+    /**
+     * 贪心组合的总优惠
+     */
+    private BigDecimal greedyDiscount;
+
+    /**
+     * 最优组合的总优惠（只有精确路径才有，否则为 null）
+     */
+    private BigDecimal exactDiscount;
+
+    /**
+     * 最优与贪心的优惠差（精确路径才有，否则为 null）
+     */
+    private BigDecimal optimalityGap;
+
+    /**
+     * 精确搜索中前缀记忆化的命中次数（未启用记忆化时为 0）
+     */
+    private int memoHits;
+
+    /**
+     * 精确搜索是否试探后放弃了记忆化（命中率太低，改走逐条搜索）
+     */
+    private boolean memoAbandoned;
+
+    /**
+     * 本次计算耗时（微秒）
+     */
+    private long elapsedMicros;
+}
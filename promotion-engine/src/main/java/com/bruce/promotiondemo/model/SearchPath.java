@@ -0,0 +1,21 @@
+package com.bruce.promotiondemo.model;
+
+/**
+ * 自适应引擎实际走的求解路径
+ */
+public enum SearchPath {
+    /**
+     * 全量枚举（合法组合很少，不做剪枝）
+     */
+    EXHAUSTIVE,
+
+    /**
+     * 精确搜索（上界剪枝 + 前缀记忆化）
+     */
+    PRUNED,
+
+    /**
+     * 贪心（规则太多，或精确搜索超出延迟目标）
+     */
+    GREEDY
+}
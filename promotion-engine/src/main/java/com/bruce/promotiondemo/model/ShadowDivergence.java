@@ -0,0 +1,59 @@
+package com.bruce.promotiondemo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * 影子比对中主引擎与候选引擎结果不一致的一次请求
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ShadowDivergence {
+
+    /**
+     * 比对完成时间（毫秒时间戳）
+     */
+    private long timestamp;
+
+    /**
+     * 规则集版本
+     */
+    private long ruleSetVersion;
+
+    /**
+     * 购物车原价
+     */
+    private BigDecimal originalPrice;
+
+    /**
+     * 主引擎总优惠
+     */
+    private BigDecimal primaryDiscount;
+
+    /**
+     * 候选引擎总优惠
+     */
+    private BigDecimal candidateDiscount;
+
+    /**
+     * 候选 - 主引擎的优惠差（正数表示候选引擎优惠更多）
+     */
+    private BigDecimal divergence;
+
+    /**
+     * 主引擎应用的规则
+     */
+    private List<String> primaryRuleIds;
+
+    /**
+     * 候选引擎应用的规则
+     */
+    private List<String> candidateRuleIds;
+}
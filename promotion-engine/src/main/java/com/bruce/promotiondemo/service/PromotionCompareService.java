@@ -1,5 +1,7 @@
 package com.bruce.promotiondemo.service;
 
+import com.bruce.promotiondemo.engine.AdaptivePromotionEngine;
+import com.bruce.promotiondemo.engine.CompiledRuleSet;
 import com.bruce.promotiondemo.engine.NewPromotionEngine;
 import com.bruce.promotiondemo.engine.OldPromotionEngine;
 import com.bruce.promotiondemo.model.*;
@@ -15,6 +17,19 @@ public class PromotionCompareService {
     private final OldPromotionEngine oldEngineHorizontal = new OldPromotionEngine(true);
     private final OldPromotionEngine oldEngineVertical = new OldPromotionEngine(false);
     private final NewPromotionEngine newEngine = new NewPromotionEngine();
+    private final AdaptivePromotionEngine adaptiveEngine = new AdaptivePromotionEngine();
+    private final ShadowCompare shadowCompare;
+
+    /**
+     * 默认影子比对：旧架构（垂直叠加）服务请求，10% 的请求在后台用新架构复算
+     */
+    public PromotionCompareService() {
+        this(new ShadowCompare(new OldPromotionEngine(false), new NewPromotionEngine(), 0.1D, 1, 256, 32));
+    }
+
+    public PromotionCompareService(ShadowCompare shadowCompare) {
+        this.shadowCompare = shadowCompare;
+    }
 
     /**
      * 对比水平叠加与垂直叠加
@@ -96,6 +111,54 @@ public class PromotionCompareService {
         return response;
     }
 
+    /**
+     * 使用自适应引擎计算：按预估规模选择穷举/剪枝/贪心，并返回所选路径与最优差距
+     */
+    public Map<String, Object> calculateWithAdaptiveEngine(Cart cart, List<Rule> rules) {
+        AdaptiveResult adaptive = adaptiveEngine.calculateWithResult(cart.copy(), CompiledRuleSet.compile(rules));
+
+        Map<String, Object> decision = new LinkedHashMap<>();
+        decision.put("path", adaptive.getPath());
+        decision.put("timedOut", adaptive.isTimedOut());
+        decision.put("matchedRuleCount", adaptive.getMatchedRuleCount());
+        decision.put("estimatedCombinations", adaptive.getEstimatedCombinations());
+        decision.put("greedyDiscount", adaptive.getGreedyDiscount());
+        decision.put("exactDiscount", adaptive.getExactDiscount());
+        decision.put("optimalityGap", adaptive.getOptimalityGap());
+        decision.put("elapsedMicros", adaptive.getElapsedMicros());
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("engine", adaptiveEngine.getName());
+        response.put("originalPrice", cart.getTotalPrice());
+        response.put("result", buildResultMap(adaptive.getCart(), adaptiveEngine.getName()));
+        response.put("decision", decision);
+        response.put("stats", adaptiveEngine.getStats());
+
+        return response;
+    }
+
+    /**
+     * 影子模式计算：主引擎的结果直接返回，采样请求在后台用候选引擎复算并记录差异
+     */
+    public Map<String, Object> calculateWithShadow(Cart cart, List<Rule> rules) {
+        Cart result = shadowCompare.calculate(cart.copy(), CompiledRuleSet.compile(rules));
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("engine", shadowCompare.getPrimary().getName());
+        response.put("shadowEngine", shadowCompare.getCandidate().getName());
+        response.put("originalPrice", cart.getTotalPrice());
+        response.put("result", buildResultMap(result, shadowCompare.getPrimary().getName()));
+
+        return response;
+    }
+
+    /**
+     * 影子比对的计数器、直方图与差异最大的样本
+     */
+    public Map<String, Object> getShadowStats() {
+        return shadowCompare.snapshot();
+    }
+
     private Map<String, Object> buildResultMap(Cart cart, String engineName) {
         Map<String, Object> map = new LinkedHashMap<>();
         map.put("engineName", engineName);
@@ -0,0 +1,280 @@
+package com.bruce.promotiondemo.service;
+
+import com.bruce.promotiondemo.engine.CompiledRuleSet;
+import com.bruce.promotiondemo.engine.PromotionEngine;
+import com.bruce.promotiondemo.model.Cart;
+import com.bruce.promotiondemo.model.ShadowDivergence;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 影子比对：主引擎同步出结果，按采样率把部分请求丢到后台线程池用候选引擎再算一遍，比较总优惠
+ *
+ * 主链路不会等影子链路：
+ * 1. 采样用 ThreadLocalRandom，不抢锁
+ * 2. 线程池队列有界，满了直接丢弃并计数（不阻塞、不由调用线程代跑）
+ * 3. 候选引擎抛异常只计数，不影响主引擎结果
+ *
+ * 比对结果汇总为计数器 + 直方图（优惠差、候选引擎耗时），优惠差最大的若干条保留在定长缓冲区里供排查。
+ */
+public class ShadowCompare {
+
+    /**
+     * 优惠差直方图的桶上界（分）：0、1分、1元、10元、100元，以上归入最后一桶
+     */
+    private static final long[] DIVERGENCE_BOUNDS_CENTS = {0L, 1L, 100L, 1_000L, 10_000L};
+    private static final String[] DIVERGENCE_LABELS = {"0", "<=0.01", "<=1", "<=10", "<=100", ">100"};
+
+    /**
+     * 候选引擎耗时直方图的桶上界（微秒）
+     */
+    private static final long[] LATENCY_BOUNDS_MICROS = {10L, 100L, 1_000L, 10_000L};
+    private static final String[] LATENCY_LABELS = {"<=10us", "<=100us", "<=1ms", "<=10ms", ">10ms"};
+
+    private final PromotionEngine primary;
+    private final PromotionEngine candidate;
+    private final double sampleRate;
+    private final ThreadPoolExecutor executor;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder sampled = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder compared = new LongAdder();
+    private final LongAdder matched = new LongAdder();
+    private final LongAdder candidateBetter = new LongAdder();
+    private final LongAdder candidateWorse = new LongAdder();
+    /**
+     * 优惠相同但应用的规则不同
+     */
+    private final LongAdder sameDiscountDifferentRules = new LongAdder();
+    private final Histogram divergenceHistogram = new Histogram(DIVERGENCE_BOUNDS_CENTS, DIVERGENCE_LABELS);
+    private final Histogram latencyHistogram = new Histogram(LATENCY_BOUNDS_MICROS, LATENCY_LABELS);
+    private final WorstOffenders worstOffenders;
+
+    /**
+     * @param primary       主引擎（结果返回给调用方）
+     * @param candidate     候选引擎（只做比对）
+     * @param sampleRate    采样率 [0, 1]
+     * @param threads       影子线程数
+     * @param queueCapacity 影子任务队列容量，满了丢弃
+     * @param worstCapacity 保留的最大差异条数
+     */
+    public ShadowCompare(PromotionEngine primary, PromotionEngine candidate, double sampleRate,
+                         int threads, int queueCapacity, int worstCapacity) {
+        if (sampleRate < 0D || sampleRate > 1D) {
+            throw new IllegalArgumentException("sampleRate must be in [0, 1]");
+        }
+        this.primary = primary;
+        this.candidate = candidate;
+        this.sampleRate = sampleRate;
+        this.executor = newShadowExecutor(threads, queueCapacity);
+        this.worstOffenders = new WorstOffenders(worstCapacity);
+    }
+
+    /**
+     * 主引擎计算并返回；命中采样时异步提交候选引擎比对
+     */
+    public Cart calculate(Cart cart, CompiledRuleSet ruleSet) {
+        requests.increment();
+        Cart result = primary.calculate(cart, ruleSet);
+        if (sampleRate > 0D && ThreadLocalRandom.current().nextDouble() < sampleRate) {
+            sampled.increment();
+            // 入参购物车和返回的结果都可能被调用方继续修改：影子任务用入参的副本，主引擎的优惠与规则在调用线程上先取出来
+            Cart input = cart.copy();
+            BigDecimal primaryDiscount = result.getTotalDiscount();
+            List<String> primaryRuleIds = result.getAppliedRuleIds();
+            try {
+                executor.execute(() -> compare(input, ruleSet, primaryDiscount, primaryRuleIds));
+            } catch (RejectedExecutionException e) {
+                dropped.increment();
+            }
+        }
+        return result;
+    }
+
+    public PromotionEngine getPrimary() {
+        return primary;
+    }
+
+    public PromotionEngine getCandidate() {
+        return candidate;
+    }
+
+    /**
+     * 计数器、直方图与最大差异
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("primary", primary.getName());
+        stats.put("candidate", candidate.getName());
+        stats.put("sampleRate", sampleRate);
+        stats.put("requests", requests.sum());
+        stats.put("sampled", sampled.sum());
+        stats.put("dropped", dropped.sum());
+        stats.put("failed", failed.sum());
+        stats.put("compared", compared.sum());
+        stats.put("matched", matched.sum());
+        stats.put("candidateBetter", candidateBetter.sum());
+        stats.put("candidateWorse", candidateWorse.sum());
+        stats.put("sameDiscountDifferentRules", sameDiscountDifferentRules.sum());
+        stats.put("queued", executor.getQueue().size());
+        stats.put("divergenceHistogram", divergenceHistogram.snapshot());
+        stats.put("candidateLatencyHistogram", latencyHistogram.snapshot());
+        stats.put("worstOffenders", worstOffenders.snapshot());
+        return stats;
+    }
+
+    /**
+     * 优惠差最大的若干条，按差值绝对值从大到小
+     */
+    public List<ShadowDivergence> getWorstOffenders() {
+        return worstOffenders.snapshot();
+    }
+
+    /**
+     * 停止接收影子任务，并等待已提交的比对完成
+     *
+     * @return 是否在超时前全部完成
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        executor.shutdown();
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    private void compare(Cart input, CompiledRuleSet ruleSet, BigDecimal primaryDiscount, List<String> primaryRuleIds) {
+        long start = System.nanoTime();
+        Cart candidateResult;
+        try {
+            candidateResult = candidate.calculate(input, ruleSet);
+        } catch (RuntimeException e) {
+            failed.increment();
+            return;
+        }
+        latencyHistogram.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+        compared.increment();
+
+        BigDecimal candidateDiscount = candidateResult.getTotalDiscount();
+        BigDecimal divergence = candidateDiscount.subtract(primaryDiscount);
+        divergenceHistogram.record(divergence.abs().movePointRight(2).setScale(0, RoundingMode.CEILING).longValue());
+
+        List<String> candidateRuleIds = candidateResult.getAppliedRuleIds();
+        int cmp = divergence.signum();
+        if (cmp == 0) {
+            if (primaryRuleIds.equals(candidateRuleIds)) {
+                matched.increment();
+                return;
+            }
+            sameDiscountDifferentRules.increment();
+        } else if (cmp > 0) {
+            candidateBetter.increment();
+        } else {
+            candidateWorse.increment();
+        }
+
+        worstOffenders.offer(ShadowDivergence.builder()
+                .timestamp(System.currentTimeMillis())
+                .ruleSetVersion(ruleSet.getVersion())
+                .originalPrice(input.getTotalPrice())
+                .primaryDiscount(primaryDiscount)
+                .candidateDiscount(candidateDiscount)
+                .divergence(divergence)
+                .primaryRuleIds(primaryRuleIds)
+                .candidateRuleIds(candidateRuleIds)
+                .build());
+    }
+
+    private static ThreadPoolExecutor newShadowExecutor(int threads, int queueCapacity) {
+        AtomicInteger seq = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "promotion-shadow-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * 固定桶直方图：值 <= bounds[i] 落入第 i 桶，超过最后一个上界落入末桶
+     */
+    private static final class Histogram {
+        private final long[] bounds;
+        private final String[] labels;
+        private final LongAdder[] counts;
+
+        Histogram(long[] bounds, String[] labels) {
+            this.bounds = bounds;
+            this.labels = labels;
+            this.counts = new LongAdder[bounds.length + 1];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = new LongAdder();
+            }
+        }
+
+        void record(long value) {
+            int i = 0;
+            while (i < bounds.length && value > bounds[i]) {
+                i++;
+            }
+            counts[i].increment();
+        }
+
+        Map<String, Long> snapshot() {
+            Map<String, Long> map = new LinkedHashMap<>();
+            for (int i = 0; i < counts.length; i++) {
+                map.put(labels[i], counts[i].sum());
+            }
+            return map;
+        }
+    }
+
+    /**
+     * 定长缓冲区：未满时直接放入；满了以后新差异只替换当前最小的一条（且必须更大），始终保留差值绝对值最大的 capacity 条
+     */
+    private static final class WorstOffenders {
+        private final ShadowDivergence[] slots;
+        private int size;
+
+        WorstOffenders(int capacity) {
+            this.slots = new ShadowDivergence[Math.max(capacity, 0)];
+        }
+
+        synchronized void offer(ShadowDivergence divergence) {
+            if (slots.length == 0) {
+                return;
+            }
+            if (size < slots.length) {
+                slots[size++] = divergence;
+                return;
+            }
+            int min = 0;
+            for (int i = 1; i < size; i++) {
+                if (magnitude(slots[i]).compareTo(magnitude(slots[min])) < 0) {
+                    min = i;
+                }
+            }
+            if (magnitude(divergence).compareTo(magnitude(slots[min])) > 0) {
+                slots[min] = divergence;
+            }
+        }
+
+        synchronized List<ShadowDivergence> snapshot() {
+            List<ShadowDivergence> list = new ArrayList<>(Arrays.asList(slots).subList(0, size));
+            list.sort((a, b) -> magnitude(b).compareTo(magnitude(a)));
+            return list;
+        }
+
+        private static BigDecimal magnitude(ShadowDivergence d) {
+            return d.getDivergence().abs();
+        }
+    }
+}
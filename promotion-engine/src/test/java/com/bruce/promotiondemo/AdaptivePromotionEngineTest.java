@@ -0,0 +1,90 @@
+package com.bruce.promotiondemo;
+
+import com.bruce.promotiondemo.engine.AdaptivePromotionEngine;
+import com.bruce.promotiondemo.engine.CompiledRuleSet;
+import com.bruce.promotiondemo.engine.NewPromotionEngine;
+import com.bruce.promotiondemo.model.*;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 自适应引擎测试
+ *
+ * 场景：商品 300 元
+ * - R1：9折（priority=1）
+ * - R2：8折（priority=3，与 R1 互斥）
+ * - R3：满260减20（priority=2）
+ *
+ * 贪心按执行顺序先选 R1：300 → 270 → 满减 250，优惠 50
+ * 最优为 [R2]：300 → 240，优惠 60（240 < 260，R3 不触发），差距 10
+ */
+@DisplayName("自适应引擎测试")
+public class AdaptivePromotionEngineTest {
+
+    @Test
+    @DisplayName("组合很少时走全量枚举，结果与新架构一致并记录最优差距")
+    void testExhaustivePathRecordsGap() {
+        Cart cart = createCart();
+        CompiledRuleSet ruleSet = CompiledRuleSet.compile(createRules());
+        AdaptivePromotionEngine engine = new AdaptivePromotionEngine();
+
+        AdaptiveResult result = engine.calculateWithResult(cart, ruleSet);
+        Cart expected = new NewPromotionEngine().calculate(cart, ruleSet);
+
+        assertEquals(SearchPath.EXHAUSTIVE, result.getPath());
+        assertFalse(result.isTimedOut());
+        assertEquals(3, result.getMatchedRuleCount());
+        // R1/R2 互斥为一个分量（3 种），R3 单独（2 种）
+        assertEquals(6L, result.getEstimatedCombinations());
+        assertEquals(expected.getAppliedRuleIds(), result.getCart().getAppliedRuleIds());
+        assertEquals(0, new BigDecimal("60").compareTo(result.getExactDiscount()));
+        assertEquals(0, new BigDecimal("50").compareTo(result.getGreedyDiscount()));
+        assertEquals(0, new BigDecimal("10").compareTo(result.getOptimalityGap()));
+
+        Map<String, Object> stats = engine.getStats();
+        assertEquals(1L, stats.get("gapSamples"));
+        assertEquals(1L, stats.get("greedySuboptimal"));
+        assertEquals(0, new BigDecimal("10").compareTo((BigDecimal) stats.get("maxGap")));
+    }
+
+    @Test
+    @DisplayName("命中规则超过上限时走贪心，不计算最优差距")
+    void testGreedyPathWhenTooManyRules() {
+        Cart cart = createCart();
+        AdaptivePromotionEngine engine = new AdaptivePromotionEngine(AdaptivePromotionEngine.DEFAULT_SLO_MICROS, 2);
+
+        AdaptiveResult result = engine.calculateWithResult(cart, CompiledRuleSet.compile(createRules()));
+
+        assertEquals(SearchPath.GREEDY, result.getPath());
+        assertEquals(Arrays.asList("R1", "R3"), result.getCart().getAppliedRuleIds());
+        assertEquals(0, new BigDecimal("250").compareTo(result.getCart().getPayPrice()));
+        assertNull(result.getExactDiscount());
+        assertNull(result.getOptimalityGap());
+    }
+
+    private Cart createCart() {
+        return Cart.builder()
+                .items(Collections.singletonList(
+                        CartItem.builder().skuCode("SKU001").price(new BigDecimal("300")).quantity(1).build()
+                ))
+                .build();
+    }
+
+    private List<Rule> createRules() {
+        List<Rule> rules = new ArrayList<>();
+        rules.add(Rule.builder().id("R1").name("9折")
+                .type(RuleType.DISCOUNT).discount(new BigDecimal("0.9")).priority(1)
+                .exclusiveRuleIds(new HashSet<>(Collections.singletonList("R2"))).build());
+        rules.add(Rule.builder().id("R3").name("满260减20")
+                .type(RuleType.THRESHOLD_AMOUNT_OFF).threshold(new BigDecimal("260")).discount(new BigDecimal("20"))
+                .priority(2).build());
+        rules.add(Rule.builder().id("R2").name("8折")
+                .type(RuleType.DISCOUNT).discount(new BigDecimal("0.8")).priority(3).build());
+        return rules;
+    }
+}
@@ -0,0 +1,107 @@
+package com.bruce.promotiondemo;
+
+import com.bruce.promotiondemo.engine.CachingPromotionEngine;
+import com.bruce.promotiondemo.engine.CalculationCache;
+import com.bruce.promotiondemo.engine.CompiledRuleSet;
+import com.bruce.promotiondemo.engine.NewPromotionEngine;
+import com.bruce.promotiondemo.model.*;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 计算结果缓存测试
+ *
+ * - 商品行顺序不同的同一购物车命中同一条缓存，修改返回值不影响缓存
+ * - 规则版本升级时整体失效，版本 0 不走缓存
+ * - LRU 淘汰与 TTL 过期
+ */
+@DisplayName("计算结果缓存测试")
+public class CalculationCacheTest {
+
+    @Test
+    @DisplayName("促销引擎缓存：规范化购物车命中，返回值可随意修改")
+    void testCachingPromotionEngine() {
+        CachingPromotionEngine engine = new CachingPromotionEngine(new NewPromotionEngine(), 100, 60_000L);
+        CompiledRuleSet v1 = CompiledRuleSet.compile(1L, createRules());
+
+        Cart first = engine.calculate(createCart("SKU001", "SKU002"), v1);
+        assertEquals(0, new BigDecimal("230").compareTo(first.getPayPrice()));
+        // 调用方修改返回值
+        first.getReductionDetails().get(0).setReduction(new BigDecimal("999"));
+        first.getReductionDetails().clear();
+
+        Cart second = engine.calculate(createCart("SKU002", "SKU001"), v1);
+        assertEquals(0, new BigDecimal("230").compareTo(second.getPayPrice()));
+        assertEquals(Collections.singletonList("R1"), second.getAppliedRuleIds());
+        // 商品行按本次请求的顺序返回
+        assertEquals("SKU002", second.getItems().get(0).getSkuCode());
+
+        Map<String, Object> stats = engine.getStats();
+        assertEquals(1L, stats.get("hits"));
+        assertEquals(1L, stats.get("misses"));
+
+        // 一次性编译（版本 0）不走缓存
+        engine.calculate(createCart("SKU001", "SKU002"), CompiledRuleSet.compile(createRules()));
+        assertEquals(1L, engine.getStats().get("bypassed"));
+
+        // 新版本：整体失效，按新规则重算
+        CompiledRuleSet v2 = CompiledRuleSet.compile(2L, Collections.emptyList());
+        Cart third = engine.calculate(createCart("SKU001", "SKU002"), v2);
+        assertEquals(0, new BigDecimal("250").compareTo(third.getPayPrice()));
+        assertEquals(1L, engine.getStats().get("invalidations"));
+        // 旧版本请求不再读写缓存
+        engine.calculate(createCart("SKU001", "SKU002"), v1);
+        assertEquals(2L, engine.getStats().get("bypassed"));
+    }
+
+    @Test
+    @DisplayName("LRU 淘汰最久未访问的条目，过期条目不再命中")
+    void testLruAndTtl() {
+        AtomicLong now = new AtomicLong();
+        CalculationCache<String, String> cache = new CalculationCache<>(2, 1000L, now::get);
+
+        cache.put("a", "A");
+        cache.put("b", "B");
+        assertEquals("A", cache.get("a"));
+        // 放入 c 时淘汰最久未访问的 b
+        cache.put("c", "C");
+        assertNull(cache.get("b"));
+        assertEquals("A", cache.get("a"));
+        assertEquals("C", cache.get("c"));
+
+        now.addAndGet(1_000_000_000L);
+        assertNull(cache.get("a"));
+
+        Map<String, Object> stats = cache.getStats();
+        assertEquals(1L, stats.get("evictions"));
+        assertEquals(1L, stats.get("expirations"));
+        assertEquals(3L, stats.get("hits"));
+        assertEquals(2L, stats.get("misses"));
+    }
+
+    private Cart createCart(String... skuCodes) {
+        Map<String, String> prices = new HashMap<>();
+        prices.put("SKU001", "200");
+        prices.put("SKU002", "50");
+        List<CartItem> items = new ArrayList<>();
+        for (String skuCode : skuCodes) {
+            items.add(CartItem.builder().skuCode(skuCode).price(new BigDecimal(prices.get(skuCode))).quantity(1).build());
+        }
+        return Cart.builder().items(items).build();
+    }
+
+    private List<Rule> createRules() {
+        return Collections.singletonList(
+                Rule.builder().id("R1").name("满200减20")
+                        .type(RuleType.THRESHOLD_AMOUNT_OFF)
+                        .threshold(new BigDecimal("200"))
+                        .discount(new BigDecimal("20"))
+                        .priority(1).build());
+    }
+}
@@ -0,0 +1,109 @@
+package com.bruce.promotiondemo;
+
+import com.bruce.promotiondemo.engine.CompiledRuleSet;
+import com.bruce.promotiondemo.engine.CompiledRuleSetCache;
+import com.bruce.promotiondemo.engine.NewPromotionEngine;
+import com.bruce.promotiondemo.engine.OldPromotionEngine;
+import com.bruce.promotiondemo.model.*;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 预编译规则集测试
+ *
+ * - 互斥位矩阵与 Rule.isExclusiveWith 逐对一致（含单向声明、同 ID 规则）
+ * - 引擎用预编译规则集与直接传规则列表的结果一致
+ * - 同一版本只编译一次
+ */
+@DisplayName("预编译规则集测试")
+public class CompiledRuleSetTest {
+
+    @Test
+    @DisplayName("互斥位矩阵与 isExclusiveWith 一致")
+    void testExclusiveMatrix() {
+        List<Rule> rules = createRules();
+        CompiledRuleSet ruleSet = CompiledRuleSet.compile(rules);
+
+        for (int a = 0; a < rules.size(); a++) {
+            for (int b = 0; b < rules.size(); b++) {
+                if (a == b) {
+                    continue;
+                }
+                assertEquals(rules.get(a).isExclusiveWith(rules.get(b)), ruleSet.isExclusive(a, b),
+                        rules.get(a).getId() + " vs " + rules.get(b).getId());
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("预编译规则集与规则列表计算结果一致")
+    void testSameResultAsRuleList() {
+        Cart cart = Cart.builder()
+                .items(Arrays.asList(
+                        CartItem.builder().skuCode("SKU001").price(new BigDecimal("100")).quantity(2).build(),
+                        CartItem.builder().skuCode("SKU002").price(new BigDecimal("59.90")).quantity(1).build()
+                ))
+                .build();
+        List<Rule> rules = createRules();
+        CompiledRuleSet ruleSet = CompiledRuleSet.compile(1L, rules);
+
+        OldPromotionEngine oldEngine = new OldPromotionEngine(false);
+        NewPromotionEngine newEngine = new NewPromotionEngine();
+
+        assertSameResult(oldEngine.calculate(cart, rules), oldEngine.calculate(cart, ruleSet));
+        assertSameResult(newEngine.calculate(cart, rules), newEngine.calculate(cart, ruleSet));
+        // 规则集可重复使用
+        assertSameResult(newEngine.calculate(cart, rules), newEngine.calculate(cart, ruleSet));
+    }
+
+    @Test
+    @DisplayName("同一版本只编译一次，新版本替换旧版本")
+    void testCacheByVersion() {
+        CompiledRuleSetCache cache = new CompiledRuleSetCache();
+        List<Rule> rules = createRules();
+
+        CompiledRuleSet v1 = cache.get(1L, rules);
+        assertSame(v1, cache.get(1L, rules));
+
+        CompiledRuleSet v2 = cache.get(2L, rules.subList(0, 2));
+        assertNotSame(v1, v2);
+        assertEquals(2, v2.size());
+        assertSame(v2, cache.current());
+
+        // 旧版本请求拿到临时编译的结果，不覆盖新版本
+        assertEquals(1L, cache.get(1L, rules).getVersion());
+        assertSame(v2, cache.current());
+    }
+
+    private void assertSameResult(Cart expected, Cart actual) {
+        assertEquals(expected.getPayPrice(), actual.getPayPrice());
+        assertEquals(expected.getAppliedRuleIds(), actual.getAppliedRuleIds());
+        assertEquals(expected.getReductionDetails(), actual.getReductionDetails());
+    }
+
+    private List<Rule> createRules() {
+        List<Rule> rules = new ArrayList<>();
+        rules.add(Rule.builder().id("R1").name("9折")
+                .type(RuleType.DISCOUNT).discount(new BigDecimal("0.9")).priority(2).build());
+        rules.add(Rule.builder().id("R2").name("8折")
+                .type(RuleType.DISCOUNT).discount(new BigDecimal("0.8")).priority(3)
+                // 单向声明：R2 声明与 R1 互斥
+                .exclusiveRuleIds(new HashSet<>(Collections.singletonList("R1"))).build());
+        rules.add(Rule.builder().id("R3").name("满200减20")
+                .type(RuleType.THRESHOLD_AMOUNT_OFF).threshold(new BigDecimal("200")).discount(new BigDecimal("20"))
+                .priority(1).build());
+        rules.add(Rule.builder().id("R4").name("直减10")
+                .type(RuleType.AMOUNT_OFF).discount(new BigDecimal("10")).priority(1)
+                .exclusiveRuleIds(new HashSet<>(Arrays.asList("R3", "R9"))).build());
+        // 与 R3 同 ID：R4 对它同样互斥
+        rules.add(Rule.builder().id("R3").name("满100减8")
+                .type(RuleType.THRESHOLD_AMOUNT_OFF).threshold(new BigDecimal("100")).discount(new BigDecimal("8"))
+                .priority(2).build());
+        return rules;
+    }
+}
@@ -0,0 +1,159 @@
+package com.bruce.promotiondemo;
+
+import com.bruce.promotiondemo.model.Cart;
+import com.bruce.promotiondemo.model.CartItem;
+import com.bruce.promotiondemo.model.Rule;
+import com.bruce.promotiondemo.model.RuleType;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * 随机购物车 / 规则集生成器
+ *
+ * 差分测试（{@link PromotionDifferentialTest}）与规模基准（jmh 下的 PromotionScalingBenchmark）共用这一套生成器，
+ * 随机数由调用方传入的 {@link Random} 驱动，同一个种子得到同一份输入。
+ *
+ * 生成时刻意覆盖容易算错的边界：
+ * - 单价混用 0 位和 2 位小数，同一 SKU 可能出现在多行
+ * - 优先级有重复（同优先级按规则列表顺序执行）
+ * - 折扣率偶尔为 1（不生效）或带 3 位小数（HALF_UP 舍入），直减偶尔为 0
+ * - 满减门槛落在整单金额附近：原价能命中、叠加折扣后又不满足的情况经常出现
+ * - 单向登记的互斥、指向不存在规则的互斥 ID
+ */
+public final class PromotionCaseGenerator {
+
+    /**
+     * SKU 池大小：池子小，同一 SKU 多行的情况更常见
+     */
+    private static final int SKU_POOL = 16;
+
+    private PromotionCaseGenerator() {
+    }
+
+    /**
+     * 购物车：size 行，单价 0.01 ~ 500.00，数量 1 ~ 5
+     */
+    public static Cart cart(Random rnd, int size) {
+        List<CartItem> items = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            BigDecimal price = rnd.nextInt(3) == 0
+                    ? new BigDecimal(1 + rnd.nextInt(500))
+                    : BigDecimal.valueOf(1 + rnd.nextInt(50_000), 2);
+            items.add(CartItem.builder()
+                    .skuCode("SKU" + rnd.nextInt(SKU_POOL))
+                    .price(price)
+                    .quantity(1 + rnd.nextInt(5))
+                    .build());
+        }
+        return Cart.builder().items(items).build();
+    }
+
+    /**
+     * 规则集：count 条，金额按 referencePrice（通常是购物车原价）的比例生成，保证门槛和减免与购物车同一量级
+     */
+    public static List<Rule> rules(Random rnd, int count, BigDecimal referencePrice) {
+        long referenceCents = Math.max(100L, referencePrice.movePointRight(2).longValue());
+        List<Rule> rules = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Rule.RuleBuilder builder = Rule.builder()
+                    .id("R" + i)
+                    .name("规则" + i)
+                    .priority(rnd.nextInt(Math.max(1, count / 2)));
+            int kind = rnd.nextInt(3);
+            if (kind == 0) {
+                builder.type(RuleType.DISCOUNT).discount(discountRate(rnd));
+            } else if (kind == 1) {
+                builder.type(RuleType.AMOUNT_OFF)
+                        .discount(rnd.nextInt(12) == 0 ? BigDecimal.ZERO : cents(rnd, referenceCents / 10));
+            } else {
+                // 门槛在原价的 30% ~ 120% 之间
+                long threshold = referenceCents * (30 + rnd.nextInt(91)) / 100;
+                builder.type(RuleType.THRESHOLD_AMOUNT_OFF)
+                        .threshold(BigDecimal.valueOf(threshold, 2))
+                        .discount(cents(rnd, referenceCents / 8));
+            }
+            rules.add(builder.build());
+        }
+        for (int i = 0; i < count; i++) {
+            Set<String> exclusiveIds = rules.get(i).getExclusiveRuleIds();
+            for (int j = 0; j < count; j++) {
+                if (j != i && rnd.nextInt(5) == 0) {
+                    exclusiveIds.add("R" + j);
+                }
+            }
+            if (rnd.nextInt(10) == 0) {
+                exclusiveIds.add("R-MISSING");
+            }
+        }
+        return rules;
+    }
+
+    /**
+     * 同额密集的规则集：count 条，直减/满减只有 3 档面额（原价的 1% ~ 2.5%），满减门槛在原价的 10% ~ 90%（几乎都能命中），
+     * 折扣约占 1/6，互斥稀疏。不同前缀经常减掉同样的金额、走到同一价格，用于覆盖精确搜索的前缀记忆化。
+     */
+    public static List<Rule> tieHeavyRules(Random rnd, int count, BigDecimal referencePrice) {
+        long referenceCents = Math.max(100L, referencePrice.movePointRight(2).longValue());
+        long[] faces = {referenceCents / 100 + 1, referenceCents / 50 + 1, referenceCents / 40 + 1};
+        List<Rule> rules = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Rule.RuleBuilder builder = Rule.builder()
+                    .id("R" + i)
+                    .name("规则" + i)
+                    .priority(rnd.nextInt(Math.max(1, count / 2)));
+            int kind = rnd.nextInt(6);
+            BigDecimal face = BigDecimal.valueOf(faces[rnd.nextInt(faces.length)], 2);
+            if (kind == 0) {
+                builder.type(RuleType.DISCOUNT).discount(discountRate(rnd));
+            } else if (kind <= 3) {
+                builder.type(RuleType.AMOUNT_OFF).discount(face);
+            } else {
+                long threshold = referenceCents * (10 + rnd.nextInt(81)) / 100;
+                builder.type(RuleType.THRESHOLD_AMOUNT_OFF)
+                        .threshold(BigDecimal.valueOf(threshold, 2))
+                        .discount(face);
+            }
+            rules.add(builder.build());
+        }
+        for (int i = 0; i < count; i++) {
+            for (int j = i + 1; j < count; j++) {
+                if (rnd.nextInt(15) == 0) {
+                    rules.get(i).getExclusiveRuleIds().add("R" + j);
+                }
+            }
+        }
+        return rules;
+    }
+
+    /**
+     * 同一购物车打乱行顺序后的副本（缓存键与行顺序无关）
+     */
+    public static Cart shuffled(Random rnd, Cart cart) {
+        List<CartItem> items = new ArrayList<>(cart.getItems().size());
+        cart.getItems().forEach(item -> items.add(item.copy()));
+        Collections.shuffle(items, rnd);
+        return Cart.builder().items(items).build();
+    }
+
+    /**
+     * 折扣率：多数为 0.50 ~ 0.99，偶尔为 1（不生效）或 3 位小数
+     */
+    private static BigDecimal discountRate(Random rnd) {
+        int pick = rnd.nextInt(10);
+        if (pick == 0) {
+            return BigDecimal.ONE;
+        }
+        if (pick == 1) {
+            return BigDecimal.valueOf(500 + rnd.nextInt(500), 3);
+        }
+        return BigDecimal.valueOf(50 + rnd.nextInt(50), 2);
+    }
+
+    /**
+     * [0.01, maxCents / 100] 之间的金额（两位小数）
+     */
+    private static BigDecimal cents(Random rnd, long maxCents) {
+        return BigDecimal.valueOf(1 + rnd.nextInt((int) Math.max(1L, Math.min(maxCents, Integer.MAX_VALUE))), 2);
+    }
+}
@@ -0,0 +1,278 @@
+package com.bruce.promotiondemo;
+
+import com.bruce.promotiondemo.engine.AdaptivePromotionEngine;
+import com.bruce.promotiondemo.engine.CachingPromotionEngine;
+import com.bruce.promotiondemo.engine.CompiledRuleSet;
+import com.bruce.promotiondemo.engine.NewPromotionEngine;
+import com.bruce.promotiondemo.model.*;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 差分测试：优化后的促销引擎与暴力穷举参照逐项一致
+ *
+ * 输入来自 {@link PromotionCaseGenerator}（与规模基准共用），参照实现 {@link BruteForceOracle} 不依赖引擎内部：
+ * 按规格逐个组合从原价重算，取优惠严格更大者，同额取枚举次序最靠前的组合。
+ *
+ * - 新架构引擎（规则列表 / 预编译规则集）、自适应引擎的精确路径（全量枚举 / 剪枝）、结果缓存：结果与参照完全一致
+ * - 前 k 个不同结果：与参照的全部不同结果取前 k 个一致
+ * - 24 ~ 30 条同额密集的规则（前缀记忆化的启用区间，暴力穷举跑不动）：与不带记忆化的前 1 个结果搜索一致，
+ *   记忆化保持启用与试探后放弃两条分支都要走到
+ * - 贪心路径：组合合法，优惠不超过参照
+ */
+@DisplayName("促销引擎差分测试")
+public class PromotionDifferentialTest {
+
+    private static final int ROUNDS = 1_500;
+
+    @Test
+    @DisplayName("穷举/剪枝/缓存与暴力穷举结果完全一致")
+    void testOptimizedEnginesMatchOracle() {
+        Random rnd = new Random(20240719L);
+        NewPromotionEngine newEngine = new NewPromotionEngine();
+        // SLO 足够大，只走全量枚举或剪枝两条精确路径
+        AdaptivePromotionEngine adaptive = new AdaptivePromotionEngine(60_000_000L, 64);
+        CachingPromotionEngine caching = new CachingPromotionEngine(new NewPromotionEngine(), 64, 60_000L);
+
+        for (int t = 0; t < ROUNDS; t++) {
+            Cart cart = PromotionCaseGenerator.cart(rnd, 1 + rnd.nextInt(6));
+            List<Rule> rules = PromotionCaseGenerator.rules(rnd, rnd.nextInt(11), cart.getTotalPrice());
+            CompiledRuleSet ruleSet = CompiledRuleSet.compile(t + 1, rules);
+            String expected = signature(BruteForceOracle.best(cart, rules));
+            String input = "round " + t + ": " + cart.getItems() + " " + rules;
+
+            assertEquals(expected, signature(newEngine.calculate(cart, rules)), input);
+            assertEquals(expected, signature(newEngine.calculate(cart, ruleSet)), input);
+            assertEquals(expected, signature(adaptive.calculate(cart, ruleSet)), input);
+            assertEquals(expected, signature(caching.calculate(cart, ruleSet)), input);
+            // 行顺序不同的同一购物车命中缓存
+            assertEquals(expected, signature(caching.calculate(PromotionCaseGenerator.shuffled(rnd, cart), ruleSet)), input);
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<String, Long> paths = (Map<String, Long>) adaptive.getStats().get("paths");
+        assertEquals(Long.valueOf(0L), paths.get("GREEDY"));
+        assertTrue(paths.get("EXHAUSTIVE") > 0 && paths.get("PRUNED") > 0, paths.toString());
+        assertEquals((long) ROUNDS, caching.getStats().get("hits"));
+    }
+
+    @Test
+    @DisplayName("前 k 个不同结果与暴力穷举一致")
+    void testTopOutcomesMatchOracle() {
+        Random rnd = new Random(7L);
+        NewPromotionEngine engine = new NewPromotionEngine();
+        for (int t = 0; t < ROUNDS; t++) {
+            Cart cart = PromotionCaseGenerator.cart(rnd, 1 + rnd.nextInt(4));
+            List<Rule> rules = PromotionCaseGenerator.rules(rnd, rnd.nextInt(10), cart.getTotalPrice());
+            int limit = 1 + rnd.nextInt(6);
+
+            List<BigDecimal> expected = BruteForceOracle.distinctDiscounts(cart, rules);
+            expected = expected.subList(0, Math.min(limit, expected.size()));
+            List<BigDecimal> actual = new ArrayList<>();
+            for (Cart outcome : engine.calculateTopOutcomes(cart, CompiledRuleSet.compile(rules), limit, 0L)) {
+                actual.add(outcome.getTotalDiscount().stripTrailingZeros());
+            }
+            assertEquals(expected, actual, "round " + t + ": " + cart.getItems() + " " + rules);
+        }
+    }
+
+    @Test
+    @DisplayName("前 k 个结果限时：搜不完时按截止时间返回，最优补算也超时则并入贪心组合")
+    void testTopOutcomesRespectDeadline() {
+        Random rnd = new Random(3L);
+        Cart cart = PromotionCaseGenerator.cart(rnd, 4);
+        // 不限时要算几十秒（前 k 个与补算最优都搜不完）
+        List<Rule> rules = PromotionCaseGenerator.tieHeavyRules(rnd, 80, cart.getTotalPrice());
+        CompiledRuleSet ruleSet = CompiledRuleSet.compile(rules);
+        Cart greedy = new AdaptivePromotionEngine(AdaptivePromotionEngine.DEFAULT_SLO_MICROS, 0).calculate(cart, ruleSet);
+
+        long start = System.nanoTime();
+        List<Cart> outcomes = new NewPromotionEngine().calculateTopOutcomes(cart, ruleSet, 8, start + 50_000_000L);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000L;
+
+        assertTrue(elapsedMillis < 5_000L, elapsedMillis + "ms");
+        assertFalse(outcomes.isEmpty());
+        assertTrue(outcomes.size() <= 8);
+        assertTrue(outcomes.get(0).getTotalDiscount().compareTo(greedy.getTotalDiscount()) >= 0);
+        for (int i = 0; i < outcomes.size(); i++) {
+            Cart outcome = outcomes.get(i);
+            if (i > 0) {
+                assertTrue(outcome.getPayPrice().compareTo(outcomes.get(i - 1).getPayPrice()) > 0);
+            }
+            List<Rule> applied = outcome.getAppliedRules();
+            for (int a = 0; a < applied.size(); a++) {
+                for (int b = a + 1; b < applied.size(); b++) {
+                    assertFalse(applied.get(a).isExclusiveWith(applied.get(b)));
+                }
+            }
+            assertEquals(signature(BruteForceOracle.execute(cart, applied)), signature(outcome));
+        }
+    }
+
+    @Test
+    @DisplayName("规则多且同额密集时，记忆化搜索与不带记忆化的搜索结果一致")
+    void testMemoizedSearchMatchesPlainSearch() {
+        Random rnd = new Random(31L);
+        NewPromotionEngine newEngine = new NewPromotionEngine();
+        AdaptivePromotionEngine adaptive = new AdaptivePromotionEngine(60_000_000L, 64);
+        int memoKept = 0;
+        int memoAbandoned = 0;
+        for (int t = 0; t < 60; t++) {
+            Cart cart = PromotionCaseGenerator.cart(rnd, 1 + rnd.nextInt(6));
+            List<Rule> rules = PromotionCaseGenerator.tieHeavyRules(rnd, 24 + rnd.nextInt(7), cart.getTotalPrice());
+            CompiledRuleSet ruleSet = CompiledRuleSet.compile(rules);
+            String input = "round " + t + ": " + cart.getItems() + " " + rules;
+
+            // 前 k 个结果的搜索只剪枝、不记忆化，取第 1 个作参照
+            String expected = signature(newEngine.calculateTopOutcomes(cart, ruleSet, 1, 0L).get(0));
+            AdaptiveResult result = adaptive.calculateWithResult(cart, ruleSet);
+            assertEquals(SearchPath.PRUNED, result.getPath(), input);
+            assertEquals(expected, signature(result.getCart()), input);
+            assertEquals(expected, signature(newEngine.calculate(cart, ruleSet)), input);
+            if (result.isMemoAbandoned()) {
+                memoAbandoned++;
+            } else if (result.getMemoHits() > 0) {
+                memoKept++;
+            }
+        }
+        assertTrue(memoKept > 0 && memoAbandoned > 0, "kept=" + memoKept + ", abandoned=" + memoAbandoned);
+    }
+
+    @Test
+    @DisplayName("贪心路径：组合合法且优惠不超过最优")
+    void testGreedyNeverBeatsOracle() {
+        Random rnd = new Random(99L);
+        AdaptivePromotionEngine greedy = new AdaptivePromotionEngine(AdaptivePromotionEngine.DEFAULT_SLO_MICROS, 0);
+        for (int t = 0; t < ROUNDS; t++) {
+            Cart cart = PromotionCaseGenerator.cart(rnd, 1 + rnd.nextInt(6));
+            List<Rule> rules = PromotionCaseGenerator.rules(rnd, 1 + rnd.nextInt(10), cart.getTotalPrice());
+
+            Cart result = greedy.calculate(cart, CompiledRuleSet.compile(rules));
+            Cart best = BruteForceOracle.best(cart, rules);
+            assertTrue(result.getTotalDiscount().compareTo(best.getTotalDiscount()) <= 0, "round " + t);
+            List<Rule> applied = result.getAppliedRules();
+            for (int i = 0; i < applied.size(); i++) {
+                for (int j = i + 1; j < applied.size(); j++) {
+                    assertFalse(applied.get(i).isExclusiveWith(applied.get(j)), "round " + t);
+                }
+            }
+            assertEquals(signature(BruteForceOracle.execute(cart, applied)), signature(result), "round " + t);
+        }
+    }
+
+    /**
+     * 应付金额 + 每条明细（规则、基准价、减免、减后价），与商品行顺序无关
+     */
+    private static String signature(Cart cart) {
+        StringBuilder sb = new StringBuilder().append(cart.getPayPrice().stripTrailingZeros().toPlainString());
+        for (ReductionDetail detail : cart.getReductionDetails()) {
+            sb.append('|').append(detail.getRuleId())
+                    .append(':').append(detail.getBasePrice().stripTrailingZeros().toPlainString())
+                    .append(',').append(detail.getReduction().stripTrailingZeros().toPlainString())
+                    .append(',').append(detail.getCalculatedPrice().stripTrailingZeros().toPlainString());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 暴力穷举参照：按规格直接实现，不复用引擎的任何代码
+     *
+     * 1. 原价满足条件的规则按 priority 稳定排序
+     * 2. 逐条“不选 / 选”递归枚举全部不含互斥对的组合
+     * 3. 每个组合从原价开始，按（折扣类在前, priority）稳定排序后垂直叠加
+     */
+    private static final class BruteForceOracle {
+
+        /**
+         * 优惠最大的组合；同额取枚举次序最靠前的，没有正优惠时返回原价
+         */
+        static Cart best(Cart cart, List<Rule> rules) {
+            Cart best = cart.copy();
+            for (List<Rule> combination : combinations(cart, rules)) {
+                Cart result = execute(cart, combination);
+                if (result.getTotalDiscount().compareTo(best.getTotalDiscount()) > 0) {
+                    best = result;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * 全部组合（含不使用任何促销）的不同优惠金额，从大到小
+         */
+        static List<BigDecimal> distinctDiscounts(Cart cart, List<Rule> rules) {
+            TreeSet<BigDecimal> discounts = new TreeSet<>(Comparator.reverseOrder());
+            discounts.add(BigDecimal.ZERO);
+            for (List<Rule> combination : combinations(cart, rules)) {
+                discounts.add(execute(cart, combination).getTotalDiscount().stripTrailingZeros());
+            }
+            return new ArrayList<>(discounts);
+        }
+
+        static Cart execute(Cart cart, List<Rule> combination) {
+            List<Rule> ordered = new ArrayList<>(combination);
+            ordered.sort(Comparator.comparingInt((Rule r) -> r.getType() == RuleType.DISCOUNT ? 0 : 1)
+                    .thenComparingInt(Rule::getPriority));
+            Cart result = cart.copy();
+            BigDecimal price = result.getTotalPrice();
+            for (Rule rule : ordered) {
+                if (rule.getType() == RuleType.THRESHOLD_AMOUNT_OFF && price.compareTo(rule.getThreshold()) < 0) {
+                    continue;
+                }
+                BigDecimal reduction = rule.getType() == RuleType.DISCOUNT
+                        ? price.multiply(BigDecimal.ONE.subtract(rule.getDiscount())).setScale(2, RoundingMode.HALF_UP)
+                        : rule.getDiscount().setScale(2, RoundingMode.HALF_UP);
+                if (reduction.signum() <= 0) {
+                    continue;
+                }
+                result.getReductionDetails().add(ReductionDetail.builder()
+                        .ruleId(rule.getId())
+                        .ruleName(rule.getName())
+                        .basePrice(price)
+                        .reduction(reduction)
+                        .calculatedPrice(price.subtract(reduction))
+                        .valid(true)
+                        .build());
+                result.getAppliedRules().add(rule);
+                price = price.subtract(reduction);
+            }
+            return result;
+        }
+
+        private static List<List<Rule>> combinations(Cart cart, List<Rule> rules) {
+            BigDecimal originalPrice = cart.getTotalPrice();
+            List<Rule> matched = new ArrayList<>();
+            for (Rule rule : rules) {
+                if (rule.getType() != RuleType.THRESHOLD_AMOUNT_OFF || originalPrice.compareTo(rule.getThreshold()) >= 0) {
+                    matched.add(rule);
+                }
+            }
+            matched.sort(Comparator.comparingInt(Rule::getPriority));
+            List<List<Rule>> result = new ArrayList<>();
+            enumerate(matched, 0, new ArrayList<>(), result);
+            return result;
+        }
+
+        private static void enumerate(List<Rule> rules, int index, List<Rule> current, List<List<Rule>> result) {
+            if (index == rules.size()) {
+                if (!current.isEmpty()) {
+                    result.add(new ArrayList<>(current));
+                }
+                return;
+            }
+            Rule rule = rules.get(index);
+            enumerate(rules, index + 1, current, result);
+            if (current.stream().noneMatch(r -> r.isExclusiveWith(rule))) {
+                current.add(rule);
+                enumerate(rules, index + 1, current, result);
+                current.remove(current.size() - 1);
+            }
+        }
+    }
+}
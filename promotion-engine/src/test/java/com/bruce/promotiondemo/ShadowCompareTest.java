@@ -0,0 +1,181 @@
+package com.bruce.promotiondemo;
+
+import com.bruce.promotiondemo.engine.CompiledRuleSet;
+import com.bruce.promotiondemo.engine.NewPromotionEngine;
+import com.bruce.promotiondemo.engine.OldPromotionEngine;
+import com.bruce.promotiondemo.engine.PromotionEngine;
+import com.bruce.promotiondemo.model.*;
+import com.bruce.promotiondemo.service.ShadowCompare;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 影子比对测试
+ *
+ * 规则：R1 9折（与 R2 互斥）、R3 满260减20、R2 8折
+ * 100 元两者一致；300 元旧架构有回滚 bug（多优惠 16）；400、500 元新架构多优惠 4
+ * 用来验证计数与最大差异缓冲区
+ */
+@DisplayName("影子比对测试")
+public class ShadowCompareTest {
+
+    @Test
+    @DisplayName("全量采样：主引擎结果不变，差异被计数并只保留最大的几条")
+    void testDivergenceRecorded() throws InterruptedException {
+        OldPromotionEngine oldEngine = new OldPromotionEngine(false);
+        ShadowCompare shadow = new ShadowCompare(oldEngine, new NewPromotionEngine(), 1D, 1, 64, 2);
+        CompiledRuleSet ruleSet = CompiledRuleSet.compile(7L, createRules());
+
+        String[] prices = {"100", "300", "400", "500"};
+        for (String price : prices) {
+            Cart cart = createCart(price);
+            Cart expected = oldEngine.calculate(cart.copy(), ruleSet);
+            Cart result = shadow.calculate(cart, ruleSet);
+            assertEquals(expected.getPayPrice(), result.getPayPrice());
+            assertEquals(expected.getAppliedRuleIds(), result.getAppliedRuleIds());
+        }
+        assertTrue(shadow.shutdown(10, TimeUnit.SECONDS));
+
+        Map<String, Object> stats = shadow.snapshot();
+        assertEquals(4L, stats.get("requests"));
+        assertEquals(4L, stats.get("sampled"));
+        assertEquals(0L, stats.get("dropped"));
+        assertEquals(4L, stats.get("compared"));
+        assertEquals(1L, stats.get("matched"));
+        assertEquals(2L, stats.get("candidateBetter"));
+        assertEquals(1L, stats.get("candidateWorse"));
+
+        List<ShadowDivergence> worst = shadow.getWorstOffenders();
+        assertEquals(2, worst.size());
+        assertTrue(worst.get(0).getDivergence().abs().compareTo(worst.get(1).getDivergence().abs()) >= 0);
+        assertEquals(7L, worst.get(0).getRuleSetVersion());
+        // 300 元时差异最大：旧架构回滚后错误保留满减，优惠 76；新架构只用 8折，优惠 60
+        assertEquals(0, new BigDecimal("300").compareTo(worst.get(0).getOriginalPrice()));
+        assertEquals(0, new BigDecimal("-16").compareTo(worst.get(0).getDivergence()));
+        assertEquals(0, new BigDecimal("4").compareTo(worst.get(1).getDivergence()));
+    }
+
+    @Test
+    @DisplayName("采样率为 0 时不提交影子任务")
+    void testNoSampling() throws InterruptedException {
+        ShadowCompare shadow = new ShadowCompare(new OldPromotionEngine(false), new NewPromotionEngine(), 0D, 1, 8, 4);
+        CompiledRuleSet ruleSet = CompiledRuleSet.compile(createRules());
+
+        for (int i = 0; i < 10; i++) {
+            shadow.calculate(createCart("300"), ruleSet);
+        }
+        assertTrue(shadow.shutdown(10, TimeUnit.SECONDS));
+
+        Map<String, Object> stats = shadow.snapshot();
+        assertEquals(10L, stats.get("requests"));
+        assertEquals(0L, stats.get("sampled"));
+        assertEquals(0L, stats.get("compared"));
+    }
+
+    @Test
+    @DisplayName("影子队列满时直接丢弃，主链路不阻塞")
+    void testDropWhenQueueFull() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        NewPromotionEngine newEngine = new NewPromotionEngine();
+        PromotionEngine blockingCandidate = new PromotionEngine() {
+            @Override
+            public Cart calculate(Cart cart, List<Rule> rules) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return newEngine.calculate(cart, rules);
+            }
+
+            @Override
+            public String getName() {
+                return "阻塞的候选引擎";
+            }
+        };
+        ShadowCompare shadow = new ShadowCompare(new OldPromotionEngine(false), blockingCandidate, 1D, 1, 1, 4);
+        CompiledRuleSet ruleSet = CompiledRuleSet.compile(createRules());
+
+        shadow.calculate(createCart("300"), ruleSet);
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        // 线程被占住，第 2 个进队列，第 3、4 个丢弃
+        for (int i = 0; i < 3; i++) {
+            shadow.calculate(createCart("300"), ruleSet);
+        }
+        assertEquals(2L, shadow.snapshot().get("dropped"));
+
+        release.countDown();
+        assertTrue(shadow.shutdown(10, TimeUnit.SECONDS));
+        assertEquals(2L, shadow.snapshot().get("compared"));
+    }
+
+    @Test
+    @DisplayName("影子任务比对的是返回时的主引擎结果，调用方之后修改结果不影响比对")
+    void testCallerMutatesResultAfterReturn() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        NewPromotionEngine newEngine = new NewPromotionEngine();
+        PromotionEngine blockingCandidate = new PromotionEngine() {
+            @Override
+            public Cart calculate(Cart cart, List<Rule> rules) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return newEngine.calculate(cart, rules);
+            }
+
+            @Override
+            public String getName() {
+                return "阻塞的候选引擎";
+            }
+        };
+        ShadowCompare shadow = new ShadowCompare(newEngine, blockingCandidate, 1D, 1, 4, 4);
+        CompiledRuleSet ruleSet = CompiledRuleSet.compile(createRules());
+
+        Cart result = shadow.calculate(createCart("300"), ruleSet);
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        // 候选引擎还没算完，调用方就把结果里的明细清掉了
+        result.getReductionDetails().clear();
+        result.getAppliedRules().clear();
+
+        release.countDown();
+        assertTrue(shadow.shutdown(10, TimeUnit.SECONDS));
+        Map<String, Object> stats = shadow.snapshot();
+        assertEquals(1L, stats.get("compared"));
+        assertEquals(1L, stats.get("matched"));
+        assertTrue(shadow.getWorstOffenders().isEmpty());
+    }
+
+    private Cart createCart(String price) {
+        return Cart.builder()
+                .items(Collections.singletonList(
+                        CartItem.builder().skuCode("SKU001").price(new BigDecimal(price)).quantity(1).build()
+                ))
+                .build();
+    }
+
+    private List<Rule> createRules() {
+        List<Rule> rules = new ArrayList<>();
+        rules.add(Rule.builder().id("R1").name("9折")
+                .type(RuleType.DISCOUNT).discount(new BigDecimal("0.9")).priority(1)
+                .exclusiveRuleIds(new HashSet<>(Collections.singletonList("R2"))).build());
+        rules.add(Rule.builder().id("R3").name("满260减20")
+                .type(RuleType.THRESHOLD_AMOUNT_OFF).threshold(new BigDecimal("260")).discount(new BigDecimal("20"))
+                .priority(2).build());
+        rules.add(Rule.builder().id("R2").name("8折")
+                .type(RuleType.DISCOUNT).discount(new BigDecimal("0.8")).priority(3).build());
+        return rules;
+    }
+}
@@ -0,0 +1,265 @@
+package com.bruce.promotiondemo.engine;
+
+import com.bruce.promotiondemo.PromotionCaseGenerator;
+import com.bruce.promotiondemo.model.*;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 新架构引擎的流式剪枝组合搜索测试
+ *
+ * 参照实现 {@link ReferenceEngine} 是改为流式搜索之前的 NewPromotionEngine 原样拷贝：先生成全部合法组合，
+ * 每个组合拷贝购物车从原价重算，取优惠严格更大者。
+ *
+ * - 20 ~ 24 条规则（含互斥、门槛临界、折扣舍入）：结果与参照逐项一致，同额时选中同一组合
+ * - 上界剪枝：与关闭剪枝的同一搜索结果一致，展开的节点不多于后者，整体明显更少
+ * - 折扣率 > 1 时上界不成立：剪枝自动关闭，结果仍与参照一致
+ */
+@DisplayName("流式剪枝组合搜索测试")
+public class CombinationSearchTest {
+
+    private static final int ROUNDS = 300;
+
+    @Test
+    @DisplayName("20 条以上规则时与改造前的全量组合实现结果一致")
+    void testMatchesReferenceWithManyRules() {
+        Random rnd = new Random(20240801L);
+        NewPromotionEngine engine = new NewPromotionEngine();
+        ReferenceEngine reference = new ReferenceEngine();
+        int withDiscount = 0;
+        for (int t = 0; t < ROUNDS; t++) {
+            Cart cart = PromotionCaseGenerator.cart(rnd, 1 + rnd.nextInt(8));
+            List<Rule> rules = PromotionCaseGenerator.rules(rnd, 20 + rnd.nextInt(5), cart.getTotalPrice());
+            String input = "round " + t + ": " + cart.getItems() + " " + rules;
+
+            Cart expected = reference.calculate(cart, rules);
+            assertEquals(signature(expected), signature(engine.calculate(cart, rules)), input);
+            assertEquals(signature(expected), signature(engine.calculate(cart, CompiledRuleSet.compile(rules))), input);
+            if (expected.getTotalDiscount().signum() > 0) {
+                withDiscount++;
+            }
+        }
+        assertTrue(withDiscount > ROUNDS * 9 / 10, "withDiscount=" + withDiscount);
+    }
+
+    @Test
+    @DisplayName("上界剪枝不改变结果，且展开的节点更少")
+    void testPruningReducesNodesWithoutChangingResult() {
+        Random rnd = new Random(20240802L);
+        long prunedNodes = 0L;
+        long plainNodes = 0L;
+        for (int t = 0; t < ROUNDS; t++) {
+            Cart cart = PromotionCaseGenerator.cart(rnd, 1 + rnd.nextInt(8));
+            List<Rule> rules = PromotionCaseGenerator.rules(rnd, 20 + rnd.nextInt(4), cart.getTotalPrice());
+            CompiledRuleSet ruleSet = CompiledRuleSet.compile(rules);
+            BigDecimal originalPrice = cart.getTotalPrice();
+            int[] matched = NewPromotionEngine.matchRules(ruleSet, originalPrice);
+            String input = "round " + t + ": " + cart.getItems() + " " + rules;
+
+            NewPromotionEngine.CombinationSearch pruned = new NewPromotionEngine.CombinationSearch(ruleSet, matched, originalPrice);
+            NewPromotionEngine.CombinationSearch plain = new NewPromotionEngine.CombinationSearch(ruleSet, matched, originalPrice)
+                    .withoutPruning();
+            assertEquals(ids(plain.run()), ids(pruned.run()), input);
+            assertEquals(0, plain.getBestDiscount().compareTo(pruned.getBestDiscount()), input);
+            assertTrue(pruned.getNodes() <= plain.getNodes(), input);
+            prunedNodes += pruned.getNodes();
+            plainNodes += plain.getNodes();
+        }
+        assertTrue(prunedNodes * 2 < plainNodes, "pruned=" + prunedNodes + ", plain=" + plainNodes);
+    }
+
+    @Test
+    @DisplayName("折扣率大于 1 时关闭剪枝，结果仍与参照一致")
+    void testUnboundableRulesDisablePruning() {
+        Random rnd = new Random(20240803L);
+        NewPromotionEngine engine = new NewPromotionEngine();
+        ReferenceEngine reference = new ReferenceEngine();
+        for (int t = 0; t < ROUNDS / 3; t++) {
+            Cart cart = PromotionCaseGenerator.cart(rnd, 1 + rnd.nextInt(4));
+            List<Rule> rules = PromotionCaseGenerator.rules(rnd, 20, cart.getTotalPrice());
+            // 加价规则：减免为负，不会被选中，但让上界失效
+            rules.add(Rule.builder().id("R-UP").name("加价").type(RuleType.DISCOUNT)
+                    .discount(new BigDecimal("1.10")).priority(0).build());
+            CompiledRuleSet ruleSet = CompiledRuleSet.compile(rules);
+            BigDecimal originalPrice = cart.getTotalPrice();
+            int[] matched = NewPromotionEngine.matchRules(ruleSet, originalPrice);
+
+            NewPromotionEngine.CombinationSearch search = new NewPromotionEngine.CombinationSearch(ruleSet, matched, originalPrice);
+            NewPromotionEngine.CombinationSearch plain = new NewPromotionEngine.CombinationSearch(ruleSet, matched, originalPrice)
+                    .withoutPruning();
+            search.run();
+            plain.run();
+            assertEquals(plain.getNodes(), search.getNodes(), "round " + t);
+            assertEquals(signature(reference.calculate(cart, rules)), signature(engine.calculate(cart, ruleSet)), "round " + t);
+        }
+    }
+
+    private static List<String> ids(List<Rule> rules) {
+        return rules == null ? Collections.emptyList() : rules.stream().map(Rule::getId).collect(Collectors.toList());
+    }
+
+    /**
+     * 应付金额 + 每条明细（规则、基准价、减免、减后价）
+     */
+    private static String signature(Cart cart) {
+        StringBuilder sb = new StringBuilder().append(cart.getPayPrice().stripTrailingZeros().toPlainString());
+        for (ReductionDetail detail : cart.getReductionDetails()) {
+            sb.append('|').append(detail.getRuleId())
+                    .append(':').append(detail.getBasePrice().stripTrailingZeros().toPlainString())
+                    .append(',').append(detail.getReduction().stripTrailingZeros().toPlainString())
+                    .append(',').append(detail.getCalculatedPrice().stripTrailingZeros().toPlainString());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 改造前（预先生成全部组合、每个组合拷贝购物车）的 NewPromotionEngine，原样保留作对照。
+     */
+    private static final class ReferenceEngine {
+
+        Cart calculate(Cart cart, List<Rule> rules) {
+            BigDecimal originalPrice = cart.getTotalPrice();
+
+            // 1. 过滤出基于原价能命中的规则
+            List<Rule> matchedRules = rules.stream()
+                    .filter(r -> checkRuleCondition(r, originalPrice))
+                    .sorted(Comparator.comparingInt(Rule::getPriority))
+                    .collect(Collectors.toList());
+
+            if (matchedRules.isEmpty()) {
+                return cart.copy();
+            }
+
+            // 2. 生成所有合法组合（排除互斥）
+            List<List<Rule>> validCombinations = generateValidCombinations(matchedRules);
+
+            // 3. 计算每个组合的结果，找出最优
+            Cart bestResult = null;
+            BigDecimal bestDiscount = BigDecimal.ZERO;
+
+            for (List<Rule> combination : validCombinations) {
+                Cart result = calculateCombination(cart, combination);
+                BigDecimal discount = result.getTotalDiscount();
+
+                if (discount.compareTo(bestDiscount) > 0) {
+                    bestDiscount = discount;
+                    bestResult = result;
+                }
+            }
+
+            return bestResult != null ? bestResult : cart.copy();
+        }
+
+        private boolean checkRuleCondition(Rule rule, BigDecimal price) {
+            if (rule.getType() == RuleType.THRESHOLD_AMOUNT_OFF) {
+                return price.compareTo(rule.getThreshold()) >= 0;
+            }
+            return true;
+        }
+
+        private List<List<Rule>> generateValidCombinations(List<Rule> rules) {
+            List<List<Rule>> result = new ArrayList<>();
+            generateCombinations(rules, 0, new ArrayList<>(), result);
+            return result;
+        }
+
+        private void generateCombinations(List<Rule> rules, int index, List<Rule> current, List<List<Rule>> result) {
+            if (index == rules.size()) {
+                if (!current.isEmpty()) {
+                    result.add(new ArrayList<>(current));
+                }
+                return;
+            }
+
+            Rule rule = rules.get(index);
+
+            // 检查当前规则是否与已选规则互斥
+            boolean canAdd = current.stream().noneMatch(r -> r.isExclusiveWith(rule));
+
+            // 不选当前规则
+            generateCombinations(rules, index + 1, current, result);
+
+            // 选当前规则（如果可以）
+            if (canAdd) {
+                current.add(rule);
+                generateCombinations(rules, index + 1, current, result);
+                current.remove(current.size() - 1);
+            }
+        }
+
+        private Cart calculateCombination(Cart originalCart, List<Rule> combination) {
+            Cart result = originalCart.copy();
+            BigDecimal currentPrice = result.getTotalPrice();
+
+            List<Rule> sortedRules = combination.stream()
+                    .sorted(Comparator
+                            .comparingInt((Rule r) -> stageOf(r.getType()))
+                            .thenComparingInt(Rule::getPriority))
+                    .collect(Collectors.toList());
+
+            for (Rule rule : sortedRules) {
+                if (!checkRuleConditionForCurrent(rule, currentPrice)) {
+                    continue;
+                }
+
+                BigDecimal reduction = calculateReduction(rule, currentPrice);
+                if (reduction.compareTo(BigDecimal.ZERO) <= 0) {
+                    continue;
+                }
+
+                BigDecimal newPrice = currentPrice.subtract(reduction);
+
+                ReductionDetail detail = ReductionDetail.builder()
+                        .ruleId(rule.getId())
+                        .ruleName(rule.getName())
+                        .basePrice(currentPrice)
+                        .reduction(reduction)
+                        .calculatedPrice(newPrice)
+                        .valid(true)
+                        .build();
+
+                result.getReductionDetails().add(detail);
+                result.getAppliedRules().add(rule);
+                currentPrice = newPrice;
+            }
+
+            return result;
+        }
+
+        private boolean checkRuleConditionForCurrent(Rule rule, BigDecimal currentPrice) {
+            if (rule.getType() == RuleType.THRESHOLD_AMOUNT_OFF) {
+                return currentPrice.compareTo(rule.getThreshold()) >= 0;
+            }
+            return true;
+        }
+
+        private BigDecimal calculateReduction(Rule rule, BigDecimal basePrice) {
+            switch (rule.getType()) {
+                case DISCOUNT:
+                    BigDecimal discountRate = BigDecimal.ONE.subtract(rule.getDiscount());
+                    return basePrice.multiply(discountRate).setScale(2, RoundingMode.HALF_UP);
+
+                case AMOUNT_OFF:
+                case THRESHOLD_AMOUNT_OFF:
+                    return rule.getDiscount().setScale(2, RoundingMode.HALF_UP);
+
+                default:
+                    return BigDecimal.ZERO;
+            }
+        }
+
+        private int stageOf(RuleType type) {
+            if (type == RuleType.DISCOUNT) {
+                return 0;
+            }
+            return 1;
+        }
+    }
+}
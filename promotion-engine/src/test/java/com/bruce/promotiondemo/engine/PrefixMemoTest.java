@@ -0,0 +1,102 @@
+package com.bruce.promotiondemo.engine;
+
+import com.bruce.promotiondemo.model.Rule;
+import com.bruce.promotiondemo.model.RuleType;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 组合搜索的前缀记忆化测试
+ *
+ * 记忆化只在 24 条以上、且有同额直减/满减的规则集上启用，这里用 24 ~ 30 条同额密集的规则（暴力穷举跑不动），
+ * 以只剪枝、不记忆化的同一搜索作对照。
+ *
+ * - 记忆化保持启用、试探后放弃两条分支都要走到
+ * - 两种情况下选中的组合（含同额时的先后）都与对照一致
+ */
+@DisplayName("前缀记忆化组合搜索测试")
+public class PrefixMemoTest {
+
+    private static final int ROUNDS = 60;
+
+    @Test
+    @DisplayName("规则多且同额密集时，记忆化搜索与不带记忆化的搜索结果一致")
+    void testMemoizedSearchMatchesPlainSearch() {
+        Random rnd = new Random(31L);
+        int memoKept = 0;
+        int memoAbandoned = 0;
+        for (int t = 0; t < ROUNDS; t++) {
+            BigDecimal price = BigDecimal.valueOf(10_000 + rnd.nextInt(500_000), 2);
+            List<Rule> rules = tieHeavyRules(rnd, 24 + rnd.nextInt(7), price);
+            String input = "round " + t + ": " + price + " " + rules;
+
+            NewPromotionEngine.CombinationSearch memo = search(rules, price);
+            assertEquals(ids(search(rules, price).withoutMemo().run()), ids(memo.run()), input);
+            if (memo.isMemoAbandoned()) {
+                memoAbandoned++;
+            } else if (memo.getMemoHits() > 0) {
+                memoKept++;
+            }
+        }
+        assertTrue(memoKept > 0 && memoAbandoned > 0, "kept=" + memoKept + ", abandoned=" + memoAbandoned);
+    }
+
+    private static NewPromotionEngine.CombinationSearch search(List<Rule> rules, BigDecimal price) {
+        CompiledRuleSet ruleSet = CompiledRuleSet.compile(rules);
+        int[] matched = Arrays.stream(ruleSet.priorityOrder())
+                .filter(i -> matches(ruleSet.getRule(i), price))
+                .toArray();
+        return new NewPromotionEngine.CombinationSearch(ruleSet, matched, price);
+    }
+
+    private static boolean matches(Rule rule, BigDecimal price) {
+        return rule.getType() != RuleType.THRESHOLD_AMOUNT_OFF || price.compareTo(rule.getThreshold()) >= 0;
+    }
+
+    private static List<String> ids(List<Rule> rules) {
+        return rules == null ? Collections.emptyList() : rules.stream().map(Rule::getId).collect(Collectors.toList());
+    }
+
+    /**
+     * 同额密集的规则集：直减/满减只有 3 档面额（原价的 1% ~ 2.5%），满减门槛在原价的 10% ~ 90%（几乎都能命中），
+     * 折扣约占 1/6，互斥稀疏。不同前缀经常减掉同样的金额、走到同一价格。
+     */
+    private static List<Rule> tieHeavyRules(Random rnd, int count, BigDecimal price) {
+        long priceCents = price.movePointRight(2).longValue();
+        long[] faces = {priceCents / 100 + 1, priceCents / 50 + 1, priceCents / 40 + 1};
+        List<Rule> rules = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Rule.RuleBuilder builder = Rule.builder()
+                    .id("R" + i)
+                    .name("规则" + i)
+                    .priority(rnd.nextInt(count / 2));
+            int kind = rnd.nextInt(6);
+            BigDecimal face = BigDecimal.valueOf(faces[rnd.nextInt(faces.length)], 2);
+            if (kind == 0) {
+                builder.type(RuleType.DISCOUNT).discount(BigDecimal.valueOf(50 + rnd.nextInt(50), 2));
+            } else if (kind <= 3) {
+                builder.type(RuleType.AMOUNT_OFF).discount(face);
+            } else {
+                long threshold = priceCents * (10 + rnd.nextInt(81)) / 100;
+                builder.type(RuleType.THRESHOLD_AMOUNT_OFF)
+                        .threshold(BigDecimal.valueOf(threshold, 2))
+                        .discount(face);
+            }
+            rules.add(builder.build());
+        }
+        for (int i = 0; i < count; i++) {
+            for (int j = i + 1; j < count; j++) {
+                if (rnd.nextInt(15) == 0) {
+                    rules.get(i).getExclusiveRuleIds().add("R" + j);
+                }
+            }
+        }
+        return rules;
+    }
+}
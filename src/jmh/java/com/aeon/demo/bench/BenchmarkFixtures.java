@@ -0,0 +1,197 @@
+package com.aeon.demo.bench;
+
+import com.aeon.demo.domain.CartItem;
+import com.aeon.demo.domain.Coupon;
+import com.aeon.demo.domain.CouponCategory;
+import com.aeon.demo.domain.CouponConditionType;
+import com.aeon.demo.domain.Promotion;
+import com.aeon.demo.domain.PromotionLevel;
+import com.aeon.demo.domain.PromotionType;
+import com.aeon.demo.scenario.AeonScenario;
+import com.aeon.demo.scenario.AeonScenarioFactory;
+import com.bruce.coupondemo.model.CouponType;
+import com.bruce.promotiondemo.model.Cart;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * 基准测试的输入生成：以 {@link AeonScenarioFactory} 的 S1 场景为底（S1 的 SKU/促销/券/互斥组总是排在最前），
+ * 按参数规模补足随机数据。随机数由调用方传入的 {@link Random} 驱动，同一个种子得到同一份输入。
+ *
+ * <p>bruce 的贪心选券引擎输入由同一份 AEON 数据映射过去，保证两边测的是同一批购物车和券包
+ * （bruce 促销引擎的基准在 promotion-engine 模块，用它自己的输入生成器）。</p>
+ *
+ * @author codex
+ */
+public final class BenchmarkFixtures {
+
+    /**
+     * 固定的“当前时间”（券过期判断用）。
+     */
+    public static final LocalDateTime NOW = LocalDateTime.of(2026, 1, 1, 0, 0);
+
+    /**
+     * 随机 SKU 池大小：促销/券的适用范围从同一个池里抽，保证和购物车有交集。
+     */
+    static final int SKU_POOL = 64;
+
+    /**
+     * 每组参数预生成的输入份数（2 的幂，按位与轮转）；避免所有调用都命中同一个购物车。
+     */
+    public static final int INPUT_POOL = 32;
+
+    private static final String[] S1_SKUS = {"SKU-APPLE", "SKU-MILK", "SKU-BEEF"};
+    private static final LocalDateTime FAR_FUTURE = LocalDateTime.of(2099, 12, 31, 23, 59, 59);
+
+    private BenchmarkFixtures() {
+    }
+
+    public static AeonScenario scenario() {
+        return new AeonScenarioFactory().getScenario(AeonScenarioFactory.SCENARIO_S1);
+    }
+
+    /**
+     * 购物车：前 3 行是 S1 的 SKU，其余从随机 SKU 池抽取（同一 SKU 可能出现在多行）。
+     */
+    public static List<CartItem> cart(Random rnd, int size) {
+        List<CartItem> items = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String skuId = i < S1_SKUS.length ? S1_SKUS[i] : randomSku(rnd);
+            items.add(new CartItem("C" + i, skuId, 1 + rnd.nextInt(5), money(rnd, 100, 30_000)));
+        }
+        return items;
+    }
+
+    /**
+     * 促销：先取 S1 的促销，不足部分随机补（单品直降/单品折扣/组合满减）。
+     */
+    public static List<Promotion> promotions(Random rnd, int count) {
+        List<Promotion> base = scenario().getPromotions();
+        List<Promotion> promotions = new ArrayList<>(base.subList(0, Math.min(count, base.size())));
+        for (int p = promotions.size(); p < count; p++) {
+            Set<String> scope = rnd.nextInt(10) == 0 ? Collections.emptySet() : randomScope(rnd, 8);
+            long promoId = 5000L + p;
+            int kind = rnd.nextInt(3);
+            if (kind == 0) {
+                promotions.add(Promotion.builder(promoId, "B" + promoId, PromotionLevel.SINGLE, PromotionType.DIRECT_REDUCTION)
+                        .skuScope(scope)
+                        .reduceAmount(money(rnd, 100, 2_000))
+                        .build());
+            } else if (kind == 1) {
+                promotions.add(Promotion.builder(promoId, "B" + promoId, PromotionLevel.SINGLE, PromotionType.DISCOUNT_RATE)
+                        .skuScope(scope)
+                        .discountRate(new BigDecimal(70 + rnd.nextInt(29)).movePointLeft(2))
+                        .build());
+            } else {
+                promotions.add(Promotion.builder(promoId, "B" + promoId, PromotionLevel.GROUP, PromotionType.FULL_REDUCTION)
+                        .skuScope(scope)
+                        .threshold(money(rnd, 5_000, 50_000))
+                        .reduceAmount(money(rnd, 500, 6_000))
+                        .build());
+            }
+        }
+        return promotions;
+    }
+
+    /**
+     * 券包：先取 S1 的券，不足部分随机补。模板号集中在少数几个值上，让同模板叠加上限/互斥组真正起作用。
+     */
+    public static List<Coupon> wallet(Random rnd, int size) {
+        List<Coupon> base = scenario().getCoupons();
+        List<Coupon> coupons = new ArrayList<>(base.subList(0, Math.min(size, base.size())));
+        int templateCount = Math.max(4, size / 2);
+        for (int c = coupons.size(); c < size; c++) {
+            boolean shipping = rnd.nextInt(5) == 0;
+            boolean skuScoped = !shipping && rnd.nextBoolean();
+            coupons.add(Coupon.builder("W" + c, 400 + rnd.nextInt(templateCount), shipping ? CouponCategory.SHIPPING : CouponCategory.GOODS)
+                    .parValue(money(rnd, 500, 8_000))
+                    .bound(rnd.nextBoolean() ? BigDecimal.ZERO : money(rnd, 5_000, 30_000))
+                    .otherAddition(rnd.nextInt(8) == 0 ? 0 : 1)
+                    .conditionType(skuScoped ? CouponConditionType.SKU : CouponConditionType.ALL)
+                    .skuScope(skuScoped ? randomScope(rnd, 10) : Collections.emptySet())
+                    .useEndTime(rnd.nextInt(10) == 0 ? NOW.minusDays(1) : FAR_FUTURE)
+                    .sameTemplateUseLimit(1 + rnd.nextInt(2))
+                    .build());
+        }
+        return coupons;
+    }
+
+    /**
+     * 互斥组：S1 的互斥组 + 若干随机模板对。
+     */
+    public static Map<Integer, List<Integer>> exclusiveGroups(Random rnd, int walletSize) {
+        Map<Integer, List<Integer>> groups = new HashMap<>(scenario().getMutuallyExclusiveGroups());
+        int templateCount = Math.max(4, walletSize / 2);
+        for (int g = 0, count = walletSize / 10; g < count; g++) {
+            groups.put(9100 + g, Arrays.asList(400 + rnd.nextInt(templateCount), 400 + rnd.nextInt(templateCount)));
+        }
+        return groups;
+    }
+
+    /**
+     * AEON 购物车 → bruce 购物车（bruce 的商品没有行号，只保留 SKU/单价/数量）。
+     */
+    public static Cart bruceCart(List<CartItem> items) {
+        List<com.bruce.promotiondemo.model.CartItem> bruceItems = new ArrayList<>(items.size());
+        for (CartItem item : items) {
+            bruceItems.add(com.bruce.promotiondemo.model.CartItem.builder()
+                    .skuCode(item.getSkuId())
+                    .price(item.getSalePrice())
+                    .quantity(item.getQuantity())
+                    .build());
+        }
+        return Cart.builder().items(bruceItems).build();
+    }
+
+    /**
+     * AEON 券 → bruce 券：互斥组取该模板所在的第一个互斥组。
+     */
+    public static List<com.bruce.coupondemo.model.Coupon> bruceWallet(List<Coupon> coupons,
+                                                                       Map<Integer, List<Integer>> exclusiveGroups) {
+        Map<Integer, String> groupByTemplate = new HashMap<>();
+        for (Map.Entry<Integer, List<Integer>> e : new TreeMap<>(exclusiveGroups).entrySet()) {
+            for (Integer templateId : e.getValue()) {
+                groupByTemplate.putIfAbsent(templateId, "X" + e.getKey());
+            }
+        }
+        List<com.bruce.coupondemo.model.Coupon> wallet = new ArrayList<>(coupons.size());
+        for (Coupon c : coupons) {
+            boolean skuScoped = c.getConditionType() == CouponConditionType.SKU;
+            wallet.add(com.bruce.coupondemo.model.Coupon.builder()
+                    .couponId(c.getCouponNo())
+                    .name(c.getCouponNo())
+                    .couponType(c.getCategory() == CouponCategory.SHIPPING ? CouponType.SHIPPING : CouponType.PRODUCT)
+                    .faceValue(c.getParValue())
+                    .threshold(c.getBound())
+                    .applicableSkuCodes(skuScoped ? c.getSkuScope() : null)
+                    .expireDate(c.getUseEndTime() == null ? null : c.getUseEndTime().toLocalDate())
+                    .exclusiveGroupId(groupByTemplate.get(c.getCouponTemplateId()))
+                    .build());
+        }
+        return wallet;
+    }
+
+    private static String randomSku(Random rnd) {
+        return "SKU-R" + rnd.nextInt(SKU_POOL);
+    }
+
+    private static Set<String> randomScope(Random rnd, int maxSize) {
+        Set<String> scope = new HashSet<>();
+        if (rnd.nextInt(3) == 0) {
+            scope.add(S1_SKUS[rnd.nextInt(S1_SKUS.length)]);
+        }
+        for (int i = 0, size = 1 + rnd.nextInt(maxSize); i < size; i++) {
+            scope.add(randomSku(rnd));
+        }
+        return scope;
+    }
+
+    /**
+     * [minCents, maxCents) 之间的金额（两位小数）。
+     */
+    private static BigDecimal money(Random rnd, int minCents, int maxCents) {
+        return BigDecimal.valueOf(minCents + rnd.nextInt(maxCents - minCents), 2);
+    }
+}
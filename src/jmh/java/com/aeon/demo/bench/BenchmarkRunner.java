@@ -0,0 +1,248 @@
+package com.aeon.demo.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * 基准测试入口：跑完后结果写成 JSON（含 gc profiler 的分配指标），可选地与基线 JSON 对比并在退化时以非 0 退出。
+ *
+ * <pre>
+ * mvn -P jmh test-compile exec:exec                                         # 全部基准，对比默认基线
+ * mvn -P jmh test-compile exec:exec -Djmh.args="--include PromoCalc --quick"
+ * mvn -P jmh test-compile exec:exec -Djmh.args="--save-baseline"            # 把本次结果存为基线
+ * mvn -P jmh test-compile exec:exec -Djmh.args="--include PromoCalc --csv target/jmh/promo.csv"
+ * </pre>
+ *
+ * <ul>
+ *   <li>--include &lt;regex&gt;：只跑匹配的基准（默认全部）</li>
+ *   <li>--result &lt;file&gt;：本次结果 JSON（默认 target/jmh/result.json）</li>
+ *   <li>--baseline &lt;file&gt;：对比用的基线 JSON（默认 src/jmh/baselines/baseline.json，不存在则跳过对比）</li>
+ *   <li>--save-baseline：本次结果覆盖基线文件</li>
+ *   <li>--threshold &lt;percent&gt;：判定退化的幅度（默认 10）</li>
+ *   <li>--csv &lt;file&gt;：另把结果导出为 CSV（每行一个 benchmark + mode + 参数组合），用于画规模曲线</li>
+ *   <li>--quick：1 个 fork、迭代减半，用于本地快速确认</li>
+ * </ul>
+ *
+ * <p>对比口径（同一 benchmark + mode + 参数组合）：吞吐下降、平均耗时上升、每次调用的分配字节数（gc.alloc.rate.norm）上升，
+ * 超过阈值即记为退化；只在一边出现的组合只提示不判定。</p>
+ *
+ * @author codex
+ */
+public final class BenchmarkRunner {
+
+    private static final String DEFAULT_RESULT = "target/jmh/result.json";
+    private static final String DEFAULT_BASELINE = "src/jmh/baselines/baseline.json";
+    private static final String ALLOC_METRIC = "gc.alloc.rate.norm";
+    /**
+     * 分配量的绝对容差（字节/次）：小对象上几十字节的抖动不算退化。
+     */
+    private static final double ALLOC_TOLERANCE_BYTES = 64D;
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String include = ".*Benchmark.*";
+        String result = DEFAULT_RESULT;
+        String baseline = DEFAULT_BASELINE;
+        boolean saveBaseline = false;
+        boolean quick = false;
+        String csv = null;
+        double threshold = 10D;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i].trim();
+            if (arg.isEmpty()) {
+                continue;
+            }
+            switch (arg) {
+                case "--include":
+                    include = args[++i];
+                    break;
+                case "--result":
+                    result = args[++i];
+                    break;
+                case "--baseline":
+                    baseline = args[++i];
+                    break;
+                case "--save-baseline":
+                    saveBaseline = true;
+                    break;
+                case "--threshold":
+                    threshold = Double.parseDouble(args[++i]);
+                    break;
+                case "--quick":
+                    quick = true;
+                    break;
+                case "--csv":
+                    csv = args[++i];
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option: " + arg);
+            }
+        }
+
+        Path resultPath = Paths.get(result);
+        Files.createDirectories(resultPath.toAbsolutePath().getParent());
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(resultPath.toString());
+        if (quick) {
+            options.forks(1).warmupIterations(2).measurementIterations(3);
+        }
+        new Runner(options.build()).run();
+        if (csv != null) {
+            exportCsv(resultPath.toFile(), Paths.get(csv));
+        }
+
+        Path baselinePath = Paths.get(baseline);
+        if (saveBaseline) {
+            Files.createDirectories(baselinePath.toAbsolutePath().getParent());
+            Files.copy(resultPath, baselinePath, StandardCopyOption.REPLACE_EXISTING);
+            System.out.println("baseline saved: " + baselinePath);
+            return;
+        }
+        if (!Files.exists(baselinePath)) {
+            System.out.println("no baseline at " + baselinePath + ", skip comparison");
+            return;
+        }
+        int regressions = compare(baselinePath.toFile(), resultPath.toFile(), threshold / 100D);
+        if (regressions > 0) {
+            System.out.println(regressions + " regression(s) over " + threshold + "%");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @return 退化的条目数
+     */
+    static int compare(File baselineFile, File currentFile, double threshold) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        Map<String, JsonNode> baseline = index(mapper.readTree(baselineFile));
+        Map<String, JsonNode> current = index(mapper.readTree(currentFile));
+
+        int regressions = 0;
+        for (Map.Entry<String, JsonNode> e : current.entrySet()) {
+            JsonNode base = baseline.get(e.getKey());
+            if (base == null) {
+                System.out.println("[new]        " + e.getKey());
+                continue;
+            }
+            JsonNode now = e.getValue();
+            double baseScore = base.path("primaryMetric").path("score").asDouble();
+            double nowScore = now.path("primaryMetric").path("score").asDouble();
+            // 吞吐越大越好，其余模式（avgt/sample/ss）越小越好
+            boolean higherIsBetter = "thrpt".equals(now.path("mode").asText());
+            double change = baseScore == 0D ? 0D : (nowScore - baseScore) / baseScore;
+            boolean slower = higherIsBetter ? change < -threshold : change > threshold;
+
+            double baseAlloc = allocation(base);
+            double nowAlloc = allocation(now);
+            boolean moreAlloc = baseAlloc >= 0D && nowAlloc >= 0D
+                    && nowAlloc - baseAlloc > ALLOC_TOLERANCE_BYTES
+                    && nowAlloc > baseAlloc * (1D + threshold);
+
+            if (slower || moreAlloc) {
+                regressions++;
+            }
+            System.out.println(String.format(Locale.ROOT, "%-12s %s  score %.3f -> %.3f %s (%+.1f%%)  alloc %.0f -> %.0f B/op",
+                    slower || moreAlloc ? "[REGRESSION]" : "[ok]",
+                    e.getKey(), baseScore, nowScore, now.path("primaryMetric").path("scoreUnit").asText(),
+                    change * 100D, baseAlloc, nowAlloc));
+        }
+        for (String key : baseline.keySet()) {
+            if (!current.containsKey(key)) {
+                System.out.println("[missing]    " + key);
+            }
+        }
+        return regressions;
+    }
+
+    /**
+     * 结果 JSON → CSV：benchmark, mode, 各参数列（所有结果的参数名并集，按名排序）, score, error, unit, alloc（B/op，没有为空）。
+     */
+    static void exportCsv(File resultFile, Path csvPath) throws IOException {
+        JsonNode results = new ObjectMapper().readTree(resultFile);
+        Set<String> paramNames = new TreeSet<>();
+        for (JsonNode r : results) {
+            r.path("params").fieldNames().forEachRemaining(paramNames::add);
+        }
+        List<String> lines = new ArrayList<>();
+        StringBuilder header = new StringBuilder("benchmark,mode");
+        for (String name : paramNames) {
+            header.append(',').append(name);
+        }
+        lines.add(header.append(",score,error,unit,alloc").toString());
+        for (JsonNode r : results) {
+            String benchmark = r.path("benchmark").asText();
+            StringBuilder line = new StringBuilder(benchmark.substring(benchmark.lastIndexOf('.', benchmark.lastIndexOf('.') - 1) + 1))
+                    .append(',').append(r.path("mode").asText());
+            for (String name : paramNames) {
+                line.append(',').append(r.path("params").path(name).asText(""));
+            }
+            JsonNode primary = r.path("primaryMetric");
+            double alloc = allocation(r);
+            line.append(String.format(Locale.ROOT, ",%.4f,%.4f,%s,%s",
+                    primary.path("score").asDouble(), primary.path("scoreError").asDouble(),
+                    primary.path("scoreUnit").asText(), alloc < 0D ? "" : String.format(Locale.ROOT, "%.0f", alloc)));
+            lines.add(line.toString());
+        }
+        Path parent = csvPath.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Files.write(csvPath, lines);
+        System.out.println("csv written: " + csvPath);
+    }
+
+    /**
+     * benchmark + mode + 参数（按参数名排序）→ 结果节点。
+     */
+    private static Map<String, JsonNode> index(JsonNode results) {
+        Map<String, JsonNode> byKey = new LinkedHashMap<>();
+        for (JsonNode r : results) {
+            StringBuilder key = new StringBuilder(r.path("benchmark").asText())
+                    .append(' ').append(r.path("mode").asText());
+            JsonNode params = r.path("params");
+            Map<String, String> sorted = new TreeMap<>();
+            Iterator<Map.Entry<String, JsonNode>> it = params.fields();
+            while (it.hasNext()) {
+                Map.Entry<String, JsonNode> p = it.next();
+                sorted.put(p.getKey(), p.getValue().asText());
+            }
+            for (Map.Entry<String, String> p : sorted.entrySet()) {
+                key.append(' ').append(p.getKey()).append('=').append(p.getValue());
+            }
+            byKey.put(key.toString(), r);
+        }
+        return byKey;
+    }
+
+    /**
+     * 每次调用的分配字节数；旧版本 JMH 的指标名带 “·” 前缀。没有该指标返回 -1。
+     */
+    private static double allocation(JsonNode result) {
+        Iterator<Map.Entry<String, JsonNode>> it = result.path("secondaryMetrics").fields();
+        while (it.hasNext()) {
+            Map.Entry<String, JsonNode> m = it.next();
+            if (m.getKey().endsWith(ALLOC_METRIC)) {
+                return m.getValue().path("score").asDouble();
+            }
+        }
+        return -1D;
+    }
+}
@@ -0,0 +1,69 @@
+package com.aeon.demo.bench;
+
+import com.aeon.demo.domain.Coupon;
+import com.aeon.demo.engine.coupon.CouponCalcEngine;
+import com.aeon.demo.engine.coupon.CouponCalcResult;
+import com.aeon.demo.engine.coupon.CouponOptimizeMode;
+import com.aeon.demo.engine.coupon.MutuallyExclusivePolicy;
+import com.aeon.demo.engine.promo.PromoCalcEngine;
+import com.aeon.demo.engine.promo.PromoItemResult;
+import com.aeon.demo.engine.promo.PromotionIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link CouponCalcEngine#calcGoodsCoupons}：购物车行数 × 券包大小 × 求解模式。
+ *
+ * <p>入参是真实的促销结果（setup 阶段先跑一遍 {@link PromoCalcEngine}），券包与购物车一一对应、每次调用轮转。</p>
+ *
+ * @author codex
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class CouponCalcBenchmark {
+
+    @Param({"5", "20", "100"})
+    int cartSize;
+
+    @Param({"5", "20", "60"})
+    int walletSize;
+
+    @Param({"GREEDY", "EXACT"})
+    CouponOptimizeMode optimizeMode;
+
+    private CouponCalcEngine engine;
+    private MutuallyExclusivePolicy policy;
+    private List<PromoItemResult>[] promoItems;
+    private List<Coupon>[] wallets;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        Random rnd = new Random(31L * cartSize + walletSize);
+        engine = new CouponCalcEngine(3, optimizeMode, 20L);
+        policy = new MutuallyExclusivePolicy(BenchmarkFixtures.exclusiveGroups(rnd, walletSize));
+
+        PromoCalcEngine promoEngine = new PromoCalcEngine();
+        PromotionIndex promotionIndex = PromotionIndex.build(1L, BenchmarkFixtures.promotions(rnd, 8));
+        promoItems = new List[BenchmarkFixtures.INPUT_POOL];
+        wallets = new List[BenchmarkFixtures.INPUT_POOL];
+        for (int i = 0; i < promoItems.length; i++) {
+            promoItems[i] = promoEngine.calc(BenchmarkFixtures.cart(rnd, cartSize), promotionIndex).getItems();
+            wallets[i] = BenchmarkFixtures.wallet(rnd, walletSize);
+        }
+    }
+
+    @Benchmark
+    public CouponCalcResult calcGoodsCoupons() {
+        int i = cursor++ & (promoItems.length - 1);
+        return engine.calcGoodsCoupons(promoItems[i], wallets[i], policy, BenchmarkFixtures.NOW);
+    }
+}
@@ -0,0 +1,79 @@
+package com.aeon.demo.bench;
+
+import com.aeon.demo.domain.CartItem;
+import com.bruce.coupondemo.engine.CouponEngine;
+import com.bruce.coupondemo.engine.CouponWallet;
+import com.bruce.coupondemo.model.Coupon;
+import com.bruce.coupondemo.model.CouponResult;
+import com.bruce.promotiondemo.model.Cart;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * bruce 贪心选券 {@link CouponEngine#calculate}：购物车行数 × 券包大小。
+ *
+ * <p>券包由同规模的 AEON 券包映射而来；促销后金额取购物车原价的 9 折，运费固定 12 元。
+ * {@code calculateWithWallet} 使用预编译好的 {@link CouponWallet}，对应券包不变、跨请求复用的场景。</p>
+ *
+ * @author codex
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class CouponEngineBenchmark {
+
+    private static final BigDecimal SHIPPING_FEE = new BigDecimal("12.00");
+    private static final BigDecimal PROMOTION_RATE = new BigDecimal("0.90");
+
+    @Param({"5", "20", "100"})
+    int cartSize;
+
+    @Param({"5", "20", "60"})
+    int walletSize;
+
+    private final CouponEngine engine = new CouponEngine();
+    private Cart[] carts;
+    private BigDecimal[] pricesAfterPromotion;
+    private List<Coupon>[] wallets;
+    private CouponWallet[] compiledWallets;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        Random rnd = new Random(31L * cartSize + walletSize);
+        Map<Integer, List<Integer>> exclusiveGroups = BenchmarkFixtures.exclusiveGroups(rnd, walletSize);
+        carts = new Cart[BenchmarkFixtures.INPUT_POOL];
+        pricesAfterPromotion = new BigDecimal[BenchmarkFixtures.INPUT_POOL];
+        wallets = new List[BenchmarkFixtures.INPUT_POOL];
+        compiledWallets = new CouponWallet[BenchmarkFixtures.INPUT_POOL];
+        for (int i = 0; i < carts.length; i++) {
+            List<CartItem> items = BenchmarkFixtures.cart(rnd, cartSize);
+            carts[i] = BenchmarkFixtures.bruceCart(items);
+            pricesAfterPromotion[i] = carts[i].getTotalPrice().multiply(PROMOTION_RATE).setScale(2, RoundingMode.HALF_UP);
+            wallets[i] = BenchmarkFixtures.bruceWallet(BenchmarkFixtures.wallet(rnd, walletSize), exclusiveGroups);
+            compiledWallets[i] = CouponWallet.compile(wallets[i]);
+        }
+    }
+
+    @Benchmark
+    public CouponResult calculate() {
+        int i = cursor++ & (carts.length - 1);
+        return engine.calculate(pricesAfterPromotion[i], SHIPPING_FEE, wallets[i], carts[i].getItems());
+    }
+
+    @Benchmark
+    public CouponResult calculateWithWallet() {
+        int i = cursor++ & (carts.length - 1);
+        return engine.calculate(pricesAfterPromotion[i], SHIPPING_FEE, compiledWallets[i], carts[i].getItems());
+    }
+}
@@ -0,0 +1,64 @@
+package com.aeon.demo.bench;
+
+import com.aeon.demo.domain.CartItem;
+import com.aeon.demo.engine.promo.PromoCalcEngine;
+import com.aeon.demo.engine.promo.PromoCalcResult;
+import com.aeon.demo.engine.promo.PromoSearchMode;
+import com.aeon.demo.engine.promo.PromotionIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link PromoCalcEngine#calc(List, PromotionIndex)}：购物车行数 × 促销数 × 搜索模式。
+ *
+ * <p>促销索引按服务里的用法预先构建（不计入耗时）；每次调用轮转使用 {@link BenchmarkFixtures#INPUT_POOL} 个购物车之一。</p>
+ *
+ * @author codex
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class PromoCalcBenchmark {
+
+    @Param({"5", "20", "100"})
+    int cartSize;
+
+    @Param({"3", "8", "16"})
+    int promoCount;
+
+    @Param({"BRANCH_AND_BOUND", "EXHAUSTIVE"})
+    PromoSearchMode searchMode;
+
+    private PromoCalcEngine engine;
+    private PromotionIndex promotionIndex;
+    private List<CartItem>[] carts;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        Random rnd = new Random(31L * cartSize + promoCount);
+        engine = new PromoCalcEngine(50_000L, searchMode);
+        promotionIndex = PromotionIndex.build(1L, BenchmarkFixtures.promotions(rnd, promoCount));
+        carts = new List[BenchmarkFixtures.INPUT_POOL];
+        for (int i = 0; i < carts.length; i++) {
+            carts[i] = BenchmarkFixtures.cart(rnd, cartSize);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.shutdown();
+    }
+
+    @Benchmark
+    public PromoCalcResult calc() {
+        return engine.calc(carts[cursor++ & (carts.length - 1)], promotionIndex);
+    }
+}
@@ -1,15 +1,20 @@
 package com.aeon.demo.controller;
 
+import com.aeon.demo.dto.AeonOrderCalcBatchRequest;
+import com.aeon.demo.dto.AeonOrderCalcBatchResponse;
 import com.aeon.demo.dto.AeonOrderCalcRequest;
 import com.aeon.demo.dto.AeonOrderCalcResponse;
 import com.aeon.demo.dto.CartItemRequest;
 import com.aeon.demo.scenario.AeonScenarioFactory;
 import com.aeon.demo.service.AeonOrderCalcService;
 import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
 
 /**
  * AEON(永旺)「促销+券」演示接口。
@@ -35,6 +40,23 @@ public class AeonOrderCalcController {
         return orderCalcService.calc(request);
     }
 
+    /**
+     * 批量订单确认计算：多个购物车一起算，结果按入参顺序返回，单条失败不影响其他条。
+     */
+    @PostMapping("/order/calc/batch")
+    public AeonOrderCalcBatchResponse calcBatch(@RequestBody AeonOrderCalcBatchRequest request) {
+        return orderCalcService.calcBatch(request);
+    }
+
+    /**
+     * 入参不合法（数量/金额超出上限、批量条数过多）：400 + 原因，不按 500 返回。
+     */
+    @ExceptionHandler(IllegalArgumentException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public Map<String, String> badRequest(IllegalArgumentException e) {
+        return Collections.singletonMap("message", e.getMessage());
+    }
+
     /**
      * 返回一个可直接复制到 Postman 的示例请求。
      */
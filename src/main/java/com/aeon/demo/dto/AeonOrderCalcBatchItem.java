@@ -0,0 +1,49 @@
+package com.aeon.demo.dto;
+
+/**
+ * 批量计算中单个购物车的结果：成功时 response 非空，失败时只影响本条（errorMessage 说明原因）。
+ *
+ * @author codex
+ */
+public class AeonOrderCalcBatchItem {
+
+    /**
+     * 在入参列表中的下标。
+     */
+    private int index;
+    private boolean success;
+    private String errorMessage;
+    private AeonOrderCalcResponse response;
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public void setSuccess(boolean success) {
+        this.success = success;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public void setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+
+    public AeonOrderCalcResponse getResponse() {
+        return response;
+    }
+
+    public void setResponse(AeonOrderCalcResponse response) {
+        this.response = response;
+    }
+}
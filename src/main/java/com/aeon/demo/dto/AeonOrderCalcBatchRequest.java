@@ -0,0 +1,22 @@
+package com.aeon.demo.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量订单计算入参：一次提交多个购物车（同场景的促销索引/互斥组/运费规则只编译一次）。
+ *
+ * @author codex
+ */
+public class AeonOrderCalcBatchRequest {
+
+    private List<AeonOrderCalcRequest> requests = new ArrayList<>();
+
+    public List<AeonOrderCalcRequest> getRequests() {
+        return requests;
+    }
+
+    public void setRequests(List<AeonOrderCalcRequest> requests) {
+        this.requests = requests;
+    }
+}
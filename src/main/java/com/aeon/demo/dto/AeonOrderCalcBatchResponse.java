@@ -0,0 +1,59 @@
+package com.aeon.demo.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量订单计算出参：results 与入参顺序一一对应。
+ *
+ * @author codex
+ */
+public class AeonOrderCalcBatchResponse {
+
+    private int total;
+    private int succeeded;
+    private int failed;
+    private long elapsedMicros;
+
+    private List<AeonOrderCalcBatchItem> results = new ArrayList<>();
+
+    public int getTotal() {
+        return total;
+    }
+
+    public void setTotal(int total) {
+        this.total = total;
+    }
+
+    public int getSucceeded() {
+        return succeeded;
+    }
+
+    public void setSucceeded(int succeeded) {
+        this.succeeded = succeeded;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    public void setFailed(int failed) {
+        this.failed = failed;
+    }
+
+    public long getElapsedMicros() {
+        return elapsedMicros;
+    }
+
+    public void setElapsedMicros(long elapsedMicros) {
+        this.elapsedMicros = elapsedMicros;
+    }
+
+    public List<AeonOrderCalcBatchItem> getResults() {
+        return results;
+    }
+
+    public void setResults(List<AeonOrderCalcBatchItem> results) {
+        this.results = results;
+    }
+}
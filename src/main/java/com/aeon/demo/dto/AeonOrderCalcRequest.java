@@ -1,5 +1,7 @@
 package com.aeon.demo.dto;
 
+import com.aeon.demo.engine.coupon.CouponOptimizeMode;
+
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
@@ -33,6 +35,11 @@ public class AeonOrderCalcRequest {
      */
     private List<CouponRequest> coupons = new ArrayList<>();
 
+    /**
+     * 可选：商品券求解模式（GREEDY/EXACT），为空则使用引擎默认（贪心）。
+     */
+    private CouponOptimizeMode couponOptimizeMode;
+
     public String getScenario() {
         return scenario;
     }
@@ -96,5 +103,12 @@ public class AeonOrderCalcRequest {
     public void setCoupons(List<CouponRequest> coupons) {
         this.coupons = coupons;
     }
-}
 
+    public CouponOptimizeMode getCouponOptimizeMode() {
+        return couponOptimizeMode;
+    }
+
+    public void setCouponOptimizeMode(CouponOptimizeMode couponOptimizeMode) {
+        this.couponOptimizeMode = couponOptimizeMode;
+    }
+}
@@ -25,6 +25,8 @@ public class AeonOrderCalcResponse {
     private FreightInfo freight;
     private AmountSummary amountSummary;
 
+    private StageTimings stageTimings;
+
     private List<String> trace = new ArrayList<>();
 
     public String getScenario() {
@@ -91,6 +93,14 @@ public class AeonOrderCalcResponse {
         this.amountSummary = amountSummary;
     }
 
+    public StageTimings getStageTimings() {
+        return stageTimings;
+    }
+
+    public void setStageTimings(StageTimings stageTimings) {
+        this.stageTimings = stageTimings;
+    }
+
     public List<String> getTrace() {
         return trace;
     }
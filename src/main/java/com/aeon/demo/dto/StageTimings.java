@@ -0,0 +1,61 @@
+package com.aeon.demo.dto;
+
+/**
+ * 各阶段耗时（微秒），用于观察一次订单计算的时间花在哪里。
+ *
+ * @author codex
+ */
+public class StageTimings {
+
+    private long promoMicros;
+    private long goodsCouponMicros;
+    /**
+     * 运费计算（用券前 + 用券后二次计算）。
+     */
+    private long freightMicros;
+    /**
+     * 运费券（预处理 + 两次计算）。
+     */
+    private long shippingCouponMicros;
+    private long totalMicros;
+
+    public long getPromoMicros() {
+        return promoMicros;
+    }
+
+    public void setPromoMicros(long promoMicros) {
+        this.promoMicros = promoMicros;
+    }
+
+    public long getGoodsCouponMicros() {
+        return goodsCouponMicros;
+    }
+
+    public void setGoodsCouponMicros(long goodsCouponMicros) {
+        this.goodsCouponMicros = goodsCouponMicros;
+    }
+
+    public long getFreightMicros() {
+        return freightMicros;
+    }
+
+    public void setFreightMicros(long freightMicros) {
+        this.freightMicros = freightMicros;
+    }
+
+    public long getShippingCouponMicros() {
+        return shippingCouponMicros;
+    }
+
+    public void setShippingCouponMicros(long shippingCouponMicros) {
+        this.shippingCouponMicros = shippingCouponMicros;
+    }
+
+    public long getTotalMicros() {
+        return totalMicros;
+    }
+
+    public void setTotalMicros(long totalMicros) {
+        this.totalMicros = totalMicros;
+    }
+}
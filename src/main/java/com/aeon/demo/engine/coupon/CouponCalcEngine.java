@@ -4,19 +4,23 @@ import com.aeon.demo.domain.Coupon;
 import com.aeon.demo.domain.CouponCategory;
 import com.aeon.demo.domain.CouponConditionType;
 import com.aeon.demo.engine.promo.PromoItemResult;
-import com.aeon.demo.util.MoneyAllocator;
+import com.aeon.demo.util.MoneyCents;
 import com.aeon.demo.util.MoneyUtils;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
  * 券计算引擎（最小化）。
  *
- * <p>对齐《永旺券&促销.md》：商品券/运费券分开算，默认“贪心”推荐最优方案。</p>
+ * <p>对齐《永旺券&促销.md》：商品券/运费券分开算，默认“贪心”推荐最优方案；
+ * 商品券可选 {@link CouponOptimizeMode#EXACT} 精确求解（受时间预算约束，超时退回贪心，结果里标明实际采用的模式）。</p>
+ *
+ * <p>内部金额统一用“分”({@link MoneyCents}) 计算，只在写入 {@link CouponView}/{@link CouponCalcResult} 时转回 BigDecimal；
+ * 购物车商品映射为稠密下标，券的适用范围存为位图({@link ItemMask})，溢出校验/分摊/范围排序都不分配对象。</p>
  *
  * @author codex
  */
@@ -27,26 +31,57 @@ public class CouponCalcEngine {
      */
     private final int goodsTemplateUseLimitCount;
 
+    /**
+     * 未指定时商品券使用的求解模式。
+     */
+    private final CouponOptimizeMode goodsOptimizeMode;
+
+    /**
+     * 精确求解的时间预算（纳秒），超出则退回贪心。
+     */
+    private final long exactTimeBudgetNanos;
+
     public CouponCalcEngine() {
         this(3);
     }
 
     public CouponCalcEngine(int goodsTemplateUseLimitCount) {
+        this(goodsTemplateUseLimitCount, CouponOptimizeMode.GREEDY, 20L);
+    }
+
+    /**
+     * @param exactTimeBudgetMillis 精确求解的时间预算（毫秒）
+     */
+    public CouponCalcEngine(int goodsTemplateUseLimitCount, CouponOptimizeMode goodsOptimizeMode, long exactTimeBudgetMillis) {
         this.goodsTemplateUseLimitCount = goodsTemplateUseLimitCount <= 0 ? 3 : goodsTemplateUseLimitCount;
+        this.goodsOptimizeMode = goodsOptimizeMode == null ? CouponOptimizeMode.GREEDY : goodsOptimizeMode;
+        this.exactTimeBudgetNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0L, exactTimeBudgetMillis));
     }
 
     public CouponCalcResult calcGoodsCoupons(List<PromoItemResult> promoItems,
                                              List<Coupon> allCoupons,
                                              MutuallyExclusivePolicy exclusivePolicy,
                                              LocalDateTime now) {
+        return calcGoodsCoupons(promoItems, allCoupons, exclusivePolicy, now, goodsOptimizeMode);
+    }
+
+    /**
+     * @param optimizeMode 本次使用的求解模式（null 使用引擎默认）
+     */
+    public CouponCalcResult calcGoodsCoupons(List<PromoItemResult> promoItems,
+                                             List<Coupon> allCoupons,
+                                             MutuallyExclusivePolicy exclusivePolicy,
+                                             LocalDateTime now,
+                                             CouponOptimizeMode optimizeMode) {
         List<PromoItemResult> items = promoItems == null ? Collections.emptyList() : promoItems;
         List<Coupon> coupons = allCoupons == null ? Collections.emptyList() : allCoupons;
         MutuallyExclusivePolicy policy = exclusivePolicy == null ? new MutuallyExclusivePolicy(Collections.emptyMap()) : exclusivePolicy;
         LocalDateTime clock = now == null ? LocalDateTime.now() : now;
 
         CouponCalcResult result = new CouponCalcResult();
+        result.setOptimizeMode(optimizeMode == null ? goodsOptimizeMode : optimizeMode);
 
-        Map<String, ItemAmount> itemAmountMap = buildItemAmountMap(items);
+        List<ItemAmount> itemAmounts = buildItemAmounts(items);
 
         List<Candidate> available = new ArrayList<>();
         List<CouponView> notAvailable = new ArrayList<>();
@@ -54,7 +89,7 @@ public class CouponCalcEngine {
             if (c.getCategory() != CouponCategory.GOODS) {
                 continue;
             }
-            Candidate candidate = buildGoodsCandidate(c, itemAmountMap, clock);
+            Candidate candidate = buildGoodsCandidate(c, itemAmounts, clock);
             if (!candidate.eligible) {
                 notAvailable.add(candidate.view);
             } else {
@@ -69,26 +104,27 @@ public class CouponCalcEngine {
             only.view.setUsableStatus(CouponView.STATUS_USABLE);
             only.view.setUsableStatusDesc("仅一张可用券，默认选中（允许溢出）");
 
-            result.setDiscountAmount(MoneyUtils.scale(only.coupon.getParValue()));
+            result.setDiscountAmount(MoneyCents.toBigDecimal(only.parValue));
             result.setAvailableCouponList(Collections.singletonList(only.view));
             result.setNotAvailableCouponList(notAvailable);
+            result.getSelectedTemplateIds().add(only.coupon.getCouponTemplateId());
             return result;
         }
 
         // 排序策略（对齐 AEON：面值高 -> 范围窄 -> 适用商品数少 -> 先过期 -> 门槛高）
         available.sort(Comparator
-                .comparing((Candidate c) -> MoneyUtils.scale(c.coupon.getParValue())).reversed()
+                .comparingLong((Candidate c) -> c.parValue).reversed()
                 .thenComparing((Candidate c) -> c.view.getConditionType(), Comparator.reverseOrder())
-                .thenComparing(c -> c.view.getApplicableCartItemIds().size())
+                .thenComparingInt(c -> c.applicableCount)
                 .thenComparing(c -> c.coupon.getUseEndTime() == null ? LocalDateTime.MAX : c.coupon.getUseEndTime())
-                .thenComparing((Candidate c) -> MoneyUtils.scale(c.coupon.getBound()), Comparator.reverseOrder()));
+                .thenComparing(Comparator.comparingLong((Candidate c) -> c.bound).reversed()));
 
         // 单张大于适用商品金额 / 小于等于
         List<Candidate> greater = available.stream()
-                .filter(c -> MoneyUtils.scale(c.coupon.getParValue()).compareTo(c.applicableAmount) > 0)
+                .filter(c -> c.parValue > c.applicableAmount)
                 .collect(Collectors.toList());
         List<Candidate> lessEqual = available.stream()
-                .filter(c -> MoneyUtils.scale(c.coupon.getParValue()).compareTo(c.applicableAmount) <= 0)
+                .filter(c -> c.parValue <= c.applicableAmount)
                 .collect(Collectors.toList());
 
         List<CouponView> finalAvailableViews = new ArrayList<>();
@@ -105,8 +141,14 @@ public class CouponCalcEngine {
             return result;
         }
 
-        // 若第一张券不可叠加，则只选这一张（对齐 AEON 的 early-return）
-        if (lessEqual.get(0).coupon.getOtherAddition() == 0) {
+        // 精确模式：先求出可叠加券的最优组合（超时返回 null，下面按贪心处理）
+        boolean[] exactChosen = result.getOptimizeMode() == CouponOptimizeMode.EXACT
+                ? exactGoodsSelection(lessEqual, itemAmounts, policy, result)
+                : null;
+
+        // 若第一张券不可叠加，则只选这一张（对齐 AEON 的 early-return）；精确模式下仅当叠加组合不比它更优时
+        if (lessEqual.get(0).coupon.getOtherAddition() == 0
+                && (exactChosen == null || selectedAmount(lessEqual, exactChosen) <= lessEqual.get(0).parValue)) {
             Candidate chosen = lessEqual.get(0);
             chosen.view.setChecked(true);
             chosen.view.setUsableStatus(CouponView.STATUS_USABLE);
@@ -123,26 +165,31 @@ public class CouponCalcEngine {
                 finalAvailableViews.add(c.view);
             }
 
-            result.setDiscountAmount(MoneyUtils.scale(chosen.coupon.getParValue()));
+            result.setDiscountAmount(MoneyCents.toBigDecimal(chosen.parValue));
             result.setAvailableCouponList(finalAvailableViews);
             result.setNotAvailableCouponList(notAvailable);
+            result.getSelectedTemplateIds().add(chosen.coupon.getCouponTemplateId());
             return result;
         }
 
-        // 贪心选择：逐张尝试加入，校验互斥/叠加/溢出/模板种类上限
-        Map<String, BigDecimal> remainingByCartItemId = new HashMap<>();
-        for (ItemAmount a : itemAmountMap.values()) {
-            remainingByCartItemId.put(a.cartItemId, a.amount);
+        // 贪心选择：逐张尝试加入，校验互斥/叠加/溢出/模板种类上限；精确模式下只接受最优组合里的券（校验必然通过）
+        long[] remainingByItem = new long[itemAmounts.size()];
+        for (int i = 0; i < remainingByItem.length; i++) {
+            remainingByItem[i] = itemAmounts.get(i).amount;
         }
+        long[] weightBuffer = new long[remainingByItem.length];
+        int[] weightIndexBuffer = new int[remainingByItem.length];
+        long[] allocBuffer = new long[remainingByItem.length];
 
         Set<Integer> selectedTemplateIds = new LinkedHashSet<>();
         Map<Integer, Integer> selectedCountByTemplate = new HashMap<>();
         Set<Integer> mutuallyExclusiveTemplateIds = new HashSet<>();
 
-        BigDecimal totalDiscount = MoneyUtils.zero();
+        long totalDiscount = 0L;
         boolean anyChecked = false;
 
-        for (Candidate c : lessEqual) {
+        for (int i = 0; i < lessEqual.size(); i++) {
+            Candidate c = lessEqual.get(i);
             int templateId = c.coupon.getCouponTemplateId();
 
             // 模板种类上限
@@ -175,16 +222,22 @@ public class CouponCalcEngine {
             }
 
             // 金额溢出：尝试把 parValue 分摊到“可用商品剩余金额池”
-            BigDecimal parValue = MoneyUtils.scale(c.coupon.getParValue());
-            if (!canAllocate(parValue, c.view.getApplicableCartItemIds(), remainingByCartItemId)) {
+            long parValue = c.parValue;
+            if (!canAllocate(parValue, c.applicableMask, remainingByItem)) {
                 markUnusable(c.view, "金额溢出（适用商品剩余金额不足）");
                 finalAvailableViews.add(c.view);
                 continue;
             }
 
-            allocate(parValue, c.view.getApplicableCartItemIds(), remainingByCartItemId);
+            if (exactChosen != null && !exactChosen[i]) {
+                markUsableUnchecked(c.view, "可用但未选中（精确求解的最优组合不含此券）");
+                finalAvailableViews.add(c.view);
+                continue;
+            }
+
+            allocate(parValue, c.applicableMask, remainingByItem, weightBuffer, weightIndexBuffer, allocBuffer);
             anyChecked = true;
-            totalDiscount = totalDiscount.add(parValue);
+            totalDiscount += parValue;
 
             c.view.setChecked(true);
             c.view.setUsableStatus(CouponView.STATUS_USABLE);
@@ -206,9 +259,10 @@ public class CouponCalcEngine {
             finalAvailableViews.add(c.view);
         }
 
-        result.setDiscountAmount(MoneyUtils.scale(totalDiscount));
+        result.setDiscountAmount(MoneyCents.toBigDecimal(totalDiscount));
         result.setAvailableCouponList(finalAvailableViews);
         result.setNotAvailableCouponList(notAvailable);
+        result.getSelectedTemplateIds().addAll(selectedTemplateIds);
         return result;
     }
 
@@ -217,35 +271,78 @@ public class CouponCalcEngine {
                                                 Set<Integer> selectedGoodsTemplateIds,
                                                 MutuallyExclusivePolicy exclusivePolicy,
                                                 LocalDateTime now) {
-        BigDecimal logistic = MoneyUtils.scale(logisticFee);
+        return calcShippingCoupons(prepareShippingCoupons(allCoupons, selectedGoodsTemplateIds, exclusivePolicy, now), logisticFee);
+    }
+
+    /**
+     * 运费券中与运费金额无关的部分：筛选、过期判断、与已选商品券的互斥、排序。一次请求内可复用于多次运费券计算。
+     */
+    public PreparedShippingCoupons prepareShippingCoupons(List<Coupon> allCoupons,
+                                                          Set<Integer> selectedGoodsTemplateIds,
+                                                          MutuallyExclusivePolicy exclusivePolicy,
+                                                          LocalDateTime now) {
         List<Coupon> coupons = allCoupons == null ? Collections.emptyList() : allCoupons;
         Set<Integer> goodsTemplates = selectedGoodsTemplateIds == null ? Collections.emptySet() : selectedGoodsTemplateIds;
         MutuallyExclusivePolicy policy = exclusivePolicy == null ? new MutuallyExclusivePolicy(Collections.emptyMap()) : exclusivePolicy;
         LocalDateTime clock = now == null ? LocalDateTime.now() : now;
 
-        CouponCalcResult result = new CouponCalcResult();
-
-        List<Candidate> available = new ArrayList<>();
-        List<CouponView> notAvailable = new ArrayList<>();
-
+        List<PreparedShippingCoupons.Entry> entries = new ArrayList<>();
         for (Coupon c : coupons) {
             if (c.getCategory() != CouponCategory.SHIPPING) {
                 continue;
             }
-            Candidate cand = buildShippingCandidate(c, logistic, goodsTemplates, policy, clock);
+            boolean expired = c.getUseEndTime() != null && clock.isAfter(c.getUseEndTime());
+            boolean freightChecked = !policy.isExclusiveWithAny(c.getCouponTemplateId(), goodsTemplates);
+            entries.add(new PreparedShippingCoupons.Entry(entries.size(), c, expired, freightChecked));
+        }
+
+        // 排序（对齐 AEON 运费券排序：面值高 -> 范围窄 -> 先过期 -> 门槛高）；稳定排序，可用券的相对顺序与只对可用券排序一致
+        List<PreparedShippingCoupons.Entry> sorted = new ArrayList<>(entries);
+        sorted.sort(Comparator
+                .comparingLong((PreparedShippingCoupons.Entry e) -> e.parValue).reversed()
+                .thenComparing((PreparedShippingCoupons.Entry e) -> e.conditionType, Comparator.reverseOrder())
+                .thenComparing(e -> e.useEnd)
+                .thenComparing(Comparator.comparingLong((PreparedShippingCoupons.Entry e) -> e.bound).reversed()));
+
+        return new PreparedShippingCoupons(Collections.unmodifiableList(entries), Collections.unmodifiableList(sorted), policy);
+    }
+
+    /**
+     * 基于预处理结果计算运费券：只重算与运费金额相关的门槛/溢出/勾选。
+     */
+    public CouponCalcResult calcShippingCoupons(PreparedShippingCoupons prepared, BigDecimal logisticFee) {
+        long logistic = MoneyCents.of(logisticFee);
+        MutuallyExclusivePolicy policy = prepared.policy;
+
+        CouponCalcResult result = new CouponCalcResult();
+
+        Candidate[] byPosition = new Candidate[prepared.entries.size()];
+        List<CouponView> notAvailable = new ArrayList<>();
+        for (PreparedShippingCoupons.Entry e : prepared.entries) {
+            Candidate cand = buildShippingCandidate(e, logistic);
+            byPosition[e.position] = cand;
             if (!cand.eligible) {
                 notAvailable.add(cand.view);
-            } else {
+            }
+        }
+
+        // 已按 AEON 运费券排序
+        List<Candidate> available = new ArrayList<>();
+        for (PreparedShippingCoupons.Entry e : prepared.sorted) {
+            Candidate cand = byPosition[e.position];
+            if (cand.eligible) {
                 available.add(cand);
             }
         }
 
-        // 运费<=0：直接返回（所有运费券都不可用）
-        if (logistic.compareTo(BigDecimal.ZERO) <= 0) {
+        // 运费<=0：直接返回（所有运费券都不可用）；此时不排序，按入参顺序输出
+        if (logistic <= 0) {
             List<CouponView> views = new ArrayList<>();
-            for (Candidate c : available) {
-                markUnusable(c.view, "运费为0，运费券不可用");
-                views.add(c.view);
+            for (Candidate c : byPosition) {
+                if (c.eligible) {
+                    markUnusable(c.view, "运费为0，运费券不可用");
+                    views.add(c.view);
+                }
             }
             result.setDiscountAmount(MoneyUtils.zero());
             result.setAvailableCouponList(views);
@@ -260,7 +357,8 @@ public class CouponCalcEngine {
                 only.view.setChecked(true);
                 only.view.setUsableStatus(CouponView.STATUS_USABLE);
                 only.view.setUsableStatusDesc("仅一张可用券，默认选中（允许溢出）");
-                result.setDiscountAmount(MoneyUtils.scale(only.coupon.getParValue()));
+                result.setDiscountAmount(MoneyCents.toBigDecimal(only.parValue));
+                result.getSelectedTemplateIds().add(only.coupon.getCouponTemplateId());
             } else {
                 markUnusable(only.view, "与已选商品券互斥");
                 result.setDiscountAmount(MoneyUtils.zero());
@@ -270,18 +368,11 @@ public class CouponCalcEngine {
             return result;
         }
 
-        // 排序（对齐 AEON 运费券排序：面值高 -> 范围窄 -> 先过期 -> 门槛高）
-        available.sort(Comparator
-                .comparing((Candidate c) -> MoneyUtils.scale(c.coupon.getParValue())).reversed()
-                .thenComparing((Candidate c) -> c.view.getConditionType(), Comparator.reverseOrder())
-                .thenComparing(c -> c.coupon.getUseEndTime() == null ? LocalDateTime.MAX : c.coupon.getUseEndTime())
-                .thenComparing((Candidate c) -> MoneyUtils.scale(c.coupon.getBound()), Comparator.reverseOrder()));
-
         List<Candidate> greater = available.stream()
-                .filter(c -> MoneyUtils.scale(c.coupon.getParValue()).compareTo(logistic) > 0)
+                .filter(c -> c.parValue > logistic)
                 .collect(Collectors.toList());
         List<Candidate> lessEqual = available.stream()
-                .filter(c -> MoneyUtils.scale(c.coupon.getParValue()).compareTo(logistic) <= 0)
+                .filter(c -> c.parValue <= logistic)
                 .collect(Collectors.toList());
 
         List<CouponView> finalAvailableViews = new ArrayList<>();
@@ -337,17 +428,18 @@ public class CouponCalcEngine {
                 finalAvailableViews.add(c.view);
             }
 
-            result.setDiscountAmount(MoneyUtils.scale(chosen.coupon.getParValue()));
+            result.setDiscountAmount(MoneyCents.toBigDecimal(chosen.parValue));
             result.setAvailableCouponList(finalAvailableViews);
             result.setNotAvailableCouponList(notAvailable);
+            result.getSelectedTemplateIds().add(chosen.coupon.getCouponTemplateId());
             return result;
         }
 
-        BigDecimal remaining = logistic;
+        long remaining = logistic;
         Set<Integer> selectedTemplates = new LinkedHashSet<>();
         Map<Integer, Integer> selectedCountByTemplate = new HashMap<>();
         Set<Integer> mutuallyExclusiveTemplateIds = new HashSet<>();
-        BigDecimal totalDiscount = MoneyUtils.zero();
+        long totalDiscount = 0L;
 
         for (Candidate c : lessEqual) {
             int templateId = c.coupon.getCouponTemplateId();
@@ -378,14 +470,14 @@ public class CouponCalcEngine {
                 continue;
             }
 
-            if (remaining.compareTo(BigDecimal.ZERO) <= 0) {
+            if (remaining <= 0) {
                 markUnusable(c.view, "运费金额已被抵扣完");
                 finalAvailableViews.add(c.view);
                 continue;
             }
 
-            BigDecimal parValue = MoneyUtils.scale(c.coupon.getParValue());
-            if (remaining.subtract(parValue).compareTo(BigDecimal.ZERO) < 0) {
+            long parValue = c.parValue;
+            if (remaining - parValue < 0) {
                 markUsableUnchecked(c.view, "可用但默认不勾选（抵扣后将溢出，防溢出）");
                 finalAvailableViews.add(c.view);
                 continue;
@@ -397,8 +489,8 @@ public class CouponCalcEngine {
             c.view.setUsableStatusDesc("推荐选中");
             finalAvailableViews.add(c.view);
 
-            remaining = remaining.subtract(parValue);
-            totalDiscount = totalDiscount.add(parValue);
+            remaining -= parValue;
+            totalDiscount += parValue;
             selectedTemplates.add(templateId);
             selectedCountByTemplate.put(templateId, usedCount + 1);
             mutuallyExclusiveTemplateIds.addAll(policy.getExclusiveTemplateIds(templateId));
@@ -407,7 +499,7 @@ public class CouponCalcEngine {
         for (Candidate c : greater) {
             if (!Boolean.TRUE.equals(c.view.getFreightChecked())) {
                 markUnusable(c.view, "与已选商品券互斥");
-            } else if (remaining.compareTo(BigDecimal.ZERO) <= 0) {
+            } else if (remaining <= 0) {
                 markUnusable(c.view, "运费金额已被抵扣完");
             } else {
                 markUsableUnchecked(c.view, "可用但默认不勾选（面值>运费，防溢出）");
@@ -415,32 +507,113 @@ public class CouponCalcEngine {
             finalAvailableViews.add(c.view);
         }
 
-        result.setDiscountAmount(MoneyUtils.scale(totalDiscount));
+        result.setDiscountAmount(MoneyCents.toBigDecimal(totalDiscount));
         result.setAvailableCouponList(finalAvailableViews);
         result.setNotAvailableCouponList(notAvailable);
+        result.getSelectedTemplateIds().addAll(selectedTemplates);
         return result;
     }
 
-    private static Candidate buildGoodsCandidate(Coupon coupon, Map<String, ItemAmount> itemAmountMap, LocalDateTime now) {
-        Candidate cand = new Candidate();
-        cand.coupon = coupon;
-        cand.view = buildBaseView(coupon);
+    /**
+     * 在可叠加的券里精确求解总抵扣最大的组合。
+     *
+     * @return 与 lessEqual 一一对应的选中标记；超时返回 null（并在 result 中标记退回贪心）
+     */
+    private boolean[] exactGoodsSelection(List<Candidate> lessEqual,
+                                          List<ItemAmount> itemAmounts,
+                                          MutuallyExclusivePolicy policy,
+                                          CouponCalcResult result) {
+        long deadline = System.nanoTime() + exactTimeBudgetNanos;
+
+        List<Integer> positions = new ArrayList<>();
+        Map<Integer, Integer> denseTemplate = new HashMap<>();
+        for (int i = 0; i < lessEqual.size(); i++) {
+            Candidate c = lessEqual.get(i);
+            if (c.coupon.getOtherAddition() == 0) {
+                continue;
+            }
+            positions.add(i);
+            denseTemplate.putIfAbsent(c.coupon.getCouponTemplateId(), denseTemplate.size());
+        }
+
+        int[][] exclusiveTemplates = new int[denseTemplate.size()][];
+        for (Map.Entry<Integer, Integer> e : denseTemplate.entrySet()) {
+            List<Integer> exclusive = new ArrayList<>();
+            for (Integer other : policy.getExclusiveTemplateIds(e.getKey())) {
+                Integer dense = denseTemplate.get(other);
+                if (dense != null) {
+                    exclusive.add(dense);
+                }
+            }
+            exclusiveTemplates[e.getValue()] = exclusive.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        int m = positions.size();
+        long[] parValues = new long[m];
+        long[][] masks = new long[m][];
+        int[] templates = new int[m];
+        int[] sameTemplateLimits = new int[m];
+        for (int j = 0; j < m; j++) {
+            Candidate c = lessEqual.get(positions.get(j));
+            parValues[j] = c.parValue;
+            masks[j] = c.applicableMask;
+            templates[j] = denseTemplate.get(c.coupon.getCouponTemplateId());
+            sameTemplateLimits[j] = c.coupon.getSameTemplateUseLimit();
+        }
+        long[] remainingByItem = new long[itemAmounts.size()];
+        for (int i = 0; i < remainingByItem.length; i++) {
+            remainingByItem[i] = itemAmounts.get(i).amount;
+        }
+
+        GoodsCouponSearch search = new GoodsCouponSearch(parValues, masks, templates, sameTemplateLimits,
+                exclusiveTemplates, goodsTemplateUseLimitCount, remainingByItem, deadline);
+        boolean[] chosen = search.run();
+        result.setSearchNodeCount(search.getVisitedCount());
+        if (chosen == null) {
+            result.setOptimizeMode(CouponOptimizeMode.GREEDY);
+            result.setOptimizeFallback(true);
+            return null;
+        }
+
+        boolean[] selected = new boolean[lessEqual.size()];
+        for (int j = 0; j < m; j++) {
+            selected[positions.get(j)] = chosen[j];
+        }
+        return selected;
+    }
+
+    private static long selectedAmount(List<Candidate> candidates, boolean[] selected) {
+        long total = 0L;
+        for (int i = 0; i < selected.length; i++) {
+            if (selected[i]) {
+                total += candidates.get(i).parValue;
+            }
+        }
+        return total;
+    }
+
+    private static Candidate buildGoodsCandidate(Coupon coupon, List<ItemAmount> itemAmounts, LocalDateTime now) {
+        Candidate cand = newCandidate(coupon);
         cand.view.setFreightChecked(null);
 
         List<String> applicableItemIds = new ArrayList<>();
-        BigDecimal applicableAmount = MoneyUtils.zero();
+        long[] applicableMask = ItemMask.create(itemAmounts.size());
+        long applicableAmount = 0L;
 
-        for (ItemAmount a : itemAmountMap.values()) {
+        for (int i = 0; i < itemAmounts.size(); i++) {
+            ItemAmount a = itemAmounts.get(i);
             if (coupon.getConditionType() == CouponConditionType.ALL || coupon.matchesSku(a.skuId)) {
                 applicableItemIds.add(a.cartItemId);
-                applicableAmount = applicableAmount.add(a.amount);
+                ItemMask.set(applicableMask, i);
+                applicableAmount += a.amount;
             }
         }
-        applicableAmount = MoneyUtils.scale(applicableAmount);
 
         cand.view.setApplicableCartItemIds(applicableItemIds);
-        cand.view.setApplicableAmount(applicableAmount);
+        cand.view.setApplicableAmount(MoneyCents.toBigDecimal(applicableAmount));
         cand.applicableAmount = applicableAmount;
+        cand.applicableMask = applicableMask;
+        cand.applicableCount = applicableItemIds.size();
 
         // 资格校验：时间/门槛/适用金额
         if (coupon.getUseEndTime() != null && now.isAfter(coupon.getUseEndTime())) {
@@ -448,13 +621,12 @@ public class CouponCalcEngine {
             cand.eligible = false;
             return cand;
         }
-        BigDecimal bound = MoneyUtils.scale(coupon.getBound());
-        if (applicableAmount.compareTo(bound) < 0) {
-            markUnusable(cand.view, "未达门槛(bound=" + bound + ")");
+        if (applicableAmount < cand.bound) {
+            markUnusable(cand.view, "未达门槛(bound=" + MoneyCents.toBigDecimal(cand.bound) + ")");
             cand.eligible = false;
             return cand;
         }
-        if (applicableAmount.compareTo(BigDecimal.ZERO) <= 0) {
+        if (applicableAmount <= 0) {
             markUnusable(cand.view, "适用金额为0");
             cand.eligible = false;
             return cand;
@@ -465,30 +637,27 @@ public class CouponCalcEngine {
         return cand;
     }
 
-    private static Candidate buildShippingCandidate(Coupon coupon,
-                                                   BigDecimal logisticFee,
-                                                   Set<Integer> selectedGoodsTemplateIds,
-                                                   MutuallyExclusivePolicy policy,
-                                                   LocalDateTime now) {
+    private static Candidate buildShippingCandidate(PreparedShippingCoupons.Entry entry, long logisticFee) {
         Candidate cand = new Candidate();
-        cand.coupon = coupon;
-        cand.view = buildBaseView(coupon);
+        cand.coupon = entry.coupon;
+        cand.view = buildBaseView(entry.coupon);
+        cand.parValue = entry.parValue;
+        cand.bound = entry.bound;
 
-        cand.view.setApplicableAmount(logisticFee);
+        cand.view.setApplicableAmount(MoneyCents.toBigDecimal(logisticFee));
         cand.applicableAmount = logisticFee;
 
-        boolean freightChecked = !policy.isExclusiveWithAny(coupon.getCouponTemplateId(), selectedGoodsTemplateIds);
+        boolean freightChecked = entry.freightChecked;
         cand.view.setFreightChecked(freightChecked);
 
-        if (coupon.getUseEndTime() != null && now.isAfter(coupon.getUseEndTime())) {
+        if (entry.expired) {
             markUnusable(cand.view, "已过期");
             cand.eligible = false;
             return cand;
         }
 
-        BigDecimal bound = MoneyUtils.scale(coupon.getBound());
-        if (logisticFee.compareTo(bound) < 0) {
-            markUnusable(cand.view, "未达门槛(bound=" + bound + ")");
+        if (logisticFee < cand.bound) {
+            markUnusable(cand.view, "未达门槛(bound=" + MoneyCents.toBigDecimal(cand.bound) + ")");
             cand.eligible = false;
             return cand;
         }
@@ -503,6 +672,15 @@ public class CouponCalcEngine {
         return cand;
     }
 
+    private static Candidate newCandidate(Coupon coupon) {
+        Candidate cand = new Candidate();
+        cand.coupon = coupon;
+        cand.view = buildBaseView(coupon);
+        cand.parValue = MoneyCents.of(coupon.getParValue());
+        cand.bound = MoneyCents.of(coupon.getBound());
+        return cand;
+    }
+
     private static CouponView buildBaseView(Coupon c) {
         CouponView v = new CouponView();
         v.setCouponNo(c.getCouponNo());
@@ -518,7 +696,7 @@ public class CouponCalcEngine {
         return v;
     }
 
-    private static Map<String, ItemAmount> buildItemAmountMap(List<PromoItemResult> promoItems) {
+    private static List<ItemAmount> buildItemAmounts(List<PromoItemResult> promoItems) {
         Map<String, ItemAmount> map = new LinkedHashMap<>();
         for (PromoItemResult item : promoItems) {
             ItemAmount a = new ItemAmount();
@@ -526,49 +704,37 @@ public class CouponCalcEngine {
             a.skuId = item.getSkuId();
             // 对齐 AEON 券入参：promoPrice 字段本质是“商品净额(行总价)”
             // 这里直接使用促销引擎返回的 promoAmount，避免“单价四舍五入再乘数量”带来的 0.01 误差。
-            a.amount = MoneyUtils.scale(item.getPromoAmount());
+            a.amount = MoneyCents.of(item.getPromoAmount());
             map.put(a.cartItemId, a);
         }
-        return map;
+        return new ArrayList<>(map.values());
     }
 
-    private static boolean canAllocate(BigDecimal discount,
-                                       List<String> cartItemIds,
-                                       Map<String, BigDecimal> remainingByCartItemId) {
-        if (discount == null || discount.compareTo(BigDecimal.ZERO) <= 0) {
+    static boolean canAllocate(long discount, long[] itemMask, long[] remainingByItem) {
+        if (discount <= 0) {
             return true;
         }
-        BigDecimal sum = BigDecimal.ZERO;
-        for (String id : cartItemIds) {
-            BigDecimal rem = remainingByCartItemId.get(id);
-            if (rem != null && rem.compareTo(BigDecimal.ZERO) > 0) {
-                sum = sum.add(rem);
-            }
-        }
-        sum = MoneyUtils.scale(sum);
-        return sum.compareTo(discount) >= 0;
+        return ItemMask.sumPositive(itemMask, remainingByItem) >= discount;
     }
 
-    private static void allocate(BigDecimal discount,
-                                 List<String> cartItemIds,
-                                 Map<String, BigDecimal> remainingByCartItemId) {
-        if (discount == null || discount.compareTo(BigDecimal.ZERO) <= 0) {
+    /**
+     * 以“剩余可用金额”为权重分摊；三个 buffer 由调用方复用，避免每张券都新建集合。
+     */
+    static void allocate(long discount,
+                         long[] itemMask,
+                         long[] remainingByItem,
+                         long[] weightBuffer,
+                         int[] weightIndexBuffer,
+                         long[] allocBuffer) {
+        if (discount <= 0) {
             return;
         }
-        // 以“剩余可用金额”为权重分摊
-        Map<String, BigDecimal> weights = new LinkedHashMap<>();
-        for (String id : cartItemIds) {
-            BigDecimal rem = remainingByCartItemId.get(id);
-            if (rem != null && rem.compareTo(BigDecimal.ZERO) > 0) {
-                weights.put(id, rem);
-            }
+        int count = ItemMask.collectPositive(itemMask, remainingByItem, weightBuffer, weightIndexBuffer);
+        if (!MoneyCents.allocate(discount, weightBuffer, count, allocBuffer)) {
+            return;
         }
-        Map<String, BigDecimal> allocated = MoneyAllocator.allocate(discount, weights);
-        for (Map.Entry<String, BigDecimal> e : allocated.entrySet()) {
-            String id = e.getKey();
-            BigDecimal alloc = MoneyUtils.scale(e.getValue());
-            BigDecimal rem = remainingByCartItemId.getOrDefault(id, MoneyUtils.zero());
-            remainingByCartItemId.put(id, MoneyUtils.scale(rem.subtract(alloc)));
+        for (int j = 0; j < count; j++) {
+            remainingByItem[weightIndexBuffer[j]] -= allocBuffer[j];
         }
     }
 
@@ -587,13 +753,20 @@ public class CouponCalcEngine {
     private static class ItemAmount {
         String cartItemId;
         String skuId;
-        BigDecimal amount;
+        long amount;
     }
 
     private static class Candidate {
         Coupon coupon;
         CouponView view;
         boolean eligible;
-        BigDecimal applicableAmount;
+        long parValue;
+        long bound;
+        long applicableAmount;
+        /**
+         * 适用商品位图（商品券）；运费券为空位图。
+         */
+        long[] applicableMask = new long[0];
+        int applicableCount;
     }
 }
@@ -2,7 +2,9 @@ package com.aeon.demo.engine.coupon;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * 券计算结果（最小化，结构对齐 AEON CalcCouponListResponse）。
@@ -15,6 +17,26 @@ public class CouponCalcResult {
     private List<CouponView> availableCouponList = new ArrayList<>();
     private List<CouponView> notAvailableCouponList = new ArrayList<>();
 
+    /**
+     * 推荐选中的券模板（按选中顺序），免得调用方再扫一遍 availableCouponList。
+     */
+    private Set<Integer> selectedTemplateIds = new LinkedHashSet<>();
+
+    /**
+     * 实际产出推荐方案的求解模式。
+     */
+    private CouponOptimizeMode optimizeMode = CouponOptimizeMode.GREEDY;
+
+    /**
+     * 请求了精确求解但超出时间预算，退回了贪心。
+     */
+    private boolean optimizeFallback;
+
+    /**
+     * 精确求解访问的搜索节点数（贪心为 0）。
+     */
+    private long searchNodeCount;
+
     public BigDecimal getDiscountAmount() {
         return discountAmount;
     }
@@ -38,5 +60,36 @@ public class CouponCalcResult {
     public void setNotAvailableCouponList(List<CouponView> notAvailableCouponList) {
         this.notAvailableCouponList = notAvailableCouponList;
     }
-}
 
+    public Set<Integer> getSelectedTemplateIds() {
+        return selectedTemplateIds;
+    }
+
+    public void setSelectedTemplateIds(Set<Integer> selectedTemplateIds) {
+        this.selectedTemplateIds = selectedTemplateIds;
+    }
+
+    public CouponOptimizeMode getOptimizeMode() {
+        return optimizeMode;
+    }
+
+    public void setOptimizeMode(CouponOptimizeMode optimizeMode) {
+        this.optimizeMode = optimizeMode;
+    }
+
+    public boolean isOptimizeFallback() {
+        return optimizeFallback;
+    }
+
+    public void setOptimizeFallback(boolean optimizeFallback) {
+        this.optimizeFallback = optimizeFallback;
+    }
+
+    public long getSearchNodeCount() {
+        return searchNodeCount;
+    }
+
+    public void setSearchNodeCount(long searchNodeCount) {
+        this.searchNodeCount = searchNodeCount;
+    }
+}
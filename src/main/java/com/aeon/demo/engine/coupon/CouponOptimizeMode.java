@@ -0,0 +1,20 @@
+package com.aeon.demo.engine.coupon;
+
+/**
+ * 商品券推荐方案的求解模式。
+ *
+ * @author codex
+ */
+public enum CouponOptimizeMode {
+
+    /**
+     * 贪心（对齐 AEON）：按排序逐张尝试，能选就选。
+     */
+    GREEDY,
+
+    /**
+     * 精确：在全部约束（模板种类上限/不可叠加/同模板上限/互斥组/金额溢出）下搜索总抵扣最大的组合；
+     * 同额时保留贪心/排序靠前的方案。超出时间预算则退回贪心。
+     */
+    EXACT
+}
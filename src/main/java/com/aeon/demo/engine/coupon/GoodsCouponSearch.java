@@ -0,0 +1,304 @@
+package com.aeon.demo.engine.coupon;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 商品券精确选券：按排序后的候选顺序做“选/不选”的 DFS（有界背包），总抵扣最大者胜出。
+ *
+ * <p>约束与贪心逐张校验的口径完全一致：模板种类上限、同模板叠加上限、互斥组、按剩余金额分摊的溢出校验
+ * （分摊顺序 = 候选顺序，所以选中的组合按贪心流程重放时每一步都能通过）。候选只包含可叠加的券，
+ * 不可叠加券只能单独使用，由引擎单独比较。</p>
+ *
+ * <ul>
+ *   <li>先走“能选就选”分支，第一个叶子就是贪心解；之后只有严格更大才替换，同额保留排序靠前的组合</li>
+ *   <li>上界：当前抵扣 + min(后续仍可单独加入的券面值之和, 后续券适用范围并集内的商品剩余金额)，不超过已知最优即剪枝</li>
+ *   <li>等价剪枝：相邻且完全等价的两张券（同模板/面值/适用商品/叠加上限），前一张没选时后一张也不选</li>
+ *   <li>支配剪枝：靠前的券 i 与券 j 同模板、面值 ≥ j、适用范围 ⊇ j、同模板叠加上限 ≥ j（且两者之间同模板的券上限都 ≥ j），
+ *       则 i 支配 j。跳过 i 时若“分摊余量”足够（i 及之后每张券适用范围内的剩余金额都 ≥ 之后与它范围相交的券面值之和，
+ *       此后任何选法都不会溢出），这个分支里也不再选 j：任何含 j 不含 i 的组合把 j 换成 i 后模板集合不变
+ *       （模板种类上限/互斥组照样满足）、同模板计数仍在上限内、不会溢出，抵扣不少且在 DFS 顺序上更靠前，结果与不剪枝时完全一致</li>
+ *   <li>每 256 个节点检查一次截止时间，超时放弃（由引擎退回贪心）</li>
+ * </ul>
+ *
+ * @author codex
+ */
+final class GoodsCouponSearch {
+
+    private static final int DEADLINE_CHECK_MASK = 0xFF;
+
+    private final int m;
+    private final long[] parValue;
+    /**
+     * 每张候选的适用商品位图（{@link ItemMask}）。
+     */
+    private final long[][] itemMasks;
+    /**
+     * suffixUnion[i]：第 i 张及之后所有候选适用范围的并集。
+     */
+    private final long[][] suffixUnion;
+    private final int[] template;
+    private final int[] sameTemplateLimit;
+    /**
+     * exclusiveTemplates[t]：与模板 t 互斥的模板（稠密下标）。
+     */
+    private final int[][] exclusiveTemplates;
+    private final int templateLimit;
+    private final long deadlineNanos;
+    /**
+     * 与前一张候选完全等价（可互换）。
+     */
+    private final boolean[] sameAsPrevious;
+    /**
+     * dominators[j]：支配 j 的靠前候选；dominatesLater[i]：i 至少支配一张靠后的候选。
+     */
+    private final int[][] dominators;
+    private final boolean[] dominatesLater;
+    /**
+     * overlaps[k][l]：两张候选的适用范围有公共商品（选 l 才可能减少 k 范围内的剩余金额）。
+     */
+    private final boolean[][] overlaps;
+    /**
+     * 当前路径上“余量充足时被跳过”的支配者。
+     */
+    private final boolean[] skippedWithSlack;
+
+    private final long[] remainingByItem;
+    private final int[] countByTemplate;
+    private final int[] blockedByTemplate;
+    private int distinctTemplates;
+    private final boolean[] chosen;
+    private final long[][] saved;
+
+    private final long[] weightBuffer;
+    private final int[] weightIndexBuffer;
+    private final long[] allocBuffer;
+
+    private long bestTotal = -1L;
+    private boolean[] bestChosen;
+    private long visitedCount;
+    private long dominatedCount;
+    private boolean timedOut;
+
+    GoodsCouponSearch(long[] parValue,
+                      long[][] itemMasks,
+                      int[] template,
+                      int[] sameTemplateLimit,
+                      int[][] exclusiveTemplates,
+                      int templateLimit,
+                      long[] remainingByItem,
+                      long deadlineNanos) {
+        this.m = parValue.length;
+        this.parValue = parValue;
+        this.itemMasks = itemMasks;
+        this.template = template;
+        this.sameTemplateLimit = sameTemplateLimit;
+        this.exclusiveTemplates = exclusiveTemplates;
+        this.templateLimit = templateLimit;
+        this.deadlineNanos = deadlineNanos;
+        this.remainingByItem = remainingByItem.clone();
+        this.countByTemplate = new int[exclusiveTemplates.length];
+        this.blockedByTemplate = new int[exclusiveTemplates.length];
+        this.chosen = new boolean[m];
+        this.saved = new long[m][];
+        this.sameAsPrevious = new boolean[m];
+        this.skippedWithSlack = new boolean[m];
+        this.dominatesLater = new boolean[m];
+        this.dominators = new int[m][];
+        for (int j = 0; j < m; j++) {
+            List<Integer> list = new ArrayList<>();
+            for (int i = 0; i < j; i++) {
+                if (dominates(i, j)) {
+                    list.add(i);
+                    dominatesLater[i] = true;
+                }
+            }
+            dominators[j] = list.stream().mapToInt(Integer::intValue).toArray();
+        }
+        this.overlaps = new boolean[m][m];
+        for (int k = 0; k < m; k++) {
+            for (int l = k; l < m; l++) {
+                overlaps[k][l] = ItemMask.intersects(itemMasks[k], itemMasks[l]);
+                overlaps[l][k] = overlaps[k][l];
+            }
+        }
+        for (int i = 0; i < m; i++) {
+            saved[i] = new long[ItemMask.count(itemMasks[i])];
+            sameAsPrevious[i] = i > 0
+                    && template[i] == template[i - 1]
+                    && parValue[i] == parValue[i - 1]
+                    && sameTemplateLimit[i] == sameTemplateLimit[i - 1]
+                    && Arrays.equals(itemMasks[i], itemMasks[i - 1]);
+        }
+        int n = remainingByItem.length;
+        this.suffixUnion = new long[m + 1][];
+        suffixUnion[m] = ItemMask.create(n);
+        for (int i = m - 1; i >= 0; i--) {
+            suffixUnion[i] = suffixUnion[i + 1].clone();
+            ItemMask.or(suffixUnion[i], itemMasks[i]);
+        }
+        this.weightBuffer = new long[n];
+        this.weightIndexBuffer = new int[n];
+        this.allocBuffer = new long[n];
+    }
+
+    /**
+     * @return 每张候选是否选中；超时返回 null
+     */
+    boolean[] run() {
+        search(0, 0L, false);
+        return timedOut ? null : bestChosen;
+    }
+
+    long getBestTotal() {
+        return bestTotal;
+    }
+
+    long getVisitedCount() {
+        return visitedCount;
+    }
+
+    boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * 因支配剪枝而没有展开“选”分支的次数。
+     */
+    long getDominatedCount() {
+        return dominatedCount;
+    }
+
+    private void search(int idx, long current, boolean previousSkipped) {
+        if (timedOut) {
+            return;
+        }
+        if ((++visitedCount & DEADLINE_CHECK_MASK) == 0 && System.nanoTime() > deadlineNanos) {
+            timedOut = true;
+            return;
+        }
+        if (idx == m) {
+            if (current > bestTotal) {
+                bestTotal = current;
+                bestChosen = chosen.clone();
+            }
+            return;
+        }
+        if (current + optimisticRest(idx) <= bestTotal) {
+            return;
+        }
+
+        if (!(previousSkipped && sameAsPrevious[idx])
+                && selectable(idx)
+                && CouponCalcEngine.canAllocate(parValue[idx], itemMasks[idx], remainingByItem)) {
+            if (dominatedBySkipped(idx)) {
+                dominatedCount++;
+            } else {
+                select(idx);
+                search(idx + 1, current + parValue[idx], false);
+                unselect(idx);
+            }
+        }
+        boolean slack = dominatesLater[idx] && allocationSlack(idx);
+        skippedWithSlack[idx] = slack;
+        search(idx + 1, current, true);
+        skippedWithSlack[idx] = false;
+    }
+
+    /**
+     * 同模板（模板种类上限/互斥组不受影响）、面值不低、适用范围是超集、同模板叠加上限在 i..j 之间都不会先被卡住。
+     */
+    private boolean dominates(int i, int j) {
+        if (template[i] != template[j] || parValue[i] < parValue[j]
+                || sameTemplateLimit[i] < sameTemplateLimit[j] || !ItemMask.containsAll(itemMasks[i], itemMasks[j])) {
+            return false;
+        }
+        for (int l = i + 1; l < j; l++) {
+            if (template[l] == template[j] && sameTemplateLimit[l] < sameTemplateLimit[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean dominatedBySkipped(int idx) {
+        for (int i : dominators[idx]) {
+            if (skippedWithSlack[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * idx 及之后每张券适用范围内的剩余金额，都不少于 idx 及之后与它范围相交的券（含自身）的面值之和：
+     * 按剩余金额比例分摊时每个商品分到的不超过其剩余，选一张券只会让与它相交的范围减少、且最多减少其面值，
+     * 所以此后无论怎么选都不会溢出（该性质对子树一直成立）。
+     */
+    private boolean allocationSlack(int idx) {
+        for (int k = idx; k < m; k++) {
+            long need = 0L;
+            for (int l = idx; l < m; l++) {
+                if (overlaps[k][l]) {
+                    need += parValue[l];
+                }
+            }
+            if (ItemMask.sumPositive(itemMasks[k], remainingByItem) < need) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 模板种类上限 / 同模板叠加上限 / 互斥组（顺序同贪心的逐张校验）。
+     */
+    private boolean selectable(int idx) {
+        int t = template[idx];
+        if (distinctTemplates >= templateLimit && countByTemplate[t] == 0) {
+            return false;
+        }
+        if (countByTemplate[t] >= sameTemplateLimit[idx]) {
+            return false;
+        }
+        return blockedByTemplate[t] == 0;
+    }
+
+    private long optimisticRest(int idx) {
+        long remaining = ItemMask.sumPositive(suffixUnion[idx], remainingByItem);
+        long sum = 0L;
+        for (int j = idx; j < m && sum < remaining; j++) {
+            if (selectable(j)) {
+                sum += parValue[j];
+            }
+        }
+        return Math.min(sum, remaining);
+    }
+
+    private void select(int idx) {
+        ItemMask.copyOut(itemMasks[idx], remainingByItem, saved[idx]);
+        CouponCalcEngine.allocate(parValue[idx], itemMasks[idx], remainingByItem, weightBuffer, weightIndexBuffer, allocBuffer);
+
+        int t = template[idx];
+        if (countByTemplate[t]++ == 0) {
+            distinctTemplates++;
+        }
+        for (int u : exclusiveTemplates[t]) {
+            blockedByTemplate[u]++;
+        }
+        chosen[idx] = true;
+    }
+
+    private void unselect(int idx) {
+        chosen[idx] = false;
+        int t = template[idx];
+        for (int u : exclusiveTemplates[t]) {
+            blockedByTemplate[u]--;
+        }
+        if (--countByTemplate[t] == 0) {
+            distinctTemplates--;
+        }
+        ItemMask.copyIn(itemMasks[idx], remainingByItem, saved[idx]);
+    }
+}
@@ -0,0 +1,135 @@
+package com.aeon.demo.engine.coupon;
+
+/**
+ * 购物车商品的位图（long[]，第 i 位 = 第 i 个商品的稠密下标）：券的适用范围、范围求交/求并、
+ * “剩余金额之和”都直接在位图上算，不创建任何集合对象。
+ *
+ * <p>遍历顺序固定为下标升序（分摊口径依赖这个顺序：最后一份吃掉舍入误差）。</p>
+ *
+ * @author codex
+ */
+final class ItemMask {
+
+    private ItemMask() {
+    }
+
+    static long[] create(int itemCount) {
+        return new long[(itemCount + 63) >>> 6];
+    }
+
+    static void set(long[] mask, int index) {
+        mask[index >>> 6] |= 1L << index;
+    }
+
+    static int count(long[] mask) {
+        int count = 0;
+        for (long word : mask) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * target |= source。
+     */
+    static void or(long[] target, long[] source) {
+        for (int w = 0; w < target.length; w++) {
+            target[w] |= source[w];
+        }
+    }
+
+    /**
+     * 两个位图是否有公共商品。
+     */
+    static boolean intersects(long[] a, long[] b) {
+        for (int w = 0; w < a.length; w++) {
+            if ((a[w] & b[w]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * mask 是否包含 subset 的全部商品。
+     */
+    static boolean containsAll(long[] mask, long[] subset) {
+        for (int w = 0; w < mask.length; w++) {
+            if ((subset[w] & ~mask[w]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 位图内商品的正剩余金额之和。
+     */
+    static long sumPositive(long[] mask, long[] amountByItem) {
+        long sum = 0L;
+        for (int w = 0; w < mask.length; w++) {
+            long bits = mask[w];
+            while (bits != 0) {
+                long r = amountByItem[(w << 6) + Long.numberOfTrailingZeros(bits)];
+                if (r > 0) {
+                    sum += r;
+                }
+                bits &= bits - 1;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * 按下标升序收集位图内剩余金额为正的商品：金额写入 amountsOut，下标写入 indexesOut（分摊的权重）。
+     *
+     * @return 收集到的个数
+     */
+    static int collectPositive(long[] mask, long[] amountByItem, long[] amountsOut, int[] indexesOut) {
+        int k = 0;
+        for (int w = 0; w < mask.length; w++) {
+            long bits = mask[w];
+            while (bits != 0) {
+                int i = (w << 6) + Long.numberOfTrailingZeros(bits);
+                if (amountByItem[i] > 0) {
+                    amountsOut[k] = amountByItem[i];
+                    indexesOut[k] = i;
+                    k++;
+                }
+                bits &= bits - 1;
+            }
+        }
+        return k;
+    }
+
+    /**
+     * 把位图内商品的金额按下标升序拷出（用于回溯）。
+     *
+     * @return 拷出的个数
+     */
+    static int copyOut(long[] mask, long[] amountByItem, long[] out) {
+        int k = 0;
+        for (int w = 0; w < mask.length; w++) {
+            long bits = mask[w];
+            while (bits != 0) {
+                out[k++] = amountByItem[(w << 6) + Long.numberOfTrailingZeros(bits)];
+                bits &= bits - 1;
+            }
+        }
+        return k;
+    }
+
+    /**
+     * {@link #copyOut} 的逆操作。
+     */
+    static void copyIn(long[] mask, long[] amountByItem, long[] in) {
+        int k = 0;
+        for (int w = 0; w < mask.length; w++) {
+            long bits = mask[w];
+            while (bits != 0) {
+                amountByItem[(w << 6) + Long.numberOfTrailingZeros(bits)] = in[k++];
+                bits &= bits - 1;
+            }
+        }
+    }
+}
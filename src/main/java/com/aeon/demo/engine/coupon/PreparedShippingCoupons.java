@@ -0,0 +1,64 @@
+package com.aeon.demo.engine.coupon;
+
+import com.aeon.demo.domain.Coupon;
+import com.aeon.demo.util.MoneyCents;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * 一次请求内预处理好的运费券：筛选/排序/与已选商品券的互斥判断只做一次，
+ * 用券前后两次运费券计算（{@link CouponCalcEngine#calcShippingCoupons(PreparedShippingCoupons, java.math.BigDecimal)}）
+ * 只重算与运费金额相关的部分（门槛、溢出、勾选）。
+ *
+ * <p>由 {@link CouponCalcEngine#prepareShippingCoupons} 创建；内容只读，每次计算都会新建 {@link CouponView}。</p>
+ *
+ * @author codex
+ */
+public final class PreparedShippingCoupons {
+
+    /**
+     * 运费券，按入参顺序（notAvailable 列表按这个顺序输出）。
+     */
+    final List<Entry> entries;
+    /**
+     * 同一批运费券按 AEON 运费券排序（面值高 -> 范围窄 -> 先过期 -> 门槛高）后的顺序。
+     */
+    final List<Entry> sorted;
+    final MutuallyExclusivePolicy policy;
+
+    PreparedShippingCoupons(List<Entry> entries, List<Entry> sorted, MutuallyExclusivePolicy policy) {
+        this.entries = entries;
+        this.sorted = sorted;
+        this.policy = policy;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * 与运费金额无关的部分。
+     */
+    static final class Entry {
+        final int position;
+        final Coupon coupon;
+        final long parValue;
+        final long bound;
+        final int conditionType;
+        final LocalDateTime useEnd;
+        final boolean expired;
+        final boolean freightChecked;
+
+        Entry(int position, Coupon coupon, boolean expired, boolean freightChecked) {
+            this.position = position;
+            this.coupon = coupon;
+            this.parValue = MoneyCents.of(coupon.getParValue());
+            this.bound = MoneyCents.of(coupon.getBound());
+            this.conditionType = coupon.getConditionType() == null ? 0 : coupon.getConditionType().getCode();
+            this.useEnd = coupon.getUseEndTime() == null ? LocalDateTime.MAX : coupon.getUseEndTime();
+            this.expired = expired;
+            this.freightChecked = freightChecked;
+        }
+    }
+}
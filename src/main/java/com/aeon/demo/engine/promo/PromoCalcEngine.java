@@ -4,12 +4,11 @@ import com.aeon.demo.domain.CartItem;
 import com.aeon.demo.domain.Promotion;
 import com.aeon.demo.domain.PromotionLevel;
 import com.aeon.demo.domain.PromotionType;
-import com.aeon.demo.util.MoneyAllocator;
+import com.aeon.demo.util.MoneyCents;
 import com.aeon.demo.util.MoneyUtils;
 
-import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * 促销计算引擎（最小化）：核心只做一件事——“取低价”(ChooseLowPrice)。
@@ -18,6 +17,10 @@ import java.util.*;
  * <ul>
  *   <li>每个商品命中多个促销 → 需要选择“每个商品到底用哪一个促销”</li>
  *   <li>组合层级采用笛卡尔积穷举所有分配方案 → 逐方案计算总优惠 → 取总优惠最大(价格最低)</li>
+ *   <li>默认走分支限界（{@link PromoSearchMode#BRANCH_AND_BOUND}）：结果与穷举一致，但大购物车不再退化</li>
+ *   <li>可选并行搜索（parallelism &gt; 1）：工作量达到 parallelThreshold 的购物车在实例专属的 {@link ForkJoinPool} 上切分子树搜索，
+ *       结果与顺序搜索一致（节点预算耗尽时改走顺序搜索，结果不受线程调度影响）；小购物车仍走顺序搜索</li>
+ *   <li>内部金额统一用“分”({@link MoneyCents}) 计算，只在组装 {@link PromoItemResult}/{@link PromoAdjustResult} 时转回 BigDecimal</li>
  * </ul>
  *
  * @author codex
@@ -29,192 +32,203 @@ public class PromoCalcEngine {
      */
     private final long maxEnumerations;
 
+    private final PromoSearchMode searchMode;
+
+    /**
+     * 分支限界的搜索节点上限：兜底防止极端配置下仍然指数级；超过则返回搜索到此为止的最优方案（不劣于启发式初始解和“只算单品取低”）。
+     */
+    private final long maxSearchNodes;
+
+    /**
+     * 并行度：≤ 1 表示始终顺序搜索。
+     */
+    private final int parallelism;
+
+    /**
+     * 并行门槛，小购物车切任务的开销大于收益：穷举按方案数（笛卡尔积）比较；分支限界剪枝后的工作量与方案数无关，
+     * 改为先顺序搜索这么多个节点，搜不完才转并行。
+     */
+    private final long parallelThreshold;
+
+    /**
+     * 引擎实例专属的搜索线程池（不占用公共池）；parallelism ≤ 1 时为 null。
+     */
+    private final ForkJoinPool searchPool;
+
     public PromoCalcEngine() {
         this(50_000L);
     }
 
     public PromoCalcEngine(long maxEnumerations) {
+        this(maxEnumerations, PromoSearchMode.BRANCH_AND_BOUND);
+    }
+
+    public PromoCalcEngine(long maxEnumerations, PromoSearchMode searchMode) {
+        this(maxEnumerations, searchMode, 500_000L);
+    }
+
+    public PromoCalcEngine(long maxEnumerations, PromoSearchMode searchMode, long maxSearchNodes) {
+        this(maxEnumerations, searchMode, maxSearchNodes, 1, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param parallelism       搜索并行度（≤ 1 顺序搜索）
+     * @param parallelThreshold 并行门槛：穷举为方案数，分支限界为顺序搜索的节点数
+     */
+    public PromoCalcEngine(long maxEnumerations,
+                           PromoSearchMode searchMode,
+                           long maxSearchNodes,
+                           int parallelism,
+                           long parallelThreshold) {
         this.maxEnumerations = maxEnumerations;
+        this.searchMode = searchMode == null ? PromoSearchMode.BRANCH_AND_BOUND : searchMode;
+        this.maxSearchNodes = maxSearchNodes;
+        this.parallelism = Math.max(1, parallelism);
+        this.parallelThreshold = Math.max(1L, parallelThreshold);
+        this.searchPool = this.parallelism > 1 ? new ForkJoinPool(this.parallelism) : null;
+    }
+
+    /**
+     * 释放并行搜索线程池（未开启并行时无操作）；之后不应再调用 calc。
+     */
+    public void shutdown() {
+        if (searchPool != null) {
+            searchPool.shutdown();
+        }
     }
 
     public PromoCalcResult calc(List<CartItem> cartItems, List<Promotion> promotions) {
+        return calc(cartItems, PromotionIndex.build(0L, promotions));
+    }
+
+    /**
+     * 使用预编译的促销索引计算（索引可跨请求共享，见 {@link PromotionIndexHolder}）。
+     */
+    public PromoCalcResult calc(List<CartItem> cartItems, PromotionIndex promotionIndex) {
         List<CartItem> items = cartItems == null ? Collections.emptyList() : cartItems;
-        List<Promotion> promoList = promotions == null ? Collections.emptyList() : promotions;
+        PromotionIndex promoIndex = promotionIndex == null ? PromotionIndex.empty() : promotionIndex;
 
         PromoCalcResult result = new PromoCalcResult();
         if (items.isEmpty()) {
             result.setOriginalGoodsAmount(MoneyUtils.zero());
             result.setPromoGoodsAmount(MoneyUtils.zero());
             result.setEvaluatedPlanCount(0);
+            result.setProvenOptimal(true);
             return result;
         }
 
-        BigDecimal originalTotal = MoneyUtils.zero();
+        long originalTotal = 0L;
         for (CartItem item : items) {
-            originalTotal = originalTotal.add(lineAmount(item.getSalePrice(), item.getQuantity()));
-        }
-        originalTotal = MoneyUtils.scale(originalTotal);
-
-        // promoId -> Promotion
-        Map<Long, Promotion> promoMap = new HashMap<>();
-        for (Promotion p : promoList) {
-            promoMap.put(p.getPromoId(), p);
+            originalTotal += lineAmount(MoneyCents.of(item.getSalePrice()), item.getQuantity());
         }
 
         // 每个商品的可选促销：NONE(0) + 命中的促销
+        boolean exhaustive = searchMode == PromoSearchMode.EXHAUSTIVE;
         List<List<Long>> optionsByIndex = new ArrayList<>();
         long estimated = 1;
         for (CartItem item : items) {
             List<Long> options = new ArrayList<>();
             options.add(0L); // 不参加任何促销
-            for (Promotion p : promoList) {
-                if (p.matchesSku(item.getSkuId())) {
-                    options.add(p.getPromoId());
-                }
+            for (Promotion p : promoIndex.match(item.getSkuId())) {
+                options.add(p.getPromoId());
             }
             optionsByIndex.add(options);
             estimated = estimated * options.size();
-            if (estimated > maxEnumerations) {
+            if (exhaustive && estimated > maxEnumerations) {
                 break;
             }
         }
 
         BestPlan best;
-        if (estimated > maxEnumerations) {
+        if (!exhaustive) {
+            best = branchAndBoundChooseLowPrice(items, promoIndex, optionsByIndex, result);
+        } else if (estimated > maxEnumerations) {
             // 退化：只对单品促销做“取低”，不做组合穷举（避免指数级爆炸）
-            best = greedySingleOnly(items, promoList);
+            best = greedySingleOnly(items, promoIndex);
             result.setEvaluatedPlanCount(-1); // -1 表示退化路径
         } else {
-            best = enumerateChooseLowPrice(items, promoMap, optionsByIndex);
-            result.setEvaluatedPlanCount(best == null ? 0 : best.evaluatedCount);
-        }
-
-        if (best == null) {
-            result.setOriginalGoodsAmount(originalTotal);
-            result.setPromoGoodsAmount(originalTotal);
-            return result;
+            best = enumerateChooseLowPrice(items, promoIndex, optionsByIndex);
+            result.setEvaluatedPlanCount(best.evaluatedCount);
         }
 
-        result.setOriginalGoodsAmount(originalTotal);
-        result.setPromoGoodsAmount(best.totalPromoAmount);
+        result.setProvenOptimal(result.getEvaluatedPlanCount() >= 0);
+        result.setOriginalGoodsAmount(MoneyCents.toBigDecimal(originalTotal));
+        result.setPromoGoodsAmount(MoneyCents.toBigDecimal(best.totalPromoAmount));
         result.setItems(best.itemResults);
         result.setAdjusts(best.adjusts);
         return result;
     }
 
-    private BestPlan greedySingleOnly(List<CartItem> items, List<Promotion> promoList) {
+    private BestPlan greedySingleOnly(List<CartItem> items, PromotionIndex promoIndex) {
         // 只在单品促销里选一个最低价（组合促销全部忽略）
         List<PromoItemResult> itemResults = new ArrayList<>();
         Map<Long, PromoAdjustAccumulator> acc = new HashMap<>();
 
-        BigDecimal total = MoneyUtils.zero();
+        long total = 0L;
         for (CartItem item : items) {
-            BigDecimal salePrice = MoneyUtils.scale(item.getSalePrice());
-            BigDecimal bestPrice = salePrice;
+            long salePrice = MoneyCents.of(item.getSalePrice());
+            long bestPrice = salePrice;
             long bestPromoId = 0L;
             String bestPromoName = "NONE";
 
-            for (Promotion p : promoList) {
+            for (Promotion p : promoIndex.match(item.getSkuId())) {
                 if (p.getLevel() != PromotionLevel.SINGLE) {
                     continue;
                 }
-                if (!p.matchesSku(item.getSkuId())) {
-                    continue;
-                }
-                BigDecimal promoPrice = applySinglePromoUnitPrice(p, salePrice, item.getQuantity());
-                if (promoPrice.compareTo(bestPrice) < 0) {
+                long promoPrice = applySinglePromoUnitPrice(p, salePrice, item.getQuantity());
+                if (promoPrice < bestPrice) {
                     bestPrice = promoPrice;
                     bestPromoId = p.getPromoId();
                     bestPromoName = p.getName();
                 }
             }
 
-            BigDecimal saleAmount = lineAmount(salePrice, item.getQuantity());
-            BigDecimal promoAmount = lineAmount(bestPrice, item.getQuantity());
-            BigDecimal discount = MoneyUtils.scale(saleAmount.subtract(promoAmount));
-
-            PromoItemResult r = new PromoItemResult();
-            r.setCartItemId(item.getCartItemId());
-            r.setSkuId(item.getSkuId());
-            r.setQuantity(item.getQuantity());
-            r.setSalePrice(salePrice);
-            r.setPromoPrice(bestPrice);
-            r.setSaleAmount(saleAmount);
-            r.setPromoAmount(promoAmount);
-            r.setAppliedPromoId(bestPromoId);
-            r.setAppliedPromoName(bestPromoName);
-            r.setPromoDiscountAmount(discount);
-            itemResults.add(r);
-
-            if (bestPromoId != 0L && discount.compareTo(BigDecimal.ZERO) > 0) {
+            long saleAmount = lineAmount(salePrice, item.getQuantity());
+            long promoAmount = lineAmount(bestPrice, item.getQuantity());
+            long discount = saleAmount - promoAmount;
+
+            itemResults.add(toItemResult(item.getCartItemId(), item.getSkuId(), item.getQuantity(),
+                    salePrice, bestPrice, saleAmount, promoAmount, bestPromoId, bestPromoName));
+
+            if (bestPromoId != 0L && discount > 0) {
                 final long promoIdFinal = bestPromoId;
                 final String promoNameFinal = bestPromoName;
                 acc.computeIfAbsent(promoIdFinal, k -> new PromoAdjustAccumulator(promoIdFinal, promoNameFinal))
                         .add(discount);
             }
 
-            total = total.add(promoAmount);
+            total += promoAmount;
         }
 
         BestPlan plan = new BestPlan();
-        plan.totalPromoAmount = MoneyUtils.scale(total);
+        plan.totalPromoAmount = total;
         plan.itemResults = itemResults;
         plan.adjusts = toAdjusts(acc);
         plan.evaluatedCount = 0;
         return plan;
     }
 
+    /**
+     * 笛卡尔积穷举：DFS 逐个商品 push/pop 选项、增量维护总价，叶子上只比较一个 long；只为最终方案构建结果对象。
+     */
     private BestPlan enumerateChooseLowPrice(List<CartItem> items,
-                                            Map<Long, Promotion> promoMap,
+                                            PromotionIndex promoIndex,
                                             List<List<Long>> optionsByIndex) {
-        BestPlan best = new BestPlan();
-        best.totalPromoAmount = null; // 未初始化
-        best.evaluatedCount = 0;
-
-        List<Long> selected = new ArrayList<>(items.size());
-        dfsEnumerate(0, items, promoMap, optionsByIndex, selected, best);
-        return best.totalPromoAmount == null ? null : best;
-    }
-
-    private void dfsEnumerate(int idx,
-                              List<CartItem> items,
-                              Map<Long, Promotion> promoMap,
-                              List<List<Long>> optionsByIndex,
-                              List<Long> selectedPromoIds,
-                              BestPlan best) {
-        if (idx == items.size()) {
-            best.evaluatedCount++;
-            EvaluatedPlan evaluated = evaluate(items, promoMap, selectedPromoIds);
-            if (evaluated == null) {
-                return;
-            }
-            if (best.totalPromoAmount == null
-                    || evaluated.totalPromoAmount.compareTo(best.totalPromoAmount) < 0
-                    || (evaluated.totalPromoAmount.compareTo(best.totalPromoAmount) == 0
-                    && evaluated.totalDiscountAmount.compareTo(best.totalDiscountAmount) > 0)) {
-                best.totalPromoAmount = evaluated.totalPromoAmount;
-                best.totalDiscountAmount = evaluated.totalDiscountAmount;
-                best.itemResults = evaluated.itemResults;
-                best.adjusts = evaluated.adjusts;
-            }
-            return;
-        }
-
-        for (Long promoId : optionsByIndex.get(idx)) {
-            selectedPromoIds.add(promoId);
-            dfsEnumerate(idx + 1, items, promoMap, optionsByIndex, selectedPromoIds, best);
-            selectedPromoIds.remove(selectedPromoIds.size() - 1);
-        }
+        PromoPlanSearch search = compilePlanSearch(items, promoIndex, optionsByIndex);
+        int[] winner = useParallel(search)
+                ? search.enumerateParallel(searchPool, parallelism)
+                : search.enumerate();
+        return materialize(items, promoIndex, optionsByIndex, winner, search.getEvaluatedCount());
     }
 
     private EvaluatedPlan evaluate(List<CartItem> items,
-                                  Map<Long, Promotion> promoMap,
+                                  PromotionIndex promoIndex,
                                   List<Long> selectedPromoIds) {
         // itemIndex -> state
         List<ItemState> states = new ArrayList<>(items.size());
         for (int i = 0; i < items.size(); i++) {
             CartItem item = items.get(i);
-            BigDecimal salePrice = MoneyUtils.scale(item.getSalePrice());
+            long salePrice = MoneyCents.of(item.getSalePrice());
             ItemState s = new ItemState();
             s.cartItemId = item.getCartItemId();
             s.skuId = item.getSkuId();
@@ -241,16 +255,15 @@ public class PromoCalcEngine {
             if (promoId == 0L) {
                 continue;
             }
-            Promotion p = promoMap.get(promoId);
+            Promotion p = promoIndex.getPromotion(promoId);
             if (p == null || p.getLevel() != PromotionLevel.SINGLE) {
                 continue;
             }
             for (Integer idx : e.getValue()) {
                 ItemState s = states.get(idx);
-                BigDecimal newPromoPrice = applySinglePromoUnitPrice(p, s.salePrice, s.quantity);
-                BigDecimal promoAmount = lineAmount(newPromoPrice, s.quantity);
-                BigDecimal discount = MoneyUtils.scale(s.saleAmount.subtract(promoAmount));
-                if (discount.compareTo(BigDecimal.ZERO) > 0) {
+                long newPromoPrice = applySinglePromoUnitPrice(p, s.salePrice, s.quantity);
+                long promoAmount = lineAmount(newPromoPrice, s.quantity);
+                if (s.saleAmount - promoAmount > 0) {
                     s.promoPrice = newPromoPrice;
                     s.promoAmount = promoAmount;
                     s.appliedPromoId = p.getPromoId();
@@ -264,46 +277,35 @@ public class PromoCalcEngine {
             if (promoId == 0L) {
                 continue;
             }
-            Promotion p = promoMap.get(promoId);
+            Promotion p = promoIndex.getPromotion(promoId);
             if (p == null || p.getLevel() != PromotionLevel.GROUP) {
                 continue;
             }
             applyGroupPromotion(p, states, e.getValue());
         }
 
-        BigDecimal totalPromo = MoneyUtils.zero();
-        BigDecimal totalDiscount = MoneyUtils.zero();
+        long totalPromo = 0L;
+        long totalDiscount = 0L;
         Map<Long, PromoAdjustAccumulator> acc = new HashMap<>();
 
         List<PromoItemResult> itemResults = new ArrayList<>();
         for (ItemState s : states) {
-            BigDecimal promoAmount = MoneyUtils.scale(s.promoAmount);
-            BigDecimal discount = MoneyUtils.scale(s.saleAmount.subtract(promoAmount));
-            totalPromo = totalPromo.add(promoAmount);
-            totalDiscount = totalDiscount.add(discount);
-
-            PromoItemResult r = new PromoItemResult();
-            r.setCartItemId(s.cartItemId);
-            r.setSkuId(s.skuId);
-            r.setQuantity(s.quantity);
-            r.setSalePrice(s.salePrice);
-            r.setPromoPrice(s.promoPrice);
-            r.setSaleAmount(s.saleAmount);
-            r.setPromoAmount(promoAmount);
-            r.setAppliedPromoId(s.appliedPromoId);
-            r.setAppliedPromoName(s.appliedPromoName);
-            r.setPromoDiscountAmount(discount);
-            itemResults.add(r);
-
-            if (s.appliedPromoId != 0L && discount.compareTo(BigDecimal.ZERO) > 0) {
+            long discount = s.saleAmount - s.promoAmount;
+            totalPromo += s.promoAmount;
+            totalDiscount += discount;
+
+            itemResults.add(toItemResult(s.cartItemId, s.skuId, s.quantity, s.salePrice, s.promoPrice,
+                    s.saleAmount, s.promoAmount, s.appliedPromoId, s.appliedPromoName));
+
+            if (s.appliedPromoId != 0L && discount > 0) {
                 acc.computeIfAbsent(s.appliedPromoId, k -> new PromoAdjustAccumulator(s.appliedPromoId, s.appliedPromoName))
                         .add(discount);
             }
         }
 
         EvaluatedPlan plan = new EvaluatedPlan();
-        plan.totalPromoAmount = MoneyUtils.scale(totalPromo);
-        plan.totalDiscountAmount = MoneyUtils.scale(totalDiscount);
+        plan.totalPromoAmount = totalPromo;
+        plan.totalDiscountAmount = totalDiscount;
         plan.itemResults = itemResults;
         plan.adjusts = toAdjusts(acc);
         return plan;
@@ -314,37 +316,35 @@ public class PromoCalcEngine {
             return;
         }
 
-        BigDecimal groupTotal = MoneyUtils.zero();
-        Map<Integer, BigDecimal> weights = new LinkedHashMap<>();
-        for (Integer idx : itemIndexes) {
-            ItemState s = states.get(idx);
+        int count = itemIndexes.size();
+        long groupTotal = 0L;
+        long[] weights = new long[count];
+        for (int j = 0; j < count; j++) {
+            ItemState s = states.get(itemIndexes.get(j));
             // 组合促销通常基于“参与商品的当前金额”，本 Demo 简化为“原价金额”
-            groupTotal = groupTotal.add(s.saleAmount);
-            weights.put(idx, s.saleAmount);
+            groupTotal += s.saleAmount;
+            weights[j] = s.saleAmount;
         }
-        groupTotal = MoneyUtils.scale(groupTotal);
 
-        BigDecimal discountTotal = calcGroupDiscount(promo, groupTotal);
-        if (discountTotal.compareTo(BigDecimal.ZERO) <= 0) {
+        long discountTotal = calcGroupDiscount(promo, groupTotal);
+        if (discountTotal <= 0) {
             return;
         }
 
         // 防止极端配置导致折扣超过金额
-        discountTotal = MoneyUtils.min(discountTotal, groupTotal);
+        discountTotal = Math.min(discountTotal, groupTotal);
 
-        Map<Integer, BigDecimal> allocated = MoneyAllocator.allocate(discountTotal, weights);
-        for (Map.Entry<Integer, BigDecimal> e : allocated.entrySet()) {
-            Integer idx = e.getKey();
-            BigDecimal discount = MoneyUtils.scale(e.getValue());
-
-            ItemState s = states.get(idx);
-            BigDecimal promoAmount = MoneyUtils.scale(s.saleAmount.subtract(discount));
-            BigDecimal unitPromoPrice = promoAmount.divide(new BigDecimal(s.quantity), MoneyUtils.MONEY_SCALE, RoundingMode.HALF_UP);
+        long[] allocated = new long[count];
+        if (!MoneyCents.allocate(discountTotal, weights, count, allocated)) {
+            return;
+        }
+        for (int j = 0; j < count; j++) {
+            ItemState s = states.get(itemIndexes.get(j));
+            long promoAmount = s.saleAmount - allocated[j];
 
             // 组合促销若更优，则覆盖单品结果（模拟“取低价”时的最终分配方案）
-            BigDecimal currentPromoAmount = MoneyUtils.scale(s.promoAmount);
-            if (promoAmount.compareTo(currentPromoAmount) < 0) {
-                s.promoPrice = unitPromoPrice;
+            if (promoAmount < s.promoAmount) {
+                s.promoPrice = MoneyCents.divideHalfUp(promoAmount, s.quantity);
                 s.promoAmount = promoAmount;
                 s.appliedPromoId = promo.getPromoId();
                 s.appliedPromoName = promo.getName();
@@ -352,80 +352,194 @@ public class PromoCalcEngine {
         }
     }
 
-    private BigDecimal calcGroupDiscount(Promotion promo, BigDecimal groupTotal) {
+    private long calcGroupDiscount(Promotion promo, long groupTotal) {
         if (promo.getType() == PromotionType.FULL_REDUCTION) {
-            BigDecimal threshold = MoneyUtils.scale(promo.getThreshold());
-            BigDecimal reduce = MoneyUtils.scale(promo.getReduceAmount());
-            if (groupTotal.compareTo(threshold) >= 0) {
-                return reduce;
+            if (groupTotal >= MoneyCents.of(promo.getThreshold())) {
+                return MoneyCents.of(promo.getReduceAmount());
             }
-            return MoneyUtils.zero();
+            return 0L;
         }
         if (promo.getType() == PromotionType.DISCOUNT_RATE) {
-            BigDecimal rate = promo.getDiscountRate();
+            MoneyCents.Rate rate = MoneyCents.Rate.of(promo.getDiscountRate());
             if (rate == null) {
-                return MoneyUtils.zero();
+                return 0L;
             }
-            BigDecimal promoTotal = groupTotal.multiply(rate).setScale(MoneyUtils.MONEY_SCALE, RoundingMode.HALF_UP);
-            return MoneyUtils.scale(groupTotal.subtract(promoTotal));
+            return groupTotal - rate.apply(groupTotal);
         }
         // DIRECT_REDUCTION 对组合层级意义不大，此处不实现
-        return MoneyUtils.zero();
+        return 0L;
     }
 
-    private BigDecimal applySinglePromoUnitPrice(Promotion promo, BigDecimal salePrice, int quantity) {
+    private long applySinglePromoUnitPrice(Promotion promo, long salePrice, int quantity) {
         if (promo.getType() == PromotionType.DIRECT_REDUCTION) {
-            BigDecimal reduce = MoneyUtils.scale(promo.getReduceAmount());
-            BigDecimal newPrice = salePrice.subtract(reduce);
-            if (newPrice.compareTo(BigDecimal.ZERO) < 0) {
-                newPrice = BigDecimal.ZERO;
-            }
-            return MoneyUtils.scale(newPrice);
+            return Math.max(0L, salePrice - MoneyCents.of(promo.getReduceAmount()));
         }
         if (promo.getType() == PromotionType.DISCOUNT_RATE) {
-            BigDecimal rate = promo.getDiscountRate();
+            MoneyCents.Rate rate = MoneyCents.Rate.of(promo.getDiscountRate());
             if (rate == null) {
-                return MoneyUtils.scale(salePrice);
+                return salePrice;
             }
-            return MoneyUtils.scale(salePrice.multiply(rate));
+            return rate.apply(salePrice);
         }
         if (promo.getType() == PromotionType.FULL_REDUCTION) {
-            BigDecimal threshold = MoneyUtils.scale(promo.getThreshold());
-            BigDecimal reduce = MoneyUtils.scale(promo.getReduceAmount());
-            BigDecimal saleAmount = lineAmount(salePrice, quantity);
-            if (saleAmount.compareTo(threshold) >= 0) {
-                BigDecimal promoAmount = saleAmount.subtract(MoneyUtils.min(reduce, saleAmount));
-                return promoAmount.divide(new BigDecimal(quantity), MoneyUtils.MONEY_SCALE, RoundingMode.HALF_UP);
+            long threshold = MoneyCents.of(promo.getThreshold());
+            long reduce = MoneyCents.of(promo.getReduceAmount());
+            long saleAmount = lineAmount(salePrice, quantity);
+            if (saleAmount >= threshold) {
+                long promoAmount = saleAmount - Math.min(reduce, saleAmount);
+                return MoneyCents.divideHalfUp(promoAmount, quantity);
             }
-            return MoneyUtils.scale(salePrice);
+            return salePrice;
         }
-        return MoneyUtils.scale(salePrice);
+        return salePrice;
+    }
+
+    private static long lineAmount(long unitPrice, int quantity) {
+        return MoneyCents.multiply(unitPrice, quantity);
     }
 
-    private static BigDecimal lineAmount(BigDecimal unitPrice, int quantity) {
-        return MoneyUtils.scale(unitPrice).multiply(new BigDecimal(quantity)).setScale(MoneyUtils.MONEY_SCALE, RoundingMode.HALF_UP);
+    private static PromoItemResult toItemResult(String cartItemId, String skuId, int quantity,
+                                                long salePrice, long promoPrice,
+                                                long saleAmount, long promoAmount,
+                                                long appliedPromoId, String appliedPromoName) {
+        PromoItemResult r = new PromoItemResult();
+        r.setCartItemId(cartItemId);
+        r.setSkuId(skuId);
+        r.setQuantity(quantity);
+        r.setSalePrice(MoneyCents.toBigDecimal(salePrice));
+        r.setPromoPrice(MoneyCents.toBigDecimal(promoPrice));
+        r.setSaleAmount(MoneyCents.toBigDecimal(saleAmount));
+        r.setPromoAmount(MoneyCents.toBigDecimal(promoAmount));
+        r.setAppliedPromoId(appliedPromoId);
+        r.setAppliedPromoName(appliedPromoName);
+        r.setPromoDiscountAmount(MoneyCents.toBigDecimal(saleAmount - promoAmount));
+        return r;
     }
 
     private static List<PromoAdjustResult> toAdjusts(Map<Long, PromoAdjustAccumulator> acc) {
         List<PromoAdjustResult> adjusts = new ArrayList<>();
         for (PromoAdjustAccumulator a : acc.values()) {
-            adjusts.add(new PromoAdjustResult(a.promoId, a.promoName, MoneyUtils.scale(a.amount)));
+            adjusts.add(new PromoAdjustResult(a.promoId, a.promoName, MoneyCents.toBigDecimal(a.amount)));
         }
         // 为了阅读，按优惠金额降序
         adjusts.sort((o1, o2) -> o2.getPromoAmount().compareTo(o1.getPromoAmount()));
         return adjusts;
     }
 
+    private BestPlan branchAndBoundChooseLowPrice(List<CartItem> items,
+                                                  PromotionIndex promoIndex,
+                                                  List<List<Long>> optionsByIndex,
+                                                  PromoCalcResult result) {
+        PromoPlanSearch search = compilePlanSearch(items, promoIndex, optionsByIndex);
+        int[] winner = searchPool != null
+                ? search.runAdaptive(searchPool, parallelism, parallelThreshold)
+                : search.run();
+        // -1 表示节点预算耗尽（返回已找到的最优方案，未被证明最优）
+        result.setEvaluatedPlanCount(search.isAborted() ? -1 : search.getEvaluatedCount());
+        result.setPrunedNodeCount(search.getPrunedCount());
+        return materialize(items, promoIndex, optionsByIndex, winner, search.getEvaluatedCount());
+    }
+
+    /**
+     * 穷举：配置了搜索线程池且方案数达到 parallelThreshold 时才并行（穷举的工作量就是方案数）。
+     */
+    private boolean useParallel(PromoPlanSearch search) {
+        return searchPool != null && search.estimatedPlanCount() >= parallelThreshold;
+    }
+
+    /**
+     * 把购物车编译成“分”为单位的选项表：单品/不参加的选项直接算好行金额，组合选项只记组合下标。
+     */
+    private PromoPlanSearch compilePlanSearch(List<CartItem> items,
+                                              PromotionIndex promoIndex,
+                                              List<List<Long>> optionsByIndex) {
+        int n = items.size();
+        long[] saleAmounts = new long[n];
+        int[][] optionGroup = new int[n][];
+        long[][] optionAmount = new long[n][];
+        Map<Long, Integer> groupIndex = new LinkedHashMap<>();
+        List<PromoPlanSearch.GroupRule> groups = new ArrayList<>();
+
+        for (int i = 0; i < n; i++) {
+            CartItem item = items.get(i);
+            long salePrice = MoneyCents.of(item.getSalePrice());
+            saleAmounts[i] = lineAmount(salePrice, item.getQuantity());
+
+            List<Long> options = optionsByIndex.get(i);
+            optionGroup[i] = new int[options.size()];
+            optionAmount[i] = new long[options.size()];
+            for (int k = 0; k < options.size(); k++) {
+                long promoId = options.get(k);
+                Promotion p = promoId == 0L ? null : promoIndex.getPromotion(promoId);
+                optionGroup[i][k] = -1;
+                optionAmount[i][k] = saleAmounts[i];
+                if (p == null) {
+                    continue;
+                }
+                if (p.getLevel() == PromotionLevel.SINGLE) {
+                    optionAmount[i][k] = singlePromoAmount(p, salePrice, saleAmounts[i], item.getQuantity());
+                } else if (p.getLevel() == PromotionLevel.GROUP) {
+                    Integer g = groupIndex.get(p.getPromoId());
+                    if (g == null) {
+                        PromoPlanSearch.GroupRule rule = new PromoPlanSearch.GroupRule(p.getType(),
+                                MoneyCents.of(p.getThreshold()), MoneyCents.of(p.getReduceAmount()),
+                                MoneyCents.Rate.of(p.getDiscountRate()));
+                        // 永远没有优惠的组合（折扣率缺失/≥1、直降、减额 ≤ 0）与“不参加”等价，按原价金额的普通选项处理，
+                        // 否则它的参与金额会进记忆化的 key，白白放大状态数
+                        g = rule.canDiscount() ? groups.size() : -1;
+                        groupIndex.put(p.getPromoId(), g);
+                        if (g >= 0) {
+                            groups.add(rule);
+                        }
+                    }
+                    optionGroup[i][k] = g;
+                }
+            }
+        }
+        return new PromoPlanSearch(saleAmounts, optionGroup, optionAmount,
+                groups.toArray(new PromoPlanSearch.GroupRule[0]), maxSearchNodes);
+    }
+
+    private BestPlan materialize(List<CartItem> items,
+                                 PromotionIndex promoIndex,
+                                 List<List<Long>> optionsByIndex,
+                                 int[] winner,
+                                 long evaluatedCount) {
+        List<Long> selected = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            selected.add(optionsByIndex.get(i).get(winner[i]));
+        }
+        EvaluatedPlan evaluated = evaluate(items, promoIndex, selected);
+        BestPlan plan = new BestPlan();
+        plan.totalPromoAmount = evaluated.totalPromoAmount;
+        plan.totalDiscountAmount = evaluated.totalDiscountAmount;
+        plan.itemResults = evaluated.itemResults;
+        plan.adjusts = evaluated.adjusts;
+        plan.evaluatedCount = evaluatedCount;
+        return plan;
+    }
+
+    /**
+     * 单品促销后的行金额（与 {@link #evaluate} 一致：没有优惠则保持原价金额）。
+     */
+    private long singlePromoAmount(Promotion promo, long salePrice, long saleAmount, int quantity) {
+        long promoAmount = lineAmount(applySinglePromoUnitPrice(promo, salePrice, quantity), quantity);
+        return saleAmount - promoAmount > 0 ? promoAmount : saleAmount;
+    }
+
+    /**
+     * 计算过程中的商品行状态（金额单位：分）。
+     */
     private static class ItemState {
         String cartItemId;
         String skuId;
         int quantity;
 
-        BigDecimal salePrice;
-        BigDecimal saleAmount;
+        long salePrice;
+        long saleAmount;
 
-        BigDecimal promoPrice;
-        BigDecimal promoAmount;
+        long promoPrice;
+        long promoAmount;
         long appliedPromoId;
         String appliedPromoName;
     }
@@ -433,31 +547,28 @@ public class PromoCalcEngine {
     private static class PromoAdjustAccumulator {
         final long promoId;
         final String promoName;
-        BigDecimal amount = BigDecimal.ZERO;
+        long amount;
 
         PromoAdjustAccumulator(long promoId, String promoName) {
             this.promoId = promoId;
             this.promoName = promoName;
         }
 
-        void add(BigDecimal delta) {
-            if (delta == null) {
-                return;
-            }
-            amount = amount.add(delta);
+        void add(long delta) {
+            amount += delta;
         }
     }
 
     private static class EvaluatedPlan {
-        BigDecimal totalPromoAmount;
-        BigDecimal totalDiscountAmount;
+        long totalPromoAmount;
+        long totalDiscountAmount;
         List<PromoItemResult> itemResults;
         List<PromoAdjustResult> adjusts;
     }
 
     private static class BestPlan {
-        BigDecimal totalPromoAmount;
-        BigDecimal totalDiscountAmount = MoneyUtils.zero();
+        long totalPromoAmount;
+        long totalDiscountAmount;
         List<PromoItemResult> itemResults = new ArrayList<>();
         List<PromoAdjustResult> adjusts = new ArrayList<>();
         long evaluatedCount;
@@ -18,10 +18,22 @@ public class PromoCalcResult {
     private List<PromoAdjustResult> adjusts = new ArrayList<>();
 
     /**
-     * 为了讲清楚“组合取低价”的穷举过程，这里返回本次评估的方案数（可选）。
+     * 为了讲清楚“组合取低价”的穷举过程，这里返回本次评估的方案数（可选）；-1 表示走了退化路径。
      */
     private long evaluatedPlanCount;
 
+    /**
+     * 分支限界模式下被剪掉的搜索节点数（下界剪枝 + 记忆化命中）；穷举模式恒为0。
+     */
+    private long prunedNodeCount;
+
+    /**
+     * 本方案是否被证明为最低价：完整穷举或分支限界搜完时为 true；
+     * false 表示走了退化路径（evaluatedPlanCount = -1：超出枚举上限只算单品取低，或搜索节点预算耗尽返回启发式初始解），
+     * 此时方案只保证不劣于“只算单品取低”，调用方不应把它当作最优价展示或对账。
+     */
+    private boolean provenOptimal;
+
     public BigDecimal getOriginalGoodsAmount() {
         return originalGoodsAmount;
     }
@@ -61,5 +73,20 @@ public class PromoCalcResult {
     public void setEvaluatedPlanCount(long evaluatedPlanCount) {
         this.evaluatedPlanCount = evaluatedPlanCount;
     }
-}
 
+    public long getPrunedNodeCount() {
+        return prunedNodeCount;
+    }
+
+    public void setPrunedNodeCount(long prunedNodeCount) {
+        this.prunedNodeCount = prunedNodeCount;
+    }
+
+    public boolean isProvenOptimal() {
+        return provenOptimal;
+    }
+
+    public void setProvenOptimal(boolean provenOptimal) {
+        this.provenOptimal = provenOptimal;
+    }
+}
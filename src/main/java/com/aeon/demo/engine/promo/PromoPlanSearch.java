@@ -0,0 +1,978 @@
+package com.aeon.demo.engine.promo;
+
+import com.aeon.demo.domain.PromotionType;
+import com.aeon.demo.util.MoneyCents;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 促销“取低价”的方案搜索：增量计价 + 笛卡尔积穷举（{@link #enumerate()}）/ 分支限界（{@link #run()}）。
+ *
+ * <p>两种搜索结果完全一致：总价最低，同价时取 DFS 顺序（选项下标字典序）最先出现的方案。
+ * 内部全部用“分”(long) 计算，push/pop 一个商品的选项只改动 cost 和所属组合的参与金额；
+ * 叶子上不构建任何结果对象，只返回每个商品选中的选项下标，由引擎为最终方案物化结果。</p>
+ *
+ * <ul>
+ *   <li>cost：单品/不参加的商品按最终行金额累加；折扣组合成员按组合成交金额 round(T×rate) 的增量累加；
+ *       满减组合成员先按原价累加，组合“关闭”（后面再无可参与商品）时扣减满减额</li>
+ *   <li>下界：cost + 剩余商品各自的乐观金额（折扣组合按 原价×折扣率 定点精确计，每个未关闭的折扣组合只扣一次四舍五入余量）
+ *       - 每个未关闭满减组合的 min(满减额 - 凑门槛的最小代价, 已参与金额 + 减额容量内能白拿的金额)</li>
+ *   <li>记忆化：剩余部分的最优只取决于 (当前下标, 未关闭组合的参与金额)，与前缀怎么选无关；
+ *       满减组合超过 max(门槛, 减额) 或已不可能达门槛时，参与金额归一后共用同一状态；
+ *       折扣率 = p/q（最简分数）时 round((T+q)×rate) = round(T×rate) + p，后续增量只取决于 T mod q，参与金额按此取余</li>
+ * </ul>
+ *
+ * <p>前提：组合优惠按 MoneyAllocator 分摊后总和恰好等于组合优惠，因此组合成员行金额之和 = 参与原价 - 组合优惠。</p>
+ *
+ * <p>并行版本（{@link #enumerateParallel}/{@link #runParallel}）：在前几个商品的选项上把 DFS 树切成若干子树，
+ * 每个子树是一个 {@link RecursiveTask}，使用独立的 push/pop 状态（预计算的表只读共享）；分支限界的子树通过
+ * {@link AtomicLong} 共享当前最优总价作为预算。子树结果按选项下标顺序合并（严格更低才替换），
+ * 因此同价时仍取字典序最先的方案，与顺序搜索结果一致。</p>
+ *
+ * @author codex
+ */
+final class PromoPlanSearch {
+
+    private static final int MAX_MEMO_SIZE = 500_000;
+    /**
+     * 并行搜索时每访问这么多节点才向共享计数器汇报一次，避免每个节点都争用原子变量。
+     */
+    private static final int NODE_BATCH = 1024;
+    /**
+     * 切分子树时的目标任务数 = 并行度 × 该系数（子树大小不均，多切一些便于工作窃取）。
+     */
+    private static final int TASKS_PER_THREAD = 8;
+
+    private final int n;
+    private final long[] saleAmounts;
+    /**
+     * optionGroup[i][k]：第 i 个商品第 k 个选项对应的组合下标；-1 表示非组合（行金额在选择时即确定，见 optionAmount）。
+     */
+    private final int[][] optionGroup;
+    private final long[][] optionAmount;
+    private final GroupRule[] groups;
+    private final long maxSearchNodes;
+    /**
+     * 顺序搜索本轮的节点上限：通常等于 maxSearchNodes，{@link #runAdaptive} 的顺序探测阶段临时调小。
+     */
+    private long nodeLimit;
+
+    /**
+     * 每个商品的选项展开顺序：乐观金额从低到高，同额按选项下标（“不参加”先于等价的满减选项）。
+     */
+    private final int[][] optionOrder;
+    /**
+     * 下界的定点精度：suffixOptimistic 以 1/boundScale 分为单位，折扣组合成员的 原价×折扣率 可以精确表示；
+     * 购物车金额太大会溢出时为 1（成员乐观金额退回 floor(原价×折扣率)）。
+     */
+    private final long boundScale;
+    /**
+     * 折扣组合的 折扣率×boundScale（整数）；满减组合为 0。
+     */
+    private final long[] scaledRates;
+    /**
+     * 剩余商品的乐观金额之和（单位：1/boundScale 分）：min(非组合选项金额, 原价×可参与折扣组合的折扣率)。
+     */
+    private final long[] suffixOptimistic;
+    /**
+     * 商品放弃乐观金额、按原价参加满减组合的代价。
+     */
+    private final long[] opportunityCost;
+
+    private final int[] groupLastIndex;
+    private final long[][] groupSuffixPotential;
+    private final int[][] groupsClosingAt;
+    /**
+     * 满减组合的候选成员：按 代价/原价 升序，用于分数背包估算“凑够门槛的最小代价”。
+     */
+    private final int[][] groupCandidates;
+
+    private final long[] groupTotals;
+    private final int[] choice;
+    private final long[] costBefore;
+    private long cost;
+
+    /**
+     * 记忆化：条目只记录“该状态下剩余部分的精确最优/下界”，与从哪个前缀到达无关，因此并行时所有子任务共用一个。
+     */
+    private final Map<MemoKey, SubPlan> memo;
+    /**
+     * 并行搜索的共享状态；顺序搜索时为 null。
+     */
+    private final ParallelContext parallel;
+
+    private long seedTotal = Long.MAX_VALUE;
+    private int[] seedChoice;
+    /**
+     * 搜索过程中见过的最低总价方案（从初始解开始，叶子/精确记忆命中严格更低才替换）；节点预算耗尽时返回它。
+     */
+    private long incumbentTotal = Long.MAX_VALUE;
+    private int[] incumbentChoice;
+
+    private long evaluatedCount;
+    private long prunedCount;
+    private long visitedCount;
+    private boolean aborted;
+
+    PromoPlanSearch(long[] saleAmounts, int[][] optionGroup, long[][] optionAmount, GroupRule[] groups, long maxSearchNodes) {
+        this.n = saleAmounts.length;
+        this.saleAmounts = saleAmounts;
+        this.optionGroup = optionGroup;
+        this.optionAmount = optionAmount;
+        this.groups = groups;
+        this.maxSearchNodes = maxSearchNodes;
+        this.nodeLimit = maxSearchNodes;
+        this.parallel = null;
+        this.memo = new HashMap<>();
+
+        int groupCount = groups.length;
+        groupLastIndex = new int[groupCount];
+        groupSuffixPotential = new long[groupCount][n + 1];
+        for (int g = 0; g < groupCount; g++) {
+            groupLastIndex[g] = -1;
+            for (int i = n - 1; i >= 0; i--) {
+                boolean member = firstGroupOption(i, g) >= 0;
+                if (member && groupLastIndex[g] < 0) {
+                    groupLastIndex[g] = i;
+                }
+                groupSuffixPotential[g][i] = groupSuffixPotential[g][i + 1] + (member ? saleAmounts[i] : 0L);
+            }
+        }
+
+        boundScale = boundScale(saleAmounts, groups);
+        scaledRates = new long[groupCount];
+        for (int g = 0; g < groupCount; g++) {
+            if (groups[g].isRate() && boundScale > 1L) {
+                scaledRates[g] = groups[g].effectiveRate.getValue().multiply(BigDecimal.valueOf(boundScale)).longValueExact();
+            }
+        }
+        suffixOptimistic = new long[n + 1];
+        opportunityCost = new long[n];
+        optionOrder = new int[n][];
+        for (int i = n - 1; i >= 0; i--) {
+            int size = optionGroup[i].length;
+            long[] optimistic = new long[size];
+            long min = saleAmounts[i] * boundScale;
+            for (int k = 0; k < size; k++) {
+                int g = optionGroup[i][k];
+                if (g < 0) {
+                    optimistic[k] = optionAmount[i][k] * boundScale;
+                } else if (groups[g].isRate()) {
+                    optimistic[k] = boundScale == 1L
+                            ? groups[g].optimisticMemberAmount(saleAmounts[i])
+                            : saleAmounts[i] * scaledRates[g];
+                } else {
+                    optimistic[k] = saleAmounts[i] * boundScale;
+                }
+                min = Math.min(min, optimistic[k]);
+            }
+            suffixOptimistic[i] = suffixOptimistic[i + 1] + min;
+            // 换算回“分”时乐观金额向上取整，代价只会偏小，仍是下界
+            opportunityCost[i] = saleAmounts[i] + Math.floorDiv(-min, boundScale);
+
+            Integer[] order = new Integer[size];
+            for (int k = 0; k < size; k++) {
+                order[k] = k;
+            }
+            Arrays.sort(order, (a, b) -> optimistic[a] != optimistic[b]
+                    ? Long.compare(optimistic[a], optimistic[b])
+                    : Integer.compare(a, b));
+            optionOrder[i] = new int[size];
+            for (int k = 0; k < size; k++) {
+                optionOrder[i][k] = order[k];
+            }
+        }
+
+        groupCandidates = new int[groupCount][];
+        List<List<Integer>> closing = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            closing.add(new ArrayList<>());
+        }
+        for (int g = 0; g < groupCount; g++) {
+            if (groupLastIndex[g] >= 0 && !groups[g].isRate()) {
+                closing.get(groupLastIndex[g]).add(g);
+            }
+            List<Integer> candidates = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                if (saleAmounts[i] > 0 && firstGroupOption(i, g) >= 0) {
+                    candidates.add(i);
+                }
+            }
+            // 按 opportunityCost/saleAmount 升序（交叉相乘比较，避免除法）
+            candidates.sort((a, b) -> Double.compare(
+                    (double) opportunityCost[a] * saleAmounts[b],
+                    (double) opportunityCost[b] * saleAmounts[a]));
+            groupCandidates[g] = toArray(candidates);
+        }
+        groupsClosingAt = new int[n][];
+        for (int i = 0; i < n; i++) {
+            groupsClosingAt[i] = toArray(closing.get(i));
+        }
+
+        groupTotals = new long[groupCount];
+        choice = new int[n];
+        costBefore = new long[n];
+    }
+
+    /**
+     * 并行子任务用：共享 source 的只读表与本次搜索的记忆化，push/pop 状态独立。
+     */
+    private PromoPlanSearch(PromoPlanSearch source, ParallelContext parallel) {
+        this.n = source.n;
+        this.saleAmounts = source.saleAmounts;
+        this.optionGroup = source.optionGroup;
+        this.optionAmount = source.optionAmount;
+        this.groups = source.groups;
+        this.maxSearchNodes = source.maxSearchNodes;
+        this.nodeLimit = source.maxSearchNodes;
+        this.parallel = parallel;
+        this.memo = parallel.memo;
+        this.optionOrder = source.optionOrder;
+        this.boundScale = source.boundScale;
+        this.scaledRates = source.scaledRates;
+        this.suffixOptimistic = source.suffixOptimistic;
+        this.opportunityCost = source.opportunityCost;
+        this.groupLastIndex = source.groupLastIndex;
+        this.groupSuffixPotential = source.groupSuffixPotential;
+        this.groupsClosingAt = source.groupsClosingAt;
+        this.groupCandidates = source.groupCandidates;
+        this.groupTotals = new long[groups.length];
+        this.choice = new int[n];
+        this.costBefore = new long[n];
+    }
+
+    /**
+     * @return 每个商品选中的选项下标
+     */
+    int[] run() {
+        buildSeed();
+        incumbentTotal = seedTotal;
+        incumbentChoice = seedChoice;
+        SubPlan root = solve(0, seedTotal);
+        if (aborted || !root.exact) {
+            return incumbentChoice;
+        }
+        int[] winner = new int[n];
+        SubPlan node = root;
+        for (int i = 0; i < n; i++) {
+            winner[i] = node.choice;
+            node = node.next;
+        }
+        return winner;
+    }
+
+    /**
+     * 笛卡尔积全量穷举：按选项下标顺序 DFS，叶子上只比较增量维护的总价，严格更低才替换（同价保留先出现者）。
+     *
+     * @return 每个商品选中的选项下标
+     */
+    int[] enumerate() {
+        int[] best = new int[n];
+        long[] bestTotal = {Long.MAX_VALUE};
+        enumerate(0, best, bestTotal);
+        return best;
+    }
+
+    private void enumerate(int idx, int[] best, long[] bestTotal) {
+        if (idx == n) {
+            evaluatedCount++;
+            if (cost < bestTotal[0]) {
+                bestTotal[0] = cost;
+                System.arraycopy(choice, 0, best, 0, n);
+            }
+            return;
+        }
+        for (int k = 0; k < optionGroup[idx].length; k++) {
+            push(idx, k);
+            enumerate(idx + 1, best, bestTotal);
+            pop(idx);
+        }
+    }
+
+    /**
+     * 先顺序搜索至多 sequentialNodes 个节点，搜完即返回；搜不完（剪枝后的实际工作量大）才转并行，
+     * 探测阶段记下的子问题交给并行子任务复用。结果与 {@link #run()} 完全一致，见 {@link #runParallel}。
+     *
+     * @return 每个商品选中的选项下标
+     */
+    int[] runAdaptive(ForkJoinPool pool, int parallelism, long sequentialNodes) {
+        if (sequentialNodes >= maxSearchNodes) {
+            return run();
+        }
+        nodeLimit = sequentialNodes;
+        int[] winner = run();
+        nodeLimit = maxSearchNodes;
+        if (!aborted) {
+            return winner;
+        }
+        aborted = false;
+        visitedCount = 0L;
+        return runParallel(pool, parallelism);
+    }
+
+    /**
+     * 并行分支限界：先顺序构建初始解作为共享预算，再把子树交给 pool 搜索。
+     *
+     * <p>子任务共用一个节点预算，耗尽的时机取决于线程调度；为了让结果可复现，并行搜索耗尽预算时
+     * 丢弃并行结果，改为从头顺序搜索（同样的节点预算），返回它的最优方案（预算耗尽时为其已找到的最优方案）。</p>
+     *
+     * @return 每个商品选中的选项下标（与 {@link #run()} 一致）
+     */
+    int[] runParallel(ForkJoinPool pool, int parallelism) {
+        buildSeed();
+        ParallelContext context = new ParallelContext(false, seedTotal, splitDepth(parallelism));
+        // 记忆化条目只描述子问题本身（精确最优或下界），与预算、前缀无关，顺序探测留下的可以直接复用
+        context.memo.putAll(memo);
+        Candidate best = pool.invoke(new PlanTask(this, context, new int[n], 0));
+        collect(context);
+        if (aborted) {
+            aborted = false;
+            visitedCount = 0L;
+            memo.clear();
+            return run();
+        }
+        if (best == null) {
+            return seedChoice;
+        }
+        return best.choice;
+    }
+
+    /**
+     * 并行穷举：各子树独立全量枚举，评估方案数与 {@link #enumerate()} 相同。
+     *
+     * @return 每个商品选中的选项下标（与 {@link #enumerate()} 一致）
+     */
+    int[] enumerateParallel(ForkJoinPool pool, int parallelism) {
+        ParallelContext context = new ParallelContext(true, Long.MAX_VALUE, splitDepth(parallelism));
+        Candidate best = pool.invoke(new PlanTask(this, context, new int[n], 0));
+        collect(context);
+        return best.choice;
+    }
+
+    /**
+     * 方案总数（笛卡尔积，溢出时取 Long.MAX_VALUE），用于判断是否值得并行。
+     */
+    long estimatedPlanCount() {
+        long count = 1L;
+        for (int i = 0; i < n; i++) {
+            int size = optionGroup[i].length;
+            if (count > Long.MAX_VALUE / size) {
+                return Long.MAX_VALUE;
+            }
+            count *= size;
+        }
+        return count;
+    }
+
+    long getEvaluatedCount() {
+        return evaluatedCount;
+    }
+
+    long getPrunedCount() {
+        return prunedCount;
+    }
+
+    /**
+     * 节点预算耗尽：返回的是搜索到此为止的最优方案（不劣于启发式初始解，也就不劣于“只算单品取低”），未被证明最优。
+     * 并行搜索耗尽预算时会改走顺序搜索，此时是否耗尽、返回哪个方案都与顺序搜索一致，不受线程调度影响；
+     * 并行搜完（未耗尽）时返回的是精确最优，同样与调度无关。
+     */
+    boolean isAborted() {
+        return aborted;
+    }
+
+    /**
+     * 初始解：每个商品取最低的非组合选项；再对每个组合尝试“能参加的都参加”，取最低者。只用来给根节点一个预算。
+     */
+    private void buildSeed() {
+        seedTotal = Long.MAX_VALUE;
+        seedChoice = null;
+        int[] base = new int[n];
+        for (int i = 0; i < n; i++) {
+            for (int k = 1; k < optionAmount[i].length; k++) {
+                if (optionGroup[i][k] < 0 && optionAmount[i][k] < optionAmount[i][base[i]]) {
+                    base[i] = k;
+                }
+            }
+        }
+        considerSeed(base);
+
+        for (int g = 0; g < groups.length; g++) {
+            int[] candidate = base.clone();
+            for (int i = 0; i < n; i++) {
+                int k = firstGroupOption(i, g);
+                if (k >= 0) {
+                    candidate[i] = k;
+                }
+            }
+            considerSeed(candidate);
+        }
+    }
+
+    private void considerSeed(int[] candidate) {
+        for (int i = 0; i < n; i++) {
+            push(i, candidate[i]);
+        }
+        long total = cost;
+        for (int i = n - 1; i >= 0; i--) {
+            pop(i);
+        }
+        if (total < seedTotal) {
+            seedTotal = total;
+            seedChoice = candidate;
+        }
+    }
+
+    /**
+     * 求当前状态下“剩余部分”的最优：若最优值 ≤ budget，返回精确值及字典序最先的后缀；否则只返回一个 > budget 的下界。
+     */
+    private SubPlan solve(int idx, long budget) {
+        if (idx == n) {
+            evaluatedCount++;
+            offerIncumbent(n, SubPlan.LEAF);
+            return SubPlan.LEAF;
+        }
+        if (aborted || exhaustNodeBudget()) {
+            aborted = true;
+            return new SubPlan(false, budget + 1, -1, null);
+        }
+
+        MemoKey key = memoKey(idx);
+        SubPlan cached = memo.get(key);
+        if (cached != null && (cached.exact || cached.future > budget)) {
+            prunedCount++;
+            if (cached.exact) {
+                offerIncumbent(idx, cached);
+            }
+            return cached;
+        }
+
+        long futureLowerBound = lowerBound(idx) - cost;
+        if (futureLowerBound > budget) {
+            prunedCount++;
+            return remember(key, new SubPlan(false, futureLowerBound, -1, null));
+        }
+
+        long bestFuture = 0L;
+        int bestK = -1;
+        SubPlan bestNext = null;
+        long lowest = Long.MAX_VALUE;
+        for (int k : optionOrder[idx]) {
+            push(idx, k);
+            long immediate = cost - costBefore[idx];
+            long limit;
+            if (bestK < 0) {
+                limit = budget;
+            } else {
+                // 同价时下标小者优先（与 DFS 顺序一致）：下标比当前最优大的选项必须严格更低
+                limit = k < bestK ? bestFuture : bestFuture - 1;
+            }
+            SubPlan child = solve(idx + 1, limit - immediate);
+            pop(idx);
+            if (aborted) {
+                return child;
+            }
+
+            long total = immediate + child.future;
+            if (child.exact && total <= limit) {
+                bestFuture = total;
+                bestK = k;
+                bestNext = child;
+            }
+            lowest = Math.min(lowest, total);
+        }
+
+        if (bestK >= 0) {
+            return remember(key, new SubPlan(true, bestFuture, bestK, bestNext));
+        }
+        return remember(key, new SubPlan(false, lowest, -1, null));
+    }
+
+    /**
+     * 当前前缀 + 精确后缀 suffix 组成一个完整方案；严格低于已知最优才记下（只在变好时复制，开销可以忽略）。
+     */
+    private void offerIncumbent(int idx, SubPlan suffix) {
+        long total = cost + suffix.future;
+        if (total >= incumbentTotal) {
+            return;
+        }
+        int[] plan = new int[n];
+        System.arraycopy(choice, 0, plan, 0, idx);
+        SubPlan node = suffix;
+        for (int i = idx; i < n; i++) {
+            plan[i] = node.choice;
+            node = node.next;
+        }
+        incumbentTotal = total;
+        incumbentChoice = plan;
+    }
+
+    private boolean exhaustNodeBudget() {
+        visitedCount++;
+        if (parallel == null) {
+            return visitedCount > nodeLimit;
+        }
+        if ((visitedCount & (NODE_BATCH - 1)) == 0 && parallel.visited.addAndGet(NODE_BATCH) > maxSearchNodes) {
+            parallel.aborted = true;
+        }
+        return parallel.aborted;
+    }
+
+    /**
+     * 切分深度：前 depth 个商品的选项组合数达到目标任务数即可（至少留最后一个商品给叶子任务）。
+     */
+    private int splitDepth(int parallelism) {
+        long target = (long) Math.max(1, parallelism) * TASKS_PER_THREAD;
+        long tasks = 1L;
+        int depth = 0;
+        while (depth < n - 1 && tasks < target) {
+            tasks *= optionGroup[depth].length;
+            depth++;
+        }
+        return depth;
+    }
+
+    /**
+     * 叶子任务：在独立状态上按 prefix 压入前 depth 个商品，再搜索剩余部分。
+     *
+     * @return 子树内（预算内）字典序最先的最优方案；分支限界下子树整体超预算时返回 null
+     */
+    private Candidate searchSubtree(int[] prefix, int depth, ParallelContext context) {
+        PromoPlanSearch fork = new PromoPlanSearch(this, context);
+        for (int i = 0; i < depth; i++) {
+            fork.push(i, prefix[i]);
+        }
+        Candidate result = null;
+        if (context.exhaustive) {
+            int[] best = new int[n];
+            long[] bestTotal = {Long.MAX_VALUE};
+            System.arraycopy(prefix, 0, best, 0, depth);
+            fork.enumerate(depth, best, bestTotal);
+            result = new Candidate(bestTotal[0], best);
+        } else {
+            // 同价的方案也要保留（可能字典序更靠前），所以预算取 = 当前共享最优；
+            // 组合优惠在组合关闭时才扣减，cost 不单调，预算为负也不能直接剪掉，交给 solve 的下界判断
+            long budget = context.bestTotal.get() - fork.cost;
+            SubPlan sub = fork.solve(depth, budget);
+            if (!fork.aborted && sub.exact && sub.future <= budget) {
+                long total = fork.cost + sub.future;
+                context.bestTotal.accumulateAndGet(total, Math::min);
+                int[] winner = prefix.clone();
+                SubPlan node = sub;
+                for (int i = depth; i < n; i++) {
+                    winner[i] = node.choice;
+                    node = node.next;
+                }
+                result = new Candidate(total, winner);
+            }
+        }
+        context.evaluated.add(fork.evaluatedCount);
+        context.pruned.add(fork.prunedCount);
+        return result;
+    }
+
+    private void collect(ParallelContext context) {
+        evaluatedCount += context.evaluated.sum();
+        prunedCount += context.pruned.sum();
+        aborted = aborted || context.aborted;
+    }
+
+    private SubPlan remember(MemoKey key, SubPlan plan) {
+        if (memo.size() < MAX_MEMO_SIZE || memo.containsKey(key)) {
+            memo.put(key, plan);
+        }
+        return plan;
+    }
+
+    private long lowerBound(int idx) {
+        // 折扣组合：已参与成员的成交金额已在 cost 里，后续成员已按 原价×折扣率 计入 suffixOptimistic，
+        // 整个组合只差一次四舍五入（每个组合修正一次，而不是每个成员各差 1 分）
+        long future = suffixOptimistic[idx];
+        if (boundScale > 1L) {
+            for (int g = 0; g < groups.length; g++) {
+                if (groupLastIndex[g] >= idx && groups[g].isRate()) {
+                    // 后续成员合计 X：round((T+X)×rate) - round(T×rate) ≥ X×rate + (T×rate - round(T×rate) - 1/2)
+                    future += groupTotals[g] * scaledRates[g] - groups[g].amount(groupTotals[g]) * boundScale - boundScale / 2;
+                }
+            }
+        }
+        long lb = cost - Math.floorDiv(-future, boundScale);
+        for (int g = 0; g < groups.length; g++) {
+            GroupRule rule = groups[g];
+            if (groupLastIndex[g] < idx || rule.isRate()) {
+                continue;
+            }
+            long discount = rule.discount(groupTotals[g] + groupSuffixPotential[g][idx]);
+            if (discount > 0) {
+                discount -= minOpportunityCost(g, idx, rule.threshold - groupTotals[g]);
+            }
+            if (discount > 0) {
+                // 优惠不超过参与金额：已参与部分 + 后续成员在 (减额 - 已参与) 容量内能“白拿”的金额
+                discount = Math.min(discount, groupTotals[g] + maxFreeAmount(g, idx, rule.reduceAmount - groupTotals[g]));
+            }
+            if (discount > 0) {
+                lb -= discount;
+            }
+        }
+        return lb;
+    }
+
+    /**
+     * 从 idx 之后的候选成员里凑够 need，至少要放弃多少乐观金额（下界）。
+     *
+     * <p>任何整数解要么含一个单独就够 need 的大商品（代价 ≥ 其中最小的 opportunityCost），要么只由小商品组成
+     * （代价 ≥ 小商品上的分数背包，向下取整）；取两者较小值。只用分数背包时，一个大商品的“一小部分”就能凑够门槛，
+     * 代价几乎为 0，下界形同虚设。</p>
+     */
+    private long minOpportunityCost(int g, int idx, long need) {
+        if (need <= 0) {
+            return 0L;
+        }
+        long minLarge = Long.MAX_VALUE;
+        long covered = 0L;
+        long total = 0L;
+        long smallCover = Long.MAX_VALUE;
+        for (int i : groupCandidates[g]) {
+            if (i < idx) {
+                continue;
+            }
+            if (saleAmounts[i] >= need) {
+                minLarge = Math.min(minLarge, opportunityCost[i]);
+                continue;
+            }
+            if (smallCover == Long.MAX_VALUE && covered + saleAmounts[i] >= need) {
+                long part = (long) ((double) opportunityCost[i] * (need - covered) / saleAmounts[i]) - 1;
+                smallCover = total + Math.max(0L, part);
+            }
+            covered += saleAmounts[i];
+            total += opportunityCost[i];
+        }
+        long cost = Math.min(minLarge, smallCover);
+        // 凑不够门槛时调用方本就拿不到优惠；返回全部代价与原实现一致
+        return cost == Long.MAX_VALUE ? total : cost;
+    }
+
+    /**
+     * 分数背包上界：idx 之后的候选成员装进 capacity，每个商品能白拿 原价 - opportunityCost（按该比例从高到低装，向上取整）。
+     *
+     * <p>满减优惠 = min(减额, 参与金额)：减额远大于门槛时，参加的商品在减额内几乎免费，但每个都要放弃自己的乐观金额；
+     * 只按“凑门槛的最小代价”估算时，会把凑够门槛之后的所有参与金额都当成白拿。</p>
+     */
+    private long maxFreeAmount(int g, int idx, long capacity) {
+        long free = 0L;
+        for (int i : groupCandidates[g]) {
+            if (capacity <= 0) {
+                break;
+            }
+            if (i < idx) {
+                continue;
+            }
+            long gain = saleAmounts[i] - opportunityCost[i];
+            if (saleAmounts[i] <= capacity) {
+                free += gain;
+                capacity -= saleAmounts[i];
+            } else {
+                free += (long) Math.ceil((double) gain * capacity / saleAmounts[i]) + 1;
+                break;
+            }
+        }
+        return free;
+    }
+
+    /**
+     * 折扣率按 2×10^k 放大后都是整数（k 为各折扣组合折扣率的最大小数位数）；整单金额 × 放大倍数可能溢出时退回 1。
+     */
+    private static long boundScale(long[] saleAmounts, GroupRule[] groups) {
+        int digits = -1;
+        for (GroupRule rule : groups) {
+            if (rule.isRate()) {
+                digits = Math.max(digits, Math.max(0, rule.effectiveRate.getValue().stripTrailingZeros().scale()));
+            }
+        }
+        if (digits < 0 || digits > 9) {
+            return 1L;
+        }
+        long scale = 2L * BigInteger.TEN.pow(digits).longValueExact();
+        long total = 0L;
+        for (long amount : saleAmounts) {
+            total += Math.abs(amount);
+        }
+        return total < Long.MAX_VALUE / 4 / scale ? scale : 1L;
+    }
+
+    private MemoKey memoKey(int idx) {
+        long[] totals = new long[groups.length];
+        for (int g = 0; g < groups.length; g++) {
+            if (groupLastIndex[g] >= idx) {
+                totals[g] = groups[g].normalize(groupTotals[g], groupSuffixPotential[g][idx]);
+            }
+        }
+        return new MemoKey(idx, totals);
+    }
+
+    private void push(int idx, int k) {
+        costBefore[idx] = cost;
+        choice[idx] = k;
+        int g = optionGroup[idx][k];
+        if (g < 0) {
+            cost += optionAmount[idx][k];
+        } else if (groups[g].isRate()) {
+            // 逐个成员累加成交金额的增量，组合关闭时总和恰好是 round(T×rate)
+            cost += groups[g].amount(groupTotals[g] + saleAmounts[idx]) - groups[g].amount(groupTotals[g]);
+            groupTotals[g] += saleAmounts[idx];
+        } else {
+            cost += saleAmounts[idx];
+            groupTotals[g] += saleAmounts[idx];
+        }
+        for (int closed : groupsClosingAt[idx]) {
+            cost -= groups[closed].discount(groupTotals[closed]);
+        }
+    }
+
+    private void pop(int idx) {
+        int g = optionGroup[idx][choice[idx]];
+        if (g >= 0) {
+            groupTotals[g] -= saleAmounts[idx];
+        }
+        cost = costBefore[idx];
+    }
+
+    private int firstGroupOption(int idx, int g) {
+        for (int k = 0; k < optionGroup[idx].length; k++) {
+            if (optionGroup[idx][k] == g) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] arr = new int[list.size()];
+        for (int i = 0; i < arr.length; i++) {
+            arr[i] = list.get(i);
+        }
+        return arr;
+    }
+
+    /**
+     * 组合促销规则（金额单位：分）。优惠口径与 PromoCalcEngine.calcGroupDiscount 一致，并且不超过参与金额。
+     */
+    static final class GroupRule {
+        final PromotionType type;
+        final long threshold;
+        final long reduceAmount;
+        final MoneyCents.Rate discountRate;
+        /**
+         * 折扣组合的有效折扣率，限制在 [0,1]（null/≥1 视为无折扣）。
+         */
+        private final MoneyCents.Rate effectiveRate;
+        /**
+         * 折扣率化成最简分数 p/q 后的 q：参与金额每增加 q 分，成交金额恰好增加 p 分；0 表示 q 超出 long（不取余）。
+         */
+        private final long ratePeriod;
+
+        GroupRule(PromotionType type, long threshold, long reduceAmount, MoneyCents.Rate discountRate) {
+            this.type = type;
+            this.threshold = threshold;
+            this.reduceAmount = reduceAmount;
+            this.discountRate = discountRate;
+            if (discountRate == null || discountRate.getValue().compareTo(BigDecimal.ONE) >= 0) {
+                this.effectiveRate = MoneyCents.Rate.of(BigDecimal.ONE);
+            } else {
+                this.effectiveRate = MoneyCents.Rate.of(discountRate.getValue().max(BigDecimal.ZERO));
+            }
+            this.ratePeriod = discountRate == null ? 0L : period(discountRate.getValue());
+        }
+
+        private static long period(BigDecimal rate) {
+            if (rate.scale() <= 0) {
+                return 1L;
+            }
+            BigInteger divisor = BigInteger.TEN.pow(rate.scale());
+            BigInteger q = divisor.divide(divisor.gcd(rate.unscaledValue()));
+            return q.bitLength() < Long.SIZE - 1 ? q.longValue() : 0L;
+        }
+
+        boolean isRate() {
+            return type == PromotionType.DISCOUNT_RATE;
+        }
+
+        /**
+         * 是否可能产生优惠：满减要求减额 &gt; 0，折扣要求有效折扣率 &lt; 1，其余类型在组合层级没有优惠。
+         */
+        boolean canDiscount() {
+            if (type == PromotionType.FULL_REDUCTION) {
+                return reduceAmount > 0;
+            }
+            return isRate() && effectiveRate.getValue().compareTo(BigDecimal.ONE) < 0;
+        }
+
+        long discount(long total) {
+            long discount;
+            if (type == PromotionType.FULL_REDUCTION) {
+                discount = total >= threshold ? reduceAmount : 0L;
+            } else if (type == PromotionType.DISCOUNT_RATE && discountRate != null) {
+                discount = total - discountRate.apply(total);
+            } else {
+                discount = 0L;
+            }
+            return discount <= 0 ? 0L : Math.min(discount, total);
+        }
+
+        /**
+         * 组合成交金额 = 参与金额 - 优惠；折扣组合（0 ≤ rate &lt; 1）即 round(T×rate)，负折扣率为 0。
+         */
+        long amount(long total) {
+            return total - discount(total);
+        }
+
+        /**
+         * 折扣组合成员的乐观金额（不放大精度时用）：成员加入带来的增量 round((T+s)×rate) - round(T×rate)
+         * 是整数且 &gt; s×rate - 1，因此不小于 floor(原价×rate)。
+         */
+        long optimisticMemberAmount(long saleAmount) {
+            return effectiveRate.applyFloor(saleAmount);
+        }
+
+        /**
+         * 记忆化用的等价参与金额：折扣组合取 T mod q；不可能拿到优惠（含直降类组合）时归零；满减超过 max(门槛, 减额) 后优惠恒定，归一到该值。
+         */
+        long normalize(long total, long remainingPotential) {
+            if (isRate()) {
+                return ratePeriod > 0 ? total % ratePeriod : total;
+            }
+            if (discount(total + remainingPotential) <= 0) {
+                return 0L;
+            }
+            return Math.min(total, Math.max(threshold, reduceAmount));
+        }
+    }
+
+    /**
+     * 一次并行搜索的共享状态。
+     */
+    private static final class ParallelContext {
+        final boolean exhaustive;
+        final int splitDepth;
+        /**
+         * 当前已知的最优总价（分支限界的共享预算）。
+         */
+        final AtomicLong bestTotal;
+        final AtomicLong visited = new AtomicLong();
+        final LongAdder evaluated = new LongAdder();
+        final LongAdder pruned = new LongAdder();
+        final Map<MemoKey, SubPlan> memo = new ConcurrentHashMap<>();
+        volatile boolean aborted;
+
+        ParallelContext(boolean exhaustive, long bestTotal, int splitDepth) {
+            this.exhaustive = exhaustive;
+            this.bestTotal = new AtomicLong(bestTotal);
+            this.splitDepth = splitDepth;
+        }
+    }
+
+    private static final class Candidate {
+        final long total;
+        final int[] choice;
+
+        Candidate(long total, int[] choice) {
+            this.total = total;
+            this.choice = choice;
+        }
+    }
+
+    /**
+     * 固定前 depth 个商品的选项；未到切分深度时按选项下标展开子任务，并按下标顺序合并（严格更低才替换）。
+     */
+    private static final class PlanTask extends RecursiveTask<Candidate> {
+        private final PromoPlanSearch search;
+        private final ParallelContext context;
+        private final int[] prefix;
+        private final int depth;
+
+        PlanTask(PromoPlanSearch search, ParallelContext context, int[] prefix, int depth) {
+            this.search = search;
+            this.context = context;
+            this.prefix = prefix;
+            this.depth = depth;
+        }
+
+        @Override
+        protected Candidate compute() {
+            if (depth >= context.splitDepth) {
+                return search.searchSubtree(prefix, depth, context);
+            }
+            int size = search.optionGroup[depth].length;
+            List<PlanTask> children = new ArrayList<>(size);
+            for (int k = 0; k < size; k++) {
+                int[] childPrefix = prefix.clone();
+                childPrefix[depth] = k;
+                children.add(new PlanTask(search, context, childPrefix, depth + 1));
+            }
+            invokeAll(children);
+            Candidate best = null;
+            for (PlanTask child : children) {
+                Candidate candidate = child.join();
+                if (candidate != null && (best == null || candidate.total < best.total)) {
+                    best = candidate;
+                }
+            }
+            return best;
+        }
+    }
+
+    /**
+     * 某个搜索状态下“剩余部分”的求解结果：exact 时为精确最优及其后缀（链表），否则 future 只是下界。
+     */
+    private static final class SubPlan {
+        static final SubPlan LEAF = new SubPlan(true, 0L, -1, null);
+
+        final boolean exact;
+        final long future;
+        final int choice;
+        final SubPlan next;
+
+        SubPlan(boolean exact, long future, int choice, SubPlan next) {
+            this.exact = exact;
+            this.future = future;
+            this.choice = choice;
+            this.next = next;
+        }
+    }
+
+    private static final class MemoKey {
+        final int index;
+        final long[] groupTotals;
+        final int hash;
+
+        MemoKey(int index, long[] groupTotals) {
+            this.index = index;
+            this.groupTotals = groupTotals;
+            this.hash = 31 * index + Arrays.hashCode(groupTotals);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof MemoKey)) {
+                return false;
+            }
+            MemoKey other = (MemoKey) o;
+            return index == other.index && Arrays.equals(groupTotals, other.groupTotals);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
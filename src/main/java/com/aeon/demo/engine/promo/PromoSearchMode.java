@@ -0,0 +1,20 @@
+package com.aeon.demo.engine.promo;
+
+/**
+ * 促销“取低价”方案搜索模式。
+ *
+ * @author codex
+ */
+public enum PromoSearchMode {
+
+    /**
+     * 笛卡尔积全量穷举：方案数超过 maxEnumerations 时退化为“只算单品取低”（组合促销会被忽略）。
+     */
+    EXHAUSTIVE,
+
+    /**
+     * 分支限界：用“剩余商品的乐观下界”剪枝，并按“各组合促销的参与金额”做记忆化；
+     * 结果与全量穷举一致（含同价时的先后顺序），大购物车也不会丢掉组合促销。
+     */
+    BRANCH_AND_BOUND
+}
@@ -0,0 +1,137 @@
+package com.aeon.demo.engine.promo;
+
+import com.aeon.demo.domain.Promotion;
+
+import java.util.*;
+
+/**
+ * 预编译的 SKU → 促销倒排索引（不可变，可跨请求共享）。
+ *
+ * <p>构建 optionsByIndex 时不再逐个促销调用 {@link Promotion#matchesSku}：
+ * 每个 SKU 直接拿到“指定 SKU 的促销 + 全场促销(skuScope 为空)”的合并列表，顺序与原促销列表一致（保证取低价的同价先后不变）。</p>
+ *
+ * <p>一个促销集合版本对应一个实例；促销变更时构建新实例，通过 {@link PromotionIndexHolder} 原子替换。</p>
+ *
+ * @author codex
+ */
+public final class PromotionIndex {
+
+    private static final PromotionIndex EMPTY = build(0L, Collections.emptyList());
+
+    private final long version;
+    private final List<Promotion> promotions;
+    private final Map<Long, Promotion> promotionById;
+    /**
+     * 全场促销（skuScope 为空），按原顺序。
+     */
+    private final List<Promotion> storeWidePromotions;
+    /**
+     * SKU → 该 SKU 可参加的促销（指定 SKU 促销与全场促销合并后，按原顺序）。
+     */
+    private final Map<String, List<Promotion>> promotionsBySku;
+
+    private PromotionIndex(long version,
+                           List<Promotion> promotions,
+                           Map<Long, Promotion> promotionById,
+                           List<Promotion> storeWidePromotions,
+                           Map<String, List<Promotion>> promotionsBySku) {
+        this.version = version;
+        this.promotions = promotions;
+        this.promotionById = promotionById;
+        this.storeWidePromotions = storeWidePromotions;
+        this.promotionsBySku = promotionsBySku;
+    }
+
+    public static PromotionIndex empty() {
+        return EMPTY;
+    }
+
+    public static PromotionIndex build(long version, Collection<Promotion> promotions) {
+        List<Promotion> all = new ArrayList<>();
+        if (promotions != null) {
+            for (Promotion p : promotions) {
+                if (p != null) {
+                    all.add(p);
+                }
+            }
+        }
+
+        Map<Long, Promotion> byId = new HashMap<>();
+        List<Integer> storeWide = new ArrayList<>();
+        Map<String, List<Integer>> positionsBySku = new HashMap<>();
+        for (int i = 0; i < all.size(); i++) {
+            Promotion p = all.get(i);
+            byId.put(p.getPromoId(), p);
+            if (p.getSkuScope().isEmpty()) {
+                storeWide.add(i);
+                continue;
+            }
+            for (String sku : p.getSkuScope()) {
+                positionsBySku.computeIfAbsent(sku, k -> new ArrayList<>()).add(i);
+            }
+        }
+
+        Map<String, List<Promotion>> bySku = new HashMap<>(positionsBySku.size() * 2);
+        for (Map.Entry<String, List<Integer>> e : positionsBySku.entrySet()) {
+            bySku.put(e.getKey(), mergeInOrder(all, e.getValue(), storeWide));
+        }
+
+        List<Promotion> storeWidePromotions = new ArrayList<>(storeWide.size());
+        for (Integer i : storeWide) {
+            storeWidePromotions.add(all.get(i));
+        }
+
+        return new PromotionIndex(version,
+                Collections.unmodifiableList(all),
+                Collections.unmodifiableMap(byId),
+                Collections.unmodifiableList(storeWidePromotions),
+                Collections.unmodifiableMap(bySku));
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * 全部促销（原顺序）。
+     */
+    public List<Promotion> getPromotions() {
+        return promotions;
+    }
+
+    public Promotion getPromotion(long promoId) {
+        return promotionById.get(promoId);
+    }
+
+    public List<Promotion> getStoreWidePromotions() {
+        return storeWidePromotions;
+    }
+
+    /**
+     * 该 SKU 可参加的促销，与“逐个 matchesSku 过滤原列表”的结果及顺序完全一致。
+     */
+    public List<Promotion> match(String skuId) {
+        List<Promotion> list = promotionsBySku.get(skuId);
+        return list == null ? storeWidePromotions : list;
+    }
+
+    public int size() {
+        return promotions.size();
+    }
+
+    private static List<Promotion> mergeInOrder(List<Promotion> all, List<Integer> skuPositions, List<Integer> storeWide) {
+        List<Promotion> merged = new ArrayList<>(skuPositions.size() + storeWide.size());
+        int i = 0;
+        int j = 0;
+        while (i < skuPositions.size() || j < storeWide.size()) {
+            int next;
+            if (j >= storeWide.size() || (i < skuPositions.size() && skuPositions.get(i) < storeWide.get(j))) {
+                next = skuPositions.get(i++);
+            } else {
+                next = storeWide.get(j++);
+            }
+            merged.add(all.get(next));
+        }
+        return Collections.unmodifiableList(merged);
+    }
+}
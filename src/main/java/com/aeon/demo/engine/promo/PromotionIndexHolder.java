@@ -0,0 +1,63 @@
+package com.aeon.demo.engine.promo;
+
+import com.aeon.demo.domain.Promotion;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 当前生效的 {@link PromotionIndex}：读请求无锁拿到某一版本的完整索引，促销变更时整体原子替换（不会读到“半新半旧”的索引）。
+ *
+ * @author codex
+ */
+public class PromotionIndexHolder {
+
+    private final AtomicReference<PromotionIndex> current;
+
+    public PromotionIndexHolder() {
+        this.current = new AtomicReference<>(PromotionIndex.empty());
+    }
+
+    public PromotionIndexHolder(Collection<Promotion> promotions) {
+        this.current = new AtomicReference<>(PromotionIndex.build(1L, promotions));
+    }
+
+    public PromotionIndex get() {
+        return current.get();
+    }
+
+    /**
+     * 按新的促销集合构建下一版本索引并替换；并发发布时版本号严格递增，后发布者生效。
+     *
+     * @return 新生效的索引
+     */
+    public PromotionIndex publish(Collection<Promotion> promotions) {
+        while (true) {
+            PromotionIndex prev = current.get();
+            PromotionIndex next = PromotionIndex.build(prev.getVersion() + 1, promotions);
+            if (current.compareAndSet(prev, next)) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * 用外部构建好的索引替换当前索引；版本号不高于当前版本时拒绝（防止旧版本覆盖新版本）。
+     *
+     * @return 是否替换成功
+     */
+    public boolean swap(PromotionIndex next) {
+        if (next == null) {
+            return false;
+        }
+        while (true) {
+            PromotionIndex prev = current.get();
+            if (next.getVersion() <= prev.getVersion()) {
+                return false;
+            }
+            if (current.compareAndSet(prev, next)) {
+                return true;
+            }
+        }
+    }
+}
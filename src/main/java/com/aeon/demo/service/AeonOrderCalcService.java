@@ -2,14 +2,17 @@ package com.aeon.demo.service;
 
 import com.aeon.demo.domain.CartItem;
 import com.aeon.demo.domain.Coupon;
+import com.aeon.demo.domain.Promotion;
 import com.aeon.demo.dto.*;
 import com.aeon.demo.engine.coupon.CouponCalcEngine;
 import com.aeon.demo.engine.coupon.CouponCalcResult;
-import com.aeon.demo.engine.coupon.CouponView;
 import com.aeon.demo.engine.coupon.MutuallyExclusivePolicy;
+import com.aeon.demo.engine.coupon.PreparedShippingCoupons;
 import com.aeon.demo.engine.freight.StepFreightCalculator;
 import com.aeon.demo.engine.promo.PromoCalcEngine;
 import com.aeon.demo.engine.promo.PromoCalcResult;
+import com.aeon.demo.engine.promo.PromotionIndex;
+import com.aeon.demo.engine.promo.PromotionIndexHolder;
 import com.aeon.demo.scenario.AeonScenario;
 import com.aeon.demo.scenario.AeonScenarioFactory;
 import com.aeon.demo.util.DateTimeUtils;
@@ -17,48 +20,148 @@ import com.aeon.demo.util.MoneyUtils;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 订单确认编排服务：固定顺序「先促销，后用券；用券后运费二次计算，运费券重算」。
  *
  * <p>这里对应 AEON 文档里的 OrderConfirmBuilder 链：promoInfo() → couponInfo() → 运费二次计算。</p>
  *
+ * <p>运费券的筛选/排序/互斥判断每个请求只做一次，用券前后两次运费券计算只重算与运费金额相关的部分；
+ * 各阶段耗时写入 {@link StageTimings}。</p>
+ *
+ * <p>场景（互斥组、运费规则、内置促销/券）按场景ID编译一次后缓存；批量接口在有界线程池上并行计算多个购物车，
+ * 结果按入参顺序返回，单条失败只记录在该条结果里。</p>
+ *
  * @author codex
  */
 @Service
 @Profile("aeon-demo")
 public class AeonOrderCalcService {
 
+    /**
+     * 单次批量最多多少个购物车。
+     */
+    private static final int MAX_BATCH_SIZE = 1000;
+
+    /**
+     * 入参金额/数量上限：引擎内部按“分”用 long 计算，超出范围的入参在这里以 IllegalArgumentException 拒绝，
+     * 不让 long 溢出（ArithmeticException）漏到引擎里。
+     * 单价 ≤ 100 万元、数量 ≤ 9999、整单原价与运费/券面额 ≤ 1000 万元（10^9 分）：行金额、合计与分摊的中间值都远离溢出，
+     * 折扣也始终走定点快路径。
+     */
+    static final BigDecimal MAX_SALE_PRICE = new BigDecimal("1000000.00");
+    static final int MAX_QUANTITY = 9_999;
+    static final BigDecimal MAX_ORDER_AMOUNT = new BigDecimal("10000000.00");
+
     private final AeonScenarioFactory scenarioFactory = new AeonScenarioFactory();
     private final PromoCalcEngine promoCalcEngine = new PromoCalcEngine();
     private final CouponCalcEngine couponCalcEngine = new CouponCalcEngine();
 
+    /**
+     * scenarioId -> 当前生效的促销索引：同一版本的促销只编译一次，跨请求共享。
+     */
+    private final ConcurrentMap<String, PromotionIndexHolder> promotionIndexes = new ConcurrentHashMap<>();
+
+    /**
+     * 解析后的场景ID -> 编译好的场景。未知场景回落到 S1，按解析后的ID缓存，任意请求ID不会撑大缓存。
+     */
+    private final ConcurrentMap<String, CompiledScenario> compiledScenarios = new ConcurrentHashMap<>();
+
+    /**
+     * 批量计算线程池：线程数 = CPU 核数，队列有界；队列满时由调用线程自己算（反压，不丢任务）。
+     */
+    private final ThreadPoolExecutor batchExecutor = newBatchExecutor(Runtime.getRuntime().availableProcessors());
+
     public AeonOrderCalcResponse calc(AeonOrderCalcRequest request) {
         AeonOrderCalcRequest req = request == null ? new AeonOrderCalcRequest() : request;
+        return calc(req, compiledScenario(normalizeScenario(req.getScenario())));
+    }
 
-        String scenarioId = normalizeScenario(req.getScenario());
-        AeonScenario scenario = scenarioFactory.getScenario(scenarioId);
+    /**
+     * 批量计算：同一场景只编译一次，购物车在有界线程池上并行计算。
+     *
+     * @return 与入参顺序一致；单条异常只体现在该条的 errorMessage
+     */
+    public AeonOrderCalcBatchResponse calcBatch(AeonOrderCalcBatchRequest request) {
+        long start = System.nanoTime();
+        List<AeonOrderCalcRequest> requests = request == null || request.getRequests() == null
+                ? Collections.emptyList()
+                : request.getRequests();
+        if (requests.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("批量计算最多 " + MAX_BATCH_SIZE + " 个购物车，当前 " + requests.size());
+        }
+
+        List<Future<AeonOrderCalcResponse>> futures = new ArrayList<>(requests.size());
+        for (AeonOrderCalcRequest r : requests) {
+            AeonOrderCalcRequest req = r == null ? new AeonOrderCalcRequest() : r;
+            CompiledScenario compiled = compiledScenario(normalizeScenario(req.getScenario()));
+            futures.add(batchExecutor.submit(() -> calc(req, compiled)));
+        }
+
+        AeonOrderCalcBatchResponse resp = new AeonOrderCalcBatchResponse();
+        List<AeonOrderCalcBatchItem> results = new ArrayList<>(futures.size());
+        int succeeded = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            AeonOrderCalcBatchItem item = new AeonOrderCalcBatchItem();
+            item.setIndex(i);
+            try {
+                item.setResponse(futures.get(i).get());
+                item.setSuccess(true);
+                succeeded++;
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause() == null ? e : e.getCause();
+                item.setErrorMessage(cause.getClass().getSimpleName() + ": " + cause.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                item.setErrorMessage("批量计算被中断");
+            }
+            results.add(item);
+        }
+
+        resp.setResults(results);
+        resp.setTotal(results.size());
+        resp.setSucceeded(succeeded);
+        resp.setFailed(results.size() - succeeded);
+        resp.setElapsedMicros(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+        return resp;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        batchExecutor.shutdown();
+    }
+
+    private AeonOrderCalcResponse calc(AeonOrderCalcRequest req, CompiledScenario compiled) {
+        long start = System.nanoTime();
+
+        AeonScenario scenario = compiled.scenario;
 
         // 互斥组
-        MutuallyExclusivePolicy exclusivePolicy = new MutuallyExclusivePolicy(scenario.getMutuallyExclusiveGroups());
+        MutuallyExclusivePolicy exclusivePolicy = compiled.exclusivePolicy;
 
         // 促销引擎（固定使用场景内置促销）
         List<CartItem> cartItems = toCartItems(req.getCartItems());
-        PromoCalcResult promo = promoCalcEngine.calc(cartItems, scenario.getPromotions());
+        long promoStart = System.nanoTime();
+        PromoCalcResult promo = promoCalcEngine.calc(cartItems, promotionIndex(scenario));
+        long promoNanos = System.nanoTime() - promoStart;
 
         // 运费计算器（场景内置）
-        StepFreightCalculator freightCalculator = new StepFreightCalculator(scenario.getFreeShippingThreshold(), scenario.getBaseFreight());
+        StepFreightCalculator freightCalculator = compiled.freightCalculator;
 
         LocalDateTime now = LocalDateTime.now();
 
         // 用券前运费：可由外部传入（模拟“先算一次运费”），否则按规则算
+        long freightStart = System.nanoTime();
         BigDecimal freightBefore = req.getLogisticFee() == null
                 ? freightCalculator.calc(promo.getPromoGoodsAmount())
-                : MoneyUtils.scale(req.getLogisticFee());
+                : requireAmount("运费", req.getLogisticFee(), MAX_ORDER_AMOUNT);
+        long freightNanos = System.nanoTime() - freightStart;
 
         // 券列表：可自定义；为空则用场景内置券
         List<Coupon> coupons = req.getCoupons() == null || req.getCoupons().isEmpty()
@@ -68,26 +171,33 @@ public class AeonOrderCalcService {
         // -----------------------------
         // 8. couponInfo()：先算商品券
         // -----------------------------
-        CouponCalcResult goodsCoupons = couponCalcEngine.calcGoodsCoupons(promo.getItems(), coupons, exclusivePolicy, now);
+        long goodsCouponStart = System.nanoTime();
+        CouponCalcResult goodsCoupons = couponCalcEngine.calcGoodsCoupons(promo.getItems(), coupons, exclusivePolicy, now,
+                req.getCouponOptimizeMode());
+        long goodsCouponNanos = System.nanoTime() - goodsCouponStart;
         BigDecimal goodsCouponDiscount = MoneyUtils.scale(goodsCoupons.getDiscountAmount());
 
         BigDecimal goodsPay = MoneyUtils.max(MoneyUtils.zero(), MoneyUtils.scale(promo.getPromoGoodsAmount()).subtract(goodsCouponDiscount));
 
-        Set<Integer> selectedGoodsTemplateIds = goodsCoupons.getAvailableCouponList().stream()
-                .filter(CouponView::isChecked)
-                .map(CouponView::getCouponTemplateId)
-                .collect(Collectors.toCollection(LinkedHashSet::new));
+        Set<Integer> selectedGoodsTemplateIds = goodsCoupons.getSelectedTemplateIds();
 
-        // 运费券（用券前，基于 freightBefore）
-        CouponCalcResult shippingBeforeRecalc = couponCalcEngine.calcShippingCoupons(freightBefore, coupons, selectedGoodsTemplateIds, exclusivePolicy, now);
+        // 运费券（用券前，基于 freightBefore）：筛选/排序/互斥只做一次，两次计算共用
+        long shippingStart = System.nanoTime();
+        PreparedShippingCoupons shippingCoupons = couponCalcEngine.prepareShippingCoupons(coupons, selectedGoodsTemplateIds, exclusivePolicy, now);
+        CouponCalcResult shippingBeforeRecalc = couponCalcEngine.calcShippingCoupons(shippingCoupons, freightBefore);
+        long shippingNanos = System.nanoTime() - shippingStart;
 
         // -----------------------------
         // 运费二次计算：用券后金额变更，运费阶梯可能变化
         // -----------------------------
+        freightStart = System.nanoTime();
         BigDecimal freightAfterGoodsCoupon = freightCalculator.calc(goodsPay);
+        freightNanos += System.nanoTime() - freightStart;
 
-        // 运费券重算（基于 freightAfterGoodsCoupon）
-        CouponCalcResult shippingAfterRecalc = couponCalcEngine.calcShippingCoupons(freightAfterGoodsCoupon, coupons, selectedGoodsTemplateIds, exclusivePolicy, now);
+        // 运费券重算（基于 freightAfterGoodsCoupon）：只重算与运费金额相关的部分
+        shippingStart = System.nanoTime();
+        CouponCalcResult shippingAfterRecalc = couponCalcEngine.calcShippingCoupons(shippingCoupons, freightAfterGoodsCoupon);
+        shippingNanos += System.nanoTime() - shippingStart;
         BigDecimal shippingDiscount = MoneyUtils.scale(shippingAfterRecalc.getDiscountAmount());
 
         BigDecimal freightPay = MoneyUtils.max(MoneyUtils.zero(), MoneyUtils.scale(freightAfterGoodsCoupon).subtract(shippingDiscount));
@@ -123,10 +233,68 @@ public class AeonOrderCalcService {
         summary.setFinalPayAmount(finalPay);
         resp.setAmountSummary(summary);
 
+        StageTimings timings = new StageTimings();
+        timings.setPromoMicros(TimeUnit.NANOSECONDS.toMicros(promoNanos));
+        timings.setGoodsCouponMicros(TimeUnit.NANOSECONDS.toMicros(goodsCouponNanos));
+        timings.setFreightMicros(TimeUnit.NANOSECONDS.toMicros(freightNanos));
+        timings.setShippingCouponMicros(TimeUnit.NANOSECONDS.toMicros(shippingNanos));
+        timings.setTotalMicros(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+        resp.setStageTimings(timings);
+
         resp.setTrace(buildTrace(promo, goodsCoupons, shippingBeforeRecalc, freightBefore, goodsPay, freightAfterGoodsCoupon, shippingAfterRecalc, finalPay));
         return resp;
     }
 
+    /**
+     * 促销变更时调用：编译新版本索引并原子替换，之后的请求立即使用新促销。
+     *
+     * <p>与计算一样先解析场景（未知场景回落到 S1），按解析后的场景ID发布，保证发布的就是请求读到的那份索引。</p>
+     *
+     * @return 新生效的索引版本号
+     */
+    public long publishPromotions(String scenarioId, List<Promotion> promotions) {
+        AeonScenario scenario = compiledScenario(normalizeScenario(scenarioId)).scenario;
+        PromotionIndexHolder holder = promotionIndexes.computeIfAbsent(scenario.getScenarioId(), k -> new PromotionIndexHolder());
+        return holder.publish(promotions).getVersion();
+    }
+
+    /**
+     * 已缓存的编译场景数。
+     */
+    int compiledScenarioCount() {
+        return compiledScenarios.size();
+    }
+
+    private CompiledScenario compiledScenario(String scenarioId) {
+        CompiledScenario compiled = compiledScenarios.get(scenarioId);
+        if (compiled != null) {
+            return compiled;
+        }
+        // 未命中（首次请求或未知场景）：先解析，再按解析后的场景ID取/存
+        AeonScenario scenario = scenarioFactory.getScenario(scenarioId);
+        return compiledScenarios.computeIfAbsent(scenario.getScenarioId(), k -> new CompiledScenario(scenario));
+    }
+
+    private static ThreadPoolExecutor newBatchExecutor(int threads) {
+        AtomicInteger seq = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(threads * 64),
+                r -> {
+                    Thread t = new Thread(r, "aeon-order-batch-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private PromotionIndex promotionIndex(AeonScenario scenario) {
+        return promotionIndexes
+                .computeIfAbsent(scenario.getScenarioId(), k -> new PromotionIndexHolder(scenario.getPromotions()))
+                .get();
+    }
+
     private static String normalizeScenario(String scenario) {
         if (scenario == null || scenario.trim().isEmpty()) {
             return AeonScenarioFactory.SCENARIO_S1;
@@ -140,6 +308,7 @@ public class AeonOrderCalcService {
             return Collections.emptyList();
         }
         List<CartItem> list = new ArrayList<>();
+        BigDecimal total = MoneyUtils.zero();
         int idx = 1;
         for (CartItemRequest r : reqItems) {
             if (r == null) {
@@ -153,9 +322,18 @@ public class AeonOrderCalcService {
                     : r.getCartItemId().trim();
             String skuId = r.getSkuId() == null ? "" : r.getSkuId().trim();
             int qty = r.getQuantity();
-            BigDecimal salePrice = r.getSalePrice() == null ? MoneyUtils.zero() : MoneyUtils.scale(r.getSalePrice());
+            if (qty > MAX_QUANTITY) {
+                throw new IllegalArgumentException("商品行 " + cartItemId + " 数量 " + qty + " 超出上限 " + MAX_QUANTITY);
+            }
+            BigDecimal salePrice = r.getSalePrice() == null
+                    ? MoneyUtils.zero()
+                    : requireAmount("商品行 " + cartItemId + " 单价", r.getSalePrice(), MAX_SALE_PRICE);
+            total = total.add(salePrice.multiply(BigDecimal.valueOf(qty)));
             list.add(new CartItem(cartItemId, skuId, qty, salePrice));
         }
+        if (total.compareTo(MAX_ORDER_AMOUNT) > 0) {
+            throw new IllegalArgumentException("整单原价 " + total + " 超出上限 " + MAX_ORDER_AMOUNT);
+        }
         return list;
     }
 
@@ -175,6 +353,12 @@ public class AeonOrderCalcService {
                     ? ("U-" + r.getCouponTemplateId() + "-" + (list.size() + 1))
                     : r.getCouponNo().trim();
             Coupon.Builder b = Coupon.builder(couponNo, r.getCouponTemplateId(), r.getCategory());
+            if (r.getParValue() != null) {
+                requireAmount("券 " + couponNo + " 面额", r.getParValue(), MAX_ORDER_AMOUNT);
+            }
+            if (r.getBound() != null) {
+                requireAmount("券 " + couponNo + " 门槛", r.getBound(), MAX_ORDER_AMOUNT);
+            }
             b.parValue(r.getParValue());
             b.bound(r.getBound());
             b.otherAddition(r.getOtherAddition());
@@ -191,6 +375,17 @@ public class AeonOrderCalcService {
         return list;
     }
 
+    /**
+     * 金额入参：HALF_UP 到分后须在 [0, max] 内。
+     */
+    private static BigDecimal requireAmount(String what, BigDecimal value, BigDecimal max) {
+        BigDecimal scaled = MoneyUtils.scale(value);
+        if (scaled.signum() < 0 || scaled.compareTo(max) > 0) {
+            throw new IllegalArgumentException(what + " " + value.toPlainString() + " 超出范围 [0, " + max + "]");
+        }
+        return scaled;
+    }
+
     private static List<String> buildTrace(PromoCalcResult promo,
                                           CouponCalcResult goodsCoupons,
                                           CouponCalcResult shippingBefore,
@@ -203,9 +398,12 @@ public class AeonOrderCalcService {
         t.add("流程要点：先促销，后用券；用券后金额变化会触发运费二次计算与运费券重算。");
         t.add("1) 原价商品总额 = " + promo.getOriginalGoodsAmount());
         t.add("5) 促销后商品总额(promoPrice汇总) = " + promo.getPromoGoodsAmount()
-                + "，穷举方案数 = " + promo.getEvaluatedPlanCount());
+                + "，穷举方案数 = " + promo.getEvaluatedPlanCount()
+                + "，剪枝节点数 = " + promo.getPrunedNodeCount());
         t.add("8) 商品券推荐优惠 = " + MoneyUtils.scale(goodsCoupons.getDiscountAmount())
-                + "，商品实付 = " + goodsPay);
+                + "，商品实付 = " + goodsPay
+                + "，求解模式 = " + goodsCoupons.getOptimizeMode()
+                + (goodsCoupons.isOptimizeFallback() ? "（精确求解超时，已退回贪心）" : ""));
         t.add("运费(用券前) = " + MoneyUtils.scale(freightBefore)
                 + "；运费(用券后二次计算) = " + MoneyUtils.scale(freightAfter));
         t.add("运费券(用券前)推荐优惠 = " + MoneyUtils.scale(shippingBefore.getDiscountAmount())
@@ -213,4 +411,20 @@ public class AeonOrderCalcService {
         t.add("最终应付 = " + finalPay);
         return t;
     }
+
+    /**
+     * 场景编译结果：场景本身（内置促销/券）、互斥组、运费规则，只读，可跨请求/线程共享。
+     * 促销索引不放在这里，仍从 {@link PromotionIndexHolder} 取，保证 publishPromotions 后立即生效。
+     */
+    private static final class CompiledScenario {
+        final AeonScenario scenario;
+        final MutuallyExclusivePolicy exclusivePolicy;
+        final StepFreightCalculator freightCalculator;
+
+        CompiledScenario(AeonScenario scenario) {
+            this.scenario = scenario;
+            this.exclusivePolicy = new MutuallyExclusivePolicy(scenario.getMutuallyExclusiveGroups());
+            this.freightCalculator = new StepFreightCalculator(scenario.getFreeShippingThreshold(), scenario.getBaseFreight());
+        }
+    }
 }
@@ -8,7 +8,7 @@ import java.util.Map;
 /**
  * 按权重分摊金额（用于：组合促销/券把总优惠分摊到各商品行）。
  *
- * <p>特点：保证分摊和=total（最后一个元素吃掉舍入误差）。</p>
+ * <p>特点：保证分摊和=total（最后一个元素吃掉舍入误差），且每一份都不为负。</p>
  *
  * @author codex
  */
@@ -48,11 +48,11 @@ public final class MoneyAllocator {
                 if (w.compareTo(BigDecimal.ZERO) <= 0) {
                     alloc = MoneyUtils.zero();
                 } else {
-                    BigDecimal ratio = w.divide(remainingWeight, 10, RoundingMode.HALF_UP);
-                    alloc = total.multiply(ratio).setScale(MoneyUtils.MONEY_SCALE, RoundingMode.HALF_UP);
+                    // 按“剩余金额 × 当前权重/剩余权重”分摊：每一份都不超过剩余金额，最后一份不会为负
+                    alloc = remaining.multiply(w).divide(remainingWeight, MoneyUtils.MONEY_SCALE, RoundingMode.HALF_UP);
+                    remainingWeight = remainingWeight.subtract(w);
                 }
                 remaining = remaining.subtract(alloc);
-                remainingWeight = remainingWeight.subtract(w);
             }
             result.put(e.getKey(), alloc);
         }
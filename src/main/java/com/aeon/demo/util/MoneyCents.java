@@ -0,0 +1,178 @@
+package com.aeon.demo.util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * 以“分”为单位的定点金额内核（long）：引擎内部的热路径全部用它计算，只在组装出参时转回 scale=2 的 BigDecimal。
+ *
+ * <p>舍入口径与 {@link MoneyUtils} / {@link MoneyAllocator} 完全一致（HALF_UP）。
+ * 所有运算都不创建对象；只有乘积超出 long 的极端金额才退回 BigDecimal 计算。</p>
+ *
+ * <p>{@link #of} / {@link #multiply} 超出 long 时抛 ArithmeticException，不做截断。入参范围在请求边界校验
+ * （AeonOrderCalcService：单价 ≤ 100 万元、数量 ≤ 9999、整单原价与运费/券面额 ≤ 1000 万元），正常请求到不了这里的溢出。</p>
+ *
+ * @author codex
+ */
+public final class MoneyCents {
+
+    /**
+     * 低于该值的两个 long 相乘一定不会溢出（≈ sqrt(Long.MAX_VALUE)）。
+     */
+    private static final long SAFE_FACTOR = 3_037_000_499L;
+
+    private MoneyCents() {
+    }
+
+    /**
+     * 元 → 分（HALF_UP 到 2 位小数，null 视为 0），等价于 {@code MoneyUtils.scale(value)}。
+     */
+    public static long of(BigDecimal value) {
+        return MoneyUtils.scale(value).unscaledValue().longValueExact();
+    }
+
+    /**
+     * 分 → 元（scale=2）。
+     */
+    public static BigDecimal toBigDecimal(long cents) {
+        return BigDecimal.valueOf(cents, MoneyUtils.MONEY_SCALE);
+    }
+
+    /**
+     * 行金额 = 单价 × 数量（精确）。
+     */
+    public static long multiply(long cents, int quantity) {
+        return Math.multiplyExact(cents, (long) quantity);
+    }
+
+    /**
+     * dividend / divisor，HALF_UP（与 BigDecimal 一致：.5 远离 0 进位）。
+     */
+    public static long divideHalfUp(long dividend, long divisor) {
+        if (divisor == 0) {
+            throw new ArithmeticException("divide by zero");
+        }
+        long q = dividend / divisor;
+        long r = dividend % divisor;
+        if (r == 0) {
+            return q;
+        }
+        long absR = Math.abs(r);
+        long absDivisor = Math.abs(divisor);
+        if (absR >= absDivisor - absR) {
+            return (dividend < 0) == (divisor < 0) ? q + 1 : q - 1;
+        }
+        return q;
+    }
+
+    /**
+     * a × b / c，HALF_UP；乘积溢出时退回 BigDecimal。
+     */
+    public static long multiplyDivideHalfUp(long a, long b, long c) {
+        if (Math.abs(a) < SAFE_FACTOR && Math.abs(b) < SAFE_FACTOR) {
+            return divideHalfUp(a * b, c);
+        }
+        return BigDecimal.valueOf(a).multiply(BigDecimal.valueOf(b))
+                .divide(BigDecimal.valueOf(c), 0, RoundingMode.HALF_UP)
+                .longValueExact();
+    }
+
+    /**
+     * 按权重分摊 total（口径同 {@link MoneyAllocator#allocate}）：按“剩余金额 × 当前权重/剩余权重”分摊，最后一份吃掉舍入误差。
+     *
+     * @param weights 权重（只看前 count 个；≤0 的权重分到 0）
+     * @param out     输出：每份分摊额（只写前 count 个）
+     * @return total ≤ 0 或权重和 ≤ 0 时不分摊（out 全部置 0），返回 false
+     */
+    public static boolean allocate(long total, long[] weights, int count, long[] out) {
+        long sum = 0L;
+        for (int i = 0; i < count; i++) {
+            if (weights[i] > 0) {
+                sum += weights[i];
+            }
+        }
+        if (total <= 0 || sum <= 0) {
+            for (int i = 0; i < count; i++) {
+                out[i] = 0L;
+            }
+            return false;
+        }
+
+        long remaining = total;
+        long remainingWeight = sum;
+        for (int i = 0; i < count; i++) {
+            long w = weights[i];
+            long alloc;
+            if (i == count - 1) {
+                alloc = remaining;
+            } else if (w <= 0) {
+                alloc = 0L;
+            } else {
+                alloc = multiplyDivideHalfUp(remaining, w, remainingWeight);
+                remainingWeight -= w;
+            }
+            remaining -= alloc;
+            out[i] = alloc;
+        }
+        return true;
+    }
+
+    /**
+     * 预编译的折扣率（定点整数 + 10 的幂），金额 × 折扣率不再创建 BigDecimal。
+     */
+    public static final class Rate {
+
+        private final BigDecimal value;
+        /**
+         * value = unscaled / divisor；divisor ≤ 0 表示无法用 long 表示，退回 BigDecimal。
+         */
+        private final long unscaled;
+        private final long divisor;
+
+        private Rate(BigDecimal value) {
+            this.value = value;
+            long u = 0L;
+            long d = 0L;
+            int scale = value.scale();
+            if (scale >= 0 && scale <= 18 && value.precision() - scale <= 18) {
+                BigDecimal unscaledValue = value.movePointRight(scale);
+                if (unscaledValue.abs().compareTo(BigDecimal.valueOf(SAFE_FACTOR)) < 0) {
+                    u = unscaledValue.longValueExact();
+                    d = BigDecimal.ONE.movePointRight(scale).longValueExact();
+                }
+            }
+            this.unscaled = u;
+            this.divisor = d;
+        }
+
+        public static Rate of(BigDecimal value) {
+            return value == null ? null : new Rate(value);
+        }
+
+        public BigDecimal getValue() {
+            return value;
+        }
+
+        /**
+         * 金额 × 折扣率，HALF_UP 到分，等价于 {@code MoneyUtils.scale(amount.multiply(rate))}。
+         */
+        public long apply(long cents) {
+            if (divisor > 0 && Math.abs(cents) < SAFE_FACTOR) {
+                return divideHalfUp(cents * unscaled, divisor);
+            }
+            return toBigDecimal(cents).multiply(value).setScale(MoneyUtils.MONEY_SCALE, RoundingMode.HALF_UP)
+                    .unscaledValue().longValueExact();
+        }
+
+        /**
+         * 金额 × 折扣率，向下取整到分（用于求下界）。
+         */
+        public long applyFloor(long cents) {
+            if (divisor > 0 && Math.abs(cents) < SAFE_FACTOR) {
+                return Math.floorDiv(cents * unscaled, divisor);
+            }
+            return toBigDecimal(cents).multiply(value).setScale(MoneyUtils.MONEY_SCALE, RoundingMode.FLOOR)
+                    .unscaledValue().longValueExact();
+        }
+    }
+}
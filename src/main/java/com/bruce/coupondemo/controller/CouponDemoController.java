@@ -10,6 +10,7 @@ import com.bruce.promotiondemo.model.RuleType;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.math.BigDecimal;
@@ -31,9 +32,12 @@ public class CouponDemoController {
      * 计算促销+券联动结果
      * <p>
      * 支持自定义入参，也可不传使用默认场景（250元商品 + 满200减30 + 50元券 + 10元运费券）
+     * <p>
+     * joint=true 时走促销 + 券联合优化：比较促销优惠最大的前 K 个结果，取总应付最低者
      */
     @PostMapping("/calculate")
-    public Map<String, Object> calculate(@RequestBody(required = false) Map<String, Object> request) {
+    public Map<String, Object> calculate(@RequestBody(required = false) Map<String, Object> request,
+                                         @RequestParam(defaultValue = "false") boolean joint) {
         List<CartItem> items;
         List<Rule> rules;
         List<Coupon> coupons;
@@ -54,7 +58,9 @@ public class CouponDemoController {
                     : BigDecimal.ZERO;
         }
 
-        OrchestrationResult result = orderCalcService.calculate(items, rules, coupons, shippingFee);
+        OrchestrationResult result = joint
+                ? orderCalcService.calculateJoint(items, rules, coupons, shippingFee)
+                : orderCalcService.calculate(items, rules, coupons, shippingFee);
         return buildResultMap(result);
     }
 
@@ -183,6 +189,8 @@ public class CouponDemoController {
         map.put("shippingFee", result.getShippingFee());
         map.put("shippingPayPrice", result.getShippingPayPrice());
         map.put("totalPayPrice", result.getTotalPayPrice());
+        map.put("promotionCandidates", result.getPromotionCandidates());
+        map.put("budgetExceeded", result.isBudgetExceeded());
 
         // 促销明细
         List<Map<String, Object>> promoDetails = new ArrayList<>();
@@ -7,8 +7,10 @@ import com.bruce.promotiondemo.model.CartItem;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
-import java.util.*;
-import java.util.stream.Collectors;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
 
 /**
  * 贪心选券引擎
@@ -18,6 +20,8 @@ import java.util.stream.Collectors;
  * 2. 分组：商品券 vs 运费券独立计算
  * 3. 排序：面值高→范围窄→先过期→门槛高
  * 4. 贪心逐张选择，检查互斥组和溢出
+ * <p>
+ * 分组与排序在 {@link CouponWallet} 编译时完成，券包不变时可复用，每次计算只做过滤和选择。
  */
 public class CouponEngine {
 
@@ -48,128 +52,196 @@ public class CouponEngine {
         if (coupons == null || coupons.isEmpty()) {
             return CouponResult.builder().build();
         }
+        return calculate(priceAfterPromotion, shippingFee, CouponWallet.compile(coupons), cartItems);
+    }
 
-        // 收集购物车中的SKU
-        Set<String> cartSkuCodes = cartItems.stream()
-                .map(CartItem::getSkuCode)
-                .collect(Collectors.toSet());
-
-        // 1. 过滤可用券
-        List<Coupon> availableCoupons = coupons.stream()
-                .map(Coupon::copy)
-                .filter(c -> isAvailable(c, priceAfterPromotion, shippingFee, cartSkuCodes))
-                .collect(Collectors.toList());
-
-        // 2. 分组：商品券 vs 运费券
-        List<Coupon> productCoupons = availableCoupons.stream()
-                .filter(c -> c.getCouponType() == CouponType.PRODUCT)
-                .collect(Collectors.toList());
-        List<Coupon> shippingCoupons = availableCoupons.stream()
-                .filter(c -> c.getCouponType() == CouponType.SHIPPING)
-                .collect(Collectors.toList());
-
-        // 3. 各自贪心选券
-        BigDecimal productDiscount = greedySelect(productCoupons, priceAfterPromotion);
-        BigDecimal shippingDiscount = greedySelect(shippingCoupons, shippingFee);
-
-        // 4. 合并结果
-        List<Coupon> allAvailable = new ArrayList<>();
-        allAvailable.addAll(productCoupons);
-        allAvailable.addAll(shippingCoupons);
-
-        return CouponResult.builder()
-                .availableCoupons(allAvailable)
-                .productCouponDiscount(productDiscount)
-                .shippingCouponDiscount(shippingDiscount)
-                .build();
+    /**
+     * 计算券优惠（券包已预编译，券包不变时可跨请求复用）
+     * <p>
+     * 券已按贪心顺序排好，这里只做过滤（过期、门槛、SKU范围与购物车求交）和逐张选择；
+     * 选中的券复制一份写入 checked 和 actualDiscount，未选中的可用券直接返回券包里的只读实例，调用方不得修改。
+     *
+     * @param priceAfterPromotion 促销后的商品总价（券基于此价格判断门槛和抵扣）
+     * @param shippingFee         运费
+     * @param wallet              预编译的用户券包
+     * @param cartItems           购物车商品（用于SKU范围校验）
+     * @return 券计算结果
+     */
+    public CouponResult calculate(BigDecimal priceAfterPromotion, BigDecimal shippingFee,
+                                  CouponWallet wallet, List<CartItem> cartItems) {
+        if (wallet == null || wallet.size() == 0) {
+            return CouponResult.builder().build();
+        }
+        return prepare(wallet, cartItems).calculate(priceAfterPromotion, shippingFee);
     }
 
     /**
-     * 检查券是否可用
+     * 按购物车预先过滤券包：过期、SKU范围与价格无关，只算一次；
+     * 之后同一购物车可按不同的促销后价格多次计算，只剩门槛判断和贪心选择（促销 + 券联合优化逐个候选使用）。
+     *
+     * @param wallet    预编译的用户券包（可为空）
+     * @param cartItems 购物车商品（用于SKU范围校验）
      */
-    private boolean isAvailable(Coupon coupon, BigDecimal productPrice, BigDecimal shippingFee,
-                                Set<String> cartSkuCodes) {
-        // 过期检查
-        if (coupon.getExpireDate() != null && coupon.getExpireDate().isBefore(LocalDate.now())) {
-            return false;
+    public PreparedCoupons prepare(CouponWallet wallet, List<CartItem> cartItems) {
+        if (wallet == null || wallet.size() == 0) {
+            return new PreparedCoupons(new CouponWallet.Entry[0], new CouponWallet.Entry[0]);
         }
 
-        // 门槛检查（基于促销后价格）
-        BigDecimal checkPrice = coupon.getCouponType() == CouponType.SHIPPING ? shippingFee : productPrice;
-        if (coupon.getThreshold() != null && coupon.getThreshold().compareTo(BigDecimal.ZERO) > 0) {
-            if (checkPrice.compareTo(coupon.getThreshold()) < 0) {
-                return false;
-            }
+        // 收集购物车中的SKU，换成券包的SKU位图
+        List<String> cartSkuCodes = new ArrayList<>(cartItems.size());
+        for (CartItem item : cartItems) {
+            cartSkuCodes.add(item.getSkuCode());
         }
+        long[] cartSkuMask = wallet.cartSkuMask(cartSkuCodes);
+        LocalDate today = LocalDate.now();
 
-        // SKU范围检查（仅商品券需要）
-        if (coupon.getCouponType() == CouponType.PRODUCT
-                && coupon.getApplicableSkuCodes() != null
-                && !coupon.getApplicableSkuCodes().isEmpty()) {
-            boolean hasMatch = coupon.getApplicableSkuCodes().stream()
-                    .anyMatch(cartSkuCodes::contains);
-            if (!hasMatch) {
-                return false;
+        return new PreparedCoupons(
+                filterStatic(wallet.productEntries(), today, cartSkuMask),
+                filterStatic(wallet.shippingEntries(), today, cartSkuMask));
+    }
+
+    /**
+     * 过滤掉过期、SKU范围与购物车不相交的券（仅商品券带SKU位图），保持贪心顺序
+     */
+    private static CouponWallet.Entry[] filterStatic(CouponWallet.Entry[] entries, LocalDate today, long[] cartSkuMask) {
+        CouponWallet.Entry[] kept = new CouponWallet.Entry[entries.length];
+        int count = 0;
+        for (CouponWallet.Entry entry : entries) {
+            if (!entry.isExpired(today) && entry.matchesSku(cartSkuMask)) {
+                kept[count++] = entry;
             }
         }
-
-        return true;
+        return count == kept.length ? kept : Arrays.copyOf(kept, count);
     }
 
     /**
-     * 贪心选券
+     * 门槛过滤并贪心选券
      *
-     * @param coupons       已过滤的同类型券列表（会被修改checked和actualDiscount）
-     * @param remainAmount  可抵扣的剩余金额
+     * @param entries      同类型、已通过静态过滤的券，按贪心顺序排好：面值高→范围窄→先过期→门槛高
+     * @param remainAmount 可抵扣的剩余金额，同时是门槛判断的价格
+     * @param available    可用券按顺序追加到这里
      * @return 总优惠金额
      */
-    private BigDecimal greedySelect(List<Coupon> coupons, BigDecimal remainAmount) {
-        if (coupons.isEmpty() || remainAmount.compareTo(BigDecimal.ZERO) <= 0) {
+    private BigDecimal greedySelect(CouponWallet.Entry[] entries, BigDecimal remainAmount, List<Coupon> available) {
+        if (remainAmount.compareTo(BigDecimal.ZERO) <= 0) {
+            // 没有可抵扣金额时不选券，可用券保持原列表顺序
+            List<CouponWallet.Entry> unselected = new ArrayList<>();
+            for (CouponWallet.Entry entry : entries) {
+                if (entry.meetsThreshold(remainAmount)) {
+                    unselected.add(entry);
+                }
+            }
+            unselected.sort(Comparator.comparingInt(e -> e.originalIndex));
+            for (CouponWallet.Entry entry : unselected) {
+                available.add(entry.coupon);
+            }
             return BigDecimal.ZERO;
         }
 
-        // 排序：面值高→范围窄→先过期→门槛高
-        coupons.sort(Comparator
-                .comparing(Coupon::getFaceValue, Comparator.reverseOrder())
-                .thenComparing(c -> c.getApplicableSkuCodes() == null ? Integer.MAX_VALUE : c.getApplicableSkuCodes().size())
-                .thenComparing(Comparator.comparing(Coupon::getExpireDate, Comparator.nullsLast(Comparator.naturalOrder())))
-                .thenComparing(c -> c.getThreshold() == null ? BigDecimal.ZERO : c.getThreshold(), Comparator.reverseOrder())
-        );
-
         BigDecimal totalDiscount = BigDecimal.ZERO;
         BigDecimal currentRemain = remainAmount;
         int selectedCount = 0;
-        Set<String> usedExclusiveGroups = new HashSet<>();
+        int[] usedExclusiveGroups = new int[Math.max(maxCoupons, 0)];
 
-        for (Coupon coupon : coupons) {
-            // 总券数上限
-            if (selectedCount >= maxCoupons) {
-                break;
-            }
-            // 剩余金额已为0
-            if (currentRemain.compareTo(BigDecimal.ZERO) <= 0) {
-                break;
+        for (CouponWallet.Entry entry : entries) {
+            // 门槛检查（基于促销后价格/运费）
+            if (!entry.meetsThreshold(remainAmount)) {
+                continue;
             }
-            // 互斥组检查
-            if (coupon.getExclusiveGroupId() != null
-                    && usedExclusiveGroups.contains(coupon.getExclusiveGroupId())) {
+            // 总券数上限、剩余金额已为0、互斥组已占用：仍是可用券，但不再选中
+            if (selectedCount >= maxCoupons
+                    || currentRemain.compareTo(BigDecimal.ZERO) <= 0
+                    || isGroupUsed(usedExclusiveGroups, selectedCount, entry.exclusiveGroup)) {
+                available.add(entry.coupon);
                 continue;
             }
 
             // 溢出检测：实际优惠 = min(面值, 剩余金额)
-            BigDecimal actualDiscount = coupon.getFaceValue().min(currentRemain);
+            BigDecimal actualDiscount = entry.coupon.getFaceValue().min(currentRemain);
 
-            coupon.setChecked(true);
-            coupon.setActualDiscount(actualDiscount);
+            Coupon selected = entry.coupon.copy();
+            selected.setChecked(true);
+            selected.setActualDiscount(actualDiscount);
+            available.add(selected);
             totalDiscount = totalDiscount.add(actualDiscount);
             currentRemain = currentRemain.subtract(actualDiscount);
-            selectedCount++;
+            usedExclusiveGroups[selectedCount++] = entry.exclusiveGroup;
+        }
+
+        return totalDiscount;
+    }
 
-            if (coupon.getExclusiveGroupId() != null) {
-                usedExclusiveGroups.add(coupon.getExclusiveGroupId());
+    /**
+     * 互斥组是否已被已选的券占用（已选券数不超过 maxCoupons，线性查找即可）
+     */
+    private static boolean isGroupUsed(int[] usedExclusiveGroups, int selectedCount, int exclusiveGroup) {
+        if (exclusiveGroup < 0) {
+            return false;
+        }
+        for (int i = 0; i < selectedCount; i++) {
+            if (usedExclusiveGroups[i] == exclusiveGroup) {
+                return true;
             }
         }
+        return false;
+    }
 
-        return totalDiscount;
+    /**
+     * 按购物车预过滤后的券包（单次请求内使用，非线程安全）
+     * <p>
+     * 运费券与促销结果无关，同一运费只选一次，多个促销候选之间复用。
+     */
+    public final class PreparedCoupons {
+
+        private final CouponWallet.Entry[] productEntries;
+        private final CouponWallet.Entry[] shippingEntries;
+        private final BigDecimal maxProductDiscount;
+
+        private BigDecimal cachedShippingFee;
+        private List<Coupon> cachedShippingCoupons;
+        private BigDecimal cachedShippingDiscount;
+
+        private PreparedCoupons(CouponWallet.Entry[] productEntries, CouponWallet.Entry[] shippingEntries) {
+            this.productEntries = productEntries;
+            this.shippingEntries = shippingEntries;
+            // 已按面值从高到低排好，前 maxCoupons 张面值之和即商品券优惠上界（不看门槛和互斥组）
+            BigDecimal max = BigDecimal.ZERO;
+            for (int i = 0; i < productEntries.length && i < maxCoupons; i++) {
+                max = max.add(productEntries[i].coupon.getFaceValue());
+            }
+            this.maxProductDiscount = max;
+        }
+
+        /**
+         * 按促销后价格计算券优惠
+         */
+        public CouponResult calculate(BigDecimal priceAfterPromotion, BigDecimal shippingFee) {
+            if (productEntries.length == 0 && shippingEntries.length == 0) {
+                return CouponResult.builder().build();
+            }
+            if (!shippingFee.equals(cachedShippingFee)) {
+                cachedShippingCoupons = new ArrayList<>();
+                cachedShippingDiscount = greedySelect(shippingEntries, shippingFee, cachedShippingCoupons);
+                cachedShippingFee = shippingFee;
+            }
+
+            // 商品券 vs 运费券各自贪心选券，可用券按商品券在前合并
+            List<Coupon> allAvailable = new ArrayList<>();
+            BigDecimal productDiscount = greedySelect(productEntries, priceAfterPromotion, allAvailable);
+            allAvailable.addAll(cachedShippingCoupons);
+
+            return CouponResult.builder()
+                    .availableCoupons(allAvailable)
+                    .productCouponDiscount(productDiscount)
+                    .shippingCouponDiscount(cachedShippingDiscount)
+                    .build();
+        }
+
+        /**
+         * 商品券优惠上界：未过期、SKU范围匹配的商品券中面值最高的 maxCoupons 张之和
+         */
+        public BigDecimal getMaxProductDiscount() {
+            return maxProductDiscount;
+        }
     }
 }
@@ -0,0 +1,227 @@
+package com.bruce.coupondemo.engine;
+
+import com.bruce.coupondemo.model.Coupon;
+import com.bruce.coupondemo.model.CouponType;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * 预编译的用户券包视图（不可变，券包不变时可跨请求复用）
+ *
+ * 编译时一次性完成：
+ * 1. 按券类型拆成商品券/运费券，各自按贪心顺序（面值高→范围窄→先过期→门槛高）稳定排序
+ * 2. 静态可用性与价格无关，预先整理好：过期日期、SKU 范围（SKU 编码驻留为整数，范围展开为位图）
+ * 3. 互斥组 ID 驻留为整数
+ *
+ * 每次计算只剩动态可用性（门槛 vs 当前价格）和 SKU 范围与购物车求交，见 {@link CouponEngine#calculate(java.math.BigDecimal, java.math.BigDecimal, CouponWallet, java.util.List)}。
+ * 券包变更（领券、用券、券过期下架）时换一个更大的版本号重新编译，按用户复用见 {@link CouponWalletCache}。
+ */
+public final class CouponWallet {
+
+    private static final CouponWallet EMPTY = compile(0L, Collections.emptyList());
+
+    private final long version;
+    private final int size;
+    /**
+     * 商品券、运费券（各自按贪心顺序排好）
+     */
+    private final Entry[] productEntries;
+    private final Entry[] shippingEntries;
+    /**
+     * SKU 编码 -> 位图下标（只含出现在某张券适用范围里的 SKU）
+     */
+    private final Map<String, Integer> skuIndex;
+    private final int skuWords;
+
+    private CouponWallet(long version, int size, Entry[] productEntries, Entry[] shippingEntries,
+                         Map<String, Integer> skuIndex, int skuWords) {
+        this.version = version;
+        this.size = size;
+        this.productEntries = productEntries;
+        this.shippingEntries = shippingEntries;
+        this.skuIndex = skuIndex;
+        this.skuWords = skuWords;
+    }
+
+    /**
+     * 空券包
+     */
+    public static CouponWallet empty() {
+        return EMPTY;
+    }
+
+    /**
+     * 编译一次性使用的券包（版本号为 0）
+     */
+    public static CouponWallet compile(List<Coupon> coupons) {
+        return compile(0L, coupons);
+    }
+
+    /**
+     * @param version 券包版本（同一版本的券内容必须相同）
+     * @param coupons 用户持有的券，编译时各复制一份，之后修改原列表不影响本视图
+     */
+    public static CouponWallet compile(long version, List<Coupon> coupons) {
+        Map<String, Integer> skuIndex = new HashMap<>();
+        Map<String, Integer> groupIndex = new HashMap<>();
+        List<Entry> product = new ArrayList<>();
+        List<Entry> shipping = new ArrayList<>();
+
+        for (int i = 0; i < coupons.size(); i++) {
+            Coupon coupon = coupons.get(i).copy();
+            boolean productCoupon = coupon.getCouponType() == CouponType.PRODUCT;
+            if (!productCoupon && coupon.getCouponType() != CouponType.SHIPPING) {
+                continue;
+            }
+            int[] skuBits = null;
+            // SKU 范围只对商品券生效
+            if (productCoupon && coupon.getApplicableSkuCodes() != null && !coupon.getApplicableSkuCodes().isEmpty()) {
+                skuBits = new int[coupon.getApplicableSkuCodes().size()];
+                int k = 0;
+                for (String sku : coupon.getApplicableSkuCodes()) {
+                    Integer bit = skuIndex.get(sku);
+                    if (bit == null) {
+                        bit = skuIndex.size();
+                        skuIndex.put(sku, bit);
+                    }
+                    skuBits[k++] = bit;
+                }
+            }
+            int group = -1;
+            if (coupon.getExclusiveGroupId() != null) {
+                Integer id = groupIndex.get(coupon.getExclusiveGroupId());
+                if (id == null) {
+                    id = groupIndex.size();
+                    groupIndex.put(coupon.getExclusiveGroupId(), id);
+                }
+                group = id;
+            }
+            BigDecimal threshold = coupon.getThreshold();
+            Entry entry = new Entry(i, coupon,
+                    threshold != null && threshold.compareTo(BigDecimal.ZERO) > 0 ? threshold : null,
+                    skuBits, group);
+            (productCoupon ? product : shipping).add(entry);
+        }
+
+        int skuWords = (skuIndex.size() + 63) >>> 6;
+        for (Entry entry : product) {
+            entry.buildSkuMask(skuWords);
+        }
+
+        return new CouponWallet(version, product.size() + shipping.size(),
+                sortGreedy(product), sortGreedy(shipping), skuIndex, skuWords);
+    }
+
+    /**
+     * 贪心顺序：面值高→范围窄→先过期→门槛高；稳定排序，同序保持原列表先后
+     */
+    private static Entry[] sortGreedy(List<Entry> entries) {
+        entries.sort(Comparator
+                .comparing((Entry e) -> e.coupon.getFaceValue(), Comparator.reverseOrder())
+                .thenComparingInt(e -> e.coupon.getApplicableSkuCodes() == null ? Integer.MAX_VALUE : e.coupon.getApplicableSkuCodes().size())
+                .thenComparing(e -> e.coupon.getExpireDate(), Comparator.nullsLast(Comparator.naturalOrder()))
+                .thenComparing(e -> e.coupon.getThreshold() == null ? BigDecimal.ZERO : e.coupon.getThreshold(), Comparator.reverseOrder()));
+        return entries.toArray(new Entry[0]);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * 券包中的商品券与运费券张数
+     */
+    public int size() {
+        return size;
+    }
+
+    Entry[] productEntries() {
+        return productEntries;
+    }
+
+    Entry[] shippingEntries() {
+        return shippingEntries;
+    }
+
+    /**
+     * 购物车 SKU 在本券包 SKU 位图中的掩码；购物车里没有任何券涉及的 SKU 时为全 0
+     */
+    long[] cartSkuMask(Collection<String> cartSkuCodes) {
+        long[] mask = new long[skuWords];
+        if (skuWords == 0) {
+            return mask;
+        }
+        for (String sku : cartSkuCodes) {
+            Integer bit = skuIndex.get(sku);
+            if (bit != null) {
+                mask[bit >>> 6] |= 1L << bit;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * 券包中的一张券：原券（编译时的副本，只读）+ 预处理好的静态属性
+     */
+    static final class Entry {
+        /**
+         * 在原列表中的下标
+         */
+        final int originalIndex;
+        final Coupon coupon;
+        /**
+         * 门槛（null 或 <= 0 时为 null，表示无门槛）
+         */
+        final BigDecimal threshold;
+        /**
+         * 互斥组（驻留后的整数，-1 表示无互斥）
+         */
+        final int exclusiveGroup;
+        private int[] skuBits;
+        /**
+         * 适用 SKU 位图，null 表示全场通用
+         */
+        private long[] skuMask;
+
+        Entry(int originalIndex, Coupon coupon, BigDecimal threshold, int[] skuBits, int exclusiveGroup) {
+            this.originalIndex = originalIndex;
+            this.coupon = coupon;
+            this.threshold = threshold;
+            this.skuBits = skuBits;
+            this.exclusiveGroup = exclusiveGroup;
+        }
+
+        private void buildSkuMask(int words) {
+            if (skuBits == null) {
+                return;
+            }
+            skuMask = new long[words];
+            for (int bit : skuBits) {
+                skuMask[bit >>> 6] |= 1L << bit;
+            }
+            skuBits = null;
+        }
+
+        boolean isExpired(LocalDate today) {
+            return coupon.getExpireDate() != null && coupon.getExpireDate().isBefore(today);
+        }
+
+        boolean matchesSku(long[] cartSkuMask) {
+            if (skuMask == null) {
+                return true;
+            }
+            for (int w = 0; w < skuMask.length; w++) {
+                if ((skuMask[w] & cartSkuMask[w]) != 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean meetsThreshold(BigDecimal price) {
+            return threshold == null || price.compareTo(threshold) >= 0;
+        }
+    }
+}
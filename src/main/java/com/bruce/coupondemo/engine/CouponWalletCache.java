@@ -0,0 +1,54 @@
+package com.bruce.coupondemo.engine;
+
+import com.bruce.coupondemo.model.Coupon;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 按用户缓存 {@link CouponWallet}：同一用户同一券包版本只编译一次，读请求无锁拿到编译结果。
+ *
+ * 每个用户只保留最新版本；券包变更时换一个更大的版本号即可，旧版本的请求仍能拿到正确（临时编译）的结果，但不会覆盖新版本。
+ */
+public class CouponWalletCache {
+
+    private final ConcurrentMap<String, CouponWallet> wallets = new ConcurrentHashMap<>();
+
+    /**
+     * 取该用户该版本的券包，未缓存时用 coupons 编译
+     *
+     * @param userId  用户ID
+     * @param version 券包版本（同一用户同一版本的券必须相同）
+     * @param coupons 该版本的券
+     */
+    public CouponWallet get(String userId, long version, List<Coupon> coupons) {
+        CouponWallet cached = wallets.get(userId);
+        if (cached != null && cached.getVersion() == version) {
+            return cached;
+        }
+        CouponWallet compiled = CouponWallet.compile(version, coupons);
+        CouponWallet current = wallets.merge(userId, compiled,
+                (prev, next) -> prev.getVersion() >= next.getVersion() ? prev : next);
+        // 并发下别的线程已放入同版本或更新版本
+        return current.getVersion() == version ? current : compiled;
+    }
+
+    /**
+     * 该用户当前缓存的券包，没有时返回 null
+     */
+    public CouponWallet current(String userId) {
+        return wallets.get(userId);
+    }
+
+    /**
+     * 券包变更但拿不到新版本号时，直接丢弃该用户的缓存
+     */
+    public void invalidate(String userId) {
+        wallets.remove(userId);
+    }
+
+    public int size() {
+        return wallets.size();
+    }
+}
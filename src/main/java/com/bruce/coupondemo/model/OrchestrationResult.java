@@ -45,4 +45,9 @@ public class OrchestrationResult {
     private BigDecimal shippingPayPrice;
     /** 最终总应付 = 商品应付 + 运费应付 */
     private BigDecimal totalPayPrice;
+    /** 参与比较的促销候选数（顺序模式为 1，联合优化模式为实际用券计算过的候选数） */
+    @Builder.Default
+    private int promotionCandidates = 1;
+    /** 联合优化是否因超出时间预算提前结束 */
+    private boolean budgetExceeded;
 }
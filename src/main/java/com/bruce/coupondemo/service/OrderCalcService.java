@@ -1,28 +1,83 @@
 package com.bruce.coupondemo.service;
 
 import com.bruce.coupondemo.engine.CouponEngine;
+import com.bruce.coupondemo.engine.CouponWallet;
 import com.bruce.coupondemo.model.Coupon;
 import com.bruce.coupondemo.model.CouponResult;
 import com.bruce.coupondemo.model.OrchestrationResult;
+import com.bruce.promotiondemo.engine.CalculationCache;
+import com.bruce.promotiondemo.engine.CartKey;
+import com.bruce.promotiondemo.engine.CompiledRuleSet;
 import com.bruce.promotiondemo.engine.NewPromotionEngine;
 import com.bruce.promotiondemo.model.Cart;
 import com.bruce.promotiondemo.model.CartItem;
+import com.bruce.promotiondemo.model.ReductionDetail;
 import com.bruce.promotiondemo.model.Rule;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 订单计算编排服务
  * <p>
  * 核心流程：先促销 → 后用券 → 汇总结果
  * 引用已有的 NewPromotionEngine 作为促销引擎
+ * <p>
+ * 联合优化模式（calculateJoint）：券门槛依赖促销后价格，促销最优不一定总价最低
+ * （稍差的促销组合可能保住高门槛券）。取促销优惠最大的前 K 个不同结果逐个用券，返回总应付最低者。
+ * <p>
+ * 结果缓存（顺序模式）：以（规范化购物车, 规则版本, 券包, 运费）为键，LRU + TTL，出现更新的规则版本时整体失效。
+ * 只缓存有版本号的规则集和券包（一次性编译的不缓存）；券包按实例区分，同一用户同一版本由 CouponWalletCache 返回同一实例。
+ * 券的过期按自然日判断，TTL 同时限定了跨天后结果的最长滞后时间。
  */
 public class OrderCalcService {
 
+    /** 联合优化默认促销候选数 */
+    public static final int DEFAULT_JOINT_TOP_K = 8;
+    /** 联合优化默认时间预算：5ms（含促销候选搜索） */
+    public static final long DEFAULT_JOINT_BUDGET_MICROS = 5000L;
+    /** 结果缓存默认条数 */
+    public static final int DEFAULT_CACHE_MAX_ENTRIES = 10_000;
+    /** 结果缓存默认存活时间：60s */
+    public static final long DEFAULT_CACHE_TTL_MILLIS = 60_000L;
+
     private final NewPromotionEngine promotionEngine = new NewPromotionEngine();
     private final CouponEngine couponEngine = new CouponEngine();
+    private final int jointTopK;
+    private final long jointBudgetNanos;
+    private final CalculationCache<OrderKey, OrchestrationResult> resultCache;
+
+    public OrderCalcService() {
+        this(DEFAULT_JOINT_TOP_K, DEFAULT_JOINT_BUDGET_MICROS);
+    }
+
+    public OrderCalcService(int jointTopK, long jointBudgetMicros) {
+        this(jointTopK, jointBudgetMicros, new CalculationCache<>(DEFAULT_CACHE_MAX_ENTRIES, DEFAULT_CACHE_TTL_MILLIS));
+    }
+
+    /**
+     * @param jointTopK         联合优化时最多比较的促销候选数
+     * @param jointBudgetMicros 联合优化的时间预算（微秒），促销候选搜索与逐个用券共用：候选搜不完时用剩余预算补算促销最优，
+     *                          仍超时则并入贪心组合（见 NewPromotionEngine#calculateTopOutcomes）；
+     *                          用券超出后用已比较过的候选中最好的结果
+     * @param resultCache       顺序模式的结果缓存
+     */
+    public OrderCalcService(int jointTopK, long jointBudgetMicros,
+                            CalculationCache<OrderKey, OrchestrationResult> resultCache) {
+        if (jointTopK < 1) {
+            throw new IllegalArgumentException("jointTopK must be positive");
+        }
+        if (jointBudgetMicros <= 0) {
+            throw new IllegalArgumentException("jointBudgetMicros must be positive");
+        }
+        this.jointTopK = jointTopK;
+        this.jointBudgetNanos = TimeUnit.MICROSECONDS.toNanos(jointBudgetMicros);
+        this.resultCache = resultCache;
+    }
 
     /**
      * 计算订单：促销 + 券联动
@@ -35,15 +90,60 @@ public class OrderCalcService {
      */
     public OrchestrationResult calculate(List<CartItem> items, List<Rule> rules,
                                          List<Coupon> coupons, BigDecimal shippingFee) {
+        return calculateCompiled(items,
+                rules == null ? null : CompiledRuleSet.compile(rules),
+                coupons == null ? null : CouponWallet.compile(coupons),
+                shippingFee);
+    }
+
+    /**
+     * 计算订单：促销 + 券联动（规则与券包已预编译，同一版本可跨请求复用）
+     *
+     * @param items       购物车商品
+     * @param ruleSet     预编译的促销规则（可为空）
+     * @param wallet      预编译的用户券包（可为空）
+     * @param shippingFee 运费
+     * @return 编排结果
+     */
+    public OrchestrationResult calculateCompiled(List<CartItem> items, CompiledRuleSet ruleSet,
+                                                 CouponWallet wallet, BigDecimal shippingFee) {
         if (shippingFee == null) {
             shippingFee = BigDecimal.ZERO;
         }
-        if (rules == null) {
-            rules = Collections.emptyList();
+        if (wallet == null) {
+            wallet = CouponWallet.empty();
+        }
+
+        OrderKey key = cacheKey(items, ruleSet, wallet, shippingFee);
+        if (key == null) {
+            resultCache.recordBypass();
+            return calculateUncached(items, ruleSet, wallet, shippingFee);
         }
-        if (coupons == null) {
-            coupons = Collections.emptyList();
+        OrchestrationResult cached = resultCache.get(key);
+        if (cached != null) {
+            return copyOf(cached);
         }
+        OrchestrationResult result = calculateUncached(items, ruleSet, wallet, shippingFee);
+        resultCache.put(key, copyOf(result));
+        return result;
+    }
+
+    /**
+     * 结果缓存的统计
+     */
+    public Map<String, Object> getCacheStats() {
+        return resultCache.getStats();
+    }
+
+    /**
+     * 规则或券包在版本号之外发生变更时手动清空结果缓存
+     */
+    public void invalidateCache() {
+        resultCache.invalidateAll();
+    }
+
+    private OrchestrationResult calculateUncached(List<CartItem> items, CompiledRuleSet ruleSet,
+                                                  CouponWallet wallet, BigDecimal shippingFee) {
 
         // ====== Step 1: 促销计算 ======
         Cart cart = Cart.builder().items(items).build();
@@ -53,8 +153,8 @@ public class OrderCalcService {
         BigDecimal promotionDiscount;
         BigDecimal priceAfterPromotion;
 
-        if (!rules.isEmpty()) {
-            promotedCart = promotionEngine.calculate(cart, rules);
+        if (ruleSet != null && ruleSet.size() > 0) {
+            promotedCart = promotionEngine.calculate(cart, ruleSet);
             promotionDiscount = promotedCart.getTotalDiscount();
             priceAfterPromotion = promotedCart.getPayPrice();
         } else {
@@ -65,9 +165,102 @@ public class OrderCalcService {
 
         // ====== Step 2: 券计算（基于促销后价格） ======
         CouponResult couponResult = couponEngine.calculate(
-                priceAfterPromotion, shippingFee, coupons, items);
+                priceAfterPromotion, shippingFee, wallet, items);
 
         // ====== Step 3: 汇总结果 ======
+        return buildResult(originalPrice, promotionDiscount, priceAfterPromotion, promotedCart,
+                couponResult, shippingFee, 1, false);
+    }
+
+    /**
+     * 计算订单：促销 + 券联合优化
+     *
+     * @param items       购物车商品
+     * @param rules       促销规则（可为空）
+     * @param coupons     用户持有的券（可为空）
+     * @param shippingFee 运费
+     * @return 编排结果（总应付不高于 {@link #calculate} 的结果）
+     */
+    public OrchestrationResult calculateJoint(List<CartItem> items, List<Rule> rules,
+                                              List<Coupon> coupons, BigDecimal shippingFee) {
+        return calculateJointCompiled(items,
+                rules == null ? null : CompiledRuleSet.compile(rules),
+                coupons == null ? null : CouponWallet.compile(coupons),
+                shippingFee);
+    }
+
+    /**
+     * 计算订单：促销 + 券联合优化（规则与券包已预编译）
+     * <p>
+     * 1. 在时间预算内取促销优惠最大的前 K 个不同结果（第一个即顺序模式的促销最优）
+     * 2. 券包按购物车预过滤一次，运费券只选一次；各候选只重算商品券的门槛与贪心选择
+     * 3. 候选按促销后价格从低到高比较，促销后价格 - 商品券优惠上界已不低于当前最优时，后面的候选都不可能更好，提前结束
+     * 4. 总应付相同时取促销优惠更大的候选
+     *
+     * @param items       购物车商品
+     * @param ruleSet     预编译的促销规则（可为空）
+     * @param wallet      预编译的用户券包（可为空）
+     * @param shippingFee 运费
+     * @return 编排结果
+     */
+    public OrchestrationResult calculateJointCompiled(List<CartItem> items, CompiledRuleSet ruleSet,
+                                                      CouponWallet wallet, BigDecimal shippingFee) {
+        long deadline = System.nanoTime() + jointBudgetNanos;
+        if (shippingFee == null) {
+            shippingFee = BigDecimal.ZERO;
+        }
+
+        // ====== Step 1: 促销前 K 个候选 ======
+        Cart cart = Cart.builder().items(items).build();
+        BigDecimal originalPrice = cart.getTotalPrice();
+        List<Cart> candidates = ruleSet != null && ruleSet.size() > 0
+                ? promotionEngine.calculateTopOutcomes(cart, ruleSet, jointTopK, deadline)
+                : Collections.singletonList(cart);
+
+        // ====== Step 2: 逐个候选用券，券包按购物车只预过滤一次 ======
+        CouponEngine.PreparedCoupons prepared = couponEngine.prepare(wallet, items);
+        BigDecimal maxProductCouponDiscount = prepared.getMaxProductDiscount();
+        Cart bestCart = null;
+        CouponResult bestCoupons = null;
+        BigDecimal bestProductPay = null;
+        int evaluated = 0;
+        boolean budgetExceeded = false;
+        for (Cart candidate : candidates) {
+            BigDecimal priceAfterPromotion = candidate.getPayPrice();
+            if (bestProductPay != null) {
+                BigDecimal lowerBound = priceAfterPromotion.subtract(maxProductCouponDiscount).max(BigDecimal.ZERO);
+                if (lowerBound.compareTo(bestProductPay) >= 0) {
+                    break;
+                }
+                if (System.nanoTime() - deadline > 0) {
+                    budgetExceeded = true;
+                    break;
+                }
+            }
+            CouponResult couponResult = prepared.calculate(priceAfterPromotion, shippingFee);
+            evaluated++;
+            // 运费部分与促销无关，按商品应付比较即可
+            BigDecimal productPay = priceAfterPromotion.subtract(couponResult.getProductCouponDiscount())
+                    .max(BigDecimal.ZERO);
+            if (bestProductPay == null || productPay.compareTo(bestProductPay) < 0) {
+                bestCart = candidate;
+                bestCoupons = couponResult;
+                bestProductPay = productPay;
+            }
+        }
+
+        // ====== Step 3: 汇总结果 ======
+        boolean promoted = ruleSet != null && ruleSet.size() > 0;
+        return buildResult(originalPrice,
+                promoted ? bestCart.getTotalDiscount() : BigDecimal.ZERO,
+                promoted ? bestCart.getPayPrice() : originalPrice,
+                bestCart, bestCoupons, shippingFee, evaluated, budgetExceeded);
+    }
+
+    private OrchestrationResult buildResult(BigDecimal originalPrice, BigDecimal promotionDiscount,
+                                            BigDecimal priceAfterPromotion, Cart promotedCart,
+                                            CouponResult couponResult, BigDecimal shippingFee,
+                                            int promotionCandidates, boolean budgetExceeded) {
         BigDecimal productCouponDiscount = couponResult.getProductCouponDiscount();
         BigDecimal shippingCouponDiscount = couponResult.getShippingCouponDiscount();
 
@@ -89,6 +282,104 @@ public class OrderCalcService {
                 .shippingFee(shippingFee)
                 .shippingPayPrice(shippingPayPrice)
                 .totalPayPrice(totalPayPrice)
+                .promotionCandidates(promotionCandidates)
+                .budgetExceeded(budgetExceeded)
                 .build();
     }
+
+    /**
+     * 规则集和券包都有版本号（或为空）时才能缓存，否则返回 null；规则版本比缓存中的旧时也不缓存
+     */
+    private OrderKey cacheKey(List<CartItem> items, CompiledRuleSet ruleSet, CouponWallet wallet,
+                              BigDecimal shippingFee) {
+        boolean noRules = ruleSet == null || ruleSet.size() == 0;
+        long ruleVersion = noRules ? 0L : ruleSet.getVersion();
+        if (!noRules && ruleVersion <= 0) {
+            return null;
+        }
+        if (wallet.size() > 0 && wallet.getVersion() <= 0) {
+            return null;
+        }
+        // 不带规则的请求与规则版本无关，不参与版本登记
+        if (!noRules && !resultCache.admitVersion(ruleVersion)) {
+            return null;
+        }
+        return new OrderKey(CartKey.of(items), ruleVersion, wallet.size() > 0 ? wallet : null, shippingFee);
+    }
+
+    /**
+     * 防御性拷贝：缓存存一份、每次命中再给一份，调用方修改返回值（明细、券的 checked 等）不会污染缓存
+     */
+    private static OrchestrationResult copyOf(OrchestrationResult result) {
+        List<ReductionDetail> details = new ArrayList<>(result.getPromotionDetails().size());
+        for (ReductionDetail detail : result.getPromotionDetails()) {
+            details.add(detail.copy());
+        }
+        CouponResult coupons = result.getCouponResult();
+        List<Coupon> availableCoupons = new ArrayList<>(coupons.getAvailableCoupons().size());
+        for (Coupon coupon : coupons.getAvailableCoupons()) {
+            availableCoupons.add(coupon.copy());
+        }
+        return OrchestrationResult.builder()
+                .originalPrice(result.getOriginalPrice())
+                .promotionDiscount(result.getPromotionDiscount())
+                .priceAfterPromotion(result.getPriceAfterPromotion())
+                .promotionDetails(details)
+                .couponResult(CouponResult.builder()
+                        .availableCoupons(availableCoupons)
+                        .productCouponDiscount(coupons.getProductCouponDiscount())
+                        .shippingCouponDiscount(coupons.getShippingCouponDiscount())
+                        .build())
+                .productCouponDiscount(result.getProductCouponDiscount())
+                .shippingCouponDiscount(result.getShippingCouponDiscount())
+                .productPayPrice(result.getProductPayPrice())
+                .shippingFee(result.getShippingFee())
+                .shippingPayPrice(result.getShippingPayPrice())
+                .totalPayPrice(result.getTotalPayPrice())
+                .promotionCandidates(result.getPromotionCandidates())
+                .budgetExceeded(result.isBudgetExceeded())
+                .build();
+    }
+
+    /**
+     * 结果缓存键：（规范化购物车, 规则版本, 券包实例, 运费）
+     */
+    public static final class OrderKey {
+        private final CartKey cart;
+        private final long ruleVersion;
+        /**
+         * 按实例比较（券包版本号只在同一用户内有意义），空券包为 null
+         */
+        private final CouponWallet wallet;
+        private final BigDecimal shippingFee;
+
+        private OrderKey(CartKey cart, long ruleVersion, CouponWallet wallet, BigDecimal shippingFee) {
+            this.cart = cart;
+            this.ruleVersion = ruleVersion;
+            this.wallet = wallet;
+            this.shippingFee = shippingFee;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof OrderKey)) {
+                return false;
+            }
+            OrderKey other = (OrderKey) o;
+            return ruleVersion == other.ruleVersion
+                    && wallet == other.wallet
+                    && cart.equals(other.cart)
+                    && shippingFee.equals(other.shippingFee);
+        }
+
+        @Override
+        public int hashCode() {
+            int h = 31 * cart.hashCode() + Long.hashCode(ruleVersion);
+            h = 31 * h + System.identityHashCode(wallet);
+            return 31 * h + shippingFee.hashCode();
+        }
+    }
 }
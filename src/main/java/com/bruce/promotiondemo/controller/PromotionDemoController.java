@@ -122,6 +122,36 @@ public class PromotionDemoController {
         return compareService.calculateWithNewEngine(cart, rules);
     }
 
+    /**
+     * 使用自适应引擎计算（按命中规则数、互斥图和延迟目标选择穷举/剪枝/贪心）
+     */
+    @PostMapping("/calculate/adaptive")
+    public Map<String, Object> calculateWithAdaptiveEngine(@RequestBody Map<String, Object> request) {
+        Cart cart = parseCart(request);
+        List<Rule> rules = parseRules(request);
+
+        return compareService.calculateWithAdaptiveEngine(cart, rules);
+    }
+
+    /**
+     * 影子模式计算（主引擎返回结果，采样请求后台用候选引擎比对）
+     */
+    @PostMapping("/calculate/shadow")
+    public Map<String, Object> calculateWithShadow(@RequestBody Map<String, Object> request) {
+        Cart cart = parseCart(request);
+        List<Rule> rules = parseRules(request);
+
+        return compareService.calculateWithShadow(cart, rules);
+    }
+
+    /**
+     * 影子比对统计
+     */
+    @GetMapping("/shadow/stats")
+    public Map<String, Object> getShadowStats() {
+        return compareService.getShadowStats();
+    }
+
     // ========== 默认场景数据 ==========
 
     private Cart createDefaultCart(BigDecimal price) {
@@ -1,16 +0,0 @@
-package com.bruce.promotiondemo.model;
-
-/**
- * 规则关系
- */
-public enum RuleRelation {
-    /**
-     * 可叠加
-     */
-    PARALLEL,
-
-    /**
-     * 互斥
-     */
-    EXCLUSIVE
-}
@@ -0,0 +1,502 @@
+package com.ryan.es.bulk;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ryan.es.config.EsDemoProperties;
+import com.ryan.es.http.EsAsyncRestClient;
+import com.ryan.es.http.EsParsedResponse;
+import com.ryan.es.http.EsResponseReader;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Size- and time-bounded {@code _bulk} pipeline (in the spirit of the ES client's BulkProcessor).
+ *
+ * <ul>
+ *     <li>{@link #add} serializes the action line + doc straight into the open batch's byte buffer; the batch is sent
+ *     when it reaches {@code bulkActions} docs or {@code bulkSizeBytes} bytes, or by the {@code bulkFlushIntervalMs}
+ *     timer.</li>
+ *     <li>At most {@code bulkConcurrentRequests} batches are in flight; {@link #add} blocks beyond that
+ *     (backpressure instead of an unbounded queue).</li>
+ *     <li>The response is scanned per item: only items rejected with 429 / 5xx are compacted to the front of the same
+ *     buffer and resent with exponential backoff; other item errors (mapping, version conflict) count as failed.</li>
+ *     <li>Buffers are pooled ({@code bulkConcurrentRequests + 1} of them) and reused once a batch is done.</li>
+ * </ul>
+ *
+ * <p>Not a Spring bean: create one per indexing job and {@link #close()} it to flush and wait.</p>
+ */
+@Slf4j
+public class EsBulkProcessor implements AutoCloseable {
+
+    /**
+     * Sends one NDJSON body ({@code body[0, length)}); {@link EsAsyncRestClient} in production.
+     */
+    @FunctionalInterface
+    public interface Transport {
+        CompletableFuture<EsParsedResponse<BulkResult>> send(byte[] body, int length,
+                                                             EsResponseReader<BulkResult> reader);
+    }
+
+    private final Transport transport;
+    private final ObjectMapper objectMapper;
+    private final int bulkActions;
+    private final int bulkSizeBytes;
+    private final int concurrentRequests;
+    private final int maxRetries;
+    private final long backoffMs;
+    private final long closeTimeoutMs;
+
+    private final Semaphore slots;
+    private final BlockingQueue<Batch> freeBatches;
+    private final ScheduledExecutorService scheduler;
+    /**
+     * Guards {@link #current}/{@link #closed}; held by producers while they wait for a slot (backpressure).
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    private Batch current;
+    private boolean closed;
+
+    private final AtomicLong added = new AtomicLong();
+    private final AtomicLong indexed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+
+    public EsBulkProcessor(EsAsyncRestClient client, ObjectMapper objectMapper, EsDemoProperties properties) {
+        this((body, length, reader) -> client.postNdjson("/_bulk", body, length, properties.getBulkDeadlineMs(), reader),
+                objectMapper, properties);
+    }
+
+    public EsBulkProcessor(Transport transport, ObjectMapper objectMapper, EsDemoProperties properties) {
+        this.transport = transport;
+        this.objectMapper = objectMapper;
+        this.bulkActions = Math.max(1, properties.getBulkActions());
+        this.bulkSizeBytes = Math.max(1024, properties.getBulkSizeBytes());
+        this.concurrentRequests = Math.max(1, properties.getBulkConcurrentRequests());
+        this.maxRetries = Math.max(0, properties.getBulkMaxRetries());
+        this.backoffMs = Math.max(1L, properties.getBulkBackoffMs());
+        this.closeTimeoutMs = properties.getBulkDeadlineMs() * (maxRetries + 1) + (backoffMs << Math.min(maxRetries, 10));
+
+        this.slots = new Semaphore(concurrentRequests);
+        // One batch being filled + one per in-flight slot, so a free buffer always exists once a slot is acquired.
+        this.freeBatches = new ArrayBlockingQueue<>(concurrentRequests + 1);
+        for (int i = 0; i < concurrentRequests; i++) {
+            freeBatches.add(new Batch());
+        }
+        this.current = new Batch();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "es-bulk-processor");
+            t.setDaemon(true);
+            return t;
+        });
+        long interval = properties.getBulkFlushIntervalMs();
+        if (interval > 0) {
+            scheduler.scheduleWithFixedDelay(this::flushIfIdleSlot, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Queue an index action; may block while {@code bulkConcurrentRequests} batches are in flight.
+     */
+    public void add(String index, String id, Object doc) throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("bulk processor is closed");
+            }
+            current.append(objectMapper, index, id, doc);
+            added.incrementAndGet();
+            if (current.items >= bulkActions || current.buffer.size() >= bulkSizeBytes) {
+                sendCurrent(true);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Send the open batch now (blocking for a slot if needed).
+     */
+    public void flush() {
+        lock.lock();
+        try {
+            if (current.items > 0) {
+                sendCurrent(true);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Flush and wait until every batch sent so far (including retries) is done; true if that happened in time.
+     * Useful as a checkpoint: afterwards {@link #getStats()} accounts for every doc added before the call.
+     */
+    public boolean flushAndWait(long timeout, TimeUnit unit) throws InterruptedException {
+        flush();
+        if (!slots.tryAcquire(concurrentRequests, timeout, unit)) {
+            return false;
+        }
+        slots.release(concurrentRequests);
+        return true;
+    }
+
+    /**
+     * Flush, wait for in-flight batches (bounded by the retry budget) and stop the timer.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        } finally {
+            lock.unlock();
+        }
+        try {
+            if (!flushAndWait(closeTimeoutMs, TimeUnit.MILLISECONDS)) {
+                log.warn("Bulk processor closed with batches still in flight: {}", getStats());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("added", added.get());
+        stats.put("indexed", indexed.get());
+        stats.put("failed", failed.get());
+        stats.put("retried", retried.get());
+        stats.put("requests", requests.get());
+        stats.put("bytesSent", bytesSent.get());
+        stats.put("inFlight", concurrentRequests - slots.availablePermits());
+        return stats;
+    }
+
+    public long getIndexed() {
+        return indexed.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public long getRetried() {
+        return retried.get();
+    }
+
+    private void flushIfIdleSlot() {
+        // The timer thread also runs retries, which free the slots producers wait for: never block it.
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            if (!closed && current.items > 0) {
+                sendCurrent(false);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Caller holds {@link #lock}.
+     */
+    private void sendCurrent(boolean block) {
+        if (block) {
+            try {
+                slots.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for a bulk slot", e);
+            }
+        } else if (!slots.tryAcquire()) {
+            return;
+        }
+        Batch batch = current;
+        current = freeBatches.poll();
+        send(batch);
+    }
+
+    private void send(Batch batch) {
+        requests.incrementAndGet();
+        bytesSent.addAndGet(batch.buffer.size());
+        CompletableFuture<EsParsedResponse<BulkResult>> call;
+        try {
+            call = transport.send(batch.buffer.array(), batch.buffer.size(), in -> BulkResult.read(in, batch.items));
+        } catch (RuntimeException e) {
+            call = new CompletableFuture<>();
+            call.complete(new EsParsedResponse<>(-1, null, e.getMessage()));
+        }
+        call.whenComplete((resp, e) -> {
+            try {
+                onResponse(batch, resp, e);
+            } catch (RuntimeException ex) {
+                log.warn("Bulk response handling failed: {}", ex.getMessage(), ex);
+                failed.addAndGet(batch.items);
+                finish(batch);
+            }
+        });
+    }
+
+    private void onResponse(Batch batch, EsParsedResponse<BulkResult> resp, Throwable error) {
+        BitSet retry;
+        int rejected;
+        if (error == null && resp != null && resp.is2xx()) {
+            BulkResult result = resp.getValue();
+            indexed.addAndGet(batch.items - result.retryable.cardinality() - result.failed);
+            rejected = result.failed;
+            retry = result.retryable;
+            if (result.failed > 0) {
+                log.warn("Bulk: {} item(s) rejected permanently, first: {}", result.failed, result.firstError);
+            }
+        } else {
+            // Whole request failed: transport error, deadline, limiter, 429 or 5xx -> retry every item; other 4xx -> give up.
+            int status = resp == null ? -1 : resp.getStatusCode();
+            String message = error != null ? error.getMessage() : resp == null ? null : resp.getErrorBody();
+            log.warn("Bulk request of {} item(s) failed: {} - {}", batch.items, status, message);
+            retry = new BitSet(batch.items);
+            if (isRetryable(status)) {
+                retry.set(0, batch.items);
+                rejected = 0;
+            } else {
+                rejected = batch.items;
+            }
+        }
+
+        int toRetry = retry.cardinality();
+        if (toRetry > 0 && batch.attempt < maxRetries) {
+            failed.addAndGet(rejected);
+            retried.addAndGet(toRetry);
+            batch.retainOnly(retry);
+            long delay = backoffMs << Math.min(batch.attempt, 10);
+            batch.attempt++;
+            scheduler.schedule(() -> send(batch), delay, TimeUnit.MILLISECONDS);
+            return;
+        }
+        failed.addAndGet(rejected + toRetry);
+        finish(batch);
+    }
+
+    private void finish(Batch batch) {
+        batch.reset();
+        freeBatches.offer(batch);
+        slots.release();
+    }
+
+    static boolean isRetryable(int status) {
+        return status == -1 || status == 429 || status >= 500;
+    }
+
+    /**
+     * Reusable NDJSON buffer plus the start offset of every item (action line + source line).
+     */
+    private static final class Batch {
+
+        private final Buffer buffer = new Buffer(64 * 1024);
+        private int[] starts = new int[256];
+        private int items;
+        private int attempt;
+
+        void append(ObjectMapper mapper, String index, String id, Object doc) throws IOException {
+            if (items == starts.length) {
+                starts = Arrays.copyOf(starts, items * 2);
+            }
+            int start = buffer.size();
+            try (JsonGenerator gen = mapper.getFactory().createGenerator(buffer)) {
+                // NDJSON: one value per line, no separator between root values.
+                gen.setRootValueSeparator(null);
+                gen.writeStartObject();
+                gen.writeObjectFieldStart("index");
+                gen.writeStringField("_index", index);
+                if (id != null) {
+                    gen.writeStringField("_id", id);
+                }
+                gen.writeEndObject();
+                gen.writeEndObject();
+                gen.writeRaw('\n');
+                gen.writeObject(doc);
+                gen.writeRaw('\n');
+            } catch (IOException | RuntimeException e) {
+                buffer.truncate(start);
+                throw e;
+            }
+            starts[items++] = start;
+        }
+
+        /**
+         * Keep only the flagged items, compacted in order to the front of the same buffer.
+         */
+        void retainOnly(BitSet keep) {
+            byte[] bytes = buffer.array();
+            int write = 0;
+            int kept = 0;
+            for (int i = keep.nextSetBit(0); i >= 0 && i < items; i = keep.nextSetBit(i + 1)) {
+                int from = starts[i];
+                int to = i + 1 < items ? starts[i + 1] : buffer.size();
+                System.arraycopy(bytes, from, bytes, write, to - from);
+                starts[kept++] = write;
+                write += to - from;
+            }
+            buffer.truncate(write);
+            items = kept;
+        }
+
+        void reset() {
+            buffer.truncate(0);
+            items = 0;
+            attempt = 0;
+        }
+    }
+
+    /**
+     * ByteArrayOutputStream that exposes its array (no toByteArray copy) and can be rewound.
+     */
+    private static final class Buffer extends ByteArrayOutputStream {
+
+        Buffer(int size) {
+            super(size);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+
+        void truncate(int size) {
+            count = size;
+        }
+    }
+
+    /**
+     * Per-item outcome of one {@code _bulk} response, read in a single streaming pass.
+     */
+    public static final class BulkResult {
+
+        private static final JsonFactory JSON = new JsonFactory();
+
+        private final BitSet retryable;
+        private int failed;
+        private String firstError;
+
+        private BulkResult(int items) {
+            this.retryable = new BitSet(items);
+        }
+
+        public int getRetryable() {
+            return retryable.cardinality();
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        public String getFirstError() {
+            return firstError;
+        }
+
+        static BulkResult read(InputStream in, int items) throws IOException {
+            BulkResult result = new BulkResult(items);
+            try (JsonParser p = JSON.createParser(in)) {
+                if (p.nextToken() != JsonToken.START_OBJECT) {
+                    throw new IOException("Expected a JSON object, got " + p.currentToken());
+                }
+                String field;
+                while ((field = p.nextFieldName()) != null) {
+                    JsonToken t = p.nextToken();
+                    if ("errors".equals(field) && t == JsonToken.VALUE_FALSE) {
+                        // "errors" precedes "items": nothing failed, no need to walk the items.
+                        return result;
+                    }
+                    if ("items".equals(field) && t == JsonToken.START_ARRAY) {
+                        int i = 0;
+                        while (p.nextToken() == JsonToken.START_OBJECT) {
+                            result.readItem(p, i++);
+                        }
+                    } else {
+                        p.skipChildren();
+                    }
+                }
+            }
+            return result;
+        }
+
+        /**
+         * {"index":{"_index":..,"_id":..,"status":429,"error":{"type":..,"reason":..}}}
+         */
+        private void readItem(JsonParser p, int i) throws IOException {
+            while (p.nextFieldName() != null) {
+                if (p.nextToken() != JsonToken.START_OBJECT) {
+                    p.skipChildren();
+                    continue;
+                }
+                int status = 200;
+                String reason = null;
+                String field;
+                while ((field = p.nextFieldName()) != null) {
+                    p.nextToken();
+                    if ("status".equals(field)) {
+                        status = p.getValueAsInt(200);
+                    } else if ("error".equals(field) && firstError == null) {
+                        reason = readReason(p);
+                    }
+                    p.skipChildren();
+                }
+                if (status >= 200 && status < 300) {
+                    continue;
+                }
+                if (isRetryable(status)) {
+                    retryable.set(i);
+                } else {
+                    failed++;
+                    if (firstError == null) {
+                        firstError = status + " " + reason;
+                    }
+                }
+            }
+        }
+
+        private static String readReason(JsonParser p) throws IOException {
+            if (p.currentToken() != JsonToken.START_OBJECT) {
+                return p.getValueAsString();
+            }
+            String type = null;
+            String reason = null;
+            String field;
+            while ((field = p.nextFieldName()) != null) {
+                p.nextToken();
+                if ("type".equals(field)) {
+                    type = p.getValueAsString();
+                } else if ("reason".equals(field)) {
+                    reason = p.getValueAsString();
+                }
+                p.skipChildren();
+            }
+            return type + ": " + reason;
+        }
+    }
+}
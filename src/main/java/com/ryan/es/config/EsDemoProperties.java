@@ -32,7 +32,106 @@ public class EsDemoProperties {
     private int readTimeoutMs = 5000;
 
     /**
-     * Coupon index name.
+     * HTTP transport: pooled (Apache HttpClient, keep-alive connection pool) | simple (HttpURLConnection, no pool).
+     */
+    private String transport = "pooled";
+
+    /**
+     * Pooled transport: max connections in total / per ES node (route).
+     */
+    private int maxConnTotal = 64;
+
+    private int maxConnPerRoute = 32;
+
+    /**
+     * Pooled transport: max wait for a free pooled connection.
+     */
+    private int connectionRequestTimeoutMs = 1000;
+
+    /**
+     * Pooled transport: keep-alive used when ES sends no Keep-Alive header; 0 or less keeps connections until evicted.
+     */
+    private long keepAliveMs = 60_000L;
+
+    /**
+     * Pooled transport: connections idle longer than this are closed by a background evictor.
+     */
+    private long idleEvictMs = 30_000L;
+
+    /**
+     * Pooled transport: re-check a pooled connection before reuse if it was idle longer than this.
+     */
+    private int validateAfterInactivityMs = 2000;
+
+    /**
+     * Pooled transport: send Accept-Encoding and transparently decompress gzip responses.
+     */
+    private boolean gzipResponse = true;
+
+    /**
+     * Gzip request bodies (bulk/search DSL) of at least {@link #gzipRequestMinBytes} bytes.
+     */
+    private boolean gzipRequest = true;
+
+    private int gzipRequestMinBytes = 1024;
+
+    /**
+     * Async client: max in-flight ES requests; beyond that calls fail fast instead of queueing.
+     */
+    private int asyncMaxInFlight = 128;
+
+    /**
+     * Async client: default per-request deadline (connect + wait + response), cancelled when exceeded.
+     */
+    private long asyncDeadlineMs = 3000L;
+
+    /**
+     * Async client: worker threads that decode response bodies, so readers never run on an I/O reactor thread.
+     */
+    private int asyncDecodeThreads = 4;
+
+    /**
+     * Bulk pipeline: flush when a batch reaches this many docs ...
+     */
+    private int bulkActions = 1000;
+
+    /**
+     * ... or this many NDJSON bytes ...
+     */
+    private int bulkSizeBytes = 5 * 1024 * 1024;
+
+    /**
+     * ... or has been open this long (0 disables the timer).
+     */
+    private long bulkFlushIntervalMs = 1000L;
+
+    /**
+     * Bulk pipeline: batches in flight at once (including their retries); producers block beyond that.
+     */
+    private int bulkConcurrentRequests = 2;
+
+    /**
+     * Bulk pipeline: retries of rejected items (429 / 5xx), with exponential backoff starting at bulkBackoffMs.
+     */
+    private int bulkMaxRetries = 3;
+
+    private long bulkBackoffMs = 200L;
+
+    /**
+     * Bulk pipeline: deadline of one _bulk request.
+     */
+    private long bulkDeadlineMs = 30_000L;
+
+    /**
+     * Reindex job: parallel source slices (one loader thread + bulk pipeline each) and docs read per page.
+     */
+    private int reindexSlices = 4;
+
+    private int reindexPageSize = 500;
+
+    /**
+     * Coupon index alias; it points at one versioned index {@code <alias>_v<yyyyMMddHHmmss>}, swapped by reindex.
+     * Deployments created before the alias have a concrete index of this name; the first reindex migrates it.
      */
     private String couponIndex = "coupon_demo_v1";
 
@@ -81,6 +180,182 @@ public class EsDemoProperties {
         this.readTimeoutMs = readTimeoutMs;
     }
 
+    public String getTransport() {
+        return transport;
+    }
+
+    public void setTransport(String transport) {
+        this.transport = transport;
+    }
+
+    public int getMaxConnTotal() {
+        return maxConnTotal;
+    }
+
+    public void setMaxConnTotal(int maxConnTotal) {
+        this.maxConnTotal = maxConnTotal;
+    }
+
+    public int getMaxConnPerRoute() {
+        return maxConnPerRoute;
+    }
+
+    public void setMaxConnPerRoute(int maxConnPerRoute) {
+        this.maxConnPerRoute = maxConnPerRoute;
+    }
+
+    public int getConnectionRequestTimeoutMs() {
+        return connectionRequestTimeoutMs;
+    }
+
+    public void setConnectionRequestTimeoutMs(int connectionRequestTimeoutMs) {
+        this.connectionRequestTimeoutMs = connectionRequestTimeoutMs;
+    }
+
+    public long getKeepAliveMs() {
+        return keepAliveMs;
+    }
+
+    public void setKeepAliveMs(long keepAliveMs) {
+        this.keepAliveMs = keepAliveMs;
+    }
+
+    public long getIdleEvictMs() {
+        return idleEvictMs;
+    }
+
+    public void setIdleEvictMs(long idleEvictMs) {
+        this.idleEvictMs = idleEvictMs;
+    }
+
+    public int getValidateAfterInactivityMs() {
+        return validateAfterInactivityMs;
+    }
+
+    public void setValidateAfterInactivityMs(int validateAfterInactivityMs) {
+        this.validateAfterInactivityMs = validateAfterInactivityMs;
+    }
+
+    public boolean isGzipResponse() {
+        return gzipResponse;
+    }
+
+    public void setGzipResponse(boolean gzipResponse) {
+        this.gzipResponse = gzipResponse;
+    }
+
+    public boolean isGzipRequest() {
+        return gzipRequest;
+    }
+
+    public void setGzipRequest(boolean gzipRequest) {
+        this.gzipRequest = gzipRequest;
+    }
+
+    public int getGzipRequestMinBytes() {
+        return gzipRequestMinBytes;
+    }
+
+    public void setGzipRequestMinBytes(int gzipRequestMinBytes) {
+        this.gzipRequestMinBytes = gzipRequestMinBytes;
+    }
+
+    public int getAsyncMaxInFlight() {
+        return asyncMaxInFlight;
+    }
+
+    public void setAsyncMaxInFlight(int asyncMaxInFlight) {
+        this.asyncMaxInFlight = asyncMaxInFlight;
+    }
+
+    public long getAsyncDeadlineMs() {
+        return asyncDeadlineMs;
+    }
+
+    public void setAsyncDeadlineMs(long asyncDeadlineMs) {
+        this.asyncDeadlineMs = asyncDeadlineMs;
+    }
+
+    public int getAsyncDecodeThreads() {
+        return asyncDecodeThreads;
+    }
+
+    public void setAsyncDecodeThreads(int asyncDecodeThreads) {
+        this.asyncDecodeThreads = asyncDecodeThreads;
+    }
+
+    public int getBulkActions() {
+        return bulkActions;
+    }
+
+    public void setBulkActions(int bulkActions) {
+        this.bulkActions = bulkActions;
+    }
+
+    public int getBulkSizeBytes() {
+        return bulkSizeBytes;
+    }
+
+    public void setBulkSizeBytes(int bulkSizeBytes) {
+        this.bulkSizeBytes = bulkSizeBytes;
+    }
+
+    public long getBulkFlushIntervalMs() {
+        return bulkFlushIntervalMs;
+    }
+
+    public void setBulkFlushIntervalMs(long bulkFlushIntervalMs) {
+        this.bulkFlushIntervalMs = bulkFlushIntervalMs;
+    }
+
+    public int getBulkConcurrentRequests() {
+        return bulkConcurrentRequests;
+    }
+
+    public void setBulkConcurrentRequests(int bulkConcurrentRequests) {
+        this.bulkConcurrentRequests = bulkConcurrentRequests;
+    }
+
+    public int getBulkMaxRetries() {
+        return bulkMaxRetries;
+    }
+
+    public void setBulkMaxRetries(int bulkMaxRetries) {
+        this.bulkMaxRetries = bulkMaxRetries;
+    }
+
+    public long getBulkBackoffMs() {
+        return bulkBackoffMs;
+    }
+
+    public void setBulkBackoffMs(long bulkBackoffMs) {
+        this.bulkBackoffMs = bulkBackoffMs;
+    }
+
+    public long getBulkDeadlineMs() {
+        return bulkDeadlineMs;
+    }
+
+    public void setBulkDeadlineMs(long bulkDeadlineMs) {
+        this.bulkDeadlineMs = bulkDeadlineMs;
+    }
+
+    public int getReindexSlices() {
+        return reindexSlices;
+    }
+
+    public void setReindexSlices(int reindexSlices) {
+        this.reindexSlices = reindexSlices;
+    }
+
+    public int getReindexPageSize() {
+        return reindexPageSize;
+    }
+
+    public void setReindexPageSize(int reindexPageSize) {
+        this.reindexPageSize = reindexPageSize;
+    }
+
     public String getCouponIndex() {
         return couponIndex;
     }
@@ -0,0 +1,19 @@
+package com.ryan.es.coupon;
+
+import java.util.List;
+
+/**
+ * Source of truth for a full coupon reindex (DB / upstream service in a real system).
+ *
+ * <p>Sliced by {@code floorMod(couponId, slices)} and paged by couponId (keyset), so every slice can be loaded in
+ * parallel and resumed from its last acknowledged couponId.</p>
+ */
+public interface CouponDocSource {
+
+    /**
+     * Docs of {@code slice} with couponId greater than {@code afterId}, ascending by couponId, at most {@code limit}.
+     */
+    List<CouponEsDoc> page(int slice, int slices, long afterId, int limit);
+
+    long count();
+}
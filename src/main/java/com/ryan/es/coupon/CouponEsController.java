@@ -6,15 +6,18 @@ import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/es/coupon")
 public class CouponEsController {
 
     private final CouponEsService couponEsService;
+    private final CouponReindexService couponReindexService;
 
-    public CouponEsController(CouponEsService couponEsService) {
+    public CouponEsController(CouponEsService couponEsService, CouponReindexService couponReindexService) {
         this.couponEsService = couponEsService;
+        this.couponReindexService = couponReindexService;
     }
 
     @GetMapping("/ping")
@@ -32,6 +35,20 @@ public class CouponEsController {
         return ResultVO.success(couponEsService.deleteCouponIndex());
     }
 
+    /**
+     * Zero-downtime rebuild: new versioned index, parallel slice load, then atomic alias swap (runs in background).
+     * resume=true continues an unfinished job from its checkpoint.
+     */
+    @PostMapping("/reindex")
+    public ResultVO<CouponReindexStatus> reindex(@RequestParam(defaultValue = "true") boolean resume) {
+        return ResultVO.success(couponReindexService.start(resume));
+    }
+
+    @GetMapping("/reindex")
+    public ResultVO<CouponReindexStatus> reindexStatus() {
+        return ResultVO.success(couponReindexService.getStatus());
+    }
+
     @PostMapping("/index/refresh")
     public ResultVO<EsHttpResponse> refreshIndex() {
         return ResultVO.success(couponEsService.refreshCouponIndex());
@@ -42,6 +59,15 @@ public class CouponEsController {
         return ResultVO.success(couponEsService.bulkIndexSamples(refresh));
     }
 
+    /**
+     * Bulk index through the bounded pipeline (batched by count/bytes, per-item retry); returns pipeline counters.
+     */
+    @PostMapping("/doc/bulk")
+    public ResultVO<Map<String, Object>> bulk(@RequestBody List<CouponEsDoc> docs,
+                                              @RequestParam(defaultValue = "false") boolean refresh) {
+        return ResultVO.success(couponEsService.bulkIndexPipelined(docs, refresh));
+    }
+
     @PostMapping("/doc")
     public ResultVO<EsHttpResponse> upsert(@RequestBody CouponEsDoc doc,
                                           @RequestParam(defaultValue = "true") boolean refresh) {
@@ -102,5 +128,28 @@ public class CouponEsController {
     public ResultVO<CouponSearchResponse> advancedSearch(@RequestBody CouponSearchRequest req) {
         return ResultVO.success(couponEsService.advancedSearch(req));
     }
-}
 
+    /**
+     * Async search: Spring MVC treats the CompletableFuture like a DeferredResult, so the servlet thread is released
+     * while ES works. deadlineMs 0 uses demo.elasticsearch.async-deadline-ms.
+     */
+    @PostMapping("/async/search")
+    public CompletableFuture<ResultVO<CouponSearchResponse>> searchAsync(@RequestBody CouponSearchRequest req,
+                                                                         @RequestParam(defaultValue = "0") long deadlineMs) {
+        return couponEsService.searchAsync(req, deadlineMs).thenApply(ResultVO::success);
+    }
+
+    @GetMapping("/async/suggest")
+    public CompletableFuture<ResultVO<List<String>>> suggestAsync(@RequestParam String prefix,
+                                                                  @RequestParam(defaultValue = "10") int size,
+                                                                  @RequestParam(defaultValue = "0") long deadlineMs) {
+        return couponEsService.suggestAsync(prefix, size, deadlineMs).thenApply(ResultVO::success);
+    }
+
+    @PostMapping("/async/doc/bulk")
+    public CompletableFuture<ResultVO<EsHttpResponse>> bulkAsync(@RequestBody List<CouponEsDoc> docs,
+                                                                 @RequestParam(defaultValue = "false") boolean refresh,
+                                                                 @RequestParam(defaultValue = "0") long deadlineMs) {
+        return couponEsService.bulkIndexAsync(docs, refresh, deadlineMs).thenApply(ResultVO::success);
+    }
+}
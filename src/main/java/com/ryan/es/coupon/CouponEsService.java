@@ -3,36 +3,48 @@ package com.ryan.es.coupon;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.ryan.es.bulk.EsBulkProcessor;
 import com.ryan.es.config.EsDemoProperties;
+import com.ryan.es.http.EsAsyncRestClient;
 import com.ryan.es.http.EsHttpResponse;
+import com.ryan.es.http.EsParsedResponse;
 import com.ryan.es.http.EsRestClient;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.HttpMethod;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StreamUtils;
 import org.springframework.util.StringUtils;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @Slf4j
 @Service
 public class CouponEsService {
 
     private final EsRestClient esRestClient;
+    private final EsAsyncRestClient esAsyncRestClient;
     private final EsDemoProperties properties;
 
+    private static final DateTimeFormatter VERSION_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+
     private final ObjectMapper objectMapper = new ObjectMapper();
     private final CouponEsQueryBuilder queryBuilder = new CouponEsQueryBuilder();
+    private final CouponSearchResponseDecoder responseDecoder = new CouponSearchResponseDecoder(objectMapper.getFactory());
 
-    public CouponEsService(EsRestClient esRestClient, EsDemoProperties properties) {
+    public CouponEsService(EsRestClient esRestClient, EsAsyncRestClient esAsyncRestClient,
+                           EsDemoProperties properties) {
         this.esRestClient = esRestClient;
+        this.esAsyncRestClient = esAsyncRestClient;
         this.properties = properties;
     }
 
@@ -40,42 +52,45 @@ public class CouponEsService {
         return esRestClient.get("/");
     }
 
+    /**
+     * {@code couponIndex} is an alias: creates a versioned index ({@code <alias>_v<yyyyMMddHHmmss>}) carrying it.
+     *
+     * <p>recreate=true drops whatever the alias points to first (search is empty until re-imported); use
+     * {@link CouponReindexService} for a zero-downtime rebuild.</p>
+     */
     public EsHttpResponse createCouponIndex(boolean recreate) {
-        String index = properties.getCouponIndex();
-        if (!StringUtils.hasText(index)) {
+        String alias = properties.getCouponIndex();
+        if (!StringUtils.hasText(alias)) {
             return new EsHttpResponse(400, "demo.elasticsearch.coupon-index is blank");
         }
 
-        EsHttpResponse head = esRestClient.head("/" + index);
-        boolean exists = head.is2xx();
-
-        if (exists && !recreate) {
-            return new EsHttpResponse(200, "{\"message\":\"index already exists\",\"index\":\"" + index + "\"}");
+        List<String> current = resolveIndices(alias);
+        if (!current.isEmpty() && !recreate) {
+            return new EsHttpResponse(200, "{\"message\":\"index already exists\",\"alias\":\"" + alias
+                    + "\",\"indices\":\"" + String.join(",", current) + "\"}");
         }
-        if (exists) {
+        for (String index : current) {
             esRestClient.delete("/" + index);
         }
 
-        String preset = properties.getCouponIndexMapping() == null
-                ? "standard"
-                : properties.getCouponIndexMapping().toLowerCase(Locale.ROOT);
-        String mappingPath = "es/coupon/coupon-index-standard.json";
-        if ("ik".equals(preset)) {
-            mappingPath = "es/coupon/coupon-index-ik.json";
-        }
-
-        String body;
+        ObjectNode body;
         try {
-            body = loadClasspath(mappingPath);
+            body = loadIndexBody();
         } catch (IOException e) {
-            return new EsHttpResponse(500, "Failed to load mapping: " + mappingPath + " - " + e.getMessage());
+            return new EsHttpResponse(500, "Failed to load mapping: " + e.getMessage());
         }
-
-        return esRestClient.putJson("/" + index, body);
+        body.putObject("aliases").putObject(alias);
+        return esRestClient.putJson("/" + newVersionedIndexName(alias), body.toString());
     }
 
     public EsHttpResponse deleteCouponIndex() {
-        return esRestClient.delete("/" + properties.getCouponIndex());
+        List<String> current = resolveIndices(properties.getCouponIndex());
+        if (current.isEmpty()) {
+            return new EsHttpResponse(404, "{\"message\":\"no index behind alias\",\"alias\":\""
+                    + properties.getCouponIndex() + "\"}");
+        }
+        // DELETE via an alias is rejected by ES 7+, delete the concrete indices.
+        return esRestClient.delete("/" + String.join(",", current));
     }
 
     public EsHttpResponse refreshCouponIndex() {
@@ -91,26 +106,57 @@ public class CouponEsService {
             return new EsHttpResponse(400, "docs is empty");
         }
 
+        String ndjson;
+        try {
+            ndjson = buildBulkNdjson(docs);
+        } catch (Exception e) {
+            return new EsHttpResponse(500, "Failed to build bulk ndjson: " + e.getMessage());
+        }
+
+        String path = "/_bulk" + (refresh ? "?refresh=true" : "");
+        return esRestClient.postNdjson(path, ndjson);
+    }
+
+    /**
+     * Large syncs: stream docs through {@link EsBulkProcessor} (bounded batches, bounded concurrency, per-item retry)
+     * instead of one giant _bulk body. Returns the pipeline counters (added/indexed/failed/retried/...).
+     */
+    public Map<String, Object> bulkIndexPipelined(Iterable<CouponEsDoc> docs, boolean refresh) {
         String index = properties.getCouponIndex();
-        StringBuilder ndjson = new StringBuilder(1024);
+        EsBulkProcessor processor = new EsBulkProcessor(esAsyncRestClient, objectMapper, properties);
         try {
             for (CouponEsDoc doc : docs) {
                 if (doc == null || doc.getCouponId() == null) {
                     continue;
                 }
-                ObjectNode action = objectMapper.createObjectNode();
-                action.putObject("index")
-                        .put("_index", index)
-                        .put("_id", String.valueOf(doc.getCouponId()));
-                ndjson.append(objectMapper.writeValueAsString(action)).append('\n');
-                ndjson.append(objectMapper.writeValueAsString(doc)).append('\n');
+                processor.add(index, String.valueOf(doc.getCouponId()), doc);
             }
-        } catch (Exception e) {
-            return new EsHttpResponse(500, "Failed to build bulk ndjson: " + e.getMessage());
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to serialize coupon doc: " + e.getMessage(), e);
+        } finally {
+            processor.close();
         }
+        if (refresh) {
+            refreshCouponIndex();
+        }
+        return processor.getStats();
+    }
 
-        String path = "/_bulk" + (refresh ? "?refresh=true" : "");
-        return esRestClient.postNdjson(path, ndjson.toString());
+    private String buildBulkNdjson(List<CouponEsDoc> docs) throws IOException {
+        String index = properties.getCouponIndex();
+        StringBuilder ndjson = new StringBuilder(1024);
+        for (CouponEsDoc doc : docs) {
+            if (doc == null || doc.getCouponId() == null) {
+                continue;
+            }
+            ObjectNode action = objectMapper.createObjectNode();
+            action.putObject("index")
+                    .put("_index", index)
+                    .put("_id", String.valueOf(doc.getCouponId()));
+            ndjson.append(objectMapper.writeValueAsString(action)).append('\n');
+            ndjson.append(objectMapper.writeValueAsString(doc)).append('\n');
+        }
+        return ndjson.toString();
     }
 
     public EsHttpResponse upsert(CouponEsDoc doc, boolean refresh) {
@@ -180,11 +226,11 @@ public class CouponEsService {
      */
     public CouponSearchResponse advancedSearch(CouponSearchRequest req) {
         String dsl = queryBuilder.buildAdvancedSearchBody(req);
-        EsHttpResponse resp = esRestClient.postJson("/" + properties.getCouponIndex() + "/_search", dsl);
+        EsParsedResponse<CouponSearchResponse> resp = searchDecoded(dsl, req);
         if (!resp.is2xx()) {
-            throw new IllegalStateException("ES advanced search failed: " + resp.getStatusCode() + " - " + resp.getBody());
+            throw new IllegalStateException("ES advanced search failed: " + resp.getStatusCode() + " - " + resp.getErrorBody());
         }
-        return parseSearchResponse(resp.getBody(), req);
+        return resp.getValue();
     }
 
     public String buildDsl(CouponSearchRequest req) {
@@ -197,11 +243,11 @@ public class CouponEsService {
     }
 
     public CouponSearchResponse searchParsed(CouponSearchRequest req) {
-        EsHttpResponse resp = searchRaw(req);
+        EsParsedResponse<CouponSearchResponse> resp = searchDecoded(queryBuilder.buildSearchBody(req), req);
         if (!resp.is2xx()) {
-            throw new IllegalStateException("ES search failed: " + resp.getStatusCode() + " - " + resp.getBody());
+            throw new IllegalStateException("ES search failed: " + resp.getStatusCode() + " - " + resp.getErrorBody());
         }
-        return parseSearchResponse(resp.getBody(), req);
+        return resp.getValue();
     }
 
     public List<String> suggestParsed(String prefix, int size) {
@@ -210,13 +256,68 @@ public class CouponEsService {
         }
 
         String body = queryBuilder.buildSuggestBody(prefix, size);
-        EsHttpResponse resp = esRestClient.postJson("/" + properties.getCouponIndex() + "/_search", body);
+        EsParsedResponse<JsonNode> resp = esRestClient.postJson(
+                "/" + properties.getCouponIndex() + "/_search", body, objectMapper::readTree);
         if (!resp.is2xx()) {
-            throw new IllegalStateException("ES suggest failed: " + resp.getStatusCode() + " - " + resp.getBody());
+            throw new IllegalStateException("ES suggest failed: " + resp.getStatusCode() + " - " + resp.getErrorBody());
         }
 
+        return parseSuggest(resp.getValue());
+    }
+
+    /**
+     * Async {@link #searchParsed}: returns at once, no thread waits on ES (see {@link EsAsyncRestClient}).
+     *
+     * <p>deadlineMs 0 or less uses {@code async-deadline-ms}. Non-2xx (including -1 for limiter rejection or
+     * deadline) completes exceptionally, as the blocking method throws; same for {@link #suggestAsync}, while
+     * {@link #bulkIndexAsync} hands back the raw response like {@link #bulkIndex}.</p>
+     */
+    public CompletableFuture<CouponSearchResponse> searchAsync(CouponSearchRequest req, long deadlineMs) {
+        String dsl = queryBuilder.buildSearchBody(req);
+        return esAsyncRestClient.postJson("/" + properties.getCouponIndex() + "/_search", dsl, deadlineMs,
+                        in -> responseDecoder.decode(in, req))
+                .thenApply(resp -> {
+                    if (!resp.is2xx()) {
+                        throw new IllegalStateException("ES search failed: " + resp.getStatusCode() + " - " + resp.getErrorBody());
+                    }
+                    return resp.getValue();
+                });
+    }
+
+    public CompletableFuture<List<String>> suggestAsync(String prefix, int size, long deadlineMs) {
+        if (!StringUtils.hasText(prefix)) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+
+        String body = queryBuilder.buildSuggestBody(prefix, size);
+        return esAsyncRestClient.postJson("/" + properties.getCouponIndex() + "/_search", body, deadlineMs,
+                        objectMapper::readTree)
+                .thenApply(resp -> {
+                    if (!resp.is2xx()) {
+                        throw new IllegalStateException("ES suggest failed: " + resp.getStatusCode() + " - " + resp.getErrorBody());
+                    }
+                    return parseSuggest(resp.getValue());
+                });
+    }
+
+    public CompletableFuture<EsHttpResponse> bulkIndexAsync(List<CouponEsDoc> docs, boolean refresh, long deadlineMs) {
+        if (docs == null || docs.isEmpty()) {
+            return CompletableFuture.completedFuture(new EsHttpResponse(400, "docs is empty"));
+        }
+
+        String ndjson;
+        try {
+            ndjson = buildBulkNdjson(docs);
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(new EsHttpResponse(500, "Failed to build bulk ndjson: " + e.getMessage()));
+        }
+
+        String path = "/_bulk" + (refresh ? "?refresh=true" : "");
+        return esAsyncRestClient.postNdjson(path, ndjson, deadlineMs);
+    }
+
+    private List<String> parseSuggest(JsonNode root) {
         try {
-            JsonNode root = objectMapper.readTree(resp.getBody());
             JsonNode suggest = root.path("suggest").path("title_suggest");
             if (!suggest.isArray() || suggest.isEmpty()) {
                 return Collections.emptyList();
@@ -239,89 +340,44 @@ public class CouponEsService {
         }
     }
 
-    private CouponSearchResponse parseSearchResponse(String body, CouponSearchRequest req) {
-        try {
-            JsonNode root = objectMapper.readTree(body);
-            CouponSearchResponse resp = new CouponSearchResponse();
-            resp.setTookMs(root.path("took").asInt(0));
-
-            JsonNode hitsNode = root.path("hits");
-            resp.setTotal(extractTotal(hitsNode.path("total")));
-
-            JsonNode hits = hitsNode.path("hits");
-            if (hits.isArray()) {
-                for (JsonNode hit : hits) {
-                    JsonNode src = hit.path("_source");
-                    CouponSearchHit one = new CouponSearchHit();
-                    one.setCouponId(src.path("couponId").isMissingNode() ? null : src.path("couponId").asLong());
-                    one.setTitle(src.path("title").asText(null));
-                    one.setMerchantId(src.path("merchantId").isMissingNode() ? null : src.path("merchantId").asLong());
-                    one.setMerchantName(src.path("merchantName").asText(null));
-                    if (!src.path("discountAmount").isMissingNode()) {
-                        one.setDiscountAmount(src.path("discountAmount").asDouble());
-                    }
-                    if (!src.path("endTime").isMissingNode()) {
-                        one.setEndTime(src.path("endTime").asLong());
-                    }
-                    if (!src.path("weight").isMissingNode()) {
-                        one.setWeight(src.path("weight").asInt());
-                    }
-
-                    JsonNode hlTitle = hit.path("highlight").path("title");
-                    if (hlTitle.isArray() && hlTitle.size() > 0) {
-                        one.setHighlightTitle(hlTitle.get(0).asText());
-                    }
-
-                    // When sort=distance, ES returns the distance in hit.sort[0].
-                    if (req != null
-                            && "distance".equalsIgnoreCase(req.getSort())
-                            && req.getLat() != null
-                            && req.getLon() != null) {
-                        JsonNode sort = hit.path("sort");
-                        if (sort.isArray() && sort.size() > 0) {
-                            one.setDistanceKm(sort.get(0).asDouble());
-                        }
-                    }
-
-                    resp.getHits().add(one);
-                }
-            }
-
-            JsonNode aggs = root.path("aggregations");
-            fillAggBuckets(aggs.path("by_merchant").path("buckets"), resp.getAggMerchant());
-            fillAggBuckets(aggs.path("by_city").path("buckets"), resp.getAggCity());
-            fillAggBuckets(aggs.path("by_category").path("buckets"), resp.getAggCategory());
+    /**
+     * POST a search body and decode the hits/buckets straight from the connection stream (no tree, no String copy).
+     */
+    private EsParsedResponse<CouponSearchResponse> searchDecoded(String body, CouponSearchRequest req) {
+        return esRestClient.postJson("/" + properties.getCouponIndex() + "/_search", body,
+                in -> responseDecoder.decode(in, req));
+    }
 
-            return resp;
-        } catch (Exception e) {
-            throw new IllegalStateException("Failed to parse ES response: " + e.getMessage(), e);
+    /**
+     * Concrete indices behind {@code name}: the alias targets, or [name] itself for a plain (pre-alias) index.
+     */
+    List<String> resolveIndices(String name) {
+        EsParsedResponse<JsonNode> resp = esRestClient.exchange(HttpMethod.GET,
+                "/_alias/" + name, null, null, objectMapper::readTree);
+        if (resp.is2xx()) {
+            List<String> indices = new ArrayList<>();
+            resp.getValue().fieldNames().forEachRemaining(indices::add);
+            return indices;
         }
+        return esRestClient.head("/" + name).is2xx() ? Collections.singletonList(name) : Collections.emptyList();
     }
 
-    private long extractTotal(JsonNode totalNode) {
-        // ES 7+: {"value":123,"relation":"eq"}; ES 6: 123
-        if (totalNode == null || totalNode.isMissingNode()) {
-            return 0L;
-        }
-        if (totalNode.isObject()) {
-            return totalNode.path("value").asLong(0L);
-        }
-        return totalNode.asLong(0L);
+    String newVersionedIndexName(String alias) {
+        return alias + "_v" + LocalDateTime.now().format(VERSION_FORMAT);
     }
 
-    private void fillAggBuckets(JsonNode buckets, List<CouponSearchAggBucket> out) {
-        if (!buckets.isArray()) {
-            return;
-        }
-        Iterator<JsonNode> it = buckets.elements();
-        while (it.hasNext()) {
-            JsonNode b = it.next();
-            String key = b.path("key").asText(null);
-            long docCount = b.path("doc_count").asLong(0L);
-            if (key != null) {
-                out.add(new CouponSearchAggBucket(key, docCount));
-            }
+    /**
+     * Index creation body (settings + mappings) for the configured preset: standard|ik.
+     */
+    ObjectNode loadIndexBody() throws IOException {
+        String preset = properties.getCouponIndexMapping() == null
+                ? "standard"
+                : properties.getCouponIndexMapping().toLowerCase(Locale.ROOT);
+        String mappingPath = "es/coupon/coupon-index-standard.json";
+        if ("ik".equals(preset)) {
+            mappingPath = "es/coupon/coupon-index-ik.json";
         }
+        return (ObjectNode) objectMapper.readTree(loadClasspath(mappingPath));
     }
 
     private String loadClasspath(String path) throws IOException {
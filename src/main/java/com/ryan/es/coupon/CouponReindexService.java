@@ -0,0 +1,402 @@
+package com.ryan.es.coupon;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.ryan.es.bulk.EsBulkProcessor;
+import com.ryan.es.config.EsDemoProperties;
+import com.ryan.es.http.EsAsyncRestClient;
+import com.ryan.es.http.EsHttpResponse;
+import com.ryan.es.http.EsParsedResponse;
+import com.ryan.es.http.EsRestClient;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Zero-downtime full rebuild of the coupon index behind the {@code couponIndex} alias.
+ *
+ * <ol>
+ *     <li>CREATE_INDEX: new versioned index with refresh off and 0 replicas (cheap writes);</li>
+ *     <li>LOAD: {@code reindexSlices} loaders read their slice of {@link CouponDocSource} page by page and push it
+ *     through their own {@link EsBulkProcessor}; a page is checkpointed only after ES acknowledged every doc;</li>
+ *     <li>FINALIZE: restore refresh/replicas, refresh, force-merge to one segment, check the doc count;</li>
+ *     <li>SWAP_ALIAS: one atomic {@code _aliases} call moves the alias from the old index to the new one.</li>
+ * </ol>
+ *
+ * <p>Search keeps hitting the old index until the swap. The status is persisted to
+ * {@code <alias>_reindex_state} after every step/page, so {@link #start(boolean) start(true)} after a crash continues
+ * from the last phase and per-slice checkpoint (re-sent docs are idempotent: same _id). Old indices are kept for
+ * rollback. Writes made to the old index during a rebuild are not carried over.</p>
+ *
+ * <p>One-time migration: a deployment from before the alias has a concrete index with the alias's name, which cannot
+ * coexist with the alias. The first swap clones it to {@code <alias>_pre_alias_v<yyyyMMddHHmmss>} (write-blocking it
+ * first, as {@code _clone} requires) and removes it in the same atomic call that adds the alias, so the copy is what is
+ * kept for rollback.</p>
+ */
+@Slf4j
+@Service
+public class CouponReindexService {
+
+    private final EsRestClient esRestClient;
+    private final EsAsyncRestClient esAsyncRestClient;
+    private final CouponEsService couponEsService;
+    private final CouponDocSource source;
+    private final EsDemoProperties properties;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ExecutorService jobExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "coupon-reindex");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private volatile CouponReindexStatus status;
+    private volatile boolean running;
+    private long runStartedAt;
+    private long runStartDocs;
+
+    public CouponReindexService(EsRestClient esRestClient, EsAsyncRestClient esAsyncRestClient,
+                                CouponEsService couponEsService, CouponDocSource source,
+                                EsDemoProperties properties) {
+        this.esRestClient = esRestClient;
+        this.esAsyncRestClient = esAsyncRestClient;
+        this.couponEsService = couponEsService;
+        this.source = source;
+        this.properties = properties;
+    }
+
+    /**
+     * Start a rebuild in the background. resume=true continues an unfinished job found in the state index.
+     */
+    public synchronized CouponReindexStatus start(boolean resume) {
+        if (running) {
+            return getStatus();
+        }
+        CouponReindexStatus state = resume ? loadState() : null;
+        if (state == null || state.getPhase() == CouponReindexStatus.Phase.DONE) {
+            state = newJob();
+        } else {
+            log.info("Resuming coupon reindex {} at {} into {}", state.getJobId(), state.getPhase(), state.getTargetIndex());
+        }
+        state.setError(null);
+        status = state;
+        running = true;
+        runStartedAt = System.currentTimeMillis();
+        runStartDocs = state.getIndexedDocs();
+        CouponReindexStatus job = state;
+        jobExecutor.submit(() -> run(job));
+        return getStatus();
+    }
+
+    /**
+     * Snapshot of the current (or last persisted) job, with run throughput.
+     */
+    public CouponReindexStatus getStatus() {
+        CouponReindexStatus state = status != null ? status : loadState();
+        if (state == null) {
+            return null;
+        }
+        synchronized (state) {
+            CouponReindexStatus copy = objectMapper.convertValue(state, CouponReindexStatus.class);
+            copy.setRunning(running && state == status);
+            long elapsed = System.currentTimeMillis() - runStartedAt;
+            if (copy.isRunning() && elapsed > 0) {
+                copy.setDocsPerSec((state.getIndexedDocs() - runStartDocs) * 1000.0 / elapsed);
+            }
+            return copy;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Loader threads die with the JVM; the persisted checkpoint is what a resume continues from.
+        jobExecutor.shutdownNow();
+    }
+
+    private CouponReindexStatus newJob() {
+        String alias = properties.getCouponIndex();
+        CouponReindexStatus state = new CouponReindexStatus();
+        state.setJobId(UUID.randomUUID().toString());
+        state.setAlias(alias);
+        state.setTargetIndex(couponEsService.newVersionedIndexName(alias));
+        state.setPhase(CouponReindexStatus.Phase.CREATE_INDEX);
+        state.setStartedAt(System.currentTimeMillis());
+        state.setTotalDocs(source.count());
+        int slices = Math.max(1, properties.getReindexSlices());
+        for (int i = 0; i < slices; i++) {
+            state.getSlices().add(new CouponReindexStatus.SliceProgress(i, Long.MIN_VALUE, 0L, false));
+        }
+        return state;
+    }
+
+    private void run(CouponReindexStatus state) {
+        try {
+            if (state.getPhase() == CouponReindexStatus.Phase.CREATE_INDEX) {
+                createTarget(state);
+                advance(state, CouponReindexStatus.Phase.LOAD);
+            }
+            if (state.getPhase() == CouponReindexStatus.Phase.LOAD) {
+                load(state);
+                advance(state, CouponReindexStatus.Phase.FINALIZE);
+            }
+            if (state.getPhase() == CouponReindexStatus.Phase.FINALIZE) {
+                finalizeTarget(state);
+                advance(state, CouponReindexStatus.Phase.SWAP_ALIAS);
+            }
+            if (state.getPhase() == CouponReindexStatus.Phase.SWAP_ALIAS) {
+                swapAlias(state);
+                advance(state, CouponReindexStatus.Phase.DONE);
+            }
+            log.info("Coupon reindex {} done: {} docs into {}", state.getJobId(), state.getIndexedDocs(),
+                    state.getTargetIndex());
+        } catch (Exception e) {
+            log.warn("Coupon reindex {} failed at {}: {}", state.getJobId(), state.getPhase(), e.getMessage(), e);
+            synchronized (state) {
+                state.setError(e.getMessage());
+            }
+            saveState(state);
+        } finally {
+            running = false;
+        }
+    }
+
+    private void createTarget(CouponReindexStatus state) throws IOException {
+        String target = state.getTargetIndex();
+        // Taken from the mapping, not from the index: also set when the PUT below already happened before a crash.
+        ObjectNode body = couponEsService.loadIndexBody();
+        ObjectNode settings = body.has("settings") ? (ObjectNode) body.get("settings") : body.putObject("settings");
+        synchronized (state) {
+            state.setRestoreRefreshInterval(settings.path("refresh_interval").asText("1s"));
+            state.setRestoreReplicas(settings.path("number_of_replicas").asInt(1));
+        }
+        if (esRestClient.head("/" + target).is2xx()) {
+            // Crashed after the PUT but before the checkpoint.
+            return;
+        }
+        settings.put("refresh_interval", "-1");
+        settings.put("number_of_replicas", 0);
+        expect2xx("create " + target, esRestClient.putJson("/" + target, body.toString()));
+    }
+
+    private void load(CouponReindexStatus state) throws Exception {
+        List<CouponReindexStatus.SliceProgress> pending = new ArrayList<>();
+        for (CouponReindexStatus.SliceProgress slice : state.getSlices()) {
+            if (!slice.isDone()) {
+                pending.add(slice);
+            }
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        AtomicInteger threadNo = new AtomicInteger();
+        ExecutorService loaders = Executors.newFixedThreadPool(pending.size(), r -> {
+            Thread t = new Thread(r, "coupon-reindex-slice-" + threadNo.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (CouponReindexStatus.SliceProgress slice : pending) {
+                futures.add(loaders.submit(() -> {
+                    loadSlice(state, slice);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                // First failing slice fails the phase; the other slices keep their own checkpoints.
+                future.get();
+            }
+        } finally {
+            loaders.shutdownNow();
+        }
+    }
+
+    private void loadSlice(CouponReindexStatus state, CouponReindexStatus.SliceProgress slice) throws Exception {
+        int slices = state.getSlices().size();
+        int pageSize = Math.max(1, properties.getReindexPageSize());
+        long pageTimeoutMs = properties.getBulkDeadlineMs() * (properties.getBulkMaxRetries() + 1L) * 2;
+        try (EsBulkProcessor processor = new EsBulkProcessor(esAsyncRestClient, objectMapper, properties)) {
+            while (true) {
+                List<CouponEsDoc> page = source.page(slice.getSlice(), slices, slice.getLastId(), pageSize);
+                if (page.isEmpty()) {
+                    synchronized (state) {
+                        slice.setDone(true);
+                    }
+                    saveState(state);
+                    return;
+                }
+                long failedBefore = processor.getFailed();
+                long retriedBefore = processor.getRetried();
+                for (CouponEsDoc doc : page) {
+                    processor.add(state.getTargetIndex(), String.valueOf(doc.getCouponId()), doc);
+                }
+                if (!processor.flushAndWait(pageTimeoutMs, TimeUnit.MILLISECONDS)) {
+                    throw new IllegalStateException("slice " + slice.getSlice() + ": bulk did not finish in "
+                            + pageTimeoutMs + "ms after couponId " + slice.getLastId());
+                }
+                long failed = processor.getFailed() - failedBefore;
+                if (failed > 0) {
+                    // Checkpoint stays before this page, a resume re-sends it.
+                    throw new IllegalStateException("slice " + slice.getSlice() + ": " + failed
+                            + " doc(s) rejected after couponId " + slice.getLastId());
+                }
+                synchronized (state) {
+                    slice.setLastId(page.get(page.size() - 1).getCouponId());
+                    slice.setDocs(slice.getDocs() + page.size());
+                    state.setIndexedDocs(state.getIndexedDocs() + page.size());
+                    state.setRetriedDocs(state.getRetriedDocs() + processor.getRetried() - retriedBefore);
+                }
+                saveState(state);
+            }
+        }
+    }
+
+    private void finalizeTarget(CouponReindexStatus state) {
+        String target = state.getTargetIndex();
+        ObjectNode settings = objectMapper.createObjectNode();
+        settings.putObject("index")
+                .put("refresh_interval", state.getRestoreRefreshInterval())
+                .put("number_of_replicas", state.getRestoreReplicas());
+        expect2xx("restore settings of " + target, esRestClient.putJson("/" + target + "/_settings", settings.toString()));
+        expect2xx("refresh " + target, esRestClient.postJson("/" + target + "/_refresh", "{}"));
+
+        // May outlive the read timeout on big indices; the merge keeps running in ES, so only warn.
+        EsHttpResponse merge = esRestClient.postJson("/" + target + "/_forcemerge?max_num_segments=1", "{}");
+        if (!merge.is2xx()) {
+            log.warn("Force-merge of {} not confirmed: {} - {}", target, merge.getStatusCode(), merge.getBody());
+        }
+
+        EsParsedResponse<JsonNode> count = esRestClient.exchange(HttpMethod.GET, "/" + target + "/_count",
+                null, null, objectMapper::readTree);
+        if (!count.is2xx()) {
+            throw new IllegalStateException("count " + target + " failed: " + count.getStatusCode() + " - " + count.getErrorBody());
+        }
+        long docs = count.getValue().path("count").asLong();
+        if (docs < state.getIndexedDocs()) {
+            throw new IllegalStateException(target + " has " + docs + " docs, expected " + state.getIndexedDocs());
+        }
+    }
+
+    private void swapAlias(CouponReindexStatus state) {
+        String alias = state.getAlias();
+        String target = state.getTargetIndex();
+        List<String> previous = new ArrayList<>(couponEsService.resolveIndices(alias));
+        previous.remove(target);
+
+        List<String> kept = new ArrayList<>();
+        ObjectNode body = objectMapper.createObjectNode();
+        ArrayNode actions = body.putArray("actions");
+        for (String index : previous) {
+            if (index.equals(alias)) {
+                // Pre-alias layout: a concrete index holds the name, it has to go in the same atomic call.
+                // remove_index deletes it, so a copy is made first and kept instead.
+                kept.add(copyPreAliasIndex(state));
+                actions.addObject().putObject("remove_index").put("index", index);
+            } else {
+                kept.add(index);
+                actions.addObject().putObject("remove").put("index", index).put("alias", alias);
+            }
+        }
+        actions.addObject().putObject("add").put("index", target).put("alias", alias);
+        expect2xx("swap alias " + alias, esRestClient.postJson("/_aliases", body.toString()));
+        synchronized (state) {
+            if (!kept.isEmpty()) {
+                state.setPreviousIndices(kept);
+            }
+        }
+        log.info("Alias {} now points at {} (was {})", alias, target, kept);
+    }
+
+    /**
+     * Clone the pre-alias index to a versioned name. The name is checkpointed before the clone, so a resume after a
+     * crash reuses an existing copy. The source stays write-blocked until the swap removes it; writes during a
+     * rebuild are not carried over anyway.
+     */
+    private String copyPreAliasIndex(CouponReindexStatus state) {
+        String alias = state.getAlias();
+        String copy;
+        synchronized (state) {
+            if (state.getPreAliasCopy() == null) {
+                state.setPreAliasCopy(couponEsService.newVersionedIndexName(alias + "_pre_alias"));
+            }
+            copy = state.getPreAliasCopy();
+        }
+        saveState(state);
+        if (esRestClient.head("/" + copy).is2xx()) {
+            return copy;
+        }
+        expect2xx("write-block " + alias, esRestClient.putJson("/" + alias + "/_settings",
+                "{\"index.blocks.write\":true}"));
+        expect2xx("clone " + alias + " to " + copy, esRestClient.postJson("/" + alias + "/_clone/" + copy,
+                "{\"settings\":{\"index.blocks.write\":false}}"));
+        log.info("Pre-alias index {} cloned to {} for rollback", alias, copy);
+        return copy;
+    }
+
+    private void advance(CouponReindexStatus state, CouponReindexStatus.Phase next) {
+        synchronized (state) {
+            state.setPhase(next);
+        }
+        saveState(state);
+    }
+
+    /**
+     * Snapshot under the lock, write outside it so slices do not queue behind each other's HTTP round trip.
+     * updatedAt doubles as the external version of the state doc and only grows, so a writer holding an older
+     * snapshot gets a 409 instead of overwriting a newer checkpoint.
+     */
+    private void saveState(CouponReindexStatus state) {
+        String json;
+        long version;
+        synchronized (state) {
+            version = Math.max(state.getUpdatedAt() + 1, System.currentTimeMillis());
+            state.setUpdatedAt(version);
+            try {
+                json = objectMapper.writeValueAsString(state);
+            } catch (IOException e) {
+                log.warn("Failed to persist reindex state: {}", e.getMessage());
+                return;
+            }
+        }
+        EsHttpResponse resp = esRestClient.putJson(stateDocPath() + "?version=" + version + "&version_type=external", json);
+        if (resp.getStatusCode() == 409) {
+            log.debug("Reindex state {} superseded by a newer snapshot", version);
+        } else if (!resp.is2xx()) {
+            log.warn("Failed to persist reindex state: {} - {}", resp.getStatusCode(), resp.getBody());
+        }
+    }
+
+    private CouponReindexStatus loadState() {
+        EsParsedResponse<JsonNode> resp = esRestClient.exchange(HttpMethod.GET, stateDocPath(), null, null,
+                objectMapper::readTree);
+        if (!resp.is2xx() || !resp.getValue().path("found").asBoolean()) {
+            return null;
+        }
+        CouponReindexStatus state = objectMapper.convertValue(resp.getValue().path("_source"), CouponReindexStatus.class);
+        state.setRunning(false);
+        return state;
+    }
+
+    private String stateDocPath() {
+        return "/" + properties.getCouponIndex() + "_reindex_state/_doc/current";
+    }
+
+    private static void expect2xx(String what, EsHttpResponse resp) {
+        if (!resp.is2xx()) {
+            throw new IllegalStateException(what + " failed: " + resp.getStatusCode() + " - " + resp.getBody());
+        }
+    }
+}
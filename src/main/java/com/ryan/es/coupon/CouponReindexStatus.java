@@ -0,0 +1,92 @@
+package com.ryan.es.coupon;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Progress of a coupon reindex job; also the checkpoint persisted in ES so a crashed job can resume.
+ */
+@Data
+public class CouponReindexStatus {
+
+    public enum Phase {
+        CREATE_INDEX, LOAD, FINALIZE, SWAP_ALIAS, DONE
+    }
+
+    private String jobId;
+
+    private String alias;
+
+    /**
+     * Versioned index being built, e.g. coupon_demo_v20260101120000.
+     */
+    private String targetIndex;
+
+    private Phase phase;
+
+    /**
+     * Whether a loader is working on this job in this JVM (false after a crash: resume it).
+     */
+    private boolean running;
+
+    /**
+     * Last failure; the phase is kept so a resume continues from there.
+     */
+    private String error;
+
+    private long totalDocs;
+
+    private long indexedDocs;
+
+    private long retriedDocs;
+
+    /**
+     * Throughput of the current run (since start/resume).
+     */
+    private double docsPerSec;
+
+    private long startedAt;
+
+    private long updatedAt;
+
+    /**
+     * Settings relaxed for the load (refresh off, no replicas) and restored in FINALIZE.
+     */
+    private String restoreRefreshInterval;
+
+    private int restoreReplicas;
+
+    /**
+     * Indices the alias pointed at before the swap (kept for rollback).
+     */
+    private List<String> previousIndices = new ArrayList<>();
+
+    /**
+     * Versioned copy of the pre-alias index (a concrete index named like the alias), cloned in SWAP_ALIAS before that
+     * index is removed; also listed in previousIndices.
+     */
+    private String preAliasCopy;
+
+    private List<SliceProgress> slices = new ArrayList<>();
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class SliceProgress {
+
+        private int slice;
+
+        /**
+         * Checkpoint: every doc of this slice up to couponId lastId is acknowledged by ES.
+         */
+        private long lastId;
+
+        private long docs;
+
+        private boolean done;
+    }
+}
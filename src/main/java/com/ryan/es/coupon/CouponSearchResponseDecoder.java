@@ -0,0 +1,268 @@
+package com.ryan.es.coupon;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Streaming decoder for the coupon {@code _search} response.
+ *
+ * <p>One forward pass over a {@link JsonParser}: hits and aggregation buckets are bound straight into
+ * {@link CouponSearchResponse}, everything else ({@code _shards}, {@code _id}, {@code max_score}, unknown
+ * {@code _source} fields, ...) is skipped without materializing values. No {@code JsonNode} tree is built.</p>
+ */
+public class CouponSearchResponseDecoder {
+
+    private final JsonFactory jsonFactory;
+
+    public CouponSearchResponseDecoder() {
+        this(new JsonFactory());
+    }
+
+    public CouponSearchResponseDecoder(JsonFactory jsonFactory) {
+        this.jsonFactory = jsonFactory;
+    }
+
+    /**
+     * Decode from the HTTP body stream. The stream is not closed (it belongs to the HTTP client).
+     */
+    public CouponSearchResponse decode(InputStream in, CouponSearchRequest req) throws IOException {
+        try (JsonParser p = jsonFactory.createParser(in)) {
+            p.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+            return decode(p, req);
+        }
+    }
+
+    public CouponSearchResponse decode(String body, CouponSearchRequest req) throws IOException {
+        try (JsonParser p = jsonFactory.createParser(body)) {
+            return decode(p, req);
+        }
+    }
+
+    private CouponSearchResponse decode(JsonParser p, CouponSearchRequest req) throws IOException {
+        CouponSearchResponse resp = new CouponSearchResponse();
+        if (p.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Expected a JSON object, got " + p.currentToken());
+        }
+        // When sort=distance, ES returns the distance in hit.sort[0].
+        boolean distanceSort = req != null
+                && "distance".equalsIgnoreCase(req.getSort())
+                && req.getLat() != null
+                && req.getLon() != null;
+
+        String field;
+        while ((field = p.nextFieldName()) != null) {
+            JsonToken t = p.nextToken();
+            switch (field) {
+                case "took":
+                    resp.setTookMs(p.getValueAsInt(0));
+                    break;
+                case "hits":
+                    readHits(p, t, resp, distanceSort);
+                    break;
+                case "aggregations":
+                    readAggregations(p, t, resp);
+                    break;
+                default:
+                    p.skipChildren();
+            }
+        }
+        return resp;
+    }
+
+    private void readHits(JsonParser p, JsonToken t, CouponSearchResponse resp, boolean distanceSort)
+            throws IOException {
+        if (t != JsonToken.START_OBJECT) {
+            p.skipChildren();
+            return;
+        }
+        String field;
+        while ((field = p.nextFieldName()) != null) {
+            JsonToken v = p.nextToken();
+            if ("total".equals(field)) {
+                resp.setTotal(readTotal(p, v));
+            } else if ("hits".equals(field) && v == JsonToken.START_ARRAY) {
+                while (p.nextToken() == JsonToken.START_OBJECT) {
+                    resp.getHits().add(readHit(p, distanceSort));
+                }
+            } else {
+                p.skipChildren();
+            }
+        }
+    }
+
+    private long readTotal(JsonParser p, JsonToken t) throws IOException {
+        // ES 7+: {"value":123,"relation":"eq"}; ES 6: 123
+        if (t != JsonToken.START_OBJECT) {
+            return p.getValueAsLong(0L);
+        }
+        long total = 0L;
+        String field;
+        while ((field = p.nextFieldName()) != null) {
+            p.nextToken();
+            if ("value".equals(field)) {
+                total = p.getValueAsLong(0L);
+            } else {
+                p.skipChildren();
+            }
+        }
+        return total;
+    }
+
+    private CouponSearchHit readHit(JsonParser p, boolean distanceSort) throws IOException {
+        CouponSearchHit hit = new CouponSearchHit();
+        String field;
+        while ((field = p.nextFieldName()) != null) {
+            JsonToken t = p.nextToken();
+            switch (field) {
+                case "_source":
+                    readSource(p, t, hit);
+                    break;
+                case "highlight":
+                    readHighlight(p, t, hit);
+                    break;
+                case "sort":
+                    if (distanceSort && t == JsonToken.START_ARRAY && p.nextToken() != JsonToken.END_ARRAY) {
+                        hit.setDistanceKm(p.getValueAsDouble());
+                        p.skipChildren();
+                        skipRestOfArray(p);
+                    } else {
+                        p.skipChildren();
+                    }
+                    break;
+                default:
+                    p.skipChildren();
+            }
+        }
+        return hit;
+    }
+
+    private void readSource(JsonParser p, JsonToken t, CouponSearchHit hit) throws IOException {
+        if (t != JsonToken.START_OBJECT) {
+            p.skipChildren();
+            return;
+        }
+        String field;
+        while ((field = p.nextFieldName()) != null) {
+            p.nextToken();
+            switch (field) {
+                case "couponId":
+                    hit.setCouponId(p.getValueAsLong());
+                    break;
+                case "title":
+                    hit.setTitle(p.getValueAsString(null));
+                    break;
+                case "merchantId":
+                    hit.setMerchantId(p.getValueAsLong());
+                    break;
+                case "merchantName":
+                    hit.setMerchantName(p.getValueAsString(null));
+                    break;
+                case "discountAmount":
+                    hit.setDiscountAmount(p.getValueAsDouble());
+                    break;
+                case "endTime":
+                    hit.setEndTime(p.getValueAsLong());
+                    break;
+                case "weight":
+                    hit.setWeight(p.getValueAsInt());
+                    break;
+                default:
+                    // tags, location, nested rules, ...: not part of the hit DTO.
+                    break;
+            }
+            // No-op on scalars; steps over objects/arrays (unknown fields or unexpected shapes).
+            p.skipChildren();
+        }
+    }
+
+    private void readHighlight(JsonParser p, JsonToken t, CouponSearchHit hit) throws IOException {
+        if (t != JsonToken.START_OBJECT) {
+            p.skipChildren();
+            return;
+        }
+        String field;
+        while ((field = p.nextFieldName()) != null) {
+            JsonToken v = p.nextToken();
+            if ("title".equals(field) && v == JsonToken.START_ARRAY) {
+                if (p.nextToken() != JsonToken.END_ARRAY) {
+                    hit.setHighlightTitle(p.getValueAsString());
+                    p.skipChildren();
+                    skipRestOfArray(p);
+                }
+            } else {
+                p.skipChildren();
+            }
+        }
+    }
+
+    private void readAggregations(JsonParser p, JsonToken t, CouponSearchResponse resp) throws IOException {
+        if (t != JsonToken.START_OBJECT) {
+            p.skipChildren();
+            return;
+        }
+        String field;
+        while ((field = p.nextFieldName()) != null) {
+            JsonToken v = p.nextToken();
+            switch (field) {
+                case "by_merchant":
+                    readBuckets(p, v, resp.getAggMerchant());
+                    break;
+                case "by_city":
+                    readBuckets(p, v, resp.getAggCity());
+                    break;
+                case "by_category":
+                    readBuckets(p, v, resp.getAggCategory());
+                    break;
+                default:
+                    p.skipChildren();
+            }
+        }
+    }
+
+    private void readBuckets(JsonParser p, JsonToken t, List<CouponSearchAggBucket> out) throws IOException {
+        if (t != JsonToken.START_OBJECT) {
+            p.skipChildren();
+            return;
+        }
+        String field;
+        while ((field = p.nextFieldName()) != null) {
+            JsonToken v = p.nextToken();
+            if (!"buckets".equals(field) || v != JsonToken.START_ARRAY) {
+                p.skipChildren();
+                continue;
+            }
+            while (p.nextToken() == JsonToken.START_OBJECT) {
+                String key = null;
+                long docCount = 0L;
+                String bf;
+                while ((bf = p.nextFieldName()) != null) {
+                    p.nextToken();
+                    if ("key".equals(bf)) {
+                        key = p.getValueAsString(null);
+                    } else if ("doc_count".equals(bf)) {
+                        docCount = p.getValueAsLong(0L);
+                    }
+                    p.skipChildren();
+                }
+                if (key != null) {
+                    out.add(new CouponSearchAggBucket(key, docCount));
+                }
+            }
+        }
+    }
+
+    /**
+     * Parser sits on an element inside an array whose first element was consumed; move to the array's END_ARRAY.
+     */
+    private static void skipRestOfArray(JsonParser p) throws IOException {
+        JsonToken t;
+        while ((t = p.nextToken()) != JsonToken.END_ARRAY && t != null) {
+            p.skipChildren();
+        }
+    }
+}
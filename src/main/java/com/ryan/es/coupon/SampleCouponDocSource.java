@@ -0,0 +1,40 @@
+package com.ryan.es.coupon;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Demo {@link CouponDocSource} over {@link CouponEsSampleData}.
+ */
+@Component
+public class SampleCouponDocSource implements CouponDocSource {
+
+    @Override
+    public List<CouponEsDoc> page(int slice, int slices, long afterId, int limit) {
+        List<CouponEsDoc> page = new ArrayList<>();
+        for (CouponEsDoc doc : sorted()) {
+            if (page.size() >= limit) {
+                break;
+            }
+            Long id = doc.getCouponId();
+            if (id != null && id > afterId && Math.floorMod(id, (long) slices) == slice) {
+                page.add(doc);
+            }
+        }
+        return page;
+    }
+
+    @Override
+    public long count() {
+        return CouponEsSampleData.samples().stream().filter(doc -> doc.getCouponId() != null).count();
+    }
+
+    private List<CouponEsDoc> sorted() {
+        List<CouponEsDoc> docs = new ArrayList<>(CouponEsSampleData.samples());
+        docs.sort(Comparator.comparing(CouponEsDoc::getCouponId, Comparator.nullsFirst(Comparator.naturalOrder())));
+        return docs;
+    }
+}
@@ -0,0 +1,303 @@
+package com.ryan.es.http;
+
+import com.ryan.es.config.EsDemoProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Non-blocking counterpart of {@link EsRestClient} on Apache HttpAsyncClient (NIO, a few I/O reactor threads).
+ *
+ * <p>Calls return immediately with a {@link CompletableFuture}; no caller thread waits on ES. Two guards:</p>
+ * <ul>
+ *     <li>in-flight limiter: at most {@code asyncMaxInFlight} requests; extra calls fail fast (statusCode = -1)
+ *     rather than piling up behind a slow cluster;</li>
+ *     <li>deadline: each request is cancelled once its deadline passes (statusCode = -1, "deadline exceeded").</li>
+ * </ul>
+ *
+ * <p>The response arrives buffered on an I/O reactor thread; decoding it (gzip + {@link EsResponseReader}) is handed
+ * to {@code asyncDecodeThreads} workers so a slow reader never stalls the reactor. At most {@code asyncMaxInFlight}
+ * bodies wait for a worker, since a permit is only released once the future completes.</p>
+ *
+ * <p>Successful futures complete on a decode worker, failures on the reactor or deadline thread: keep continuations
+ * short and never block in them. Cancelling a future aborts its exchange.</p>
+ */
+@Slf4j
+@Component
+public class EsAsyncRestClient {
+
+    private static final EsResponseReader<String> STRING_READER =
+            in -> StreamUtils.copyToString(in, StandardCharsets.UTF_8);
+
+    private final EsDemoProperties properties;
+    private final CloseableHttpAsyncClient httpClient;
+    private final Semaphore inFlight;
+    private final ScheduledExecutorService deadlineTimer;
+    private final ExecutorService decodePool;
+
+    public EsAsyncRestClient(EsDemoProperties properties) {
+        this.properties = properties;
+        this.inFlight = new Semaphore(Math.max(1, properties.getAsyncMaxInFlight()));
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(properties.getConnectTimeoutMs())
+                .setSocketTimeout(properties.getReadTimeoutMs())
+                .setConnectionRequestTimeout(properties.getConnectionRequestTimeoutMs())
+                .build();
+        this.httpClient = HttpAsyncClients.custom()
+                .setMaxConnTotal(properties.getMaxConnTotal())
+                .setMaxConnPerRoute(properties.getMaxConnPerRoute())
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy(EsRestClient.keepAliveStrategy(properties))
+                .build();
+        this.deadlineTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "es-async-deadline");
+            t.setDaemon(true);
+            return t;
+        });
+        AtomicInteger decodeThreadNo = new AtomicInteger();
+        this.decodePool = Executors.newFixedThreadPool(Math.max(1, properties.getAsyncDecodeThreads()), r -> {
+            Thread t = new Thread(r, "es-async-decode-" + decodeThreadNo.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        httpClient.start();
+    }
+
+    public CompletableFuture<EsHttpResponse> exchange(HttpMethod method, String path, String body,
+                                                      MediaType contentType, long deadlineMs) {
+        CompletableFuture<EsParsedResponse<String>> parsed = exchange(method, path, body, contentType, deadlineMs,
+                STRING_READER);
+        CompletableFuture<EsHttpResponse> result = parsed.thenApply(resp -> new EsHttpResponse(resp.getStatusCode(),
+                resp.is2xx() ? resp.getValue() : resp.getErrorBody()));
+        // thenApply doesn't cancel its source: forward the caller's cancel so the exchange is aborted.
+        result.whenComplete((r, e) -> {
+            if (result.isCancelled()) {
+                parsed.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Async {@link EsRestClient#exchange(HttpMethod, String, String, MediaType, EsResponseReader)}: never completes
+     * exceptionally for transport problems, those come back as statusCode = -1 like the blocking client.
+     *
+     * @param deadlineMs 0 or less uses {@code asyncDeadlineMs}
+     */
+    public <T> CompletableFuture<EsParsedResponse<T>> exchange(HttpMethod method, String path, String body,
+                                                               MediaType contentType, long deadlineMs,
+                                                               EsResponseReader<T> reader) {
+        byte[] payload = body == null ? null : body.getBytes(StandardCharsets.UTF_8);
+        return exchange(method, path, payload, payload == null ? 0 : payload.length, contentType, deadlineMs, reader);
+    }
+
+    /**
+     * Byte variant for callers that serialize straight into a (reused) buffer: only {@code body[0, length)} is sent,
+     * and the array must stay untouched until the future completes.
+     */
+    public <T> CompletableFuture<EsParsedResponse<T>> exchange(HttpMethod method, String path, byte[] body, int length,
+                                                               MediaType contentType, long deadlineMs,
+                                                               EsResponseReader<T> reader) {
+        String url = EsRestClient.buildUrl(properties, path);
+        CompletableFuture<EsParsedResponse<T>> result = new CompletableFuture<>();
+        if (!inFlight.tryAcquire()) {
+            result.complete(new EsParsedResponse<>(-1, null,
+                    "ES async limiter: " + properties.getAsyncMaxInFlight() + " requests already in flight"));
+            return result;
+        }
+        result.whenComplete((r, e) -> inFlight.release());
+
+        Future<HttpResponse> call;
+        try {
+            call = httpClient.execute(buildRequest(method, url, body, length, contentType).build(),
+                    new FutureCallback<HttpResponse>() {
+                        @Override
+                        public void completed(HttpResponse response) {
+                            if (result.isDone()) {
+                                // Deadline or cancel won the race: skip the decode.
+                                return;
+                            }
+                            try {
+                                decodePool.execute(() -> decode(result, method, url, response, reader));
+                            } catch (RejectedExecutionException e) {
+                                fail(result, method, url, "client closed");
+                            }
+                        }
+
+                        @Override
+                        public void failed(Exception e) {
+                            fail(result, method, url, e.getMessage());
+                        }
+
+                        @Override
+                        public void cancelled() {
+                            fail(result, method, url, "cancelled");
+                        }
+                    });
+        } catch (IOException | RuntimeException e) {
+            fail(result, method, url, e.getMessage());
+            return result;
+        }
+        // fail() completes normally, so only a caller's cancel() completes the future exceptionally.
+        result.whenComplete((r, e) -> {
+            if (e != null) {
+                call.cancel(true);
+            }
+        });
+
+        long deadline = deadlineMs > 0 ? deadlineMs : properties.getAsyncDeadlineMs();
+        if (deadline > 0) {
+            Future<?> timer = deadlineTimer.schedule(() -> {
+                if (fail(result, method, url, "deadline exceeded (" + deadline + "ms)")) {
+                    // Abort the exchange so its connection goes back to (or is dropped from) the pool.
+                    call.cancel(true);
+                }
+            }, deadline, TimeUnit.MILLISECONDS);
+            result.whenComplete((r, e) -> timer.cancel(false));
+        }
+        return result;
+    }
+
+    public CompletableFuture<EsHttpResponse> get(String path) {
+        return exchange(HttpMethod.GET, path, null, null, 0L);
+    }
+
+    public <T> CompletableFuture<EsParsedResponse<T>> postJson(String path, String json, long deadlineMs,
+                                                               EsResponseReader<T> reader) {
+        return exchange(HttpMethod.POST, path, json, MediaType.APPLICATION_JSON, deadlineMs, reader);
+    }
+
+    public CompletableFuture<EsHttpResponse> postNdjson(String path, String ndjson, long deadlineMs) {
+        return exchange(HttpMethod.POST, path, ndjson, MediaType.parseMediaType("application/x-ndjson"), deadlineMs);
+    }
+
+    public <T> CompletableFuture<EsParsedResponse<T>> postNdjson(String path, byte[] ndjson, int length, long deadlineMs,
+                                                                 EsResponseReader<T> reader) {
+        return exchange(HttpMethod.POST, path, ndjson, length, MediaType.parseMediaType("application/x-ndjson"),
+                deadlineMs, reader);
+    }
+
+    /**
+     * Free permits of the in-flight limiter (for monitoring).
+     */
+    public int getAvailablePermits() {
+        return inFlight.availablePermits();
+    }
+
+    @PreDestroy
+    public void close() {
+        deadlineTimer.shutdownNow();
+        decodePool.shutdownNow();
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            log.warn("Failed to close ES async http client: {}", e.getMessage());
+        }
+    }
+
+    private RequestBuilder buildRequest(HttpMethod method, String url, byte[] payload, int length,
+                                        MediaType contentType) throws IOException {
+        RequestBuilder builder = RequestBuilder.create(method.name()).setUri(url)
+                .addHeader(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE);
+        if (properties.isGzipResponse()) {
+            // Unlike the blocking client, HttpAsyncClient doesn't negotiate compression itself; see readResponse.
+            builder.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        }
+        if (StringUtils.hasText(properties.getUsername())) {
+            String password = properties.getPassword() == null ? "" : properties.getPassword();
+            String token = Base64.getEncoder().encodeToString(
+                    (properties.getUsername() + ":" + password).getBytes(StandardCharsets.UTF_8));
+            builder.addHeader(HttpHeaders.AUTHORIZATION, "Basic " + token);
+        }
+        if (payload == null) {
+            return builder;
+        }
+
+        MediaType type = contentType == null ? MediaType.APPLICATION_JSON : contentType;
+        ContentType entityType = ContentType.create(type.getType() + "/" + type.getSubtype(), StandardCharsets.UTF_8);
+        if (properties.isGzipRequest() && length >= properties.getGzipRequestMinBytes()) {
+            ByteArrayOutputStream buf = new ByteArrayOutputStream(length / 4 + 64);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(buf)) {
+                gzip.write(payload, 0, length);
+            }
+            ByteArrayEntity entity = new ByteArrayEntity(buf.toByteArray(), entityType);
+            entity.setContentEncoding("gzip");
+            return builder.setEntity(entity);
+        }
+        return builder.setEntity(new ByteArrayEntity(payload, 0, length, entityType));
+    }
+
+    private static <T> void decode(CompletableFuture<EsParsedResponse<T>> result, HttpMethod method, String url,
+                                   HttpResponse response, EsResponseReader<T> reader) {
+        try {
+            result.complete(readResponse(response, reader));
+        } catch (IOException | RuntimeException e) {
+            fail(result, method, url, e.getMessage());
+        }
+    }
+
+    private static <T> EsParsedResponse<T> readResponse(HttpResponse response, EsResponseReader<T> reader)
+            throws IOException {
+        int status = response.getStatusLine().getStatusCode();
+        HttpEntity entity = response.getEntity();
+        if (entity == null) {
+            return status >= 200 && status < 300
+                    ? new EsParsedResponse<>(status, reader.read(StreamUtils.emptyInput()), null)
+                    : new EsParsedResponse<>(status, null, null);
+        }
+        try (InputStream raw = entity.getContent()) {
+            Header encoding = entity.getContentEncoding();
+            InputStream in = encoding != null && "gzip".equalsIgnoreCase(encoding.getValue())
+                    ? new GZIPInputStream(raw)
+                    : raw;
+            if (status >= 200 && status < 300) {
+                return new EsParsedResponse<>(status, reader.read(in), null);
+            }
+            return new EsParsedResponse<>(status, null, STRING_READER.read(in));
+        }
+    }
+
+    /**
+     * Complete with statusCode = -1; false if the call had already finished (e.g. the deadline raced the response).
+     */
+    private static <T> boolean fail(CompletableFuture<EsParsedResponse<T>> result, HttpMethod method, String url,
+                                    String message) {
+        if (!result.complete(new EsParsedResponse<>(-1, null, message))) {
+            return false;
+        }
+        log.warn("ES async request failed: {} {} - {}", method, url, message);
+        return true;
+    }
+}
@@ -0,0 +1,33 @@
+package com.ryan.es.http;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Like {@link EsHttpResponse}, but a 2xx body has already been decoded by an {@link EsResponseReader}.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EsParsedResponse<T> {
+
+    /**
+     * HTTP status code; -1 means transport/runtime error (no HTTP response).
+     */
+    private int statusCode;
+
+    /**
+     * Decoded body; only set on 2xx.
+     */
+    private T value;
+
+    /**
+     * Raw error body on non-2xx, or exception message when statusCode = -1.
+     */
+    private String errorBody;
+
+    public boolean is2xx() {
+        return statusCode >= 200 && statusCode < 300;
+    }
+}
@@ -0,0 +1,15 @@
+package com.ryan.es.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads a (successful) ES response body straight from the connection stream, e.g. {@code objectMapper::readTree}.
+ *
+ * <p>The stream is owned by the client: don't close it, and don't keep it after {@link #read} returns.</p>
+ */
+@FunctionalInterface
+public interface EsResponseReader<T> {
+
+    T read(InputStream body) throws IOException;
+}
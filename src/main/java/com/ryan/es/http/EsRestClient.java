@@ -2,72 +2,152 @@ package com.ryan.es.http;
 
 import com.ryan.es.config.EsDemoProperties;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
+import org.springframework.http.StreamingHttpOutputMessage;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
 import org.springframework.util.StringUtils;
-import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResponseErrorHandler;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * A tiny ES HTTP client for demo purpose (keeps dependencies stable across ES versions).
+ *
+ * <p>Transport is chosen by {@code demo.elasticsearch.transport}: {@code pooled} (default) runs on Apache HttpClient
+ * with a keep-alive connection pool, idle eviction and gzip; {@code simple} is the plain HttpURLConnection factory.</p>
  */
 @Slf4j
 @Component
 public class EsRestClient {
 
+    private static final EsResponseReader<String> STRING_READER =
+            in -> StreamUtils.copyToString(in, StandardCharsets.UTF_8);
+
+    /**
+     * Non-2xx is not an exception here: ES returns useful JSON on 4xx/5xx, callers look at the status code.
+     */
+    private static final ResponseErrorHandler KEEP_ERROR_BODY = new ResponseErrorHandler() {
+        @Override
+        public boolean hasError(ClientHttpResponse response) {
+            return false;
+        }
+
+        @Override
+        public void handleError(ClientHttpResponse response) {
+        }
+    };
+
     private final EsDemoProperties properties;
     private final RestTemplate restTemplate;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
 
     public EsRestClient(EsDemoProperties properties) {
         this.properties = properties;
 
-        SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
-        factory.setConnectTimeout(properties.getConnectTimeoutMs());
-        factory.setReadTimeout(properties.getReadTimeoutMs());
+        ClientHttpRequestFactory factory;
+        if ("simple".equalsIgnoreCase(properties.getTransport())) {
+            SimpleClientHttpRequestFactory simple = new SimpleClientHttpRequestFactory();
+            simple.setConnectTimeout(properties.getConnectTimeoutMs());
+            simple.setReadTimeout(properties.getReadTimeoutMs());
+            // Stream request bodies instead of buffering them again inside the factory.
+            simple.setBufferRequestBody(false);
+            this.connectionManager = null;
+            this.httpClient = null;
+            factory = simple;
+        } else {
+            this.connectionManager = new PoolingHttpClientConnectionManager();
+            connectionManager.setMaxTotal(properties.getMaxConnTotal());
+            connectionManager.setDefaultMaxPerRoute(properties.getMaxConnPerRoute());
+            connectionManager.setValidateAfterInactivity(properties.getValidateAfterInactivityMs());
+            this.httpClient = buildPooledClient(properties, connectionManager);
+            HttpComponentsClientHttpRequestFactory pooled = new HttpComponentsClientHttpRequestFactory(httpClient);
+            pooled.setBufferRequestBody(false);
+            factory = pooled;
+        }
         this.restTemplate = new RestTemplate(factory);
+        restTemplate.setErrorHandler(KEEP_ERROR_BODY);
     }
 
-    public EsHttpResponse exchange(HttpMethod method, String path, String body, MediaType contentType) {
-        String url = buildUrl(path);
-
-        HttpHeaders headers = new HttpHeaders();
-        headers.setAccept(Collections.singletonList(MediaType.APPLICATION_JSON));
-        if (contentType != null) {
-            headers.setContentType(withUtf8(contentType));
-        }
-        if (StringUtils.hasText(properties.getUsername())) {
-            headers.setBasicAuth(
-                    properties.getUsername(),
-                    properties.getPassword() == null ? "" : properties.getPassword(),
-                    StandardCharsets.UTF_8
-            );
+    private static CloseableHttpClient buildPooledClient(EsDemoProperties properties,
+                                                         PoolingHttpClientConnectionManager connectionManager) {
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(properties.getConnectTimeoutMs())
+                .setSocketTimeout(properties.getReadTimeoutMs())
+                .setConnectionRequestTimeout(properties.getConnectionRequestTimeoutMs())
+                .build();
+        HttpClientBuilder builder = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy(keepAliveStrategy(properties))
+                .evictExpiredConnections()
+                .evictIdleConnections(properties.getIdleEvictMs(), TimeUnit.MILLISECONDS);
+        if (!properties.isGzipResponse()) {
+            // HttpClient sends Accept-Encoding and inflates gzip/deflate bodies unless told otherwise.
+            builder.disableContentCompression();
         }
+        return builder.build();
+    }
 
-        // RestTemplate's default StringHttpMessageConverter uses ISO-8859-1; that breaks Chinese text.
-        // Use raw bytes to make request/response encoding explicit and stable across environments.
-        byte[] payload = body == null ? null : body.getBytes(StandardCharsets.UTF_8);
-        HttpEntity<byte[]> entity = payload == null ? new HttpEntity<>(headers) : new HttpEntity<>(payload, headers);
+    /**
+     * Honor the server's Keep-Alive header; otherwise fall back to the configured TTL (shared with the async client).
+     */
+    static ConnectionKeepAliveStrategy keepAliveStrategy(EsDemoProperties properties) {
+        return (response, context) -> {
+            long serverHint = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            if (serverHint > 0) {
+                return serverHint;
+            }
+            return properties.getKeepAliveMs() > 0 ? properties.getKeepAliveMs() : -1L;
+        };
+    }
+
+    public EsHttpResponse exchange(HttpMethod method, String path, String body, MediaType contentType) {
+        EsParsedResponse<String> resp = exchange(method, path, body, contentType, STRING_READER);
+        return new EsHttpResponse(resp.getStatusCode(), resp.is2xx() ? resp.getValue() : resp.getErrorBody());
+    }
+
+    /**
+     * Same as {@link #exchange(HttpMethod, String, String, MediaType)}, but a 2xx body is handed to {@code reader}
+     * as a stream (no intermediate byte[]/String); error bodies are still read as text.
+     */
+    public <T> EsParsedResponse<T> exchange(HttpMethod method, String path, String body, MediaType contentType,
+                                            EsResponseReader<T> reader) {
+        String url = buildUrl(path);
         try {
-            ResponseEntity<byte[]> resp = restTemplate.exchange(url, method, entity, byte[].class);
-            String respBody = resp.getBody() == null ? null : new String(resp.getBody(), StandardCharsets.UTF_8);
-            return new EsHttpResponse(resp.getStatusCodeValue(), respBody);
-        } catch (HttpStatusCodeException e) {
-            // ES returns useful JSON on 4xx/5xx; keep it.
-            byte[] bytes = e.getResponseBodyAsByteArray();
-            String errBody = bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
-            return new EsHttpResponse(e.getRawStatusCode(), errBody);
+            EsParsedResponse<T> resp = restTemplate.execute(url, method,
+                    requestCallback(body, contentType),
+                    response -> readResponse(response, reader));
+            return resp == null ? new EsParsedResponse<>(-1, null, "empty response") : resp;
         } catch (RestClientException e) {
             log.warn("ES request failed: {} {} - {}", method, url, e.getMessage());
-            return new EsHttpResponse(-1, e.getMessage());
+            return new EsParsedResponse<>(-1, null, e.getMessage());
         }
     }
 
@@ -91,10 +171,96 @@ public class EsRestClient {
         return exchange(HttpMethod.POST, path, json, MediaType.APPLICATION_JSON);
     }
 
+    public <T> EsParsedResponse<T> postJson(String path, String json, EsResponseReader<T> reader) {
+        return exchange(HttpMethod.POST, path, json, MediaType.APPLICATION_JSON, reader);
+    }
+
     public EsHttpResponse postNdjson(String path, String ndjson) {
         return exchange(HttpMethod.POST, path, ndjson, MediaType.parseMediaType("application/x-ndjson"));
     }
 
+    /**
+     * Connection pool counters (pooled transport only).
+     */
+    public Map<String, Object> getTransportStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("transport", connectionManager == null ? "simple" : "pooled");
+        if (connectionManager != null) {
+            PoolStats total = connectionManager.getTotalStats();
+            stats.put("leased", total.getLeased());
+            stats.put("available", total.getAvailable());
+            stats.put("pending", total.getPending());
+            stats.put("max", total.getMax());
+        }
+        return stats;
+    }
+
+    @PreDestroy
+    public void close() {
+        if (httpClient == null) {
+            return;
+        }
+        try {
+            // Also shuts down the pool and the idle-connection evictor thread.
+            httpClient.close();
+        } catch (IOException e) {
+            log.warn("Failed to close ES http client: {}", e.getMessage());
+        }
+    }
+
+    private RequestCallback requestCallback(String body, MediaType contentType) {
+        return request -> {
+            HttpHeaders headers = request.getHeaders();
+            headers.setAccept(Collections.singletonList(MediaType.APPLICATION_JSON));
+            if (contentType != null) {
+                headers.setContentType(withUtf8(contentType));
+            }
+            if (StringUtils.hasText(properties.getUsername())) {
+                headers.setBasicAuth(
+                        properties.getUsername(),
+                        properties.getPassword() == null ? "" : properties.getPassword(),
+                        StandardCharsets.UTF_8
+                );
+            }
+            if (body == null) {
+                return;
+            }
+
+            // RestTemplate's default StringHttpMessageConverter uses ISO-8859-1; that breaks Chinese text.
+            // Write raw UTF-8 bytes to make request encoding explicit and stable across environments.
+            byte[] payload = body.getBytes(StandardCharsets.UTF_8);
+            StreamingHttpOutputMessage.Body writer;
+            if (properties.isGzipRequest() && payload.length >= properties.getGzipRequestMinBytes()) {
+                headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+                writer = out -> {
+                    GZIPOutputStream gzip = new GZIPOutputStream(out, 8192);
+                    gzip.write(payload);
+                    // finish() rather than close(): the request body stream belongs to the factory.
+                    gzip.finish();
+                };
+            } else {
+                headers.setContentLength(payload.length);
+                writer = out -> out.write(payload);
+            }
+            if (request instanceof StreamingHttpOutputMessage) {
+                // Non-buffering HttpComponents requests reject getBody(); the body is written when the request runs.
+                ((StreamingHttpOutputMessage) request).setBody(writer);
+            } else {
+                writer.writeTo(request.getBody());
+            }
+        };
+    }
+
+    private static <T> EsParsedResponse<T> readResponse(ClientHttpResponse response, EsResponseReader<T> reader)
+            throws IOException {
+        int status = response.getRawStatusCode();
+        InputStream in = response.getBody();
+        if (status >= 200 && status < 300) {
+            return new EsParsedResponse<>(status, reader.read(in), null);
+        }
+        return new EsParsedResponse<>(status, null, STRING_READER.read(in));
+    }
+
     private static MediaType withUtf8(MediaType contentType) {
         if (contentType == null || contentType.getCharset() != null) {
             return contentType;
@@ -103,6 +269,10 @@ public class EsRestClient {
     }
 
     private String buildUrl(String path) {
+        return buildUrl(properties, path);
+    }
+
+    static String buildUrl(EsDemoProperties properties, String path) {
         String base = StringUtils.hasText(properties.getBaseUrl())
                 ? properties.getBaseUrl().trim()
                 : "http://127.0.0.1:9200";
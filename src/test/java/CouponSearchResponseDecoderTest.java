@@ -0,0 +1,84 @@
+import com.ryan.es.coupon.CouponSearchHit;
+import com.ryan.es.coupon.CouponSearchRequest;
+import com.ryan.es.coupon.CouponSearchResponse;
+import com.ryan.es.coupon.CouponSearchResponseDecoder;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CouponSearchResponseDecoderTest {
+
+    private static final String ES7_BODY = "{"
+            + "\"took\":12,\"timed_out\":false,"
+            + "\"_shards\":{\"total\":1,\"successful\":1,\"skipped\":0,\"failed\":0},"
+            + "\"hits\":{\"total\":{\"value\":57,\"relation\":\"eq\"},\"max_score\":null,\"hits\":["
+            + "{\"_index\":\"coupon_demo_v1\",\"_id\":\"1\",\"_score\":null,"
+            + "\"_source\":{\"couponId\":1,\"title\":\"星巴克 买一送一\",\"merchantId\":2001,\"merchantName\":\"星巴克\","
+            + "\"discountAmount\":15.5,\"endTime\":1767196800000,\"weight\":80,"
+            + "\"tags\":[\"咖啡\",\"饮品\"],\"location\":{\"lat\":31.2,\"lon\":121.4},\"rules\":[{\"a\":[1,{\"b\":2}]}]},"
+            + "\"highlight\":{\"merchantName\":[\"<em>星</em>巴克\"],\"title\":[\"<em>星巴克</em> 买一送一\",\"ignored\"]},"
+            + "\"sort\":[1.234,{\"x\":1},[2]]},"
+            + "{\"_id\":\"2\",\"_source\":{\"couponId\":2,\"title\":null,\"unknown\":{\"deep\":[[{}]]}},\"sort\":[]}"
+            + "]},"
+            + "\"aggregations\":{"
+            + "\"by_merchant\":{\"doc_count_error_upper_bound\":0,\"sum_other_doc_count\":0,"
+            + "\"buckets\":[{\"key\":2001,\"doc_count\":40},{\"key\":2002,\"doc_count\":17,\"sub\":{\"value\":1}}]},"
+            + "\"by_city\":{\"buckets\":[{\"key\":\"310000\",\"doc_count\":57}]},"
+            + "\"by_other\":{\"buckets\":[{\"key\":\"x\",\"doc_count\":1}]},"
+            + "\"by_category\":{\"buckets\":[]}"
+            + "}}";
+
+    @Test
+    public void decode_shouldBindHitsAndBucketsAndSkipUnknownFields() throws Exception {
+        CouponSearchRequest req = new CouponSearchRequest();
+        req.setSort("distance");
+        req.setLat(31.2304);
+        req.setLon(121.4737);
+
+        CouponSearchResponse resp = new CouponSearchResponseDecoder().decode(
+                new ByteArrayInputStream(ES7_BODY.getBytes(StandardCharsets.UTF_8)), req);
+
+        assertEquals(12, resp.getTookMs());
+        assertEquals(57L, resp.getTotal());
+        assertEquals(2, resp.getHits().size());
+
+        CouponSearchHit first = resp.getHits().get(0);
+        assertEquals(Long.valueOf(1L), first.getCouponId());
+        assertEquals("星巴克 买一送一", first.getTitle());
+        assertEquals(Long.valueOf(2001L), first.getMerchantId());
+        assertEquals("星巴克", first.getMerchantName());
+        assertEquals(15.5, first.getDiscountAmount(), 1e-9);
+        assertEquals(Long.valueOf(1767196800000L), first.getEndTime());
+        assertEquals(Integer.valueOf(80), first.getWeight());
+        assertEquals("<em>星巴克</em> 买一送一", first.getHighlightTitle());
+        assertEquals(1.234, first.getDistanceKm(), 1e-9);
+
+        CouponSearchHit second = resp.getHits().get(1);
+        assertEquals(Long.valueOf(2L), second.getCouponId());
+        assertNull(second.getTitle());
+        assertNull(second.getHighlightTitle());
+        assertNull(second.getDistanceKm());
+
+        assertEquals(2, resp.getAggMerchant().size());
+        assertEquals("2001", resp.getAggMerchant().get(0).getKey());
+        assertEquals(17L, resp.getAggMerchant().get(1).getDocCount());
+        assertEquals(1, resp.getAggCity().size());
+        assertEquals("310000", resp.getAggCity().get(0).getKey());
+        assertTrue(resp.getAggCategory().isEmpty());
+    }
+
+    @Test
+    public void decode_shouldReadEs6TotalAndIgnoreSortWithoutGeo() throws Exception {
+        String body = "{\"took\":3,\"hits\":{\"total\":9,\"hits\":[{\"_source\":{\"couponId\":7},\"sort\":[42.0]}]}}";
+
+        CouponSearchResponse resp = new CouponSearchResponseDecoder().decode(body, new CouponSearchRequest());
+
+        assertEquals(9L, resp.getTotal());
+        assertEquals(Long.valueOf(7L), resp.getHits().get(0).getCouponId());
+        assertNull(resp.getHits().get(0).getDistanceKm());
+        assertTrue(resp.getAggMerchant().isEmpty());
+    }
+}
@@ -0,0 +1,121 @@
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ryan.es.bulk.EsBulkProcessor;
+import com.ryan.es.config.EsDemoProperties;
+import com.ryan.es.http.EsParsedResponse;
+import com.ryan.es.http.EsResponseReader;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EsBulkProcessorTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void shouldFlushByCountAndRetryOnlyRejectedItems() throws Exception {
+        EsDemoProperties properties = properties(3, 2);
+        List<List<String>> sentIds = Collections.synchronizedList(new ArrayList<>());
+        EsBulkProcessor.Transport transport = (body, length, reader) -> {
+            List<String> ids = actionIds(body, length);
+            sentIds.add(ids);
+            String json = sentIds.size() == 1
+                    ? "{\"took\":3,\"errors\":true,\"items\":["
+                    + "{\"index\":{\"_id\":\"1\",\"status\":201}},"
+                    + "{\"index\":{\"_id\":\"2\",\"status\":429,\"error\":{\"type\":\"es_rejected_execution_exception\",\"reason\":\"queue full\"}}},"
+                    + "{\"index\":{\"_id\":\"3\",\"status\":400,\"error\":{\"type\":\"mapper_parsing_exception\",\"reason\":\"bad\"}}}"
+                    + "]}"
+                    : "{\"took\":1,\"errors\":false,\"items\":[]}";
+            return ok(reader, json);
+        };
+
+        EsBulkProcessor processor = new EsBulkProcessor(transport, objectMapper, properties);
+        for (int i = 1; i <= 5; i++) {
+            processor.add("coupon_demo_v1", String.valueOf(i), Collections.singletonMap("title", "券" + i));
+        }
+        processor.close();
+
+        assertEquals(3, sentIds.size());
+        assertEquals(Arrays.asList("1", "2", "3"), sentIds.get(0));
+        // Only the 429 item is resent; the 400 one is a permanent failure.
+        assertEquals(Collections.singletonList("2"), sentIds.get(1));
+        assertEquals(Arrays.asList("4", "5"), sentIds.get(2));
+        assertEquals(4L, processor.getStats().get("indexed"));
+        assertEquals(1L, processor.getStats().get("failed"));
+        assertEquals(1L, processor.getStats().get("retried"));
+        assertEquals(0, processor.getStats().get("inFlight"));
+    }
+
+    @Test
+    public void shouldGiveUpAfterMaxRetriesOnWholeRequestFailure() throws Exception {
+        EsDemoProperties properties = properties(10, 1);
+        List<List<String>> sentIds = Collections.synchronizedList(new ArrayList<>());
+        EsBulkProcessor.Transport transport = (body, length, reader) -> {
+            sentIds.add(actionIds(body, length));
+            return CompletableFuture.completedFuture(new EsParsedResponse<>(503, null, "unavailable"));
+        };
+
+        EsBulkProcessor processor = new EsBulkProcessor(transport, objectMapper, properties);
+        processor.add("coupon_demo_v1", "1", Collections.singletonMap("title", "a"));
+        processor.add("coupon_demo_v1", "2", Collections.singletonMap("title", "b"));
+        processor.close();
+
+        assertEquals(2, sentIds.size());
+        assertEquals(sentIds.get(0), sentIds.get(1));
+        assertEquals(0L, processor.getStats().get("indexed"));
+        assertEquals(2L, processor.getStats().get("failed"));
+        assertEquals(2L, processor.getStats().get("retried"));
+    }
+
+    private EsDemoProperties properties(int bulkActions, int maxRetries) {
+        EsDemoProperties properties = new EsDemoProperties();
+        properties.setBulkActions(bulkActions);
+        properties.setBulkConcurrentRequests(1);
+        properties.setBulkFlushIntervalMs(0L);
+        properties.setBulkMaxRetries(maxRetries);
+        properties.setBulkBackoffMs(1L);
+        return properties;
+    }
+
+    private static CompletableFuture<EsParsedResponse<EsBulkProcessor.BulkResult>> ok(
+            EsResponseReader<EsBulkProcessor.BulkResult> reader, String json) {
+        try {
+            return CompletableFuture.completedFuture(new EsParsedResponse<>(200,
+                    reader.read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8))), null));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * _id of every action line in an NDJSON body (action and source lines alternate).
+     */
+    private List<String> actionIds(byte[] body, int length) {
+        try {
+            return actionIds(new String(body, 0, length, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private List<String> actionIds(String ndjson) throws IOException {
+        String[] lines = ndjson.split("\n");
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < lines.length; i += 2) {
+            JsonNode action = objectMapper.readTree(lines[i]);
+            ids.add(action.path("index").path("_id").asText());
+            assertTrue(objectMapper.readTree(lines[i + 1]).has("title"));
+        }
+        return ids;
+    }
+}
@@ -14,6 +14,7 @@ import org.springframework.test.web.servlet.MockMvc;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 /**
@@ -56,5 +57,22 @@ public class AeonOrderCalcControllerTest {
         AeonOrderCalcResponse resp = objectMapper.readValue(respJson, AeonOrderCalcResponse.class);
         assertEquals("56.00", resp.getAmountSummary().getFinalPayAmount().toPlainString());
     }
+
+    @Test
+    void out_of_range_quantity_should_be_bad_request() throws Exception {
+        String sampleJson = mockMvc.perform(get("/aeon-demo/order/sample"))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        AeonOrderCalcRequest req = objectMapper.readValue(sampleJson, AeonOrderCalcRequest.class);
+        req.getCartItems().get(0).setQuantity(Integer.MAX_VALUE);
+
+        mockMvc.perform(post("/aeon-demo/order/calc")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(req)))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("商品行 C1 数量 2147483647 超出上限 9999"));
+    }
 }
 
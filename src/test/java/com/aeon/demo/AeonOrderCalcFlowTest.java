@@ -1,8 +1,16 @@
 package com.aeon.demo;
 
+import com.aeon.demo.domain.Promotion;
+import com.aeon.demo.domain.PromotionLevel;
+import com.aeon.demo.domain.PromotionType;
+import com.aeon.demo.dto.AeonOrderCalcBatchItem;
+import com.aeon.demo.dto.AeonOrderCalcBatchRequest;
+import com.aeon.demo.dto.AeonOrderCalcBatchResponse;
 import com.aeon.demo.dto.AeonOrderCalcRequest;
 import com.aeon.demo.dto.AeonOrderCalcResponse;
 import com.aeon.demo.dto.CartItemRequest;
+import com.aeon.demo.dto.StageTimings;
+import com.aeon.demo.engine.promo.PromoCalcResult;
 import com.aeon.demo.scenario.AeonScenarioFactory;
 import com.aeon.demo.service.AeonOrderCalcService;
 import org.junit.jupiter.api.Test;
@@ -11,7 +19,11 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.ActiveProfiles;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -94,5 +106,121 @@ public class AeonOrderCalcFlowTest {
                 .sorted()
                 .collect(Collectors.joining(","));
         assertEquals("S302-1,S303-1", checkedShipping);
+
+        // 各阶段耗时：阶段互不重叠且都落在整次计算之内
+        StageTimings timings = resp.getStageTimings();
+        assertNotNull(timings);
+        assertTrue(timings.getPromoMicros() >= 0);
+        assertTrue(timings.getGoodsCouponMicros() >= 0);
+        assertTrue(timings.getFreightMicros() >= 0);
+        assertTrue(timings.getShippingCouponMicros() >= 0);
+        assertTrue(timings.getTotalMicros() >= timings.getPromoMicros() + timings.getGoodsCouponMicros()
+                + timings.getFreightMicros() + timings.getShippingCouponMicros());
+    }
+
+    @Test
+    void should_calc_batch_in_input_order_with_per_item_errors() {
+        List<AeonOrderCalcRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            AeonOrderCalcRequest req = new AeonOrderCalcRequest();
+            req.setScenario(AeonScenarioFactory.SCENARIO_S1);
+            req.setCartItems(Collections.singletonList(cartItem("C1", "SKU-BEEF", 1 + i, "120.00")));
+            requests.add(req);
+        }
+        // 数量超出入参上限：只有这一条失败
+        AeonOrderCalcRequest broken = new AeonOrderCalcRequest();
+        broken.setCartItems(Collections.singletonList(cartItem("C1", "SKU-BEEF", Integer.MAX_VALUE, "99999999999999.00")));
+        requests.set(5, broken);
+
+        AeonOrderCalcBatchRequest batch = new AeonOrderCalcBatchRequest();
+        batch.setRequests(requests);
+        AeonOrderCalcBatchResponse resp = orderCalcService.calcBatch(batch);
+
+        assertEquals(20, resp.getTotal());
+        assertEquals(19, resp.getSucceeded());
+        assertEquals(1, resp.getFailed());
+        for (int i = 0; i < requests.size(); i++) {
+            AeonOrderCalcBatchItem item = resp.getResults().get(i);
+            assertEquals(i, item.getIndex());
+            if (i == 5) {
+                assertFalse(item.isSuccess());
+                assertEquals("IllegalArgumentException: 商品行 C1 数量 2147483647 超出上限 9999", item.getErrorMessage());
+                continue;
+            }
+            assertTrue(item.isSuccess());
+            BigDecimal expected = orderCalcService.calc(requests.get(i)).getAmountSummary().getFinalPayAmount();
+            assertEquals(0, expected.compareTo(item.getResponse().getAmountSummary().getFinalPayAmount()));
+        }
+    }
+
+    @Test
+    void out_of_range_amounts_should_be_rejected_at_request_boundary() {
+        AeonOrderCalcRequest price = new AeonOrderCalcRequest();
+        price.setCartItems(Collections.singletonList(cartItem("C1", "SKU-BEEF", 1, "1000000.01")));
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> orderCalcService.calc(price));
+        assertEquals("商品行 C1 单价 1000000.01 超出范围 [0, 1000000.00]", e.getMessage());
+
+        AeonOrderCalcRequest negative = new AeonOrderCalcRequest();
+        negative.setCartItems(Collections.singletonList(cartItem("C1", "SKU-BEEF", 1, "-0.01")));
+        assertThrows(IllegalArgumentException.class, () -> orderCalcService.calc(negative));
+
+        // 单价、数量都在上限内，但整单超出 1000 万元
+        AeonOrderCalcRequest total = new AeonOrderCalcRequest();
+        total.setCartItems(Arrays.asList(cartItem("C1", "SKU-BEEF", 9_999, "1001.00"),
+                cartItem("C2", "SKU-MILK", 1, "1.00")));
+        e = assertThrows(IllegalArgumentException.class, () -> orderCalcService.calc(total));
+        assertEquals("整单原价 10009000.00 超出上限 10000000.00", e.getMessage());
+
+        // 上限本身可以算
+        AeonOrderCalcRequest max = new AeonOrderCalcRequest();
+        max.setCartItems(Collections.singletonList(cartItem("C1", "SKU-BEEF", 10, "1000000.00")));
+        assertEquals(0, orderCalcService.calc(max).getPromo().getOriginalGoodsAmount().compareTo(new BigDecimal("10000000.00")));
+
+        AeonOrderCalcRequest fee = new AeonOrderCalcRequest();
+        fee.setCartItems(Collections.singletonList(cartItem("C1", "SKU-BEEF", 1, "120.00")));
+        fee.setLogisticFee(new BigDecimal("99999999999999999999"));
+        assertThrows(IllegalArgumentException.class, () -> orderCalcService.calc(fee));
+    }
+
+    @Test
+    void published_promotions_should_apply_to_next_calc_of_resolved_scenario() {
+        List<Promotion> builtIn = new AeonScenarioFactory().getScenario(AeonScenarioFactory.SCENARIO_S1).getPromotions();
+        AeonOrderCalcRequest req = new AeonOrderCalcRequest();
+        req.setScenario(AeonScenarioFactory.SCENARIO_S1);
+        req.setCartItems(Arrays.asList(cartItem("C1", "SKU-APPLE", 2, "30.00"),
+                cartItem("C2", "SKU-BEEF", 1, "120.00"),
+                cartItem("C3", "SKU-MILK", 3, "20.00")));
+        assertEquals(0, orderCalcService.calc(req).getPromo().getPromoGoodsAmount().compareTo(new BigDecimal("200.00")));
+
+        try {
+            // 小写/带空格的场景ID与请求一样解析到 S1
+            long v1 = orderCalcService.publishPromotions(" s1 ", Collections.emptyList());
+            assertEquals(0, orderCalcService.calc(req).getPromo().getPromoGoodsAmount().compareTo(new BigDecimal("240.00")));
+
+            // 未知场景与请求一样回落到 S1，发布到同一份索引
+            Promotion beefOnly = Promotion.builder(9001L, "牛肉直降20元/件", PromotionLevel.SINGLE, PromotionType.DIRECT_REDUCTION)
+                    .skuScope(new HashSet<>(Collections.singletonList("SKU-BEEF")))
+                    .reduceAmount(new BigDecimal("20.00"))
+                    .build();
+            long v2 = orderCalcService.publishPromotions("S-UNKNOWN", Collections.singletonList(beefOnly));
+            assertTrue(v2 > v1);
+            PromoCalcResult promo = orderCalcService.calc(req).getPromo();
+            assertEquals(0, promo.getPromoGoodsAmount().compareTo(new BigDecimal("220.00")));
+            assertEquals(9001L, promo.getItems().stream()
+                    .filter(i -> "SKU-BEEF".equals(i.getSkuId()))
+                    .findFirst().get().getAppliedPromoId());
+        } finally {
+            orderCalcService.publishPromotions(AeonScenarioFactory.SCENARIO_S1, builtIn);
+        }
+        assertEquals(0, orderCalcService.calc(req).getPromo().getPromoGoodsAmount().compareTo(new BigDecimal("200.00")));
+    }
+
+    private static CartItemRequest cartItem(String cartItemId, String skuId, int quantity, String salePrice) {
+        CartItemRequest r = new CartItemRequest();
+        r.setCartItemId(cartItemId);
+        r.setSkuId(skuId);
+        r.setQuantity(quantity);
+        r.setSalePrice(new BigDecimal(salePrice));
+        return r;
     }
 }
@@ -0,0 +1,94 @@
+package com.aeon.demo;
+
+import com.aeon.demo.domain.Coupon;
+import com.aeon.demo.domain.CouponCategory;
+import com.aeon.demo.domain.CouponConditionType;
+import com.aeon.demo.engine.coupon.CouponCalcEngine;
+import com.aeon.demo.engine.coupon.CouponCalcResult;
+import com.aeon.demo.engine.coupon.CouponOptimizeMode;
+import com.aeon.demo.engine.coupon.CouponView;
+import com.aeon.demo.engine.coupon.MutuallyExclusivePolicy;
+import com.aeon.demo.engine.promo.PromoItemResult;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 商品券精确求解：贪心先拿大面额导致后面溢出时，精确模式能找到总抵扣更大的组合，且不违反任何约束。
+ *
+ * @author codex
+ */
+public class GoodsCouponExactOptimizeTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2026, 1, 1, 0, 0);
+
+    @Test
+    void exact_should_beat_greedy_when_greedy_overflows() {
+        List<PromoItemResult> items = Collections.singletonList(item("C1", "SKU-A", "100.00"));
+        List<Coupon> coupons = Arrays.asList(
+                coupon("G1", 1, "60.00"),
+                coupon("G2", 2, "50.00"),
+                coupon("G3", 3, "50.00"));
+        MutuallyExclusivePolicy policy = new MutuallyExclusivePolicy(Collections.emptyMap());
+
+        CouponCalcEngine engine = new CouponCalcEngine(3, CouponOptimizeMode.GREEDY, 1_000L);
+        CouponCalcResult greedy = engine.calcGoodsCoupons(items, coupons, policy, NOW);
+        assertEquals(new BigDecimal("60.00"), greedy.getDiscountAmount());
+        assertEquals(CouponOptimizeMode.GREEDY, greedy.getOptimizeMode());
+
+        CouponCalcResult exact = engine.calcGoodsCoupons(items, coupons, policy, NOW, CouponOptimizeMode.EXACT);
+        assertEquals(new BigDecimal("100.00"), exact.getDiscountAmount());
+        assertEquals(CouponOptimizeMode.EXACT, exact.getOptimizeMode());
+        assertFalse(exact.isOptimizeFallback());
+        assertEquals(Arrays.asList("G2", "G3"), checked(exact));
+    }
+
+    @Test
+    void exact_should_respect_mutual_exclusion_and_template_limit() {
+        List<PromoItemResult> items = Collections.singletonList(item("C1", "SKU-A", "100.00"));
+        List<Coupon> coupons = Arrays.asList(
+                coupon("G1", 1, "60.00"),
+                coupon("G2", 2, "50.00"),
+                coupon("G3", 3, "50.00"),
+                coupon("G4", 4, "40.00"));
+        // 2 与 3 互斥：最优只能是 G1 + G4
+        MutuallyExclusivePolicy policy = new MutuallyExclusivePolicy(
+                Collections.singletonMap(1, Arrays.asList(2, 3)));
+
+        CouponCalcEngine engine = new CouponCalcEngine(2, CouponOptimizeMode.EXACT, 1_000L);
+        CouponCalcResult exact = engine.calcGoodsCoupons(items, coupons, policy, NOW);
+        assertEquals(new BigDecimal("100.00"), exact.getDiscountAmount());
+        assertEquals(Arrays.asList("G1", "G4"), checked(exact));
+    }
+
+    private static List<String> checked(CouponCalcResult result) {
+        return result.getAvailableCouponList().stream()
+                .filter(CouponView::isChecked)
+                .map(CouponView::getCouponNo)
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    private static PromoItemResult item(String cartItemId, String skuId, String amount) {
+        PromoItemResult r = new PromoItemResult();
+        r.setCartItemId(cartItemId);
+        r.setSkuId(skuId);
+        r.setQuantity(1);
+        r.setPromoAmount(new BigDecimal(amount));
+        return r;
+    }
+
+    private static Coupon coupon(String couponNo, int templateId, String parValue) {
+        return Coupon.builder(couponNo, templateId, CouponCategory.GOODS)
+                .parValue(new BigDecimal(parValue))
+                .bound(BigDecimal.ZERO)
+                .otherAddition(1)
+                .conditionType(CouponConditionType.ALL)
+                .build();
+    }
+}
@@ -0,0 +1,366 @@
+package com.aeon.demo;
+
+import com.aeon.demo.domain.CartItem;
+import com.aeon.demo.domain.Promotion;
+import com.aeon.demo.domain.PromotionLevel;
+import com.aeon.demo.domain.PromotionType;
+import com.aeon.demo.engine.promo.PromoCalcEngine;
+import com.aeon.demo.engine.promo.PromoCalcResult;
+import com.aeon.demo.engine.promo.PromoItemResult;
+import com.aeon.demo.engine.promo.PromoSearchMode;
+import com.aeon.demo.util.MoneyAllocator;
+import com.aeon.demo.util.MoneyCents;
+import com.aeon.demo.util.MoneyUtils;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 差分测试：“分”内核 {@link MoneyCents} 与原 BigDecimal 口径逐位一致。
+ *
+ * <p>两层对比：① 内核运算（行金额/折扣率/HALF_UP 除法/按权重分摊）对比 MoneyUtils/MoneyAllocator；
+ * ② 随机购物车上，促销引擎（穷举/分支限界，顺序与并行）结果对比一个按旧 BigDecimal 口径逐方案计算的参考实现：
+ * 小购物车（≤ 6 行）覆盖各种边界配置，20~60 行的购物车覆盖贴近线上的规模。</p>
+ *
+ * @author codex
+ */
+public class MoneyCentsDifferentialTest {
+
+    private static final int ROUNDS = 20_000;
+    private static final int REALISTIC_CARTS = 1_000;
+    private static final long MAX_REFERENCE_PLANS = 8_192L;
+
+    @Test
+    void kernel_should_match_big_decimal() {
+        Random rnd = new Random(20240601L);
+        for (int t = 0; t < ROUNDS; t++) {
+            BigDecimal price = randomMoney(rnd);
+            int quantity = 1 + rnd.nextInt(99);
+            long cents = MoneyCents.of(price);
+            assertEquals(MoneyUtils.scale(price), MoneyCents.toBigDecimal(cents));
+
+            BigDecimal line = MoneyUtils.scale(price).multiply(new BigDecimal(quantity))
+                    .setScale(MoneyUtils.MONEY_SCALE, RoundingMode.HALF_UP);
+            long lineCents = MoneyCents.multiply(cents, quantity);
+            assertEquals(line, MoneyCents.toBigDecimal(lineCents));
+
+            BigDecimal rate = randomRate(rnd);
+            assertEquals(MoneyUtils.scale(MoneyUtils.scale(price).multiply(rate)),
+                    MoneyCents.toBigDecimal(MoneyCents.Rate.of(rate).apply(cents)), "rate=" + rate);
+
+            long dividend = lineCents - rnd.nextInt(100);
+            assertEquals(MoneyCents.toBigDecimal(dividend).divide(new BigDecimal(quantity), MoneyUtils.MONEY_SCALE, RoundingMode.HALF_UP),
+                    MoneyCents.toBigDecimal(MoneyCents.divideHalfUp(dividend, quantity)));
+        }
+    }
+
+    @Test
+    void allocate_should_match_money_allocator() {
+        Random rnd = new Random(7L);
+        for (int t = 0; t < ROUNDS; t++) {
+            int count = 1 + rnd.nextInt(8);
+            Map<Integer, BigDecimal> weights = new LinkedHashMap<>();
+            long[] weightCents = new long[count];
+            for (int i = 0; i < count; i++) {
+                BigDecimal w = rnd.nextInt(6) == 0 ? MoneyUtils.zero() : MoneyUtils.scale(randomMoney(rnd));
+                weights.put(i, w);
+                weightCents[i] = MoneyCents.of(w);
+            }
+            BigDecimal total = MoneyUtils.scale(randomMoney(rnd));
+
+            Map<Integer, BigDecimal> expected = MoneyAllocator.allocate(total, weights);
+            long[] actual = new long[count];
+            boolean allocated = MoneyCents.allocate(MoneyCents.of(total), weightCents, count, actual);
+
+            assertEquals(!expected.isEmpty(), allocated);
+            for (Map.Entry<Integer, BigDecimal> e : expected.entrySet()) {
+                assertEquals(e.getValue(), MoneyCents.toBigDecimal(actual[e.getKey()]));
+            }
+        }
+    }
+
+    @Test
+    void promo_engine_should_match_big_decimal_reference() {
+        Random rnd = new Random(42L);
+        PromoCalcEngine exhaustive = new PromoCalcEngine(Long.MAX_VALUE, PromoSearchMode.EXHAUSTIVE);
+        PromoCalcEngine branchAndBound = new PromoCalcEngine();
+        PromoCalcEngine parallelExhaustive = new PromoCalcEngine(Long.MAX_VALUE, PromoSearchMode.EXHAUSTIVE, 500_000L, 4, 1L);
+        PromoCalcEngine parallelBranchAndBound = new PromoCalcEngine(50_000L, PromoSearchMode.BRANCH_AND_BOUND, 500_000L, 4, 1L);
+        for (int t = 0; t < 2_000; t++) {
+            int skuCount = 2 + rnd.nextInt(6);
+            List<Promotion> promotions = randomPromotions(rnd, skuCount);
+            List<CartItem> cart = new ArrayList<>();
+            for (int i = 0, n = 1 + rnd.nextInt(6); i < n; i++) {
+                cart.add(new CartItem("C" + i, "SKU" + rnd.nextInt(skuCount), 1 + rnd.nextInt(5), randomMoney(rnd)));
+            }
+
+            String expected = ReferenceEngine.calc(cart, promotions);
+            assertEquals(expected, signature(exhaustive.calc(cart, promotions)));
+            assertEquals(expected, signature(branchAndBound.calc(cart, promotions)));
+            assertEquals(expected, signature(parallelExhaustive.calc(cart, promotions)));
+            assertEquals(expected, signature(parallelBranchAndBound.calc(cart, promotions)));
+        }
+        parallelExhaustive.shutdown();
+        parallelBranchAndBound.shutdown();
+    }
+
+    /**
+     * 贴近线上的购物车：20~60 行，SKU 池较大、每个促销只覆盖少数 SKU，大部分商品不命中或只命中一个促销；
+     * 只保留方案数不超过 {@value #MAX_REFERENCE_PLANS} 且含组合选项的购物车，让参考实现能逐方案穷举。
+     */
+    @Test
+    void promo_engine_should_match_big_decimal_reference_on_realistic_carts() {
+        Random rnd = new Random(20240602L);
+        PromoCalcEngine exhaustive = new PromoCalcEngine(Long.MAX_VALUE, PromoSearchMode.EXHAUSTIVE);
+        PromoCalcEngine branchAndBound = new PromoCalcEngine();
+        PromoCalcEngine parallelBranchAndBound = new PromoCalcEngine(50_000L, PromoSearchMode.BRANCH_AND_BOUND, 500_000L, 4, 1L);
+        int compared = 0;
+        int lines = 0;
+        while (compared < REALISTIC_CARTS) {
+            int skuCount = 30 + rnd.nextInt(50);
+            List<Promotion> promotions = realisticPromotions(rnd, skuCount);
+            List<CartItem> cart = new ArrayList<>();
+            for (int i = 0, n = 20 + rnd.nextInt(41); i < n; i++) {
+                BigDecimal price = new BigDecimal(1 + rnd.nextInt(rnd.nextInt(5) == 0 ? 100_000 : 10_000)).movePointLeft(2);
+                cart.add(new CartItem("C" + i, "SKU" + rnd.nextInt(skuCount), 1 + rnd.nextInt(4), price));
+            }
+            if (!referenceSized(cart, promotions)) {
+                continue;
+            }
+            compared++;
+            lines += cart.size();
+
+            String expected = ReferenceEngine.calc(cart, promotions);
+            assertEquals(expected, signature(exhaustive.calc(cart, promotions)), "round " + compared);
+            assertEquals(expected, signature(branchAndBound.calc(cart, promotions)), "round " + compared);
+            assertEquals(expected, signature(parallelBranchAndBound.calc(cart, promotions)), "round " + compared);
+        }
+        parallelBranchAndBound.shutdown();
+        assertTrue(lines >= REALISTIC_CARTS * 20);
+    }
+
+    private static boolean referenceSized(List<CartItem> cart, List<Promotion> promotions) {
+        long plans = 1L;
+        boolean group = false;
+        for (CartItem item : cart) {
+            int options = 1;
+            for (Promotion p : promotions) {
+                if (p.matchesSku(item.getSkuId())) {
+                    options++;
+                    group |= p.getLevel() == PromotionLevel.GROUP;
+                }
+            }
+            plans *= options;
+            if (plans > MAX_REFERENCE_PLANS) {
+                return false;
+            }
+        }
+        return group;
+    }
+
+    /**
+     * 2~6 个促销，每个覆盖 1~5 个 SKU：满减门槛 10~500 元、减额为门槛的 5%~49%，折扣率 0.5~0.99，也有直降。
+     */
+    private static List<Promotion> realisticPromotions(Random rnd, int skuCount) {
+        List<Promotion> list = new ArrayList<>();
+        for (int p = 0, count = 2 + rnd.nextInt(5); p < count; p++) {
+            Set<String> scope = new HashSet<>();
+            for (int i = 0, size = 1 + rnd.nextInt(5); i < size; i++) {
+                scope.add("SKU" + rnd.nextInt(skuCount));
+            }
+            PromotionLevel level = rnd.nextInt(3) == 0 ? PromotionLevel.SINGLE : PromotionLevel.GROUP;
+            PromotionType type = PromotionType.values()[rnd.nextInt(PromotionType.values().length)];
+            BigDecimal threshold = new BigDecimal(1_000 + rnd.nextInt(49_000)).movePointLeft(2);
+            list.add(Promotion.builder(2000 + p, "R" + p, level, type)
+                    .skuScope(scope)
+                    .threshold(threshold)
+                    .reduceAmount(threshold.multiply(new BigDecimal(5 + rnd.nextInt(45))).movePointLeft(2))
+                    .discountRate(new BigDecimal(50 + rnd.nextInt(50)).movePointLeft(2))
+                    .build());
+        }
+        return list;
+    }
+
+    private static String signature(PromoCalcResult r) {
+        StringBuilder sb = new StringBuilder().append(r.getPromoGoodsAmount());
+        for (PromoItemResult i : r.getItems()) {
+            sb.append('|').append(i.getAppliedPromoId())
+                    .append(':').append(i.getPromoPrice())
+                    .append(',').append(i.getPromoAmount())
+                    .append(',').append(i.getPromoDiscountAmount());
+        }
+        return sb.toString();
+    }
+
+    private static BigDecimal randomMoney(Random rnd) {
+        int bound = rnd.nextBoolean() ? 10_000 : 100_000_000;
+        return new BigDecimal(rnd.nextInt(bound)).movePointLeft(rnd.nextInt(4));
+    }
+
+    private static BigDecimal randomRate(Random rnd) {
+        return new BigDecimal(rnd.nextInt(150_000)).movePointLeft(1 + rnd.nextInt(5));
+    }
+
+    private static List<Promotion> randomPromotions(Random rnd, int skuCount) {
+        List<Promotion> list = new ArrayList<>();
+        for (int p = 0, count = 1 + rnd.nextInt(4); p < count; p++) {
+            Set<String> scope = new HashSet<>();
+            for (int i = 0, size = rnd.nextInt(4) == 0 ? 0 : 1 + rnd.nextInt(skuCount); i < size; i++) {
+                scope.add("SKU" + rnd.nextInt(skuCount));
+            }
+            PromotionLevel level = rnd.nextBoolean() ? PromotionLevel.GROUP : PromotionLevel.SINGLE;
+            PromotionType type = PromotionType.values()[rnd.nextInt(PromotionType.values().length)];
+            list.add(Promotion.builder(1000 + p, "P" + p, level, type)
+                    .skuScope(scope)
+                    .threshold(randomMoney(rnd))
+                    .reduceAmount(randomMoney(rnd).movePointLeft(1))
+                    .discountRate(rnd.nextInt(5) == 0 ? null : randomRate(rnd).min(new BigDecimal("1.2")))
+                    .build());
+        }
+        return list;
+    }
+
+    /**
+     * 旧口径参考实现：逐方案用 BigDecimal 重新计算整单，取第一个严格更低的方案。
+     */
+    private static final class ReferenceEngine {
+
+        static String calc(List<CartItem> items, List<Promotion> promotions) {
+            List<List<Promotion>> options = new ArrayList<>();
+            for (CartItem item : items) {
+                List<Promotion> opts = new ArrayList<>();
+                opts.add(null);
+                for (Promotion p : promotions) {
+                    if (p.matchesSku(item.getSkuId())) {
+                        opts.add(p);
+                    }
+                }
+                options.add(opts);
+            }
+            String[] best = {null};
+            BigDecimal[] bestTotal = {null};
+            enumerate(0, items, options, new ArrayList<>(), best, bestTotal);
+            return best[0];
+        }
+
+        private static void enumerate(int idx, List<CartItem> items, List<List<Promotion>> options,
+                                      List<Promotion> selected, String[] best, BigDecimal[] bestTotal) {
+            if (idx == items.size()) {
+                BigDecimal[] promoPrice = new BigDecimal[items.size()];
+                BigDecimal[] promoAmount = new BigDecimal[items.size()];
+                long[] applied = new long[items.size()];
+                BigDecimal total = evaluate(items, selected, promoPrice, promoAmount, applied);
+                if (bestTotal[0] == null || total.compareTo(bestTotal[0]) < 0) {
+                    bestTotal[0] = total;
+                    StringBuilder sb = new StringBuilder().append(total);
+                    for (int i = 0; i < items.size(); i++) {
+                        BigDecimal sale = lineAmount(items.get(i).getSalePrice(), items.get(i).getQuantity());
+                        sb.append('|').append(applied[i])
+                                .append(':').append(promoPrice[i])
+                                .append(',').append(promoAmount[i])
+                                .append(',').append(MoneyUtils.scale(sale.subtract(promoAmount[i])));
+                    }
+                    best[0] = sb.toString();
+                }
+                return;
+            }
+            for (Promotion p : options.get(idx)) {
+                selected.add(p);
+                enumerate(idx + 1, items, options, selected, best, bestTotal);
+                selected.remove(selected.size() - 1);
+            }
+        }
+
+        private static BigDecimal evaluate(List<CartItem> items, List<Promotion> selected,
+                                           BigDecimal[] promoPrice, BigDecimal[] promoAmount, long[] applied) {
+            Map<Promotion, List<Integer>> groups = new LinkedHashMap<>();
+            for (int i = 0; i < items.size(); i++) {
+                CartItem item = items.get(i);
+                BigDecimal salePrice = MoneyUtils.scale(item.getSalePrice());
+                BigDecimal sale = lineAmount(salePrice, item.getQuantity());
+                promoPrice[i] = salePrice;
+                promoAmount[i] = sale;
+                Promotion p = selected.get(i);
+                if (p == null) {
+                    continue;
+                }
+                if (p.getLevel() == PromotionLevel.GROUP) {
+                    groups.computeIfAbsent(p, k -> new ArrayList<>()).add(i);
+                    continue;
+                }
+                BigDecimal unit = singleUnitPrice(p, salePrice, item.getQuantity());
+                BigDecimal amount = lineAmount(unit, item.getQuantity());
+                if (MoneyUtils.scale(sale.subtract(amount)).compareTo(BigDecimal.ZERO) > 0) {
+                    promoPrice[i] = unit;
+                    promoAmount[i] = amount;
+                    applied[i] = p.getPromoId();
+                }
+            }
+            for (Map.Entry<Promotion, List<Integer>> e : groups.entrySet()) {
+                Promotion p = e.getKey();
+                Map<Integer, BigDecimal> weights = new LinkedHashMap<>();
+                BigDecimal groupTotal = MoneyUtils.zero();
+                for (Integer i : e.getValue()) {
+                    weights.put(i, promoAmount[i]);
+                    groupTotal = groupTotal.add(promoAmount[i]);
+                }
+                BigDecimal discount = groupDiscount(p, groupTotal);
+                if (discount.compareTo(BigDecimal.ZERO) <= 0) {
+                    continue;
+                }
+                discount = MoneyUtils.min(discount, groupTotal);
+                for (Map.Entry<Integer, BigDecimal> a : MoneyAllocator.allocate(discount, weights).entrySet()) {
+                    int i = a.getKey();
+                    BigDecimal amount = MoneyUtils.scale(promoAmount[i].subtract(a.getValue()));
+                    if (amount.compareTo(promoAmount[i]) < 0) {
+                        promoPrice[i] = amount.divide(new BigDecimal(items.get(i).getQuantity()), MoneyUtils.MONEY_SCALE, RoundingMode.HALF_UP);
+                        promoAmount[i] = amount;
+                        applied[i] = p.getPromoId();
+                    }
+                }
+            }
+            BigDecimal total = MoneyUtils.zero();
+            for (BigDecimal amount : promoAmount) {
+                total = total.add(amount);
+            }
+            return MoneyUtils.scale(total);
+        }
+
+        private static BigDecimal groupDiscount(Promotion p, BigDecimal groupTotal) {
+            if (p.getType() == PromotionType.FULL_REDUCTION) {
+                return groupTotal.compareTo(MoneyUtils.scale(p.getThreshold())) >= 0
+                        ? MoneyUtils.scale(p.getReduceAmount()) : MoneyUtils.zero();
+            }
+            if (p.getType() == PromotionType.DISCOUNT_RATE && p.getDiscountRate() != null) {
+                BigDecimal promoTotal = groupTotal.multiply(p.getDiscountRate()).setScale(MoneyUtils.MONEY_SCALE, RoundingMode.HALF_UP);
+                return MoneyUtils.scale(groupTotal.subtract(promoTotal));
+            }
+            return MoneyUtils.zero();
+        }
+
+        private static BigDecimal singleUnitPrice(Promotion p, BigDecimal salePrice, int quantity) {
+            if (p.getType() == PromotionType.DIRECT_REDUCTION) {
+                return MoneyUtils.max(MoneyUtils.zero(), MoneyUtils.scale(salePrice.subtract(MoneyUtils.scale(p.getReduceAmount()))));
+            }
+            if (p.getType() == PromotionType.DISCOUNT_RATE) {
+                return p.getDiscountRate() == null ? salePrice : MoneyUtils.scale(salePrice.multiply(p.getDiscountRate()));
+            }
+            if (p.getType() == PromotionType.FULL_REDUCTION) {
+                BigDecimal sale = lineAmount(salePrice, quantity);
+                if (sale.compareTo(MoneyUtils.scale(p.getThreshold())) >= 0) {
+                    BigDecimal amount = sale.subtract(MoneyUtils.min(MoneyUtils.scale(p.getReduceAmount()), sale));
+                    return amount.divide(new BigDecimal(quantity), MoneyUtils.MONEY_SCALE, RoundingMode.HALF_UP);
+                }
+            }
+            return salePrice;
+        }
+
+        private static BigDecimal lineAmount(BigDecimal unitPrice, int quantity) {
+            return MoneyUtils.scale(unitPrice).multiply(new BigDecimal(quantity)).setScale(MoneyUtils.MONEY_SCALE, RoundingMode.HALF_UP);
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package com.aeon.demo;
+
+import com.aeon.demo.domain.CartItem;
+import com.aeon.demo.domain.Promotion;
+import com.aeon.demo.domain.PromotionLevel;
+import com.aeon.demo.domain.PromotionType;
+import com.aeon.demo.engine.promo.PromoCalcEngine;
+import com.aeon.demo.engine.promo.PromoCalcResult;
+import com.aeon.demo.engine.promo.PromoItemResult;
+import com.aeon.demo.engine.promo.PromoSearchMode;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 差分测试：分支限界在中大购物车（含组合促销）上与穷举逐位一致，且 50+ 行的购物车基本都能在毫秒级搜完。
+ *
+ * <p>{@link MoneyCentsDifferentialTest} 只覆盖 ≤ 6 行的购物车，走不到下界剪枝/记忆化真正起作用的规模；
+ * 这里把穷举的枚举上限放开，在 12~20 行、方案数可控（≤ {@value #MAX_EXHAUSTIVE_PLANS}）的购物车上对比两种搜索。</p>
+ *
+ * <p>节点预算耗尽时结果必须标记为未证明最优（{@link PromoCalcResult#isProvenOptimal()}）：
+ * 满减门槛与折扣组合互相竞争时本质是子集和问题，任意配置的大购物车无法保证在预算内证明到“分”；
+ * 此时返回的是搜索中见过的最优方案，不劣于启发式初始解。</p>
+ *
+ * @author codex
+ */
+public class PromoPlanSearchDifferentialTest {
+
+    private static final long MAX_EXHAUSTIVE_PLANS = 1L << 20;
+
+    @Test
+    void branch_and_bound_should_match_exhaustive_on_mid_size_carts() {
+        Random rnd = new Random(20240815L);
+        PromoCalcEngine exhaustive = new PromoCalcEngine(Long.MAX_VALUE, PromoSearchMode.EXHAUSTIVE);
+        PromoCalcEngine branchAndBound = new PromoCalcEngine();
+        int compared = 0;
+        while (compared < 150) {
+            int skuCount = 4 + rnd.nextInt(12);
+            List<Promotion> promotions = randomPromotions(rnd, skuCount, 5);
+            List<CartItem> cart = randomCart(rnd, skuCount, 12 + rnd.nextInt(9));
+            if (planCount(cart, promotions) > MAX_EXHAUSTIVE_PLANS || !hasGroupOption(cart, promotions)) {
+                continue;
+            }
+            compared++;
+
+            PromoCalcResult expected = exhaustive.calc(cart, promotions);
+            PromoCalcResult actual = branchAndBound.calc(cart, promotions);
+            assertTrue(expected.isProvenOptimal());
+            assertTrue(actual.isProvenOptimal(), "aborted on round " + compared);
+            assertEquals(signature(expected), signature(actual), "round " + compared);
+        }
+    }
+
+    /**
+     * 常见的超市促销组合（两个范围交叉的满减 + 任选折扣 + 单品）下 50~80 行的购物车，多个随机种子。
+     * 同样配置的随机购物车约 1% 会因折扣组合四舍五入与同价字典序叠加而耗尽预算，由 provenOptimal 标出；
+     * 这里限制耗尽比例，并要求大部分购物车在毫秒级完成（阈值留足 CI 机器的余量）。
+     */
+    @Test
+    void branch_and_bound_should_finish_large_carts_within_milliseconds() {
+        PromoCalcEngine branchAndBound = new PromoCalcEngine();
+        PromoCalcEngine seedOnly = new PromoCalcEngine(Long.MAX_VALUE, PromoSearchMode.BRANCH_AND_BOUND, 0L);
+        List<Promotion> promotions = supermarketPromotions();
+        // 预热，避免首个购物车的类加载/JIT 计入耗时
+        branchAndBound.calc(supermarketCart(new Random(0L)), promotions);
+
+        List<Long> elapsedNanos = new ArrayList<>();
+        int aborted = 0;
+        for (long seed = 1L; seed <= 6L; seed++) {
+            Random rnd = new Random(seed);
+            for (int t = 0; t < 60; t++) {
+                List<CartItem> cart = supermarketCart(rnd);
+                long start = System.nanoTime();
+                PromoCalcResult result = branchAndBound.calc(cart, promotions);
+                elapsedNanos.add(System.nanoTime() - start);
+                if (!result.isProvenOptimal()) {
+                    aborted++;
+                    assertEquals(-1, result.getEvaluatedPlanCount());
+                    assertTrue(result.getPromoGoodsAmount().compareTo(seedOnly.calc(cart, promotions).getPromoGoodsAmount()) <= 0,
+                            "seed " + seed + " round " + t);
+                } else {
+                    assertTrue(result.getEvaluatedPlanCount() > 0, "seed " + seed + " round " + t);
+                }
+            }
+        }
+
+        Collections.sort(elapsedNanos);
+        long medianMillis = elapsedNanos.get(elapsedNanos.size() / 2) / 1_000_000L;
+        long p90Millis = elapsedNanos.get(elapsedNanos.size() * 9 / 10) / 1_000_000L;
+        assertTrue(aborted * 100 <= elapsedNanos.size() * 3, "aborted " + aborted + "/" + elapsedNanos.size());
+        assertTrue(medianMillis <= 10L, "median " + medianMillis + "ms");
+        assertTrue(p90Millis <= 100L, "p90 " + p90Millis + "ms");
+    }
+
+    /**
+     * 节点预算耗尽时返回搜索中见过的最优方案：不劣于初始解（预算为 0 时返回的就是初始解），也不优于完整搜索。
+     */
+    @Test
+    void aborted_search_should_keep_best_plan_found_so_far() {
+        Random rnd = new Random(77L);
+        PromoCalcEngine seedOnly = new PromoCalcEngine(Long.MAX_VALUE, PromoSearchMode.BRANCH_AND_BOUND, 0L);
+        PromoCalcEngine smallBudget = new PromoCalcEngine(Long.MAX_VALUE, PromoSearchMode.BRANCH_AND_BOUND, 300L);
+        PromoCalcEngine branchAndBound = new PromoCalcEngine();
+        List<Promotion> promotions = supermarketPromotions();
+        int improved = 0;
+        for (int t = 0; t < 40; t++) {
+            List<CartItem> cart = supermarketCart(rnd);
+            PromoCalcResult seed = seedOnly.calc(cart, promotions);
+            PromoCalcResult partial = smallBudget.calc(cart, promotions);
+            PromoCalcResult full = branchAndBound.calc(cart, promotions);
+
+            assertFalse(seed.isProvenOptimal());
+            assertTrue(partial.getPromoGoodsAmount().compareTo(seed.getPromoGoodsAmount()) <= 0, "round " + t);
+            assertTrue(full.getPromoGoodsAmount().compareTo(partial.getPromoGoodsAmount()) <= 0, "round " + t);
+            if (partial.isProvenOptimal()) {
+                assertEquals(signature(full), signature(partial), "round " + t);
+            } else if (partial.getPromoGoodsAmount().compareTo(seed.getPromoGoodsAmount()) < 0) {
+                improved++;
+            }
+        }
+        // 初始解只是“全参加某一个组合”，搜索几百个节点就能找到更好的方案；预算耗尽的购物车全部持平说明中途的最优方案被丢掉了
+        assertTrue(improved > 0);
+    }
+
+    /**
+     * 同一批购物车上对比并行与顺序分支限界：并行搜完时必须是精确最优；耗尽预算时必须与同预算的顺序搜索逐位一致，
+     * 重复计算也不能因线程调度而变化。
+     */
+    @Test
+    void parallel_search_should_match_sequential_search() {
+        Random rnd = new Random(20241103L);
+        PromoCalcEngine sequential = new PromoCalcEngine();
+        PromoCalcEngine parallel = new PromoCalcEngine(50_000L, PromoSearchMode.BRANCH_AND_BOUND, 500_000L, 4, 64L);
+        PromoCalcEngine smallSequential = new PromoCalcEngine(50_000L, PromoSearchMode.BRANCH_AND_BOUND, 3_000L);
+        PromoCalcEngine smallParallel = new PromoCalcEngine(50_000L, PromoSearchMode.BRANCH_AND_BOUND, 3_000L, 4, 64L);
+        List<Promotion> supermarket = supermarketPromotions();
+        int smallAborted = 0;
+        try {
+            for (int t = 0; t < 60; t++) {
+                List<CartItem> cart;
+                List<Promotion> promotions;
+                if (t % 2 == 0) {
+                    cart = supermarketCart(rnd);
+                    promotions = supermarket;
+                } else {
+                    int skuCount = 4 + rnd.nextInt(12);
+                    promotions = randomPromotions(rnd, skuCount, 5);
+                    cart = randomCart(rnd, skuCount, 20 + rnd.nextInt(31));
+                }
+
+                PromoCalcResult expected = sequential.calc(cart, promotions);
+                PromoCalcResult actual = parallel.calc(cart, promotions);
+                if (expected.isProvenOptimal()) {
+                    assertTrue(actual.isProvenOptimal(), "round " + t);
+                    assertEquals(signature(expected), signature(actual), "round " + t);
+                }
+
+                PromoCalcResult smallExpected = smallSequential.calc(cart, promotions);
+                for (int repeat = 0; repeat < 3; repeat++) {
+                    PromoCalcResult smallActual = smallParallel.calc(cart, promotions);
+                    if (smallActual.isProvenOptimal()) {
+                        assertEquals(signature(sequential.calc(cart, promotions)), signature(smallActual), "round " + t);
+                    } else {
+                        assertEquals(signature(smallExpected), signature(smallActual), "round " + t);
+                        assertFalse(smallExpected.isProvenOptimal());
+                    }
+                }
+                if (!smallExpected.isProvenOptimal()) {
+                    smallAborted++;
+                }
+            }
+        } finally {
+            parallel.shutdown();
+            smallParallel.shutdown();
+        }
+        // 小预算必须真的触发过并行耗尽后的回退路径
+        assertTrue(smallAborted > 0);
+    }
+
+    @Test
+    void exhausted_node_budget_should_be_reported_as_unproven() {
+        Random rnd = new Random(11L);
+        PromoCalcEngine tinyBudget = new PromoCalcEngine(Long.MAX_VALUE, PromoSearchMode.BRANCH_AND_BOUND, 16L);
+        PromoCalcEngine branchAndBound = new PromoCalcEngine();
+        List<Promotion> promotions = Arrays.asList(
+                groupFullReduction(2001, skus(0, 2), "300.00", "60.00"),
+                groupFullReduction(2002, skus(1, 3), "200.00", "35.00"),
+                Promotion.builder(2003, "单品9折", PromotionLevel.SINGLE, PromotionType.DISCOUNT_RATE)
+                        .discountRate(new BigDecimal("0.9")).build());
+        List<CartItem> cart = randomCart(rnd, 4, 30);
+
+        PromoCalcResult unproven = tinyBudget.calc(cart, promotions);
+        assertEquals(-1, unproven.getEvaluatedPlanCount());
+        assertFalse(unproven.isProvenOptimal());
+
+        PromoCalcResult proven = branchAndBound.calc(cart, promotions);
+        assertTrue(proven.isProvenOptimal());
+        assertTrue(proven.getPromoGoodsAmount().compareTo(unproven.getPromoGoodsAmount()) <= 0);
+    }
+
+    private static List<Promotion> supermarketPromotions() {
+        return Arrays.asList(
+                groupFullReduction(3001, skus(0, 7), "199.00", "30.00"),
+                groupFullReduction(3002, skus(5, 13), "299.00", "60.00"),
+                Promotion.builder(3003, "任选88折", PromotionLevel.GROUP, PromotionType.DISCOUNT_RATE)
+                        .skuScope(skus(10, 17)).discountRate(new BigDecimal("0.88")).build(),
+                Promotion.builder(3004, "单品9折", PromotionLevel.SINGLE, PromotionType.DISCOUNT_RATE)
+                        .skuScope(skus(0, 3)).discountRate(new BigDecimal("0.9")).build(),
+                Promotion.builder(3005, "单品满50减8", PromotionLevel.SINGLE, PromotionType.FULL_REDUCTION)
+                        .skuScope(skus(14, 19)).threshold(new BigDecimal("50.00")).reduceAmount(new BigDecimal("8.00")).build());
+    }
+
+    private static List<CartItem> supermarketCart(Random rnd) {
+        List<CartItem> cart = new ArrayList<>();
+        for (int i = 0, lines = 50 + rnd.nextInt(31); i < lines; i++) {
+            BigDecimal price = new BigDecimal(100 + rnd.nextInt(9_900)).movePointLeft(2);
+            cart.add(new CartItem("C" + i, "SKU" + rnd.nextInt(20), 1 + rnd.nextInt(3), price));
+        }
+        return cart;
+    }
+
+    private static long planCount(List<CartItem> cart, List<Promotion> promotions) {
+        long plans = 1L;
+        for (CartItem item : cart) {
+            int options = 1;
+            for (Promotion p : promotions) {
+                if (p.matchesSku(item.getSkuId())) {
+                    options++;
+                }
+            }
+            plans *= options;
+            if (plans > MAX_EXHAUSTIVE_PLANS) {
+                return plans;
+            }
+        }
+        return plans;
+    }
+
+    private static boolean hasGroupOption(List<CartItem> cart, List<Promotion> promotions) {
+        for (Promotion p : promotions) {
+            if (p.getLevel() != PromotionLevel.GROUP) {
+                continue;
+            }
+            for (CartItem item : cart) {
+                if (p.matchesSku(item.getSkuId())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static String signature(PromoCalcResult r) {
+        StringBuilder sb = new StringBuilder().append(r.getPromoGoodsAmount());
+        for (PromoItemResult i : r.getItems()) {
+            sb.append('|').append(i.getAppliedPromoId())
+                    .append(':').append(i.getPromoPrice())
+                    .append(',').append(i.getPromoAmount());
+        }
+        return sb.toString();
+    }
+
+    private static List<CartItem> randomCart(Random rnd, int skuCount, int lines) {
+        List<CartItem> cart = new ArrayList<>();
+        for (int i = 0; i < lines; i++) {
+            BigDecimal price = new BigDecimal(1 + rnd.nextInt(rnd.nextInt(4) == 0 ? 200_000 : 20_000)).movePointLeft(2);
+            cart.add(new CartItem("C" + i, "SKU" + rnd.nextInt(skuCount), 1 + rnd.nextInt(5), price));
+        }
+        return cart;
+    }
+
+    /**
+     * 贴近线上配置的促销：满减门槛 10~1000 元、减额为门槛的 5%~49%，折扣率 0.5~0.99，适用范围随机取若干 SKU。
+     */
+    private static List<Promotion> randomPromotions(Random rnd, int skuCount, int maxCount) {
+        List<Promotion> list = new ArrayList<>();
+        for (int p = 0, count = 1 + rnd.nextInt(maxCount); p < count; p++) {
+            Set<String> scope = new HashSet<>();
+            for (int i = 0, size = rnd.nextInt(4) == 0 ? 0 : 1 + rnd.nextInt(skuCount); i < size; i++) {
+                scope.add("SKU" + rnd.nextInt(skuCount));
+            }
+            PromotionLevel level = rnd.nextInt(3) == 0 ? PromotionLevel.SINGLE : PromotionLevel.GROUP;
+            PromotionType type = rnd.nextBoolean() ? PromotionType.FULL_REDUCTION : PromotionType.DISCOUNT_RATE;
+            BigDecimal threshold = new BigDecimal(1_000 + rnd.nextInt(99_000)).movePointLeft(2);
+            list.add(Promotion.builder(1000 + p, "P" + p, level, type)
+                    .skuScope(scope)
+                    .threshold(threshold)
+                    .reduceAmount(threshold.multiply(new BigDecimal(5 + rnd.nextInt(45))).movePointLeft(2))
+                    .discountRate(new BigDecimal(50 + rnd.nextInt(50)).movePointLeft(2))
+                    .build());
+        }
+        return list;
+    }
+
+    private static Set<String> skus(int from, int to) {
+        Set<String> skus = new HashSet<>();
+        for (int i = from; i <= to; i++) {
+            skus.add("SKU" + i);
+        }
+        return skus;
+    }
+
+    private static Promotion groupFullReduction(long promoId, Set<String> scope, String threshold, String reduceAmount) {
+        return Promotion.builder(promoId, "满" + threshold + "减" + reduceAmount, PromotionLevel.GROUP, PromotionType.FULL_REDUCTION)
+                .skuScope(scope)
+                .threshold(new BigDecimal(threshold))
+                .reduceAmount(new BigDecimal(reduceAmount))
+                .build();
+    }
+}
@@ -0,0 +1,88 @@
+package com.aeon.demo;
+
+import com.aeon.demo.domain.CartItem;
+import com.aeon.demo.domain.Promotion;
+import com.aeon.demo.domain.PromotionLevel;
+import com.aeon.demo.domain.PromotionType;
+import com.aeon.demo.engine.promo.PromoCalcEngine;
+import com.aeon.demo.engine.promo.PromotionIndex;
+import com.aeon.demo.engine.promo.PromotionIndexHolder;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 促销倒排索引：每个 SKU 的可选促销与“逐个 matchesSku 过滤原列表”逐项一致（含顺序），发布/替换后下一次计算即用新索引。
+ *
+ * @author codex
+ */
+public class PromotionIndexTest {
+
+    @Test
+    void match_should_equal_linear_scan_in_order() {
+        Random rnd = new Random(42L);
+        for (int round = 0; round < 200; round++) {
+            int skuCount = 1 + rnd.nextInt(10);
+            List<Promotion> promotions = new ArrayList<>();
+            for (int p = 0, count = rnd.nextInt(12); p < count; p++) {
+                Set<String> scope = new HashSet<>();
+                // 约 1/4 为全场促销，其余随机若干 SKU（与全场促销在原列表里交错）
+                for (int i = 0, size = rnd.nextInt(4) == 0 ? 0 : 1 + rnd.nextInt(skuCount); i < size; i++) {
+                    scope.add("SKU" + rnd.nextInt(skuCount));
+                }
+                promotions.add(Promotion.builder(1000 + p, "P" + p, PromotionLevel.SINGLE, PromotionType.DIRECT_REDUCTION)
+                        .skuScope(scope)
+                        .reduceAmount(new BigDecimal("1.00"))
+                        .build());
+            }
+            PromotionIndex index = PromotionIndex.build(1L, promotions);
+
+            for (int s = 0; s <= skuCount; s++) {
+                // s == skuCount：不在任何 skuScope 里的 SKU，只剩全场促销
+                String sku = "SKU" + s;
+                List<Promotion> expected = promotions.stream().filter(p -> p.matchesSku(sku)).collect(Collectors.toList());
+                assertEquals(ids(expected), ids(index.match(sku)), "round " + round + ", " + sku);
+            }
+            assertEquals(ids(promotions), ids(index.getPromotions()));
+        }
+    }
+
+    @Test
+    void publish_and_swap_should_be_visible_to_next_calc() {
+        PromoCalcEngine engine = new PromoCalcEngine();
+        List<CartItem> cart = Collections.singletonList(new CartItem("C1", "SKU-A", 2, new BigDecimal("50.00")));
+        PromotionIndexHolder holder = new PromotionIndexHolder(Collections.singletonList(directReduction(1L, "5.00")));
+        assertEquals(1L, holder.get().getVersion());
+        assertEquals(0, new BigDecimal("90.00").compareTo(engine.calc(cart, holder.get()).getPromoGoodsAmount()));
+
+        PromotionIndex published = holder.publish(Collections.singletonList(directReduction(2L, "10.00")));
+        assertEquals(2L, published.getVersion());
+        assertSame(published, holder.get());
+        assertEquals(0, new BigDecimal("80.00").compareTo(engine.calc(cart, holder.get()).getPromoGoodsAmount()));
+
+        // 版本号不高于当前版本的索引不能覆盖
+        assertFalse(holder.swap(PromotionIndex.build(2L, Collections.singletonList(directReduction(3L, "20.00")))));
+        assertFalse(holder.swap(null));
+        assertSame(published, holder.get());
+
+        assertTrue(holder.swap(PromotionIndex.build(5L, Collections.emptyList())));
+        assertEquals(5L, holder.get().getVersion());
+        assertEquals(0, new BigDecimal("100.00").compareTo(engine.calc(cart, holder.get()).getPromoGoodsAmount()));
+        assertEquals(6L, holder.publish(Collections.emptyList()).getVersion());
+    }
+
+    private static Promotion directReduction(long promoId, String reduceAmount) {
+        return Promotion.builder(promoId, "P" + promoId, PromotionLevel.SINGLE, PromotionType.DIRECT_REDUCTION)
+                .skuScope(new HashSet<>(Collections.singletonList("SKU-A")))
+                .reduceAmount(new BigDecimal(reduceAmount))
+                .build();
+    }
+
+    private static List<Long> ids(List<Promotion> promotions) {
+        return promotions.stream().map(Promotion::getPromoId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,209 @@
+package com.aeon.demo.engine.coupon;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 商品券精确选券的剪枝（上界/等价/支配）不改变结果：与不剪枝的穷举（按候选顺序逐张校验）选出完全相同的组合。
+ *
+ * @author codex
+ */
+public class GoodsCouponSearchTest {
+
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    @Test
+    void pruned_search_should_match_brute_force() {
+        Random rnd = new Random(20240610L);
+        long dominated = 0L;
+        for (int t = 0; t < 3_000; t++) {
+            Instance in = randomInstance(rnd);
+            GoodsCouponSearch search = in.search();
+            boolean[] actual = search.run();
+            boolean[] expected = in.bruteForce();
+
+            assertNotNull(actual);
+            assertArrayEquals(expected, actual, "round " + t);
+            dominated += search.getDominatedCount();
+        }
+        // 样本里必须真的触发过支配剪枝
+        assertTrue(dominated > 0);
+    }
+
+    /**
+     * 同模板的大面额全场券支配小面额的指定商品券：金额充足时，跳过大面额后不再尝试小面额。
+     */
+    @Test
+    void dominated_coupons_should_not_be_expanded_when_allocation_has_slack() {
+        int m = 12;
+        Instance in = new Instance(3, new long[]{1_000_000L, 1_000_000L, 1_000_000L}, 3);
+        for (int i = 0; i < m; i++) {
+            long[] mask = ItemMask.create(3);
+            ItemMask.set(mask, i % 3);
+            if (i % 2 == 0) {
+                ItemMask.set(mask, (i + 1) % 3);
+                ItemMask.set(mask, (i + 2) % 3);
+            }
+            in.add(10_000L - i * 100L, mask, i % 4, 2);
+        }
+        GoodsCouponSearch search = in.search();
+        assertArrayEquals(in.bruteForce(), search.run());
+        assertTrue(search.getDominatedCount() > 0);
+    }
+
+    private static Instance randomInstance(Random rnd) {
+        int n = 1 + rnd.nextInt(8);
+        long[] remaining = new long[n];
+        boolean plenty = rnd.nextBoolean();
+        for (int i = 0; i < n; i++) {
+            remaining[i] = rnd.nextInt(8) == 0 ? 0L : (plenty ? 100_000L : 500L) + rnd.nextInt(plenty ? 1_000_000 : 5_000);
+        }
+        int templates = 1 + rnd.nextInt(4);
+        Instance in = new Instance(n, remaining, 1 + rnd.nextInt(3));
+        int[] limitByTemplate = new int[templates];
+        for (int g = 0; g < templates; g++) {
+            limitByTemplate[g] = 1 + rnd.nextInt(3);
+        }
+        for (int c = 0, m = 1 + rnd.nextInt(13); c < m; c++) {
+            if (c > 0 && rnd.nextInt(3) == 0) {
+                // 从已有的券派生一张：面值不高、范围是子集，制造支配关系
+                int from = rnd.nextInt(c);
+                long[] mask = in.masks.get(from).clone();
+                for (int i = 0; i < n; i++) {
+                    if (rnd.nextInt(3) == 0) {
+                        mask[i >>> 6] &= ~(1L << i);
+                    }
+                }
+                if (ItemMask.count(mask) == 0) {
+                    mask = in.masks.get(from).clone();
+                }
+                in.add(in.parValues.get(from) - rnd.nextInt(2) * rnd.nextInt(1_000), mask, in.templates.get(from),
+                        rnd.nextInt(4) == 0 ? 1 + rnd.nextInt(3) : in.limits.get(from));
+                continue;
+            }
+            long[] mask = ItemMask.create(n);
+            for (int i = 0; i < n; i++) {
+                if (rnd.nextBoolean()) {
+                    ItemMask.set(mask, i);
+                }
+            }
+            if (ItemMask.count(mask) == 0) {
+                ItemMask.set(mask, rnd.nextInt(n));
+            }
+            int template = rnd.nextInt(templates);
+            in.add(100L + rnd.nextInt(plenty ? 50_000 : 3_000), mask, template, limitByTemplate[template]);
+        }
+        for (int g = 0; g < templates; g++) {
+            for (int h = g + 1; h < templates; h++) {
+                if (rnd.nextInt(4) == 0) {
+                    in.exclusive.get(g).add(h);
+                    in.exclusive.get(h).add(g);
+                }
+            }
+        }
+        return in;
+    }
+
+    /**
+     * 一组候选（已按引擎排序）及购物车剩余金额。
+     */
+    private static final class Instance {
+        final int itemCount;
+        final long[] remaining;
+        final int templateLimit;
+        final List<Long> parValues = new ArrayList<>();
+        final List<long[]> masks = new ArrayList<>();
+        final List<Integer> templates = new ArrayList<>();
+        final List<Integer> limits = new ArrayList<>();
+        final List<Set<Integer>> exclusive = new ArrayList<>();
+
+        Instance(int itemCount, long[] remaining, int templateLimit) {
+            this.itemCount = itemCount;
+            this.remaining = remaining;
+            this.templateLimit = templateLimit;
+            for (int g = 0; g < 4; g++) {
+                exclusive.add(new TreeSet<>());
+            }
+        }
+
+        void add(long parValue, long[] mask, int template, int limit) {
+            parValues.add(Math.max(1L, parValue));
+            masks.add(mask);
+            templates.add(template);
+            limits.add(limit);
+        }
+
+        GoodsCouponSearch search() {
+            int m = parValues.size();
+            long[] par = new long[m];
+            int[] template = new int[m];
+            int[] limit = new int[m];
+            for (int i = 0; i < m; i++) {
+                par[i] = parValues.get(i);
+                template[i] = templates.get(i);
+                limit[i] = limits.get(i);
+            }
+            int[][] exclusiveTemplates = new int[exclusive.size()][];
+            for (int g = 0; g < exclusive.size(); g++) {
+                exclusiveTemplates[g] = exclusive.get(g).stream().mapToInt(Integer::intValue).toArray();
+            }
+            return new GoodsCouponSearch(par, masks.toArray(new long[0][]), template, limit, exclusiveTemplates,
+                    templateLimit, remaining, NO_DEADLINE);
+        }
+
+        /**
+         * 不剪枝：按“先选后不选”的 DFS 顺序枚举全部组合，逐张按引擎口径校验，严格更大才替换。
+         */
+        boolean[] bruteForce() {
+            int m = parValues.size();
+            boolean[] best = null;
+            long bestTotal = -1L;
+            for (long bits = (1L << m) - 1; bits >= 0; bits--) {
+                boolean[] chosen = new boolean[m];
+                for (int i = 0; i < m; i++) {
+                    chosen[i] = (bits >>> (m - 1 - i) & 1L) != 0;
+                }
+                long total = replay(chosen);
+                if (total > bestTotal) {
+                    bestTotal = total;
+                    best = chosen;
+                }
+            }
+            return best;
+        }
+
+        private long replay(boolean[] chosen) {
+            long[] rem = remaining.clone();
+            long[] weights = new long[itemCount];
+            int[] indexes = new int[itemCount];
+            long[] alloc = new long[itemCount];
+            Map<Integer, Integer> countByTemplate = new HashMap<>();
+            Set<Integer> blocked = new HashSet<>();
+            long total = 0L;
+            for (int i = 0; i < chosen.length; i++) {
+                if (!chosen[i]) {
+                    continue;
+                }
+                int t = templates.get(i);
+                int count = countByTemplate.getOrDefault(t, 0);
+                if (countByTemplate.size() >= templateLimit && count == 0) {
+                    return -1L;
+                }
+                if (count >= limits.get(i) || blocked.contains(t)) {
+                    return -1L;
+                }
+                if (!CouponCalcEngine.canAllocate(parValues.get(i), masks.get(i), rem)) {
+                    return -1L;
+                }
+                CouponCalcEngine.allocate(parValues.get(i), masks.get(i), rem, weights, indexes, alloc);
+                countByTemplate.put(t, count + 1);
+                blocked.addAll(exclusive.get(t));
+                total += parValues.get(i);
+            }
+            return total;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.aeon.demo.engine.coupon;
+
+import com.aeon.demo.domain.Coupon;
+import com.aeon.demo.domain.CouponCategory;
+import com.aeon.demo.domain.CouponConditionType;
+import com.aeon.demo.engine.promo.PromoItemResult;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 位图跨多个 long（65+ 行购物车）时的求交/包含/求和/收集，以及引擎在这种购物车上的分摊与精确选券。
+ *
+ * @author codex
+ */
+public class ItemMaskTest {
+
+    private static final int ITEM_COUNT = 130;
+
+    @Test
+    void operations_should_work_across_words() {
+        long[] low = mask(0, 5, 63);
+        long[] high = mask(64, 65, 129);
+        long[] both = mask(5, 63, 64, 129);
+
+        assertEquals(3, low.length);
+        assertEquals(4, ItemMask.count(both));
+        assertFalse(ItemMask.intersects(low, high));
+        assertTrue(ItemMask.intersects(low, both));
+        assertTrue(ItemMask.intersects(high, both));
+
+        long[] union = ItemMask.create(ITEM_COUNT);
+        ItemMask.or(union, low);
+        ItemMask.or(union, high);
+        assertTrue(ItemMask.containsAll(union, both));
+        assertFalse(ItemMask.containsAll(low, both));
+        assertFalse(ItemMask.containsAll(both, mask(65)));
+
+        long[] amounts = new long[ITEM_COUNT];
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            amounts[i] = i % 10 == 0 ? 0L : 100L + i;
+        }
+        amounts[129] = -5L;
+        assertEquals(amounts[5] + amounts[63] + amounts[64], ItemMask.sumPositive(both, amounts));
+
+        long[] weights = new long[ITEM_COUNT];
+        int[] indexes = new int[ITEM_COUNT];
+        int count = ItemMask.collectPositive(both, amounts, weights, indexes);
+        assertEquals(3, count);
+        assertArrayEquals(new int[]{5, 63, 64}, Arrays.copyOf(indexes, count));
+        assertArrayEquals(new long[]{amounts[5], amounts[63], amounts[64]}, Arrays.copyOf(weights, count));
+
+        long[] saved = new long[ItemMask.count(high)];
+        ItemMask.copyOut(high, amounts, saved);
+        long[] before = amounts.clone();
+        amounts[64] = 1L;
+        amounts[65] = 2L;
+        ItemMask.copyIn(high, amounts, saved);
+        assertArrayEquals(before, amounts);
+    }
+
+    /**
+     * 70 行购物车：指定商品券的适用范围落在第二个 long 上，分摊只动范围内的商品；精确模式找到贪心溢出时的更优组合。
+     */
+    @Test
+    void engine_should_allocate_and_optimize_on_carts_beyond_64_lines() {
+        List<PromoItemResult> items = new ArrayList<>();
+        for (int i = 0; i < 70; i++) {
+            PromoItemResult r = new PromoItemResult();
+            r.setCartItemId("C" + i);
+            r.setSkuId(i >= 64 ? "SKU-HIGH" : "SKU-" + i);
+            r.setQuantity(1);
+            r.setPromoAmount(new BigDecimal(i >= 64 ? "20.00" : "1.00"));
+            items.add(r);
+        }
+        // 高位 6 行合计 120 元：G1(80) 先选会让 G2/G3(各 60) 溢出，精确解是 G2 + G3
+        List<Coupon> coupons = Arrays.asList(
+                skuCoupon("G1", 1, "80.00"),
+                skuCoupon("G2", 2, "60.00"),
+                skuCoupon("G3", 3, "60.00"));
+        MutuallyExclusivePolicy policy = new MutuallyExclusivePolicy(Collections.emptyMap());
+        LocalDateTime now = LocalDateTime.of(2026, 1, 1, 0, 0);
+
+        CouponCalcEngine engine = new CouponCalcEngine(3, CouponOptimizeMode.GREEDY, 1_000L);
+        CouponCalcResult greedy = engine.calcGoodsCoupons(items, coupons, policy, now);
+        assertEquals(new BigDecimal("80.00"), greedy.getDiscountAmount());
+        assertEquals(Arrays.asList("C64", "C65", "C66", "C67", "C68", "C69"),
+                greedy.getAvailableCouponList().get(0).getApplicableCartItemIds());
+        assertEquals(new BigDecimal("120.00"), greedy.getAvailableCouponList().get(0).getApplicableAmount());
+
+        CouponCalcResult exact = engine.calcGoodsCoupons(items, coupons, policy, now, CouponOptimizeMode.EXACT);
+        assertEquals(new BigDecimal("120.00"), exact.getDiscountAmount());
+        assertFalse(exact.isOptimizeFallback());
+
+        long[] remaining = new long[70];
+        Arrays.fill(remaining, 0, 64, 100L);
+        Arrays.fill(remaining, 64, 70, 2_000L);
+        long[] scope = ItemMask.create(70);
+        for (int i = 64; i < 70; i++) {
+            ItemMask.set(scope, i);
+        }
+        CouponCalcEngine.allocate(6_000L, scope, remaining, new long[70], new int[70], new long[70]);
+        for (int i = 0; i < 64; i++) {
+            assertEquals(100L, remaining[i]);
+        }
+        for (int i = 64; i < 70; i++) {
+            assertEquals(1_000L, remaining[i]);
+        }
+    }
+
+    private static long[] mask(int... indexes) {
+        long[] mask = ItemMask.create(ITEM_COUNT);
+        for (int i : indexes) {
+            ItemMask.set(mask, i);
+        }
+        return mask;
+    }
+
+    private static Coupon skuCoupon(String couponNo, int templateId, String parValue) {
+        return Coupon.builder(couponNo, templateId, CouponCategory.GOODS)
+                .parValue(new BigDecimal(parValue))
+                .bound(BigDecimal.ZERO)
+                .otherAddition(1)
+                .conditionType(CouponConditionType.SKU)
+                .skuScope(Collections.singleton("SKU-HIGH"))
+                .build();
+    }
+}
@@ -0,0 +1,53 @@
+package com.aeon.demo.service;
+
+import com.aeon.demo.dto.AeonOrderCalcRequest;
+import com.aeon.demo.dto.AeonOrderCalcResponse;
+import com.aeon.demo.dto.CartItemRequest;
+import com.aeon.demo.scenario.AeonScenarioFactory;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 场景缓存按解析后的场景ID取/存：任意未知场景ID都回落到 S1，共用同一份编译结果，不会撑大缓存。
+ *
+ * @author codex
+ */
+public class AeonOrderCalcServiceTest {
+
+    @Test
+    void unknown_scenarios_should_share_resolved_compiled_scenario() {
+        AeonOrderCalcService service = new AeonOrderCalcService();
+        try {
+            BigDecimal expected = service.calc(request(AeonScenarioFactory.SCENARIO_S1)).getAmountSummary().getFinalPayAmount();
+            assertEquals(1, service.compiledScenarioCount());
+
+            for (int i = 0; i < 200; i++) {
+                AeonOrderCalcResponse resp = service.calc(request("UNKNOWN-" + i));
+                assertEquals(AeonScenarioFactory.SCENARIO_S1, resp.getScenario());
+                assertEquals(0, expected.compareTo(resp.getAmountSummary().getFinalPayAmount()));
+            }
+            service.calc(request(null));
+            service.calc(request(" s1 "));
+            assertEquals(1, service.compiledScenarioCount());
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    private static AeonOrderCalcRequest request(String scenario) {
+        CartItemRequest beef = new CartItemRequest();
+        beef.setCartItemId("C1");
+        beef.setSkuId("SKU-BEEF");
+        beef.setQuantity(2);
+        beef.setSalePrice(new BigDecimal("120.00"));
+
+        AeonOrderCalcRequest req = new AeonOrderCalcRequest();
+        req.setScenario(scenario);
+        req.setCartItems(Collections.singletonList(beef));
+        return req;
+    }
+}
@@ -0,0 +1,133 @@
+package com.bruce.coupondemo;
+
+import com.bruce.coupondemo.engine.CouponEngine;
+import com.bruce.coupondemo.engine.CouponWallet;
+import com.bruce.coupondemo.engine.CouponWalletCache;
+import com.bruce.coupondemo.model.Coupon;
+import com.bruce.coupondemo.model.CouponResult;
+import com.bruce.coupondemo.model.CouponType;
+import com.bruce.promotiondemo.model.CartItem;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 预编译券包测试
+ *
+ * - 同一券包跨请求复用，结果与直接传券列表一致，前一次结果不被后一次计算修改
+ * - 按用户、按版本缓存
+ */
+@DisplayName("预编译券包测试")
+class CouponWalletTest {
+
+    private final CouponEngine couponEngine = new CouponEngine();
+
+    @Test
+    @DisplayName("券包复用：不同价格、不同购物车下结果与券列表一致")
+    void testReuseWallet() {
+        List<Coupon> coupons = createCoupons();
+        CouponWallet wallet = CouponWallet.compile(1L, coupons);
+        List<CartItem> withSku = createItems("SKU001", "SKU002");
+        List<CartItem> withoutSku = createItems("SKU002");
+
+        CouponResult first = couponEngine.calculate(new BigDecimal("150"), new BigDecimal("10"), wallet, withSku);
+        assertSameResult(couponEngine.calculate(new BigDecimal("150"), new BigDecimal("10"), coupons, withSku), first);
+        // 满150：C1(30, SKU001) 与 C2(20) 同组只选 C1，再选 C3(10)；运费10，运费券 C4 抵 8
+        assertEquals(0, new BigDecimal("40").compareTo(first.getProductCouponDiscount()));
+        assertEquals(0, new BigDecimal("8").compareTo(first.getShippingCouponDiscount()));
+
+        CouponResult second = couponEngine.calculate(new BigDecimal("80"), BigDecimal.ZERO, wallet, withoutSku);
+        assertSameResult(couponEngine.calculate(new BigDecimal("80"), BigDecimal.ZERO, coupons, withoutSku), second);
+        // 不含 SKU001 → C1 不可用；80 不满 100 → C2 不可用；只剩 C3
+        assertEquals(0, new BigDecimal("10").compareTo(second.getProductCouponDiscount()));
+        assertEquals(0, BigDecimal.ZERO.compareTo(second.getShippingCouponDiscount()));
+
+        // 第二次计算不影响第一次的结果，也不改动原券列表
+        assertEquals(0, new BigDecimal("40").compareTo(first.getProductCouponDiscount()));
+        assertTrue(first.getAvailableCoupons().get(0).getChecked());
+        for (Coupon coupon : coupons) {
+            assertFalse(coupon.getChecked());
+            assertNull(coupon.getActualDiscount());
+        }
+    }
+
+    @Test
+    @DisplayName("按用户缓存，券包版本变化时重新编译")
+    void testCacheByUserAndVersion() {
+        CouponWalletCache cache = new CouponWalletCache();
+        List<Coupon> coupons = createCoupons();
+
+        CouponWallet v1 = cache.get("u1", 1L, coupons);
+        assertSame(v1, cache.get("u1", 1L, coupons));
+        assertNotSame(v1, cache.get("u2", 1L, coupons));
+
+        CouponWallet v2 = cache.get("u1", 2L, coupons.subList(0, 2));
+        assertNotSame(v1, v2);
+        assertEquals(2, v2.size());
+        assertSame(v2, cache.current("u1"));
+
+        // 旧版本请求拿到临时编译的结果，不覆盖新版本
+        assertEquals(1L, cache.get("u1", 1L, coupons).getVersion());
+        assertSame(v2, cache.current("u1"));
+
+        cache.invalidate("u1");
+        assertNull(cache.current("u1"));
+        assertEquals(1, cache.size());
+    }
+
+    private void assertSameResult(CouponResult expected, CouponResult actual) {
+        assertEquals(expected.getProductCouponDiscount(), actual.getProductCouponDiscount());
+        assertEquals(expected.getShippingCouponDiscount(), actual.getShippingCouponDiscount());
+        assertEquals(expected.getAvailableCoupons().size(), actual.getAvailableCoupons().size());
+        for (int i = 0; i < expected.getAvailableCoupons().size(); i++) {
+            Coupon e = expected.getAvailableCoupons().get(i);
+            Coupon a = actual.getAvailableCoupons().get(i);
+            assertEquals(e.getCouponId(), a.getCouponId());
+            assertEquals(e.getChecked(), a.getChecked());
+            assertEquals(e.getActualDiscount(), a.getActualDiscount());
+        }
+    }
+
+    private List<CartItem> createItems(String... skuCodes) {
+        List<CartItem> items = new ArrayList<>();
+        for (String skuCode : skuCodes) {
+            items.add(CartItem.builder().skuCode(skuCode).price(new BigDecimal("50")).quantity(1).build());
+        }
+        return items;
+    }
+
+    private List<Coupon> createCoupons() {
+        LocalDate expireDate = LocalDate.now().plusDays(30);
+        return Arrays.asList(
+                Coupon.builder().couponId("C1").name("SKU001专享30元券")
+                        .couponType(CouponType.PRODUCT)
+                        .faceValue(new BigDecimal("30"))
+                        .applicableSkuCodes(new HashSet<>(Collections.singletonList("SKU001")))
+                        .exclusiveGroupId("G1")
+                        .expireDate(expireDate).build(),
+                Coupon.builder().couponId("C2").name("满100减20")
+                        .couponType(CouponType.PRODUCT)
+                        .faceValue(new BigDecimal("20"))
+                        .threshold(new BigDecimal("100"))
+                        .exclusiveGroupId("G1")
+                        .expireDate(expireDate).build(),
+                Coupon.builder().couponId("C3").name("10元无门槛券")
+                        .couponType(CouponType.PRODUCT)
+                        .faceValue(new BigDecimal("10"))
+                        .expireDate(expireDate).build(),
+                Coupon.builder().couponId("C4").name("8元运费券")
+                        .couponType(CouponType.SHIPPING)
+                        .faceValue(new BigDecimal("8"))
+                        .expireDate(expireDate).build(),
+                Coupon.builder().couponId("C5").name("已过期50元券")
+                        .couponType(CouponType.PRODUCT)
+                        .faceValue(new BigDecimal("50"))
+                        .expireDate(LocalDate.now().minusDays(1)).build()
+        );
+    }
+}
@@ -0,0 +1,95 @@
+package com.bruce.coupondemo;
+
+import com.bruce.coupondemo.model.Coupon;
+import com.bruce.coupondemo.model.CouponType;
+import com.bruce.coupondemo.model.OrchestrationResult;
+import com.bruce.coupondemo.service.OrderCalcService;
+import com.bruce.promotiondemo.model.CartItem;
+import com.bruce.promotiondemo.model.Rule;
+import com.bruce.promotiondemo.model.RuleType;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 促销 + 券联合优化测试
+ *
+ * 场景：商品 300 元，运费 0
+ * - R1：8折（与 R2 互斥）→ 240
+ * - R2：直减20 → 280
+ * - 券：满250减50
+ *
+ * 顺序模式：促销最优 R1 → 240，不满 250 用不了券，总付 240
+ * 联合优化：R2 → 280 满 250 用券 → 230，总付 230
+ */
+class JointOptimizationTest {
+
+    @Test
+    @DisplayName("联合优化选择稍差的促销以保住高门槛券")
+    void testJointBeatsSequential() {
+        // 预算放宽到 1 秒：冷启动或机器繁忙时默认的 5ms 可能耗尽，影响候选数的断言
+        OrderCalcService service = new OrderCalcService(OrderCalcService.DEFAULT_JOINT_TOP_K, 1_000_000L);
+
+        OrchestrationResult sequential = service.calculate(createItems(), createRules(), createCoupons(), BigDecimal.ZERO);
+        assertEquals(0, new BigDecimal("240").compareTo(sequential.getTotalPayPrice()));
+
+        OrchestrationResult joint = service.calculateJoint(createItems(), createRules(), createCoupons(), BigDecimal.ZERO);
+        assertEquals(0, new BigDecimal("230").compareTo(joint.getTotalPayPrice()));
+        assertEquals(0, new BigDecimal("20").compareTo(joint.getPromotionDiscount()));
+        assertEquals(0, new BigDecimal("280").compareTo(joint.getPriceAfterPromotion()));
+        assertEquals("R2", joint.getPromotionDetails().get(0).getRuleId());
+        assertEquals(0, new BigDecimal("50").compareTo(joint.getProductCouponDiscount()));
+        assertTrue(joint.getCouponResult().getAvailableCoupons().get(0).getChecked());
+        // 第三个候选（不用促销，300）下界 300 - 50 = 250 已不低于 230，不再用券计算
+        assertEquals(2, joint.getPromotionCandidates());
+        assertFalse(joint.isBudgetExceeded());
+    }
+
+    @Test
+    @DisplayName("K=1 时与顺序模式一致")
+    void testTopOneSameAsSequential() {
+        OrderCalcService service = new OrderCalcService(1, OrderCalcService.DEFAULT_JOINT_BUDGET_MICROS);
+
+        OrchestrationResult joint = service.calculateJoint(createItems(), createRules(), createCoupons(), BigDecimal.ZERO);
+        OrchestrationResult sequential = service.calculate(createItems(), createRules(), createCoupons(), BigDecimal.ZERO);
+
+        assertEquals(0, sequential.getTotalPayPrice().compareTo(joint.getTotalPayPrice()));
+        assertEquals(0, sequential.getPromotionDiscount().compareTo(joint.getPromotionDiscount()));
+        assertEquals(1, joint.getPromotionCandidates());
+    }
+
+    private List<CartItem> createItems() {
+        return Collections.singletonList(
+                CartItem.builder().skuCode("SKU001").price(new BigDecimal("300")).quantity(1).build()
+        );
+    }
+
+    private List<Rule> createRules() {
+        return Arrays.asList(
+                Rule.builder().id("R1").name("8折")
+                        .type(RuleType.DISCOUNT)
+                        .discount(new BigDecimal("0.8"))
+                        .exclusiveRuleIds(new HashSet<>(Collections.singletonList("R2")))
+                        .priority(1).build(),
+                Rule.builder().id("R2").name("直减20")
+                        .type(RuleType.AMOUNT_OFF)
+                        .discount(new BigDecimal("20"))
+                        .priority(2).build()
+        );
+    }
+
+    private List<Coupon> createCoupons() {
+        return Collections.singletonList(
+                Coupon.builder().couponId("C1").name("满250减50")
+                        .couponType(CouponType.PRODUCT)
+                        .faceValue(new BigDecimal("50"))
+                        .threshold(new BigDecimal("250"))
+                        .expireDate(LocalDate.now().plusDays(30)).build()
+        );
+    }
+}
@@ -0,0 +1,77 @@
+package com.bruce.coupondemo;
+
+import com.bruce.coupondemo.engine.CouponWallet;
+import com.bruce.coupondemo.model.Coupon;
+import com.bruce.coupondemo.model.CouponType;
+import com.bruce.coupondemo.model.OrchestrationResult;
+import com.bruce.coupondemo.service.OrderCalcService;
+import com.bruce.promotiondemo.engine.CompiledRuleSet;
+import com.bruce.promotiondemo.model.CartItem;
+import com.bruce.promotiondemo.model.Rule;
+import com.bruce.promotiondemo.model.RuleType;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 订单计算缓存测试
+ *
+ * 场景：SKU001 200 元 + SKU002 50 元，规则满200减20，10元无门槛券 → 总付 220
+ */
+@DisplayName("订单计算缓存测试")
+class OrderCalcCacheTest {
+
+    @Test
+    @DisplayName("订单计算缓存：版本化规则 + 券包命中，返回值互不影响")
+    void testOrderCalcServiceCache() {
+        OrderCalcService service = new OrderCalcService();
+        CompiledRuleSet ruleSet = CompiledRuleSet.compile(1L, createRules());
+        CouponWallet wallet = CouponWallet.compile(1L, Collections.singletonList(
+                Coupon.builder().couponId("C1").name("10元券")
+                        .couponType(CouponType.PRODUCT)
+                        .faceValue(new BigDecimal("10"))
+                        .expireDate(LocalDate.now().plusDays(30)).build()));
+
+        OrchestrationResult first = service.calculateCompiled(createItems("SKU001", "SKU002"),
+                ruleSet, wallet, BigDecimal.ZERO);
+        assertEquals(0, new BigDecimal("220").compareTo(first.getTotalPayPrice()));
+        first.getCouponResult().getAvailableCoupons().get(0).setChecked(false);
+        first.getPromotionDetails().clear();
+
+        OrchestrationResult second = service.calculateCompiled(createItems("SKU002", "SKU001"),
+                ruleSet, wallet, BigDecimal.ZERO);
+        assertEquals(0, new BigDecimal("220").compareTo(second.getTotalPayPrice()));
+        assertTrue(second.getCouponResult().getAvailableCoupons().get(0).getChecked());
+        assertEquals(1, second.getPromotionDetails().size());
+        assertEquals(1L, service.getCacheStats().get("hits"));
+
+        // 不同运费是不同的键
+        service.calculateCompiled(createItems("SKU001", "SKU002"), ruleSet, wallet, BigDecimal.ONE);
+        assertEquals(2L, service.getCacheStats().get("misses"));
+    }
+
+    private List<CartItem> createItems(String... skuCodes) {
+        Map<String, String> prices = new HashMap<>();
+        prices.put("SKU001", "200");
+        prices.put("SKU002", "50");
+        List<CartItem> items = new ArrayList<>();
+        for (String skuCode : skuCodes) {
+            items.add(CartItem.builder().skuCode(skuCode).price(new BigDecimal(prices.get(skuCode))).quantity(1).build());
+        }
+        return items;
+    }
+
+    private List<Rule> createRules() {
+        return Collections.singletonList(
+                Rule.builder().id("R1").name("满200减20")
+                        .type(RuleType.THRESHOLD_AMOUNT_OFF)
+                        .threshold(new BigDecimal("200"))
+                        .discount(new BigDecimal("20"))
+                        .priority(1).build());
+    }
+}
@@ -0,0 +1,445 @@
+package com.ryan.es.coupon;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.ryan.es.config.EsDemoProperties;
+import com.ryan.es.http.EsAsyncRestClient;
+import com.ryan.es.http.EsHttpResponse;
+import com.ryan.es.http.EsParsedResponse;
+import com.ryan.es.http.EsResponseReader;
+import com.ryan.es.http.EsRestClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * {@link CouponReindexService} against a mocked ES transport: both clients are Mockito mocks answering from a small
+ * in-memory cluster (indices, aliases, doc ids, the external-versioned state doc) that records every call.
+ */
+public class CouponReindexServiceTest {
+
+    private static final String ALIAS = "coupon_demo_v1";
+    private static final String STATE_DOC = "/" + ALIAS + "_reindex_state/_doc/current";
+    private static final int DOCS = 23;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private FakeEs es;
+    private RecordingSource source;
+    private CouponReindexService service;
+
+    @BeforeEach
+    void setUp() {
+        EsDemoProperties properties = new EsDemoProperties();
+        properties.setCouponIndex(ALIAS);
+        properties.setReindexSlices(2);
+        properties.setReindexPageSize(5);
+        properties.setBulkFlushIntervalMs(0L);
+        properties.setBulkDeadlineMs(2_000L);
+
+        es = new FakeEs();
+        source = new RecordingSource(DOCS);
+        CouponEsService couponEsService = new CouponEsService(es.rest, es.async, properties);
+        service = new CouponReindexService(es.rest, es.async, couponEsService, source, properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void fullRebuildWalksThePhasesAndSwapsTheAlias() throws Exception {
+        es.createIndex("coupon_demo_v1_v20200101000000", ALIAS);
+
+        CouponReindexStatus status = runToEnd(service.start(false));
+
+        assertNull(status.getError());
+        assertEquals(CouponReindexStatus.Phase.DONE, status.getPhase());
+        assertEquals(DOCS, status.getTotalDocs());
+        assertEquals(DOCS, status.getIndexedDocs());
+        assertEquals(Arrays.asList("LOAD", "FINALIZE", "SWAP_ALIAS", "DONE"), distinctPhases());
+        // The last snapshot carries the highest version, so it is the one left in the state index.
+        assertEquals(Collections.max(es.stateVersionsSent).longValue(), es.stateVersion);
+        assertEquals("DONE", objectMapper.readTree(es.stateJson).path("phase").asText());
+
+        String target = status.getTargetIndex();
+        assertTrue(target.startsWith(ALIAS + "_v"), target);
+        assertEquals(DOCS, es.docs(target).size());
+        // Loaded with refresh off and no replicas, restored from the mapping template afterwards.
+        JsonNode created = es.body("PUT /" + target);
+        assertEquals("-1", created.path("settings").path("refresh_interval").asText());
+        assertEquals(0, created.path("settings").path("number_of_replicas").asInt());
+        JsonNode restored = es.body("PUT /" + target + "/_settings");
+        assertEquals("1s", restored.path("index").path("refresh_interval").asText());
+        assertEquals(0, restored.path("index").path("number_of_replicas").asInt());
+        assertTrue(es.calls.indexOf("POST /" + target + "/_refresh") < es.calls.indexOf("POST /_aliases"));
+
+        assertEquals(objectMapper.readTree("{\"actions\":["
+                        + "{\"remove\":{\"index\":\"coupon_demo_v1_v20200101000000\",\"alias\":\"" + ALIAS + "\"}},"
+                        + "{\"add\":{\"index\":\"" + target + "\",\"alias\":\"" + ALIAS + "\"}}]}"),
+                es.body("POST /_aliases"));
+        assertEquals(Collections.singleton(target), es.indicesOf(ALIAS));
+        assertTrue(es.indices.containsKey("coupon_demo_v1_v20200101000000"), "old index kept for rollback");
+        assertEquals(Collections.singletonList("coupon_demo_v1_v20200101000000"), status.getPreviousIndices());
+    }
+
+    @Test
+    void resumeContinuesFromThePersistedCheckpoint() throws Exception {
+        String target = "coupon_demo_v1_v20240101000000";
+        es.createIndex(target, null);
+        // Slice 0 is done, slice 1 acknowledged everything up to couponId 9 (ids 1, 3, 5, 7, 9).
+        for (long id = 1; id <= DOCS; id++) {
+            if (id % 2 == 0 || id <= 9) {
+                es.docs(target).add(String.valueOf(id));
+            }
+        }
+        CouponReindexStatus crashed = new CouponReindexStatus();
+        crashed.setJobId("job-1");
+        crashed.setAlias(ALIAS);
+        crashed.setTargetIndex(target);
+        crashed.setPhase(CouponReindexStatus.Phase.LOAD);
+        crashed.setTotalDocs(DOCS);
+        crashed.setIndexedDocs(11 + 5);
+        crashed.setUpdatedAt(1_000L);
+        crashed.setRestoreRefreshInterval("1s");
+        crashed.setRestoreReplicas(0);
+        crashed.getSlices().add(new CouponReindexStatus.SliceProgress(0, 22L, 11L, true));
+        crashed.getSlices().add(new CouponReindexStatus.SliceProgress(1, 9L, 5L, false));
+        es.putStateDoc(objectMapper.writeValueAsString(crashed), 1_000L);
+
+        CouponReindexStatus status = runToEnd(service.start(true));
+
+        assertNull(status.getError());
+        assertEquals("job-1", status.getJobId());
+        assertEquals(CouponReindexStatus.Phase.DONE, status.getPhase());
+        assertEquals(DOCS, status.getIndexedDocs());
+        assertEquals(DOCS, es.docs(target).size());
+        // No new index, and only slice 1 is read again, starting after its checkpoint.
+        assertFalse(es.calls.contains("PUT /" + target));
+        assertEquals(Arrays.asList("1>9", "1>19", "1>23"), source.calls);
+        assertEquals(Arrays.asList("LOAD", "FINALIZE", "SWAP_ALIAS", "DONE"), distinctPhases());
+        assertEquals(Collections.singleton(target), es.indicesOf(ALIAS));
+    }
+
+    @Test
+    void stateWritesUseExternalVersionsAndTolerateConflicts() throws Exception {
+        es.createIndex("coupon_demo_v1_v20200101000000", ALIAS);
+        // A newer snapshot already sits in the state index: every write of this job is rejected with 409.
+        long newer = Long.MAX_VALUE / 2;
+        es.putStateDoc("{\"jobId\":\"other\",\"phase\":\"LOAD\"}", newer);
+
+        CouponReindexStatus status = runToEnd(service.start(false));
+
+        assertNull(status.getError());
+        assertEquals(CouponReindexStatus.Phase.DONE, status.getPhase());
+        assertTrue(es.stateConflicts > 0);
+        assertEquals(newer, es.stateVersion);
+        assertEquals("other", objectMapper.readTree(es.stateJson).path("jobId").asText());
+
+        // Slices write outside the lock, so arrival order may differ, but no two snapshots share a version.
+        List<Long> versions = es.stateVersionsSent;
+        assertFalse(versions.isEmpty());
+        assertEquals(versions.size(), new HashSet<>(versions).size(), versions.toString());
+    }
+
+    @Test
+    void preAliasIndexIsClonedBeforeTheSwapRemovesIt() throws Exception {
+        // Deployment from before the alias: a concrete index holds the alias's name.
+        es.createIndex(ALIAS, null);
+        for (long id = 1; id <= 3; id++) {
+            es.docs(ALIAS).add("old-" + id);
+        }
+
+        CouponReindexStatus status = runToEnd(service.start(false));
+
+        assertNull(status.getError());
+        assertEquals(CouponReindexStatus.Phase.DONE, status.getPhase());
+        String copy = status.getPreAliasCopy();
+        assertNotNull(copy);
+        assertTrue(copy.startsWith(ALIAS + "_pre_alias_v"), copy);
+        assertEquals(Collections.singletonList(copy), status.getPreviousIndices());
+        assertEquals(new HashSet<>(Arrays.asList("old-1", "old-2", "old-3")), es.docs(copy));
+
+        int block = es.calls.indexOf("PUT /" + ALIAS + "/_settings");
+        int clone = es.calls.indexOf("POST /" + ALIAS + "/_clone/" + copy);
+        int swap = es.calls.indexOf("POST /_aliases");
+        assertTrue(block >= 0 && block < clone && clone < swap, es.calls.toString());
+        assertTrue(es.body("PUT /" + ALIAS + "/_settings").path("index.blocks.write").asBoolean());
+
+        assertEquals(objectMapper.readTree("{\"actions\":["
+                        + "{\"remove_index\":{\"index\":\"" + ALIAS + "\"}},"
+                        + "{\"add\":{\"index\":\"" + status.getTargetIndex() + "\",\"alias\":\"" + ALIAS + "\"}}]}"),
+                es.body("POST /_aliases"));
+        assertEquals(Collections.singleton(status.getTargetIndex()), es.indicesOf(ALIAS));
+    }
+
+    @Test
+    void resumedSwapReusesAnExistingPreAliasCopy() throws Exception {
+        String target = "coupon_demo_v1_v20240101000000";
+        String copy = "coupon_demo_v1_pre_alias_v20240101000000";
+        es.createIndex(ALIAS, null);
+        es.createIndex(target, null);
+        es.createIndex(copy, null);
+        CouponReindexStatus crashed = new CouponReindexStatus();
+        crashed.setJobId("job-2");
+        crashed.setAlias(ALIAS);
+        crashed.setTargetIndex(target);
+        crashed.setPhase(CouponReindexStatus.Phase.SWAP_ALIAS);
+        crashed.setPreAliasCopy(copy);
+        crashed.setUpdatedAt(1_000L);
+        es.putStateDoc(objectMapper.writeValueAsString(crashed), 1_000L);
+
+        CouponReindexStatus status = runToEnd(service.start(true));
+
+        assertNull(status.getError());
+        assertEquals(CouponReindexStatus.Phase.DONE, status.getPhase());
+        assertTrue(es.calls.stream().noneMatch(c -> c.contains("/_clone/")), es.calls.toString());
+        assertEquals(Collections.singletonList(copy), status.getPreviousIndices());
+        assertEquals(Collections.singleton(target), es.indicesOf(ALIAS));
+        assertTrue(source.calls.isEmpty());
+    }
+
+    private CouponReindexStatus runToEnd(CouponReindexStatus started) throws InterruptedException {
+        assertNotNull(started);
+        long deadline = System.currentTimeMillis() + 10_000L;
+        CouponReindexStatus status = service.getStatus();
+        while (status.isRunning()) {
+            assertTrue(System.currentTimeMillis() < deadline, "reindex did not finish");
+            Thread.sleep(10L);
+            status = service.getStatus();
+        }
+        return status;
+    }
+
+    /**
+     * Phases of the persisted snapshots, in write order, without repeats.
+     */
+    private List<String> distinctPhases() {
+        List<String> phases = new ArrayList<>();
+        for (String json : es.stateWrites) {
+            try {
+                String phase = objectMapper.readTree(json).path("phase").asText();
+                if (phases.isEmpty() || !phases.get(phases.size() - 1).equals(phase)) {
+                    phases.add(phase);
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return phases;
+    }
+
+    /**
+     * couponId 1..n, sliced by floorMod like {@link SampleCouponDocSource}; records "slice>afterId" per page call.
+     */
+    private static final class RecordingSource implements CouponDocSource {
+        private final int docs;
+        final List<String> calls = new CopyOnWriteArrayList<>();
+
+        RecordingSource(int docs) {
+            this.docs = docs;
+        }
+
+        @Override
+        public List<CouponEsDoc> page(int slice, int slices, long afterId, int limit) {
+            calls.add(slice + ">" + afterId);
+            List<CouponEsDoc> page = new ArrayList<>();
+            for (long id = Math.max(1L, afterId + 1); id <= docs && page.size() < limit; id++) {
+                if (Math.floorMod(id, (long) slices) == slice) {
+                    page.add(CouponEsDoc.builder().couponId(id).title("coupon " + id).build());
+                }
+            }
+            return page;
+        }
+
+        @Override
+        public long count() {
+            return docs;
+        }
+    }
+
+    /**
+     * In-memory cluster behind Mockito mocks of {@link EsRestClient} and {@link EsAsyncRestClient}.
+     */
+    private final class FakeEs {
+        private final Pattern bulkAction = Pattern.compile("\\{\"index\":\\{\"_index\":\"([^\"]+)\",\"_id\":\"([^\"]+)\"}}");
+        private final Pattern stateVersionParam = Pattern.compile("\\?version=(\\d+)&version_type=external$");
+
+        final EsRestClient rest = mock(EsRestClient.class);
+        final EsAsyncRestClient async = mock(EsAsyncRestClient.class);
+
+        /**
+         * index -> doc ids; aliases: index -> alias names.
+         */
+        final Map<String, Set<String>> indices = new LinkedHashMap<>();
+        final Map<String, Set<String>> aliases = new HashMap<>();
+        final List<String> calls = new CopyOnWriteArrayList<>();
+        final Map<String, String> bodies = new HashMap<>();
+
+        String stateJson;
+        long stateVersion = -1L;
+        int stateConflicts;
+        final List<String> stateWrites = new ArrayList<>();
+        final List<Long> stateVersionsSent = new ArrayList<>();
+
+        FakeEs() {
+            when(rest.head(anyString())).thenAnswer(inv -> {
+                String index = inv.<String>getArgument(0).substring(1);
+                synchronized (this) {
+                    return new EsHttpResponse(indices.containsKey(index) ? 200 : 404, "");
+                }
+            });
+            when(rest.putJson(anyString(), anyString())).thenAnswer(inv -> put(inv.getArgument(0), inv.getArgument(1)));
+            when(rest.postJson(anyString(), anyString())).thenAnswer(inv -> post(inv.getArgument(0), inv.getArgument(1)));
+            when(rest.exchange(eq(HttpMethod.GET), anyString(), isNull(), isNull(), any()))
+                    .thenAnswer(inv -> get(inv.getArgument(1), inv.getArgument(4)));
+            doAnswer(inv -> bulk(inv.getArgument(1), inv.getArgument(2), inv.getArgument(4)))
+                    .when(async).postNdjson(eq("/_bulk"), any(byte[].class), anyInt(), anyLong(), any());
+        }
+
+        synchronized void createIndex(String index, String alias) {
+            indices.put(index, new HashSet<>());
+            if (alias != null) {
+                aliases.computeIfAbsent(index, k -> new HashSet<>()).add(alias);
+            }
+        }
+
+        synchronized Set<String> docs(String index) {
+            return indices.get(index);
+        }
+
+        synchronized Set<String> indicesOf(String alias) {
+            return aliases.entrySet().stream()
+                    .filter(e -> e.getValue().contains(alias))
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toSet());
+        }
+
+        synchronized void putStateDoc(String json, long version) {
+            stateJson = json;
+            stateVersion = version;
+        }
+
+        JsonNode body(String call) throws Exception {
+            String body;
+            synchronized (this) {
+                body = bodies.get(call);
+            }
+            assertNotNull(body, call + " not called: " + calls);
+            return objectMapper.readTree(body);
+        }
+
+        private synchronized EsHttpResponse put(String path, String json) throws Exception {
+            if (path.startsWith(STATE_DOC)) {
+                Matcher m = stateVersionParam.matcher(path);
+                assertTrue(m.find(), path);
+                long version = Long.parseLong(m.group(1));
+                stateVersionsSent.add(version);
+                if (version <= stateVersion) {
+                    stateConflicts++;
+                    return new EsHttpResponse(409, "{\"error\":{\"type\":\"version_conflict_engine_exception\"}}");
+                }
+                stateJson = json;
+                stateVersion = version;
+                stateWrites.add(json);
+                return new EsHttpResponse(201, "{\"result\":\"created\"}");
+            }
+            record("PUT " + path, json);
+            if (path.endsWith("/_settings")) {
+                return new EsHttpResponse(200, "{\"acknowledged\":true}");
+            }
+            String index = path.substring(1);
+            if (indices.containsKey(index)) {
+                return new EsHttpResponse(400, "{\"error\":{\"type\":\"resource_already_exists_exception\"}}");
+            }
+            createIndex(index, null);
+            objectMapper.readTree(json).path("aliases").fieldNames()
+                    .forEachRemaining(alias -> aliases.computeIfAbsent(index, k -> new HashSet<>()).add(alias));
+            return new EsHttpResponse(200, "{\"acknowledged\":true}");
+        }
+
+        private synchronized EsHttpResponse post(String path, String json) throws Exception {
+            record("POST " + path, json);
+            if ("/_aliases".equals(path)) {
+                for (JsonNode action : objectMapper.readTree(json).path("actions")) {
+                    if (action.has("remove_index")) {
+                        String index = action.path("remove_index").path("index").asText();
+                        indices.remove(index);
+                        aliases.remove(index);
+                    } else if (action.has("remove")) {
+                        aliases.get(action.path("remove").path("index").asText())
+                                .remove(action.path("remove").path("alias").asText());
+                    } else {
+                        String index = action.path("add").path("index").asText();
+                        String alias = action.path("add").path("alias").asText();
+                        assertFalse(indices.containsKey(alias), "alias " + alias + " clashes with an index");
+                        aliases.computeIfAbsent(index, k -> new HashSet<>()).add(alias);
+                    }
+                }
+                return new EsHttpResponse(200, "{\"acknowledged\":true}");
+            }
+            int clone = path.indexOf("/_clone/");
+            if (clone > 0) {
+                String from = path.substring(1, clone);
+                String to = path.substring(clone + "/_clone/".length());
+                indices.put(to, new HashSet<>(indices.get(from)));
+                return new EsHttpResponse(200, "{\"acknowledged\":true}");
+            }
+            return new EsHttpResponse(200, "{}");
+        }
+
+        private synchronized EsParsedResponse<Object> get(String path, EsResponseReader<Object> reader) throws Exception {
+            calls.add("GET " + path);
+            String body;
+            if (path.equals(STATE_DOC)) {
+                body = stateJson == null ? "{\"found\":false}" : "{\"found\":true,\"_source\":" + stateJson + "}";
+            } else if (path.startsWith("/_alias/")) {
+                Set<String> targets = indicesOf(path.substring("/_alias/".length()));
+                if (targets.isEmpty()) {
+                    return new EsParsedResponse<>(404, null, "{\"status\":404}");
+                }
+                ObjectNode node = objectMapper.createObjectNode();
+                targets.forEach(index -> node.putObject(index).putObject("aliases"));
+                body = node.toString();
+            } else if (path.endsWith("/_count")) {
+                body = "{\"count\":" + indices.get(path.substring(1, path.length() - "/_count".length())).size() + "}";
+            } else {
+                return new EsParsedResponse<>(404, null, "{}");
+            }
+            return new EsParsedResponse<>(200, reader.read(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8))), null);
+        }
+
+        private CompletableFuture<EsParsedResponse<Object>> bulk(byte[] body, int length, EsResponseReader<Object> reader)
+                throws Exception {
+            Matcher m = bulkAction.matcher(new String(body, 0, length, StandardCharsets.UTF_8));
+            synchronized (this) {
+                while (m.find()) {
+                    indices.get(m.group(1)).add(m.group(2));
+                }
+            }
+            Object result = reader.read(new ByteArrayInputStream("{\"took\":1,\"errors\":false,\"items\":[]}"
+                    .getBytes(StandardCharsets.UTF_8)));
+            return CompletableFuture.completedFuture(new EsParsedResponse<>(200, result, null));
+        }
+
+        private void record(String call, String body) {
+            calls.add(call);
+            bodies.put(call, body);
+        }
+    }
+}
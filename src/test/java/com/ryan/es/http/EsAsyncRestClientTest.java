@@ -0,0 +1,121 @@
+package com.ryan.es.http;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ryan.es.config.EsDemoProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link EsAsyncRestClient} against a local stub server: where bodies are decoded, the in-flight limiter, deadlines
+ * and caller cancellation.
+ */
+public class EsAsyncRestClientTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private StubEsServer server;
+    private EsAsyncRestClient client;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new StubEsServer();
+        server.on("/fast", exchange -> StubEsServer.respond(exchange, 200, "{\"ok\":true}",
+                StubEsServer.acceptsGzip(exchange)));
+        server.on("/missing", exchange -> StubEsServer.respond(exchange, 404, "{\"error\":\"no such index\"}", false));
+        server.on("/slow", server.slow("{\"slow\":true}"));
+
+        EsDemoProperties properties = new EsDemoProperties();
+        properties.setBaseUrl(server.baseUrl());
+        properties.setAsyncMaxInFlight(2);
+        properties.setAsyncDeadlineMs(10_000L);
+        properties.setAsyncDecodeThreads(1);
+        client = new EsAsyncRestClient(properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+        client.close();
+    }
+
+    @Test
+    void bodiesAreInflatedAndDecodedOffTheReactorThread() throws Exception {
+        AtomicReference<String> decodeThread = new AtomicReference<>();
+        EsParsedResponse<JsonNode> resp = client.exchange(HttpMethod.GET, "/fast", null, null, 0L, in -> {
+            decodeThread.set(Thread.currentThread().getName());
+            return objectMapper.readTree(in);
+        }).get(5, TimeUnit.SECONDS);
+
+        assertEquals(200, resp.getStatusCode());
+        assertTrue(resp.getValue().path("ok").asBoolean());
+        assertTrue(decodeThread.get().startsWith("es-async-decode-"), decodeThread.get());
+
+        EsHttpResponse missing = client.get("/missing").get(5, TimeUnit.SECONDS);
+        assertEquals(404, missing.getStatusCode());
+        assertEquals("{\"error\":\"no such index\"}", missing.getBody());
+    }
+
+    @Test
+    void limiterFailsFastBeyondMaxInFlight() throws Exception {
+        CompletableFuture<EsHttpResponse> first = client.get("/slow");
+        CompletableFuture<EsHttpResponse> second = client.get("/slow");
+        assertEquals(0, client.getAvailablePermits());
+
+        CompletableFuture<EsHttpResponse> rejected = client.get("/fast");
+        assertTrue(rejected.isDone());
+        assertEquals(-1, rejected.get().getStatusCode());
+        assertTrue(rejected.get().getBody().contains("2 requests already in flight"), rejected.get().getBody());
+
+        server.release.countDown();
+        assertEquals(200, first.get(5, TimeUnit.SECONDS).getStatusCode());
+        assertEquals(200, second.get(5, TimeUnit.SECONDS).getStatusCode());
+        awaitPermits(2);
+        assertEquals(200, client.get("/fast").get(5, TimeUnit.SECONDS).getStatusCode());
+    }
+
+    @Test
+    void deadlineCompletesWithMinusOneAndFreesThePermit() throws Exception {
+        long start = System.nanoTime();
+        EsHttpResponse resp = client.exchange(HttpMethod.GET, "/slow", null, null, 100L).get(5, TimeUnit.SECONDS);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(-1, resp.getStatusCode());
+        assertEquals("deadline exceeded (100ms)", resp.getBody());
+        assertTrue(elapsedMs < 3_000L, elapsedMs + "ms");
+        awaitPermits(2);
+        assertEquals(200, client.get("/fast").get(5, TimeUnit.SECONDS).getStatusCode());
+    }
+
+    @Test
+    void cancellingTheFutureAbortsTheExchangeAndFreesThePermit() throws Exception {
+        CompletableFuture<EsHttpResponse> slow = client.get("/slow");
+        CompletableFuture<EsHttpResponse> fast = client.get("/fast");
+        assertEquals(200, fast.get(5, TimeUnit.SECONDS).getStatusCode());
+
+        assertTrue(slow.cancel(true));
+        assertTrue(slow.isCancelled());
+        awaitPermits(2);
+
+        // Both permits are usable again and the pool still serves requests.
+        CompletableFuture<EsHttpResponse> a = client.get("/fast");
+        CompletableFuture<EsHttpResponse> b = client.get("/fast");
+        assertEquals(200, a.get(5, TimeUnit.SECONDS).getStatusCode());
+        assertEquals(200, b.get(5, TimeUnit.SECONDS).getStatusCode());
+    }
+
+    private void awaitPermits(int permits) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000L;
+        while (client.getAvailablePermits() != permits) {
+            assertTrue(System.currentTimeMillis() < deadline, "permits=" + client.getAvailablePermits());
+            Thread.sleep(5L);
+        }
+    }
+}
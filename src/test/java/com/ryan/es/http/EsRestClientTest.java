@@ -0,0 +1,188 @@
+package com.ryan.es.http;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ryan.es.config.EsDemoProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link EsRestClient} on the pooled transport against a local stub server: gzip in both directions, connection reuse,
+ * non-2xx bodies and the streaming {@link EsResponseReader} path.
+ */
+public class EsRestClientTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private StubEsServer server;
+    private EsDemoProperties properties;
+    private EsRestClient client;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new StubEsServer();
+        properties = new EsDemoProperties();
+        properties.setBaseUrl(server.baseUrl());
+        properties.setGzipRequestMinBytes(256);
+        client = new EsRestClient(properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    void gzipResponsesAreInflatedAndGzipRequestsSent() {
+        AtomicReference<String> acceptEncoding = new AtomicReference<>();
+        AtomicReference<String> contentEncoding = new AtomicReference<>();
+        server.on("/coupon/_search", exchange -> {
+            acceptEncoding.set(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+            contentEncoding.set(exchange.getRequestHeaders().getFirst("Content-Encoding"));
+            String echo = objectMapper.writeValueAsString(StubEsServer.requestBody(exchange));
+            StubEsServer.respond(exchange, 200, "{\"echo\":" + echo + "}", StubEsServer.acceptsGzip(exchange));
+        });
+
+        String small = "{\"query\":{\"term\":{\"name\":\"优惠券\"}}}";
+        EsHttpResponse resp = client.postJson("/coupon/_search", small);
+        assertEquals(200, resp.getStatusCode());
+        assertTrue(acceptEncoding.get().contains("gzip"), acceptEncoding.get());
+        assertNull(contentEncoding.get());
+        assertEquals(small, echo(resp.getBody()));
+
+        char[] pad = new char[2_000];
+        Arrays.fill(pad, '券');
+        String large = "{\"query\":{\"match\":{\"name\":\"" + new String(pad) + "\"}}}";
+        resp = client.postJson("/coupon/_search", large);
+        assertEquals(200, resp.getStatusCode());
+        assertEquals("gzip", contentEncoding.get());
+        assertEquals(large, echo(resp.getBody()));
+    }
+
+    @Test
+    void gzipCanBeTurnedOff() {
+        client.close();
+        properties.setGzipResponse(false);
+        properties.setGzipRequest(false);
+        client = new EsRestClient(properties);
+        AtomicReference<String> acceptEncoding = new AtomicReference<>("unset");
+        server.on("/", exchange -> {
+            acceptEncoding.set(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+            StubEsServer.respond(exchange, 200, "{\"ok\":true}", false);
+        });
+
+        assertEquals("{\"ok\":true}", client.get("/").getBody());
+        assertNull(acceptEncoding.get());
+    }
+
+    @Test
+    void pooledConnectionIsReusedAcrossRequestsIncludingErrors() {
+        server.on("/ok", exchange -> StubEsServer.respond(exchange, 200, "{\"ok\":true}", true));
+        server.on("/missing", exchange -> StubEsServer.respond(exchange, 404,
+                "{\"error\":{\"type\":\"index_not_found_exception\"},\"status\":404}", true));
+        server.on("/boom", exchange -> StubEsServer.respond(exchange, 500, "{\"error\":\"boom\"}", false));
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals(200, client.get("/ok").getStatusCode());
+            assertEquals(404, client.get("/missing").getStatusCode());
+            assertEquals(500, client.get("/boom").getStatusCode());
+            EsParsedResponse<JsonNode> parsed = client.exchange(HttpMethod.GET, "/ok", null, null,
+                    objectMapper::readTree);
+            assertTrue(parsed.getValue().path("ok").asBoolean());
+        }
+
+        assertEquals(16, server.clientPorts.size());
+        assertEquals(1, new HashSet<>(server.clientPorts).size(), server.clientPorts.toString());
+        Map<String, Object> stats = client.getTransportStats();
+        assertEquals("pooled", stats.get("transport"));
+        assertEquals(0, stats.get("leased"));
+        assertEquals(1, stats.get("available"));
+    }
+
+    @Test
+    void nonSuccessBodiesAreReturnedWithoutCallingTheReader() {
+        String notFound = "{\"error\":{\"type\":\"index_not_found_exception\",\"reason\":\"no such index [券]\"},\"status\":404}";
+        server.on("/missing", exchange -> StubEsServer.respond(exchange, 404, notFound, true));
+        server.on("/conflict", exchange -> StubEsServer.respond(exchange, 409, "{\"error\":\"version_conflict\"}", false));
+
+        AtomicBoolean readerCalled = new AtomicBoolean();
+        EsParsedResponse<JsonNode> resp = client.exchange(HttpMethod.GET, "/missing", null, null, in -> {
+            readerCalled.set(true);
+            return objectMapper.readTree(in);
+        });
+        assertEquals(404, resp.getStatusCode());
+        assertFalse(resp.is2xx());
+        assertNull(resp.getValue());
+        assertEquals(notFound, resp.getErrorBody());
+        assertFalse(readerCalled.get());
+
+        EsHttpResponse conflict = client.exchange(HttpMethod.PUT, "/conflict", "{}", MediaType.APPLICATION_JSON);
+        assertEquals(409, conflict.getStatusCode());
+        assertEquals("{\"error\":\"version_conflict\"}", conflict.getBody());
+    }
+
+    /**
+     * The server sends the first half of the body and waits for the reader to start before sending the rest: this
+     * only completes in time if the reader gets the live stream rather than a fully buffered body.
+     */
+    @Test
+    void readerConsumesTheBodyWhileItIsStillArriving() throws Exception {
+        CountDownLatch readerStarted = new CountDownLatch(1);
+        AtomicBoolean streamed = new AtomicBoolean();
+        server.on("/_search", exchange -> {
+            StubEsServer.requestBody(exchange);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write("{\"hits\":[1,2,".getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                try {
+                    streamed.set(readerStarted.await(5, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                out.write("3]}".getBytes(StandardCharsets.UTF_8));
+            }
+        });
+
+        EsParsedResponse<JsonNode> resp = client.postJson("/_search", "{}", in -> {
+            readerStarted.countDown();
+            return objectMapper.readTree(in);
+        });
+
+        assertEquals(200, resp.getStatusCode());
+        assertTrue(streamed.get());
+        assertEquals(3, resp.getValue().path("hits").size());
+    }
+
+    @Test
+    void transportFailureComesBackAsMinusOne() {
+        server.close();
+        EsHttpResponse resp = client.get("/");
+        assertEquals(-1, resp.getStatusCode());
+        assertNotNull(resp.getBody());
+    }
+
+    private String echo(String body) {
+        try {
+            return objectMapper.readTree(body).path("echo").asText();
+        } catch (Exception e) {
+            throw new AssertionError(body, e);
+        }
+    }
+}
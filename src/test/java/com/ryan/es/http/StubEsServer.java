@@ -0,0 +1,117 @@
+package com.ryan.es.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.springframework.util.StreamUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local HTTP server standing in for ES in the transport tests. Records the client port of every request (same port
+ * = same pooled connection) and offers a latch that "slow" handlers wait on.
+ */
+final class StubEsServer implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "stub-es");
+        t.setDaemon(true);
+        return t;
+    });
+
+    final List<Integer> clientPorts = new CopyOnWriteArrayList<>();
+    /**
+     * Released on {@link #close()} at the latest, so no handler outlives the test.
+     */
+    final CountDownLatch release = new CountDownLatch(1);
+
+    StubEsServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    void on(String path, HttpHandler handler) {
+        server.createContext(path, exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            try {
+                handler.handle(exchange);
+            } finally {
+                exchange.close();
+            }
+        });
+    }
+
+    /**
+     * Handler that waits for {@link #release} before answering 200.
+     */
+    HttpHandler slow(String body) {
+        return exchange -> {
+            try {
+                release.await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            respond(exchange, 200, body, false);
+        };
+    }
+
+    String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Request body as sent, inflated when the client gzipped it.
+     */
+    static String requestBody(HttpExchange exchange) throws IOException {
+        InputStream in = exchange.getRequestBody();
+        if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+            in = new GZIPInputStream(in);
+        }
+        return StreamUtils.copyToString(in, StandardCharsets.UTF_8);
+    }
+
+    static void respond(HttpExchange exchange, int status, String body, boolean gzip) throws IOException {
+        StreamUtils.drain(exchange.getRequestBody());
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        if (gzip) {
+            ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            try (GZIPOutputStream out = new GZIPOutputStream(buf)) {
+                out.write(bytes);
+            }
+            bytes = buf.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    static boolean acceptsGzip(HttpExchange exchange) {
+        String accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        return accept != null && accept.contains("gzip");
+    }
+
+    @Override
+    public void close() {
+        release.countDown();
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}